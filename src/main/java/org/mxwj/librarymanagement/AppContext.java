@@ -0,0 +1,301 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mxwj.librarymanagement.graphql.AccountFetcher;
+import org.mxwj.librarymanagement.graphql.AuthFetcher;
+import org.mxwj.librarymanagement.graphql.BookFetcher;
+import org.mxwj.librarymanagement.graphql.BorrowFetcher;
+import org.mxwj.librarymanagement.graphql.FieldLatencyInstrumentation;
+import org.mxwj.librarymanagement.graphql.QueryCostInstrumentation;
+import org.mxwj.librarymanagement.graphql.QueryDocumentCache;
+import org.mxwj.librarymanagement.graphql.ReadRoutingInstrumentation;
+import org.mxwj.librarymanagement.graphql.ReservationFetcher;
+import org.mxwj.librarymanagement.graphql.SubscriptionFetcher;
+import org.mxwj.librarymanagement.graphql.TemporalScalars;
+import org.mxwj.librarymanagement.graphql.UserInfoFetcher;
+import org.mxwj.librarymanagement.handler.MetricsHandler;
+import org.mxwj.librarymanagement.lib.BookCache;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.EventHub;
+import org.mxwj.librarymanagement.lib.PasswordHasher;
+import org.mxwj.librarymanagement.lib.ReadRouter;
+import org.mxwj.librarymanagement.lib.RedisClient;
+import org.mxwj.librarymanagement.lib.SqlPoolMetrics;
+import org.mxwj.librarymanagement.middleware.GraphQLAuthHandler;
+import org.mxwj.librarymanagement.middleware.RateLimitHandler;
+import org.mxwj.librarymanagement.service.AccountService;
+import org.mxwj.librarymanagement.service.BookService;
+import org.mxwj.librarymanagement.service.BorrowService;
+import org.mxwj.librarymanagement.service.ChangeEvents;
+import org.mxwj.librarymanagement.service.DueReminderService;
+import org.mxwj.librarymanagement.service.LastLoginWriter;
+import org.mxwj.librarymanagement.service.OverdueSweeper;
+import org.mxwj.librarymanagement.service.ReminderLogSink;
+import org.mxwj.librarymanagement.service.ReservationService;
+import org.mxwj.librarymanagement.service.UserInfoService;
+import org.mxwj.librarymanagement.service.UserService;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+import org.mxwj.librarymanagement.utils.JWTUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.handler.graphql.instrumentation.JsonObjectAdapter;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * 应用级单例: 服务、JWT 工具和 GraphQL 实例在每个 Vert.x 实例中只构建一次,
+ * 由所有 MainVerticle 实例共享. 各 MainVerticle 只负责自己的 Router 和 HttpServer.
+ */
+@Getter
+public class AppContext {
+    private static final Logger logger = LoggerFactory.getLogger(AppContext.class);
+
+    private static final Map<Vertx, Future<AppContext>> CONTEXTS = new ConcurrentHashMap<>();
+    private static final int QUERY_DOCUMENT_CACHE_SIZE = 1000;
+    // 失效靠广播, TTL 只是兜底
+    private static final int BOOK_CACHE_SIZE = 10_000;
+    private static final long BOOK_CACHE_TTL_MILLIS = 60_000;
+    // 逾期扫描: 每分钟一轮, 每块 500 行; 租约在每块之后续期
+    private static final long OVERDUE_SWEEP_INTERVAL_MILLIS = 60_000;
+    private static final int OVERDUE_SWEEP_CHUNK = 500;
+    private static final long OVERDUE_SWEEP_LEASE_MILLIS = 30_000;
+    // 到期提醒: 应还日期前 1 天和前 2 小时各提醒一次
+    private static final List<Duration> DUE_REMINDER_OFFSETS = List.of(Duration.ofDays(1), Duration.ofHours(2));
+
+    // /graphql 限流: 每个客户端(账户或 IP)的总请求数, 以及 login / register / searchBooks 各自的上限
+    private static final RateLimitHandler.Policy DEFAULT_RATE_LIMIT = new RateLimitHandler.Policy("all", 300, 60_000);
+    private static final List<RateLimitHandler.Policy> FIELD_RATE_LIMITS = List.of(
+        new RateLimitHandler.Policy("login", 10, 60_000),
+        new RateLimitHandler.Policy("register", 5, 3_600_000),
+        new RateLimitHandler.Policy("searchBooks", 60, 60_000));
+
+    // 查询成本限制, 见 schema.graphqls 中的 @cost
+    private static final long MAX_QUERY_COST = 5000;
+    private static final int MAX_QUERY_DEPTH = 15;
+    private static final int MAX_PAGE_SIZE = CursorUtils.MAX_FIRST;
+    private static final long MAX_BATCH_COST = 10000;
+    private static final int MAX_BATCH_OPERATIONS = 10;
+    private static final long COST_BUDGET_CAPACITY = 50000;
+    private static final long COST_BUDGET_REFILL_PER_SECOND = 5000;
+
+    private final UserService userService;
+    private final AccountService accountService;
+    private final UserInfoService userInfoService;
+    private final BookService bookService;
+    private final BorrowService borrowService;
+    private final ReservationService reservationService;
+    private final JWTUtils jwtUtils;
+    private final PasswordHasher passwordHasher;
+    private final BookCache bookCache;
+    private final EventHub eventHub;
+    private final LastLoginWriter lastLoginWriter;
+    private final OverdueSweeper overdueSweeper;
+    private final DueReminderService dueReminderService;
+    private final ReminderLogSink reminderLogSink;
+    private final QueryDocumentCache queryDocumentCache = new QueryDocumentCache(QUERY_DOCUMENT_CACHE_SIZE);
+    private final FieldLatencyInstrumentation fieldLatency = new FieldLatencyInstrumentation();
+    private final QueryCostInstrumentation queryCost = new QueryCostInstrumentation(
+        MAX_QUERY_COST, MAX_QUERY_DEPTH, MAX_PAGE_SIZE, MAX_BATCH_COST, MAX_BATCH_OPERATIONS,
+        COST_BUDGET_CAPACITY, COST_BUDGET_REFILL_PER_SECOND);
+    private final ReadRouter readRouter;
+    private final RateLimitHandler rateLimitHandler;
+    private final MetricsHandler metricsHandler;
+    private GraphQL graphQL;
+    // 已启动的 MainVerticle 实例数
+    @Getter(AccessLevel.NONE)
+    private int instances;
+
+    private AppContext(Vertx vertx) {
+        // 配置了只读副本时创建副本的 SessionFactory 并开始监控复制延迟
+        readRouter = DatabaseManager.getReadRouter();
+        readRouter.startLagMonitor(vertx);
+        jwtUtils = new JWTUtils(vertx);
+        userService = new UserService();
+        passwordHasher = new PasswordHasher(vertx);
+        lastLoginWriter = new LastLoginWriter(vertx);
+        accountService = new AccountService(jwtUtils, passwordHasher, lastLoginWriter);
+        userInfoService = new UserInfoService();
+        bookCache = new BookCache(vertx, BOOK_CACHE_SIZE, BOOK_CACHE_TTL_MILLIS);
+        eventHub = new EventHub(vertx);
+        ChangeEvents changeEvents = new ChangeEvents(eventHub);
+        bookService = new BookService(bookCache, changeEvents);
+        dueReminderService = new DueReminderService(vertx, DUE_REMINDER_OFFSETS);
+        reminderLogSink = new ReminderLogSink(vertx);
+        reservationService = new ReservationService(vertx);
+        borrowService = new BorrowService(bookCache, dueReminderService, reservationService, changeEvents);
+        overdueSweeper = new OverdueSweeper(vertx, DatabaseManager.getSessionFactory(),
+            OVERDUE_SWEEP_INTERVAL_MILLIS, OVERDUE_SWEEP_CHUNK, OVERDUE_SWEEP_LEASE_MILLIS);
+
+        rateLimitHandler = new RateLimitHandler(RedisClient.getInstance(vertx), queryDocumentCache, DEFAULT_RATE_LIMIT, FIELD_RATE_LIMITS);
+
+        metricsHandler = new MetricsHandler(fieldLatency)
+            .register("token_cache", jwtUtils::cacheStats)
+            .register("book_cache", bookCache::stats)
+            .register("subscriptions", eventHub::stats)
+            .register("query_document_cache", queryDocumentCache::stats)
+            .register("query_cost", queryCost::stats)
+            .register("rate_limit", rateLimitHandler::stats)
+            .register("last_login_writer", lastLoginWriter::stats)
+            .register("overdue_sweeper", overdueSweeper::stats)
+            .register("due_reminders", dueReminderService::stats)
+            .register("reminder_sink", reminderLogSink::stats)
+            .register("password_hasher", passwordHasher::stats)
+            .register("redis", RedisClient.getInstance(vertx)::stats)
+            .register("db_pool", () -> SqlPoolMetrics.stats(DatabaseManager.PRIMARY_POOL))
+            .register("db_replica_pool", () -> SqlPoolMetrics.stats(DatabaseManager.REPLICA_POOL))
+            .register("read_routing", readRouter::stats)
+            .register("replica_lag", readRouter::lagStats);
+    }
+
+    // 第一个实例启动时开始逾期扫描, 最后一个实例停止时取消定时器; 同一 Vertx 上重新部署时再次开始
+    public synchronized void instanceStarted() {
+        if (instances++ == 0) {
+            overdueSweeper.start();
+        }
+    }
+
+    public synchronized void instanceStopped() {
+        if (--instances == 0) {
+            overdueSweeper.stop();
+        }
+    }
+
+    // 第一个调用者负责初始化, 其余实例拿到同一个 Future
+    public static Future<AppContext> get(Vertx vertx) {
+        return CONTEXTS.computeIfAbsent(vertx, AppContext::initialize);
+    }
+
+    private static Future<AppContext> initialize(Vertx vertx) {
+        return vertx.executeBlocking(() -> new AppContext(vertx))
+            .onSuccess(ctx ->
+                // 搜索索引在后台加载, 不阻塞启动; 加载完成前搜索走数据库
+                ctx.bookService.loadSearchIndex().subscribe().with(
+                    ignored -> logger.info("图书搜索索引加载完成"),
+                    error -> logger.error("图书搜索索引加载失败", error))
+            )
+            .onSuccess(ctx ->
+                // 到期提醒同样在后台加载; 加载期间新借的书由 BorrowService 直接登记
+                ctx.dueReminderService.load().subscribe().with(
+                    ignored -> {},
+                    error -> logger.error("到期提醒加载失败", error))
+            )
+            .compose(ctx -> setupGraphQL(vertx, ctx)
+                .map(graphQL -> {
+                    ctx.graphQL = graphQL;
+                    return ctx;
+                }));
+    }
+
+    private static Future<GraphQL> setupGraphQL(Vertx vertx, AppContext ctx) {
+        return vertx.fileSystem()
+            .readFile("schema.graphqls")
+            .map(buffer -> {
+                String schema = buffer.toString();
+                SchemaParser schemaParser = new SchemaParser();
+                TypeDefinitionRegistry typeRegistry = schemaParser.parse(schema);
+
+                AuthFetcher authFetcher = new AuthFetcher(ctx.accountService);
+                UserInfoFetcher userInfoFetcher = new UserInfoFetcher(ctx.userInfoService);
+                BookFetcher bookFetcher = new BookFetcher(ctx.bookService);
+                BorrowFetcher borrowFetcher = new BorrowFetcher(ctx.borrowService);
+                ReservationFetcher reservationFetcher = new ReservationFetcher(ctx.reservationService);
+                SubscriptionFetcher subscriptionFetcher = new SubscriptionFetcher(ctx.eventHub);
+                AccountFetcher accountFetcher = new AccountFetcher(ctx.accountService);
+
+                RuntimeWiring runtimeWiring = RuntimeWiring.newRuntimeWiring()
+                    .scalar(TemporalScalars.DATE_TIME)
+                    .scalar(TemporalScalars.DATE)
+                    .type("Query", builder ->
+                        builder
+                            .dataFetcher("book", bookFetcher.getBookById())
+                            .dataFetcher("books", bookFetcher.getBooks())
+                            .dataFetcher("booksConnection", bookFetcher.getBooksConnection())
+                            .dataFetcher("searchBooks", bookFetcher.searchBooks())
+
+                            .dataFetcher("myBorrowRecords", 
+                                GraphQLAuthHandler.requireUser(borrowFetcher.getMyBorrowRecords()))
+                            .dataFetcher("borrowRecords", 
+                                GraphQLAuthHandler.requireAdmin(borrowFetcher.getAllBorrowRecords()))
+                            .dataFetcher("myBorrowRecordsConnection",
+                                GraphQLAuthHandler.requireUser(borrowFetcher.getMyBorrowRecordsConnection()))
+                            .dataFetcher("borrowRecordsConnection",
+                                GraphQLAuthHandler.requireAdmin(borrowFetcher.getAllBorrowRecordsConnection()))
+                            .dataFetcher("myReservations",
+                                GraphQLAuthHandler.requireUser(reservationFetcher.getMyReservations()))
+
+                            .dataFetcher("account", GraphQLAuthHandler.requireAdmin(accountFetcher.getAccountById()))
+                            .dataFetcher("accounts", GraphQLAuthHandler.requireAdmin(accountFetcher.getAccounts()))
+                            .dataFetcher("accountsConnection", GraphQLAuthHandler.requireAdmin(accountFetcher.getAccountsConnection()))
+                            .dataFetcher("searchAccounts", GraphQLAuthHandler.requireAdmin(accountFetcher.searchAccounts()))
+                    )
+                    .type("Mutation", builder ->
+                        builder
+                            .dataFetcher("login", authFetcher.login())
+                            .dataFetcher("register", authFetcher.register())
+                            .dataFetcher("logout", GraphQLAuthHandler.requireUser(authFetcher.logout()))
+
+                            .dataFetcher("createUserInfo", GraphQLAuthHandler.requireUser(userInfoFetcher.createUserInfo()))
+                            .dataFetcher("updateUserInfo", GraphQLAuthHandler.requireUser(userInfoFetcher.updateUserInfo()))
+
+                            .dataFetcher("createBook", GraphQLAuthHandler.requireAdmin(bookFetcher.createBook()))
+                            .dataFetcher("updateBook", GraphQLAuthHandler.requireAdmin(bookFetcher.updateBook()))
+                            .dataFetcher("deleteBook", GraphQLAuthHandler.requireAdmin(bookFetcher.deleteBook()))
+
+                            .dataFetcher("borrowBook", GraphQLAuthHandler.requireUser(borrowFetcher.borrowBook()))
+                            .dataFetcher("returnBook", GraphQLAuthHandler.requireUser(borrowFetcher.returnBook()))
+                            .dataFetcher("reserveBook", GraphQLAuthHandler.requireUser(reservationFetcher.reserveBook()))
+                            .dataFetcher("cancelReservation", GraphQLAuthHandler.requireUser(reservationFetcher.cancelReservation()))
+
+                            .dataFetcher("updateAccountStatus", GraphQLAuthHandler.requireAdmin(accountFetcher.updateAccountStatus()))
+                            .dataFetcher("updataAccountType", GraphQLAuthHandler.requireAdmin(accountFetcher.updateAccountType()))
+                            .dataFetcher("resetPassword", GraphQLAuthHandler.requireAdmin(accountFetcher.resetPassword()))
+
+                            .dataFetcher("adminBorrowBook", GraphQLAuthHandler.requireAdmin(borrowFetcher.adminBorrowBook()))
+                            .dataFetcher("adminReturnBook", GraphQLAuthHandler.requireAdmin(borrowFetcher.adminReturnBook()))
+                            .dataFetcher("adminForceReturn", GraphQLAuthHandler.requireAdmin(borrowFetcher.adminForceReturn()))
+
+                            )
+                    .type("Subscription", builder ->
+                        builder
+                            .dataFetcher("bookAvailabilityChanged", subscriptionFetcher.bookAvailabilityChanged())
+                            .dataFetcher("myBorrowRecordChanged",
+                                GraphQLAuthHandler.requireUser(subscriptionFetcher.myBorrowRecordChanged()))
+                    )
+                    .type("BorrowRecord", builder ->
+                        builder
+                            .dataFetcher("book", borrowFetcher.getBook())
+                            .dataFetcher("account", borrowFetcher.getAccount())
+                    )
+                    .type("Reservation", builder ->
+                        builder
+                            .dataFetcher("book", reservationFetcher.getBook())
+                    )
+                    .build();
+                    
+                GraphQLSchema graphQLSchema = new SchemaGenerator()
+                    .makeExecutableSchema(typeRegistry, runtimeWiring);
+
+                return GraphQL.newGraphQL(graphQLSchema)
+                    // 成本检查放在最前, 超限的请求不会进入后续的 instrumentation 和 data fetcher
+                    .instrumentation(new ChainedInstrumentation(ctx.queryCost,
+                        new ReadRoutingInstrumentation(ctx.readRouter), new JsonObjectAdapter(), ctx.fieldLatency))
+                    // 重复的查询跳过解析和校验, 并支持 APQ
+                    .preparsedDocumentProvider(ctx.queryDocumentCache)
+                    .build();
+            });
+    }
+}
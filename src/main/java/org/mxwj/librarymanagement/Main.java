@@ -1,15 +1,54 @@
 package org.mxwj.librarymanagement;
 
+import java.util.concurrent.TimeUnit;
+
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.SqlPoolMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.config.ConfigRetriever;
+import io.vertx.config.ConfigRetrieverOptions;
+import io.vertx.config.ConfigStoreOptions;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
 
 public class Main {
+    private static final Logger logger = LoggerFactory.getLogger(Main.class);
+
     public static void main(String[] args) {
-        Vertx vertx = Vertx.vertx();
-        vertx.deployVerticle(new MainVerticle())
-            .onSuccess(id -> System.out.println("部署成功: " + id))
-            .onFailure(err -> {
-                System.err.println("部署失败: " + err.getMessage());
-                err.printStackTrace();
-            });
+        // 每个实例运行在独立的 event loop 上, 默认与 CPU 核数相同; 可通过 -Dapp.instances=N 调整
+        int instances = Integer.getInteger("app.instances", Runtime.getRuntime().availableProcessors());
+        // 配置环境: -Dapp.profile 或环境变量 APP_PROFILE, 默认 dev
+        String profile = System.getProperty("app.profile", System.getenv().getOrDefault("APP_PROFILE", "dev"));
+
+        Vertx vertx = SqlPoolMetrics.vertx(new VertxOptions());
+        // 收到 SIGTERM 等信号时先关闭 Vert.x, 触发各 verticle 的 stop 写完缓冲数据
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            vertx.close().toCompletionStage().toCompletableFuture().orTimeout(30, TimeUnit.SECONDS).join()));
+        loadConfig(vertx, profile)
+            .compose(config -> {
+                DatabaseManager.configure(config.getJsonObject("database"));
+                return vertx.deployVerticle(MainVerticle.class,
+                    new DeploymentOptions().setInstances(instances).setConfig(config));
+            })
+            .onSuccess(id -> logger.info("部署成功: {}, 实例数: {}, 环境: {}", id, instances, profile))
+            .onFailure(err -> logger.error("部署失败", err));
+    }
+
+    // 依次合并(后者覆盖前者): conf/config.json, conf/config-<profile>.json, 系统属性(如 -Ddatabase.poolSize=20)
+    private static Future<JsonObject> loadConfig(Vertx vertx, String profile) {
+        ConfigRetrieverOptions options = new ConfigRetrieverOptions()
+            .addStore(new ConfigStoreOptions().setType("file")
+                .setConfig(new JsonObject().put("path", "conf/config.json")))
+            .addStore(new ConfigStoreOptions().setType("file").setOptional(true)
+                .setConfig(new JsonObject().put("path", "conf/config-" + profile + ".json")))
+            .addStore(new ConfigStoreOptions().setType("sys")
+                .setConfig(new JsonObject().put("hierarchical", true)));
+        ConfigRetriever retriever = ConfigRetriever.create(vertx, options);
+        return retriever.getConfig().onComplete(ignored -> retriever.close());
     }
 }
@@ -1,150 +1,112 @@
 package org.mxwj.librarymanagement;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-
-
-import org.mxwj.librarymanagement.graphql.AccountFetcher;
-import org.mxwj.librarymanagement.graphql.AuthFetcher;
-import org.mxwj.librarymanagement.graphql.BookFetcher;
-import org.mxwj.librarymanagement.graphql.BorrowFetcher;
-import org.mxwj.librarymanagement.graphql.UserFetcher;
-import org.mxwj.librarymanagement.graphql.UserInfoFetcher;
-import org.mxwj.librarymanagement.middleware.GraphQLAuthHandler;
-import org.mxwj.librarymanagement.service.AccountService;
-import org.mxwj.librarymanagement.service.BookService;
-import org.mxwj.librarymanagement.service.BorrowService;
-import org.mxwj.librarymanagement.service.UserInfoService;
-import org.mxwj.librarymanagement.service.UserService;
-import org.mxwj.librarymanagement.utils.JWTUtils;
+import org.mxwj.librarymanagement.graphql.DataLoaders;
+import org.mxwj.librarymanagement.handler.BookImportHandler;
+import org.mxwj.librarymanagement.handler.BorrowRecordExportHandler;
+import org.mxwj.librarymanagement.handler.StreamingGraphQLHandler;
+import org.mxwj.librarymanagement.lib.RequestCorrelation;
+import org.mxwj.librarymanagement.middleware.CorrelationIdHandler;
+import org.mxwj.librarymanagement.middleware.JwtAuthHandler;
+import org.mxwj.librarymanagement.utils.ContextHelper;
+import org.mxwj.librarymanagement.utils.TemporalFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.Map;
+
 import graphql.GraphQL;
-import graphql.schema.GraphQLSchema;
-import graphql.schema.idl.RuntimeWiring;
-import graphql.schema.idl.SchemaGenerator;
-import graphql.schema.idl.SchemaParser;
-import graphql.schema.idl.TypeDefinitionRegistry;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.graphql.GraphQLHandler;
 import io.vertx.ext.web.handler.graphql.GraphQLHandlerOptions;
 import io.vertx.ext.web.handler.graphql.GraphiQLHandler;
 import io.vertx.ext.web.handler.graphql.GraphiQLHandlerOptions;
-import io.vertx.ext.web.handler.graphql.instrumentation.JsonObjectAdapter;
+import io.vertx.ext.web.handler.graphql.ws.ConnectionInitEvent;
+import io.vertx.ext.web.handler.graphql.ws.GraphQLWSHandler;
 
 public class MainVerticle extends AbstractVerticle {
     private static final Logger logger = LoggerFactory.getLogger(MainVerticle.class);
 
-    private UserService userService;
-    private AccountService accountService;
-    private UserInfoService userInfoService;
-    private BookService bookService;
-    private BorrowService borrowService;
+    private static final long MAX_BODY_BYTES = 1024 * 1024;
+
+    private AppContext appContext;
 
     @Override
     public void start(Promise<Void> startPromise) {
         logger.info("正在启动应用");
 
-        initializeUserService()
-            .compose(this::setupGraphQL)
-            .compose(this::setupRouter)
-            .onSuccess(v -> startPromise.complete())
-            .onFailure(startPromise::fail);
-    }
+        // GraphQL 的日期字段以 OffsetDateTime / LocalDate 输出, 仍由 GraphQLHandler 经 JsonObject 编码的请求(GET、multipart)需要这两个序列化器
+        TemporalFormat.registerJacksonModule();
 
-    private Future<Void> initializeUserService() {
-        return vertx.executeBlocking(() -> {
-            userService = new UserService();
-            accountService = new AccountService(vertx);
-            userInfoService = new UserInfoService();
-            bookService = new BookService();
-            borrowService = new BorrowService();
-            return null;
-        });
+        // 共享的 AppContext 可能由其他实例初始化, 回到本实例的 context 再创建 HttpServer
+        AppContext.get(vertx).onComplete(ar -> context.runOnContext(v -> {
+            if (ar.failed()) {
+                startPromise.fail(ar.cause());
+                return;
+            }
+            appContext = ar.result();
+            setupRouter(appContext.getGraphQL())
+                .onSuccess(ignored -> {
+                    appContext.instanceStarted();
+                    startPromise.complete();
+                })
+                .onFailure(startPromise::fail);
+        }));
     }
 
-    private Future<GraphQL> setupGraphQL(Void v) {
-        return vertx.fileSystem()
-            .readFile("schema.graphqls")
-            .map(buffer -> {
-                String schema = buffer.toString();
-                SchemaParser schemaParser = new SchemaParser();
-                TypeDefinitionRegistry typeRegistry = schemaParser.parse(schema);
-
-                AuthFetcher authFetcher = new AuthFetcher(accountService);
-                UserInfoFetcher userInfoFetcher = new UserInfoFetcher(userInfoService);
-                BookFetcher bookFetcher = new BookFetcher(bookService);
-                BorrowFetcher borrowFetcher = new BorrowFetcher(borrowService);
-                AccountFetcher accountFetcher = new AccountFetcher(accountService);
-
-                RuntimeWiring runtimeWiring = RuntimeWiring.newRuntimeWiring()
-                    .type("Query", builder ->
-                        builder
-                            .dataFetcher("book", bookFetcher.getBookById())
-                            .dataFetcher("books", bookFetcher.getBooks())
-                            .dataFetcher("searchBooks", bookFetcher.searchBooks())
-
-                            .dataFetcher("myBorrowRecords", 
-                                GraphQLAuthHandler.requireUser(borrowFetcher.getMyBorrowRecords()))
-                            .dataFetcher("borrowRecords", 
-                                GraphQLAuthHandler.requireAdmin(borrowFetcher.getAllBorrowRecords()))
-
-                            .dataFetcher("account", GraphQLAuthHandler.requireAdmin(accountFetcher.getAccountById()))
-                            .dataFetcher("accounts", GraphQLAuthHandler.requireAdmin(accountFetcher.getAccounts()))
-                            .dataFetcher("searchAccounts", GraphQLAuthHandler.requireAdmin(accountFetcher.searchAccounts()))
-                    )
-                    .type("Mutation", builder ->
-                        builder
-                            .dataFetcher("login", authFetcher.login())
-                            .dataFetcher("register", authFetcher.register())
-                            .dataFetcher("logout", GraphQLAuthHandler.requireUser(authFetcher.logout()))
-
-                            .dataFetcher("createUserInfo", GraphQLAuthHandler.requireUser(userInfoFetcher.createUserInfo()))
-                            .dataFetcher("updateUserInfo", GraphQLAuthHandler.requireUser(userInfoFetcher.updateUserInfo()))
-
-                            .dataFetcher("createBook", GraphQLAuthHandler.requireAdmin(bookFetcher.createBook()))
-                            .dataFetcher("updateBook", GraphQLAuthHandler.requireAdmin(bookFetcher.updateBook()))
-                            .dataFetcher("deleteBook", GraphQLAuthHandler.requireAdmin(bookFetcher.deleteBook()))
-
-                            .dataFetcher("borrowBook", GraphQLAuthHandler.requireUser(borrowFetcher.borrowBook()))
-                            .dataFetcher("returnBook", GraphQLAuthHandler.requireUser(borrowFetcher.returnBook()))
-
-                            .dataFetcher("updateAccountStatus", GraphQLAuthHandler.requireAdmin(accountFetcher.updateAccountStatus()))
-                            .dataFetcher("updataAccountType", GraphQLAuthHandler.requireAdmin(accountFetcher.updateAccountType()))
-                            .dataFetcher("resetPassword", GraphQLAuthHandler.requireAdmin(accountFetcher.resetPassword()))
-
-                            .dataFetcher("adminBorrowBook", GraphQLAuthHandler.requireAdmin(borrowFetcher.adminBorrowBook()))
-                            .dataFetcher("adminReturnBook", GraphQLAuthHandler.requireAdmin(borrowFetcher.adminReturnBook()))
-                            .dataFetcher("adminForceReturn", GraphQLAuthHandler.requireAdmin(borrowFetcher.adminForceReturn()))
-
-                            )
-                    .build();
-                    
-                GraphQLSchema graphQLSchema = new SchemaGenerator()
-                    .makeExecutableSchema(typeRegistry, runtimeWiring);
-
-                return GraphQL.newGraphQL(graphQLSchema)
-                    .instrumentation(new JsonObjectAdapter())
-                    .build();
+    // 所有实例都会调用; 缓冲区已空时立即完成
+    @Override
+    public void stop(Promise<Void> stopPromise) {
+        if (appContext == null) {
+            stopPromise.complete();
+            return;
+        }
+        appContext.instanceStopped();
+        appContext.getLastLoginWriter().close().subscribe().with(
+            ignored -> stopPromise.complete(),
+            error -> {
+                logger.error("停止时写入最后登录时间失败", error);
+                stopPromise.complete();
             });
     }
 
+    // 浏览器无法在 WebSocket 握手时设置 Authorization, token 放在 connection_init 的 payload 中;
+    // 没有 token 时以匿名连接, 握手请求带了 Authorization 头时由 JwtAuthHandler 处理
+    private void authenticateConnection(ConnectionInitEvent event) {
+        JsonObject payload = event.message().message().getJsonObject("payload");
+        String token = payload == null ? null : payload.getString("token");
+        if (token == null) {
+            event.complete(null);
+            return;
+        }
+        if (token.startsWith("Bearer ")) {
+            token = token.substring(7);
+        }
+        appContext.getJwtUtils().validateToken(token)
+            .onSuccess(user -> event.complete(user.principal()))
+            .onFailure(err -> event.fail("Invalid or expired token"));
+    }
+
     private Future<Void> setupRouter(GraphQL graphQL) {
         Router router = Router.router(vertx);
 
+        // 关联 id 最先绑定, 之后所有处理器的日志都带上
+        router.route().handler(new CorrelationIdHandler());
+
         // 添加CORS处理器
         router.route().handler(context -> {
             context.response()
                 .putHeader("Access-Control-Allow-Origin", "*")
                 .putHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS")
-                .putHeader("Access-Control-Allow-Headers", "Content-Type, Authorization")
+                .putHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, " + RequestCorrelation.HEADER)
+                .putHeader("Access-Control-Expose-Headers", RequestCorrelation.HEADER)
                 .putHeader("Access-Control-Allow-Credentials", "true");
 
             if (context.request().method() == HttpMethod.OPTIONS) {
@@ -154,57 +116,57 @@ public class MainVerticle extends AbstractVerticle {
             }
         });
 
-        router.route().handler(BodyHandler.create());
-        JWTUtils jwtUtils = new JWTUtils(vertx);
-
-        //鉴权
-        router.route("/graphql").handler(context -> {
-            String authHeader = context.request().getHeader("Authorization");
-            if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                String token = authHeader.substring(7);
-
-                try {
-                    jwtUtils.validateToken(token)
-                    .onSuccess(user -> {
-                        // 将用户信息存储在 RoutingContext 中
-                        context.put("userPrincipal", user.principal());
-
-                        System.out.printf("Current Date and Time (UTC): %s%n",
-                            LocalDateTime.now(ZoneOffset.UTC).format(
-                                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
-                            ));
-                        System.out.printf("Current User's Login: %s%n",
-                            user.principal().getString("sub"));
-                            
-                        context.next();
-                    })
-                    .onFailure(err -> {
-                        System.err.println("JWT验证失败: " + err.getMessage());
-                        // 返回401状态码和错误信息，而不是直接调用context.fail()
-                        context.response()
-                            .setStatusCode(401)
-                            .putHeader("Content-Type", "application/json")
-                            .end("{\"error\": \"Unauthorized\", \"message\": \"Invalid or expired token\"}");
-                    });
-                } catch(Exception e) {
-                    System.err.println("处理JWT过程中发生异常: " + e.getMessage());
-                    e.printStackTrace();
-                    // 捕获所有可能的异常
-                    context.response()
-                        .setStatusCode(401)
-                        .putHeader("Content-Type", "application/json")
-                        .end("{\"error\": \"Unauthorized\", \"message\": \"Invalid token format\"}");
-                        }
-            } else {
-                context.next();
-            }
-        }); //TODO 第一次启动后如果输入一个不存在的token会导致服务器错误
+        JwtAuthHandler jwtAuthHandler = new JwtAuthHandler(appContext.getJwtUtils());
+
+        // 批量导入流式读取请求体, 必须注册在 BodyHandler 之前
+        router.post("/import/books")
+            .handler(jwtAuthHandler)
+            .handler(new BookImportHandler(appContext.getBookService()));
+
+        // 限制请求体大小, 过大的批量请求在解析前就被拒绝
+        router.route().handler(BodyHandler.create().setBodyLimit(MAX_BODY_BYTES));
+
+        //鉴权, 之后限流(已登录用户按账户计数); 压测时可用 -DrateLimit.enabled=false 关闭限流
+        router.route("/graphql").handler(jwtAuthHandler);
+        if (config().getJsonObject("rateLimit", new JsonObject()).getBoolean("enabled", true)) {
+            router.route("/graphql").handler(appContext.getRateLimitHandler());
+        }
+
+        GraphQLHandler graphQLHandler = GraphQLHandler.builder(graphQL)
+            .with(new GraphQLHandlerOptions()
+                .setRequestBatchingEnabled(true))
+            // 每个请求创建独立的 DataLoader 注册表, 批量加载 BorrowRecord 的关联实体
+            .beforeExecute(builderWithContext -> builderWithContext.builder()
+                .dataLoaderRegistry(DataLoaders.newRegistry(appContext.getBookService(), appContext.getAccountService())))
+            .build();
+
+        // 订阅走 WebSocket(graphql-transport-ws), 非升级请求直接交给后面的 GraphQLHandler
+        GraphQLWSHandler graphQLWSHandler = GraphQLWSHandler.builder(graphQL)
+            .onConnectionInit(this::authenticateConnection)
+            .beforeExecute(builderWithContext -> {
+                Object principal = builderWithContext.context().connectionParams();
+                if (principal instanceof JsonObject) {
+                    builderWithContext.builder().graphQLContext(Map.of(ContextHelper.USER_PRINCIPAL, principal));
+                }
+                builderWithContext.builder()
+                    .dataLoaderRegistry(DataLoaders.newRegistry(appContext.getBookService(), appContext.getAccountService()));
+            })
+            .build();
+
+        // 常见的 JSON POST 直接流式写出响应, 其余请求交给 GraphQLHandler
+        StreamingGraphQLHandler streamingGraphQLHandler = new StreamingGraphQLHandler(graphQL,
+            () -> DataLoaders.newRegistry(appContext.getBookService(), appContext.getAccountService()));
+        appContext.getMetricsHandler().register("graphql_response", streamingGraphQLHandler::stats);
+
+        router.route("/graphql").handler(graphQLWSHandler);
+        router.post("/graphql").handler(streamingGraphQLHandler);
+        router.route("/graphql").handler(graphQLHandler);
 
-        GraphQLHandler graphQLHandler = GraphQLHandler.create(graphQL,
-            new GraphQLHandlerOptions()
-                .setRequestBatchingEnabled(true));
+        router.get("/export/borrow-records")
+            .handler(jwtAuthHandler)
+            .handler(new BorrowRecordExportHandler(appContext.getBorrowService()));
 
-        router.route("/graphql").handler(graphQLHandler);
+        router.get("/metrics").handler(appContext.getMetricsHandler());
 
         router.route("/graphiql/*").handler(
             GraphiQLHandler.create(vertx,
@@ -213,13 +175,13 @@ public class MainVerticle extends AbstractVerticle {
                     .setGraphQLUri("/graphql"))
         );
 
-        return vertx.createHttpServer()
+        // 多个实例监听同一端口时, Vert.x 在各实例的 event loop 之间轮询分发连接
+        return vertx.createHttpServer(new HttpServerOptions().setWebSocketSubProtocols(List.of("graphql-transport-ws")))
             .requestHandler(router)
             .listen(8888)
             .map(server -> {
-                System.out.println("Server started on port " + server.actualPort());
+                logger.info("HTTP 服务已启动, 端口 {}", server.actualPort());
                 return null;
             });
     }
-}
-//TODO 添加全局的日志
\ No newline at end of file
+}
\ No newline at end of file
@@ -5,13 +5,19 @@ import java.util.concurrent.CompletableFuture;
 
 import org.mxwj.librarymanagement.model.Account;
 import org.mxwj.librarymanagement.model.AccountPage;
+import org.mxwj.librarymanagement.model.Connection;
 import org.mxwj.librarymanagement.model.dto.UpdateAccountStatusDTO;
 import org.mxwj.librarymanagement.service.AccountService;
 import org.mxwj.librarymanagement.utils.ContextHelper;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import graphql.schema.DataFetcher;
 
 public class AccountFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(AccountFetcher.class);
+
     private final AccountService accountService;
 
     public AccountFetcher(AccountService accountService) {
@@ -38,6 +44,16 @@ public class AccountFetcher {
         };
     }
 
+    // 游标分页查询账户列表
+    public DataFetcher<CompletableFuture<Connection<Account>>> getAccountsConnection() {
+        return env -> {
+            int first = CursorUtils.checkFirst(env.getArgumentOrDefault("first", 10));
+            String after = env.getArgument("after");
+            boolean includeTotal = env.getSelectionSet().contains("totalCount");
+            return accountService.findConnection(after, first, includeTotal).subscribeAsCompletionStage();
+        };
+    }
+
     // 更新账户状态(启用/禁用)
     public DataFetcher<CompletableFuture<Account>> updateAccountStatus() {
         return env -> {
@@ -60,7 +76,7 @@ public class AccountFetcher {
             if (currentUserId.equals(id)) {
                 throw new IllegalArgumentException("不能修改自己的账户类型");
             }
-            System.out.println("this updata Type" + id + userType);
+            logger.debug("修改账户类型: id={}, userType={}", id, userType);
             return accountService.updateUserType(id, userType).subscribeAsCompletionStage();
         };
     }
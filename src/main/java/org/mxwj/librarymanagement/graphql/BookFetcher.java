@@ -5,8 +5,10 @@ import java.util.concurrent.CompletableFuture;
 
 import org.mxwj.librarymanagement.model.Book;
 import org.mxwj.librarymanagement.model.BooksPage;
+import org.mxwj.librarymanagement.model.Connection;
 import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
 import org.mxwj.librarymanagement.service.BookService;
+import org.mxwj.librarymanagement.utils.CursorUtils;
 import org.mxwj.librarymanagement.utils.DTOMapper;
 
 import graphql.schema.DataFetcher;
@@ -35,6 +37,16 @@ public class BookFetcher {
         };
     }
 
+    // 游标分页查询书籍列表
+    public DataFetcher<CompletableFuture<Connection<Book>>> getBooksConnection() {
+        return env -> {
+            int first = CursorUtils.checkFirst(env.getArgumentOrDefault("first", 10));
+            String after = env.getArgument("after");
+            boolean includeTotal = env.getSelectionSet().contains("totalCount");
+            return bookService.findConnection(after, first, includeTotal).subscribeAsCompletionStage();
+        };
+    }
+
     // 搜索书籍
     public DataFetcher<CompletableFuture<BooksPage>> searchBooks() {
         return env -> {
@@ -3,10 +3,15 @@ package org.mxwj.librarymanagement.graphql;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
+import org.dataloader.DataLoader;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
 import org.mxwj.librarymanagement.model.BorrowRecord;
 import org.mxwj.librarymanagement.model.BorrowRecordsPage;
+import org.mxwj.librarymanagement.model.Connection;
 import org.mxwj.librarymanagement.service.BorrowService;
 import org.mxwj.librarymanagement.utils.ContextHelper;
+import org.mxwj.librarymanagement.utils.CursorUtils;
 
 import graphql.schema.DataFetcher;
 import io.smallrye.mutiny.Uni;
@@ -70,6 +75,19 @@ public class BorrowFetcher {
         };
     }
 
+    // 游标分页查询用户的借阅记录
+    public DataFetcher<CompletableFuture<Connection<BorrowRecord>>> getMyBorrowRecordsConnection() {
+        return env -> {
+            int first = CursorUtils.checkFirst(env.getArgumentOrDefault("first", 10));
+            String after = env.getArgument("after");
+            boolean includeTotal = env.getSelectionSet().contains("totalCount");
+            Long accountId = ContextHelper.getAccountId(env);
+
+            return borrowService.findUserBorrowRecordsConnection(accountId, after, first, includeTotal)
+                .subscribeAsCompletionStage();
+        };
+    }
+
     // 管理员代替用户借书
     public DataFetcher<CompletableFuture<BorrowRecord>> adminBorrowBook() {
         return env -> {
@@ -132,4 +150,36 @@ public class BorrowFetcher {
                 .subscribeAsCompletionStage();
         };
     }
-}
\ No newline at end of file
+
+    // 游标分页查询所有借阅记录(管理员)
+    public DataFetcher<CompletableFuture<Connection<BorrowRecord>>> getAllBorrowRecordsConnection() {
+        return env -> {
+            int first = CursorUtils.checkFirst(env.getArgumentOrDefault("first", 10));
+            String after = env.getArgument("after");
+            int status = env.getArgumentOrDefault("status", -1);   // -1表示全部状态
+            String keyword = env.getArgumentOrDefault("keyword", "");  // 关键字搜索
+            boolean includeTotal = env.getSelectionSet().contains("totalCount");
+
+            return borrowService.findAllBorrowRecordsConnection(after, first, status, keyword, includeTotal)
+                .subscribeAsCompletionStage();
+        };
+    }
+
+    // BorrowRecord.book: 通过 DataLoader 合并为批量查询
+    public DataFetcher<CompletableFuture<Book>> getBook() {
+        return env -> {
+            BorrowRecord record = env.getSource();
+            DataLoader<Long, Book> loader = env.getDataLoader(DataLoaders.BOOK);
+            return loader.load(record.getBook().getId());
+        };
+    }
+
+    // BorrowRecord.account: 通过 DataLoader 合并为批量查询
+    public DataFetcher<CompletableFuture<Account>> getAccount() {
+        return env -> {
+            BorrowRecord record = env.getSource();
+            DataLoader<Long, Account> loader = env.getDataLoader(DataLoaders.ACCOUNT);
+            return loader.load(record.getAccount().getId());
+        };
+    }
+}
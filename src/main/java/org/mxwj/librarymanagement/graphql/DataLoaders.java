@@ -0,0 +1,62 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.DataLoaderRegistry;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.service.AccountService;
+import org.mxwj.librarymanagement.service.BookService;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * 每个请求一份的 DataLoader 注册表.
+ * 同一层级内对 Book / Account 的关联解析会被合并成一次 IN 查询, 避免分页列表产生 N+1 查询.
+ */
+public class DataLoaders {
+    public static final String BOOK = "book";
+    public static final String ACCOUNT = "account";
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    public static DataLoaderRegistry newRegistry(BookService bookService, AccountService accountService) {
+        DataLoaderOptions options = DataLoaderOptions.newOptions().setMaxBatchSize(MAX_BATCH_SIZE);
+
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        registry.register(BOOK, DataLoaderFactory.newDataLoader(
+            batchLoader(bookService::findByIds, Book::getId), options));
+        registry.register(ACCOUNT, DataLoaderFactory.newDataLoader(
+            batchLoader(accountService::findByIds, Account::getId), options));
+        return registry;
+    }
+
+    // DataLoader 要求结果与 key 一一对应, 查询结果按ID重新排列, 不存在的补 null
+    private static <V> BatchLoader<Long, V> batchLoader(Function<List<Long>, Uni<List<V>>> query,
+                                                         Function<V, Long> idOf) {
+        return ids -> {
+            CompletionStage<List<V>> stage = query.apply(ids)
+                .map(values -> {
+                    Map<Long, V> byId = new HashMap<>(values.size() * 2);
+                    for (V value : values) {
+                        byId.put(idOf.apply(value), value);
+                    }
+                    List<V> ordered = new ArrayList<>(ids.size());
+                    for (Long id : ids) {
+                        ordered.add(byId.get(id));
+                    }
+                    return ordered;
+                })
+                .subscribeAsCompletionStage();
+            return stage;
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.mxwj.librarymanagement.utils.TemporalFormat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 把 ExecutionResult 用 Jackson 流式写入 Netty ByteBuf, 输出与 toSpecification() 后再编码的结果相同
+ * (errors, data, extensions 的顺序), 但不构造中间的 Map / JsonObject.
+ *
+ * 返回的 ByteBuf 由调用方 release, 通常在响应写完之后.
+ */
+public final class ExecutionResultWriter {
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final JsonGenerator generator;
+    // 日期时间格式化用的缓冲区, 每次写出复用
+    private final char[] scratch = new char[TemporalFormat.MAX_LENGTH];
+
+    private ExecutionResultWriter(JsonGenerator generator) {
+        this.generator = generator;
+    }
+
+    public static ByteBuf write(ExecutionResult result, ByteBufAllocator allocator) {
+        return write(allocator, writer -> writer.writeResult(result));
+    }
+
+    // 批量请求, 输出 JSON 数组
+    public static ByteBuf write(List<ExecutionResult> results, ByteBufAllocator allocator) {
+        return write(allocator, writer -> {
+            writer.generator.writeStartArray();
+            for (ExecutionResult result : results) {
+                writer.writeResult(result);
+            }
+            writer.generator.writeEndArray();
+        });
+    }
+
+    private interface Body {
+        void writeTo(ExecutionResultWriter writer) throws IOException;
+    }
+
+    private static ByteBuf write(ByteBufAllocator allocator, Body body) {
+        ByteBuf buf = allocator.directBuffer(INITIAL_CAPACITY);
+        try (JsonGenerator generator = FACTORY.createGenerator((OutputStream) new ByteBufOutputStream(buf))) {
+            body.writeTo(new ExecutionResultWriter(generator));
+        } catch (IOException e) {
+            buf.release();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        return buf;
+    }
+
+    private void writeResult(ExecutionResult result) throws IOException {
+        generator.writeStartObject();
+        List<GraphQLError> errors = result.getErrors();
+        if (!errors.isEmpty()) {
+            generator.writeFieldName("errors");
+            generator.writeStartArray();
+            for (GraphQLError error : errors) {
+                writeValue(error.toSpecification());
+            }
+            generator.writeEndArray();
+        }
+        if (result.isDataPresent()) {
+            generator.writeFieldName("data");
+            writeValue(result.getData());
+        }
+        if (result.getExtensions() != null) {
+            generator.writeFieldName("extensions");
+            writeValue(result.getExtensions());
+        }
+        generator.writeEndObject();
+    }
+
+    // 先判断最常见的具体类型, 接口类型(Map, Iterable)的 instanceof 较慢, 放在后面
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String string) {
+            generator.writeString(string);
+        } else if (value instanceof Integer number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Long number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Boolean bool) {
+            generator.writeBoolean(bool);
+        } else if (value instanceof OffsetDateTime dateTime) {
+            writeTemporal(TemporalFormat.format(dateTime, scratch), value);
+        } else if (value instanceof LocalDate date) {
+            writeTemporal(TemporalFormat.format(date, scratch), value);
+        } else if (value instanceof Map<?, ?> map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue());
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Iterable<?> list) {
+            generator.writeStartArray();
+            for (Object item : list) {
+                writeValue(item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Double number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Float number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Short number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Byte number) {
+            generator.writeNumber(number);
+        } else if (value instanceof BigDecimal number) {
+            generator.writeNumber(number);
+        } else if (value instanceof BigInteger number) {
+            generator.writeNumber(number);
+        } else if (value instanceof JsonObject json) {
+            writeValue(json.getMap());
+        } else if (value instanceof JsonArray json) {
+            writeValue(json.getList());
+        } else if (value instanceof Enum<?> constant) {
+            generator.writeString(constant.name());
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+    private void writeTemporal(int length, Object value) throws IOException {
+        if (length < 0) {
+            generator.writeString(value.toString());
+        } else {
+            generator.writeString(scratch, 0, length);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.mxwj.librarymanagement.lib.LatencyHistogram;
+
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.language.OperationDefinition;
+import graphql.schema.GraphQLFieldDefinition;
+
+/**
+ * 按 操作名 -> 字段 统计 data fetcher 的耗时(从开始获取到值完成, 包括异步部分).
+ *
+ * 只统计非默认的 data fetcher(PropertyDataFetcher 之类的属性读取直接跳过, 返回共享的空 context),
+ * 其余每次获取分配一个只含直方图引用和开始时间的 Timing. 开销见 FieldLatencyBenchmarkTest.
+ * 直方图在第一次出现时创建, 之后的记录路径只有两次 ConcurrentHashMap.get 和一次原子自增.
+ * 操作名由客户端决定, 超过 MAX_OPERATIONS 个之后新的操作名统一记为 "other", 防止指标数量失控.
+ */
+public class FieldLatencyInstrumentation extends SimplePerformantInstrumentation {
+    private static final int MAX_OPERATIONS = 200;
+    private static final String ANONYMOUS = "anonymous";
+    private static final String OTHER = "other";
+
+    private final Map<String, Map<GraphQLFieldDefinition, FieldStats>> operations = new ConcurrentHashMap<>();
+
+    @Override
+    public InstrumentationContext<Object> beginFieldFetch(InstrumentationFieldFetchParameters parameters,
+                                                          InstrumentationState state) {
+        // 属性读取占字段的绝大多数, 返回共享的空 context, 不分配对象
+        if (parameters.isTrivialDataFetcher()) {
+            return SimpleInstrumentationContext.noOp();
+        }
+        return new Timing(statsFor(parameters), System.nanoTime());
+    }
+
+    // 遍历所有直方图: (操作名, 字段统计)
+    public void forEach(BiConsumer<String, FieldStats> consumer) {
+        operations.forEach((operation, fields) -> fields.values().forEach(stats -> consumer.accept(operation, stats)));
+    }
+
+    private FieldStats statsFor(InstrumentationFieldFetchParameters parameters) {
+        OperationDefinition operation = parameters.getExecutionContext().getOperationDefinition();
+        String operationName = operation != null && operation.getName() != null ? operation.getName() : ANONYMOUS;
+
+        Map<GraphQLFieldDefinition, FieldStats> fields = operations.get(operationName);
+        if (fields == null) {
+            if (operations.size() >= MAX_OPERATIONS) {
+                operationName = OTHER;
+            }
+            fields = operations.computeIfAbsent(operationName, k -> new ConcurrentHashMap<>());
+        }
+
+        GraphQLFieldDefinition field = parameters.getField();
+        FieldStats stats = fields.get(field);
+        if (stats == null) {
+            String typeName = parameters.getExecutionStepInfo().getObjectType().getName();
+            stats = fields.computeIfAbsent(field, k -> new FieldStats(typeName, field.getName()));
+        }
+        return stats;
+    }
+
+    // 同一字段的多次获取可能并发进行(如列表中的 DataLoader 字段), 开始时间只能按次保存; 只持有这两个字段, 不引用外部实例
+    private static final class Timing implements InstrumentationContext<Object> {
+        private final FieldStats stats;
+        private final long start;
+
+        Timing(FieldStats stats, long start) {
+            this.stats = stats;
+            this.start = start;
+        }
+
+        @Override
+        public void onDispatched(CompletableFuture<Object> result) {
+        }
+
+        @Override
+        public void onCompleted(Object result, Throwable t) {
+            stats.histogram.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    public static final class FieldStats {
+        private final String typeName;
+        private final String fieldName;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        FieldStats(String typeName, String fieldName) {
+            this.typeName = typeName;
+            this.fieldName = fieldName;
+        }
+
+        public String typeName() {
+            return typeName;
+        }
+
+        public String fieldName() {
+            return fieldName;
+        }
+
+        public LatencyHistogram histogram() {
+            return histogram;
+        }
+    }
+}
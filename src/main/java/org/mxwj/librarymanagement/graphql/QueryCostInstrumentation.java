@@ -0,0 +1,294 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import graphql.ExecutionResult;
+import graphql.analysis.QueryTraverser;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.schema.GraphQLAppliedDirective;
+import graphql.schema.GraphQLAppliedDirectiveArgument;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLTypeUtil;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * 执行前的静态查询成本分析, 超限的请求在任何 data fetcher 运行之前被拒绝.
+ *
+ * 字段成本来自 schema 中的 @cost(weight, multipliers) 指令: 字段成本 = (weight + 子字段成本之和) × 乘数,
+ * 乘数为 multipliers 中列出的参数(size / first)的值, 列表参数(如订阅的 bookIds)取其长度, 字段本身也按乘数计, 只查 totalCount 的大分页同样计入;
+ * 未标注的字段, 对象类型记 1, 标量记 0.
+ *
+ * 限制:
+ * - 乘数参数(及列表参数的长度)的上限, 超出时不论成本直接拒绝
+ * - 单个操作的成本和深度上限
+ * - 同一个 HTTP 请求(批量查询)中的操作数和成本总和上限, 累计值保存在 RoutingContext 上
+ * - 每个账户(未登录按 IP)的成本预算, 令牌桶按固定速率补充
+ */
+public class QueryCostInstrumentation extends SimplePerformantInstrumentation {
+    private static final String BATCH_COST_KEY = "graphql.batchCost";
+    private static final String BATCH_OPERATIONS_KEY = "graphql.batchOperations";
+    private static final int MAX_BUCKETS = 10_000;
+
+    private final long maxQueryCost;
+    private final int maxDepth;
+    private final int maxPageSize;
+    private final long maxBatchCost;
+    private final int maxBatchOperations;
+    private final long budgetCapacity;
+    private final long budgetRefillPerSecond;
+
+    private final Map<GraphQLFieldDefinition, FieldCost> fieldCosts = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder rejectedPageSize = new LongAdder();
+    private final LongAdder rejectedCost = new LongAdder();
+    private final LongAdder rejectedDepth = new LongAdder();
+    private final LongAdder rejectedBatch = new LongAdder();
+    private final LongAdder rejectedBudget = new LongAdder();
+
+    public QueryCostInstrumentation(long maxQueryCost, int maxDepth, int maxPageSize, long maxBatchCost,
+                                    int maxBatchOperations, long budgetCapacity, long budgetRefillPerSecond) {
+        this.maxQueryCost = maxQueryCost;
+        this.maxDepth = maxDepth;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchCost = maxBatchCost;
+        this.maxBatchOperations = maxBatchOperations;
+        this.budgetCapacity = budgetCapacity;
+        this.budgetRefillPerSecond = budgetRefillPerSecond;
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters,
+                                                                         InstrumentationState state) {
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        RoutingContext routingContext = executionContext.getGraphQLContext().get(RoutingContext.class);
+
+        if (routingContext != null) {
+            AtomicInteger operations = routingContext.get(BATCH_OPERATIONS_KEY);
+            if (operations == null) {
+                operations = new AtomicInteger();
+                routingContext.put(BATCH_OPERATIONS_KEY, operations);
+            }
+            if (operations.incrementAndGet() > maxBatchOperations) {
+                rejectedBatch.increment();
+                throw new AbortExecutionException("批量请求的操作数超过上限 " + maxBatchOperations);
+            }
+        }
+
+        Analysis analysis = analyze(executionContext);
+        if (analysis.oversizedArgument != null) {
+            rejectedPageSize.increment();
+            throw new AbortExecutionException("参数 " + analysis.oversizedArgument + " 超过上限 " + maxPageSize);
+        }
+        if (analysis.depth > maxDepth) {
+            rejectedDepth.increment();
+            throw new AbortExecutionException("查询深度 " + analysis.depth + " 超过上限 " + maxDepth);
+        }
+        if (analysis.cost > maxQueryCost) {
+            rejectedCost.increment();
+            throw new AbortExecutionException("查询成本 " + analysis.cost + " 超过上限 " + maxQueryCost);
+        }
+
+        if (routingContext != null) {
+            AtomicLong batchCost = routingContext.get(BATCH_COST_KEY);
+            if (batchCost == null) {
+                batchCost = new AtomicLong();
+                routingContext.put(BATCH_COST_KEY, batchCost);
+            }
+            if (batchCost.addAndGet(analysis.cost) > maxBatchCost) {
+                rejectedBatch.increment();
+                throw new AbortExecutionException("批量请求的总成本超过上限 " + maxBatchCost);
+            }
+
+            if (!bucketFor(routingContext).tryConsume(analysis.cost, System.nanoTime())) {
+                rejectedBudget.increment();
+                throw new AbortExecutionException("查询成本预算已用尽, 请稍后重试");
+            }
+        }
+
+        return super.beginExecuteOperation(parameters, state);
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("rejectedPageSize", rejectedPageSize.sum())
+            .put("rejectedCost", rejectedCost.sum())
+            .put("rejectedDepth", rejectedDepth.sum())
+            .put("rejectedBatch", rejectedBatch.sum())
+            .put("rejectedBudget", rejectedBudget.sum())
+            .put("budgets", buckets.size());
+    }
+
+    private Analysis analyze(ExecutionContext executionContext) {
+        QueryTraverser traverser = QueryTraverser.newQueryTraverser()
+            .schema(executionContext.getGraphQLSchema())
+            .document(executionContext.getDocument())
+            .operationName(executionContext.getOperationDefinition().getName())
+            .coercedVariables(executionContext.getCoercedVariables())
+            .build();
+
+        // 后序遍历: 子字段先于父字段访问, 子字段成本累加到父字段环境上
+        Map<QueryVisitorFieldEnvironment, Long> childCosts = new HashMap<>();
+        Analysis analysis = new Analysis();
+        traverser.visitPostOrder(new QueryVisitorStub() {
+            @Override
+            public void visitField(QueryVisitorFieldEnvironment env) {
+                if (env.isTypeNameIntrospectionField()) {
+                    return;
+                }
+                FieldCost fieldCost = fieldCosts.computeIfAbsent(env.getFieldDefinition(), FieldCost::of);
+                String oversized = fieldCost.oversizedArgument(env.getArguments(), maxPageSize);
+                if (oversized != null && analysis.oversizedArgument == null) {
+                    analysis.oversizedArgument = env.getField().getName() + "." + oversized;
+                }
+                long children = childCosts.getOrDefault(env, 0L);
+                long cost = saturatedMultiply(saturatedAdd(fieldCost.weight, children), fieldCost.multiplier(env.getArguments()));
+
+                QueryVisitorFieldEnvironment parent = env.getParentEnvironment();
+                if (parent == null) {
+                    analysis.cost = saturatedAdd(analysis.cost, cost);
+                } else {
+                    childCosts.merge(parent, cost, QueryCostInstrumentation::saturatedAdd);
+                }
+
+                int depth = 1;
+                for (QueryVisitorFieldEnvironment p = parent; p != null; p = p.getParentEnvironment()) {
+                    depth++;
+                }
+                analysis.depth = Math.max(analysis.depth, depth);
+            }
+        });
+        return analysis;
+    }
+
+    private TokenBucket bucketFor(RoutingContext routingContext) {
+        JsonObject principal = routingContext.get("userPrincipal");
+        String key = principal != null
+            ? "account:" + principal.getString("sub")
+            : "ip:" + routingContext.request().remoteAddress().host();
+
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_BUCKETS) {
+                evictFullBuckets();
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(budgetCapacity, budgetRefillPerSecond));
+        }
+        return bucket;
+    }
+
+    // 已回满的令牌桶与新建的等价, 可以直接丢弃
+    private void evictFullBuckets() {
+        long now = System.nanoTime();
+        for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext(); ) {
+            if (it.next().isFull(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        return hi != 0 || lo < 0 ? Long.MAX_VALUE : lo;
+    }
+
+    private static final class Analysis {
+        long cost;
+        int depth;
+        // 第一个超出上限的乘数参数, 形如 booksConnection.first=1000000
+        String oversizedArgument;
+    }
+
+    private record FieldCost(long weight, List<String> multipliers) {
+        static FieldCost of(GraphQLFieldDefinition definition) {
+            GraphQLAppliedDirective directive = definition.getAppliedDirective("cost");
+            if (directive == null) {
+                long weight = GraphQLTypeUtil.isLeaf(GraphQLTypeUtil.unwrapAll(definition.getType())) ? 0 : 1;
+                return new FieldCost(weight, List.of());
+            }
+            GraphQLAppliedDirectiveArgument weightArg = directive.getArgument("weight");
+            GraphQLAppliedDirectiveArgument multipliersArg = directive.getArgument("multipliers");
+            Number weight = weightArg != null ? weightArg.getValue() : null;
+            List<String> multipliers = multipliersArg != null ? multipliersArg.getValue() : null;
+            return new FieldCost(weight != null ? weight.longValue() : 1, multipliers != null ? multipliers : List.of());
+        }
+
+        long multiplier(Map<String, Object> arguments) {
+            long result = 1;
+            for (String name : multipliers) {
+                if (arguments.get(name) instanceof Number n) {
+                    result = saturatedMultiply(result, Math.max(n.longValue(), 1));
+                } else if (arguments.get(name) instanceof List<?> list) {
+                    result = saturatedMultiply(result, Math.max(list.size(), 1));
+                }
+            }
+            return result;
+        }
+
+        String oversizedArgument(Map<String, Object> arguments, int maxValue) {
+            for (String name : multipliers) {
+                if (arguments.get(name) instanceof Number n && n.longValue() > maxValue) {
+                    return name + "=" + n;
+                }
+                if (arguments.get(name) instanceof List<?> list && list.size() > maxValue) {
+                    return name + " 的长度 " + list.size();
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class TokenBucket {
+        private final long capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(long capacity, long refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerSecond / 1_000_000_000.0;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized boolean tryConsume(long cost, long now) {
+            refill(now);
+            if (tokens < cost) {
+                return false;
+            }
+            tokens -= cost;
+            return true;
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import graphql.ExecutionInput;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.PersistedQueryError;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.language.Document;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 解析 + 校验结果的缓存, key 为查询文本的 sha256.
+ *
+ * 同时支持 Apollo Automatic Persisted Queries: 请求 extensions.persistedQuery.sha256Hash 携带哈希时,
+ * 命中则无需查询文本; 未命中且没有查询文本时返回 PersistedQueryNotFound, 客户端随后带上完整查询重发.
+ * 只缓存没有错误的文档, 校验失败的查询每次都重新校验.
+ */
+public class QueryDocumentCache implements PreparsedDocumentProvider {
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparsedDocumentEntry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder persistedHits = new LongAdder();
+    private final LongAdder persistedNotFound = new LongAdder();
+
+    public QueryDocumentCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparsedDocumentEntry> eldest) {
+                return size() > QueryDocumentCache.this.maxSize;
+            }
+        };
+    }
+
+    // graphql-java 执行时调用这个方法; 查找和解析都是同步的, 直接返回已完成的 future
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
+                                                                      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return CompletableFuture.completedFuture(document(executionInput, parseAndValidateFunction));
+    }
+
+    // 接口中仍是抽象方法, 只为兼容保留
+    @Deprecated
+    @Override
+    public PreparsedDocumentEntry getDocument(ExecutionInput executionInput,
+                                              Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return document(executionInput, parseAndValidateFunction);
+    }
+
+    private PreparsedDocumentEntry document(ExecutionInput executionInput,
+                                            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        String query = executionInput.getQuery();
+        boolean hasQuery = query != null && !query.isBlank()
+            && !PersistedQuerySupport.PERSISTED_QUERY_MARKER.equals(query);
+        String persistedHash = persistedQueryHash(executionInput);
+
+        String key;
+        if (persistedHash != null) {
+            key = persistedHash.toLowerCase();
+            PreparsedDocumentEntry cached = lookup(key);
+            if (cached != null) {
+                persistedHits.increment();
+                return cached;
+            }
+            if (!hasQuery) {
+                persistedNotFound.increment();
+                return persistedQueryError(new PersistedQueryNotFound(persistedHash), "PERSISTED_QUERY_NOT_FOUND", persistedHash);
+            }
+            if (!key.equals(sha256(query))) {
+                return persistedQueryError(new PersistedQueryIdInvalid(persistedHash), "PERSISTED_QUERY_ID_INVALID", persistedHash);
+            }
+        } else {
+            if (!hasQuery) {
+                return parseAndValidateFunction.apply(executionInput);
+            }
+            key = sha256(query);
+            PreparsedDocumentEntry cached = lookup(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // 解析和校验在锁外进行, 并发的相同查询最多重复解析几次
+        PreparsedDocumentEntry entry = parseAndValidateFunction.apply(executionInput);
+        if (!entry.hasErrors()) {
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    // 已缓存的文档(不计入命中统计), 供执行前需要知道查询内容的处理器使用; persistedHash 优先, 其次按查询文本查找
+    public Document cachedDocument(String query, String persistedHash) {
+        PreparsedDocumentEntry entry = null;
+        synchronized (entries) {
+            if (persistedHash != null) {
+                entry = entries.get(persistedHash.toLowerCase());
+            }
+            if (entry == null && query != null && !query.isBlank()) {
+                entry = entries.get(sha256(query));
+            }
+        }
+        return entry == null ? null : entry.getDocument();
+    }
+
+    public JsonObject stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new JsonObject()
+            .put("size", size)
+            .put("hits", hitCount)
+            .put("misses", missCount)
+            .put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount))
+            .put("persistedHits", persistedHits.sum())
+            .put("persistedNotFound", persistedNotFound.sum());
+    }
+
+    private PreparsedDocumentEntry lookup(String key) {
+        PreparsedDocumentEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    // 错误消息与 graphql-java 的 PersistedQuerySupport 一致, 另带 Apollo 约定的 code, 客户端据此重发完整查询
+    private static PreparsedDocumentEntry persistedQueryError(PersistedQueryError error, String code, String hash) {
+        return new PreparsedDocumentEntry(GraphqlErrorBuilder.newError()
+            .errorType(error)
+            .message(error.getMessage())
+            .extensions(Map.of("code", code, "persistedQueryId", hash))
+            .build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String persistedQueryHash(ExecutionInput executionInput) {
+        Map<String, Object> extensions = executionInput.getExtensions();
+        Object persistedQuery = extensions == null ? null : extensions.get("persistedQuery");
+        Object hash = null;
+        if (persistedQuery instanceof JsonObject json) {
+            hash = json.getValue("sha256Hash");
+        } else if (persistedQuery instanceof Map) {
+            hash = ((Map<String, Object>) persistedQuery).get("sha256Hash");
+        }
+        return hash instanceof String ? (String) hash : null;
+    }
+
+    private static String sha256(String query) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(query.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
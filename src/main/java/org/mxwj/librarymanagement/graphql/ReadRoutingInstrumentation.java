@@ -0,0 +1,53 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.mxwj.librarymanagement.lib.ReadRouter;
+import org.mxwj.librarymanagement.utils.ContextHelper;
+
+import graphql.ExecutionResult;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.language.OperationDefinition;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 按操作类型为当前请求选择读库: query 的读走副本, mutation 以及用户刚执行过 mutation 后的读走主库(见 ReadRouter).
+ * subscription 不访问数据库, 不处理.
+ */
+public class ReadRoutingInstrumentation extends SimplePerformantInstrumentation {
+    private final ReadRouter router;
+
+    public ReadRoutingInstrumentation(ReadRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters,
+                                                                         InstrumentationState state) {
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        OperationDefinition.Operation operation = executionContext.getOperationDefinition().getOperation();
+        if (operation == OperationDefinition.Operation.SUBSCRIPTION) {
+            return super.beginExecuteOperation(parameters, state);
+        }
+
+        boolean mutation = operation == OperationDefinition.Operation.MUTATION;
+        JsonObject principal = ContextHelper.getUserPrincipal(executionContext.getGraphQLContext());
+        String writerKey = principal == null || principal.getString("sub") == null ? null : "u:" + principal.getString("sub");
+        router.beginOperation(mutation, writerKey);
+
+        return new InstrumentationContext<>() {
+            @Override
+            public void onDispatched(CompletableFuture<ExecutionResult> result) {
+            }
+
+            @Override
+            public void onCompleted(ExecutionResult result, Throwable t) {
+                router.endOperation(mutation, writerKey);
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.dataloader.DataLoader;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.Reservation;
+import org.mxwj.librarymanagement.service.ReservationService;
+import org.mxwj.librarymanagement.utils.ContextHelper;
+
+import graphql.schema.DataFetcher;
+
+public class ReservationFetcher {
+    private final ReservationService reservationService;
+
+    public ReservationFetcher(ReservationService reservationService) {
+        this.reservationService = reservationService;
+    }
+
+    // 预约已全部借出的图书
+    public DataFetcher<CompletableFuture<Reservation>> reserveBook() {
+        return env -> {
+            Long accountId = ContextHelper.getAccountId(env);
+            Long bookId = Long.parseLong(env.getArgument("bookId"));
+
+            return reservationService.reserveBook(accountId, bookId)
+                .subscribeAsCompletionStage();
+        };
+    }
+
+    // 取消本人的预约
+    public DataFetcher<CompletableFuture<Boolean>> cancelReservation() {
+        return env -> {
+            Long accountId = ContextHelper.getAccountId(env);
+            Long reservationId = Long.parseLong(env.getArgument("reservationId"));
+
+            return reservationService.cancelReservation(accountId, reservationId)
+                .subscribeAsCompletionStage();
+        };
+    }
+
+    // 查询本人等待中的预约及队列位置
+    public DataFetcher<CompletableFuture<List<Reservation>>> getMyReservations() {
+        return env -> {
+            Long accountId = ContextHelper.getAccountId(env);
+
+            return reservationService.findMyReservations(accountId)
+                .subscribeAsCompletionStage();
+        };
+    }
+
+    // Reservation.book: 通过 DataLoader 合并为批量查询
+    public DataFetcher<CompletableFuture<Book>> getBook() {
+        return env -> {
+            Reservation reservation = env.getSource();
+            DataLoader<Long, Book> loader = env.getDataLoader(DataLoaders.BOOK);
+            return loader.load(reservation.getBook().getId());
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.util.List;
+
+import org.mxwj.librarymanagement.lib.EventHub;
+import org.mxwj.librarymanagement.service.ChangeEvents;
+import org.mxwj.librarymanagement.utils.ContextHelper;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+import org.reactivestreams.Publisher;
+
+import graphql.schema.DataFetcher;
+import io.vertx.core.json.JsonObject;
+
+public class SubscriptionFetcher {
+    // 每个 id 对应一个事件总线消费者; QueryCostInstrumentation 已按同一上限拒绝, 这里再兜底
+    static final int MAX_BOOK_IDS = CursorUtils.MAX_FIRST;
+
+    private final EventHub eventHub;
+
+    public SubscriptionFetcher(EventHub eventHub) {
+        this.eventHub = eventHub;
+    }
+
+    // 图书可借数变化; 不指定 bookIds 时接收所有图书的变化
+    public DataFetcher<Publisher<JsonObject>> bookAvailabilityChanged() {
+        return env -> {
+            List<String> bookIds = env.getArgument("bookIds");
+            if (bookIds != null && bookIds.size() > MAX_BOOK_IDS) {
+                throw new IllegalArgumentException("bookIds 最多 " + MAX_BOOK_IDS + " 个");
+            }
+            List<Long> ids = bookIds == null ? null : bookIds.stream().map(Long::parseLong).toList();
+            return eventHub.subscribe(ChangeEvents.bookAddresses(ids));
+        };
+    }
+
+    // 本人借阅记录的变化(借出, 归还, 预约转借)
+    public DataFetcher<Publisher<JsonObject>> myBorrowRecordChanged() {
+        return env -> {
+            Long accountId = ContextHelper.getAccountId(env);
+            return eventHub.subscribe(List.of(ChangeEvents.accountAddress(accountId)));
+        };
+    }
+}
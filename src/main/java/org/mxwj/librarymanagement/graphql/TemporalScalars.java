@@ -0,0 +1,100 @@
+package org.mxwj.librarymanagement.graphql;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import graphql.GraphQLContext;
+import graphql.execution.CoercedVariables;
+import graphql.language.StringValue;
+import graphql.language.Value;
+import graphql.schema.Coercing;
+import graphql.schema.CoercingParseLiteralException;
+import graphql.schema.CoercingParseValueException;
+import graphql.schema.CoercingSerializeException;
+import graphql.schema.GraphQLScalarType;
+
+/**
+ * 日期时间标量. 在 JSON 中与原先的 String 字段格式相同(ISO-8601, 与 toString() 一致).
+ *
+ * 序列化时原样返回 OffsetDateTime / LocalDate 对象, 由 ExecutionResultWriter 直接写入响应, 不在执行阶段转成字符串.
+ * 其他输出路径(GraphQLHandler、WebSocket)依赖 Main 中注册的 Jackson 序列化器(见 TemporalFormat).
+ */
+public final class TemporalScalars {
+
+    public static final GraphQLScalarType DATE_TIME = GraphQLScalarType.newScalar()
+        .name("DateTime")
+        .description("带时区偏移的日期时间, 如 2024-03-01T10:15:30+08:00")
+        .coercing(new TemporalCoercing<>(OffsetDateTime.class) {
+            @Override
+            OffsetDateTime parse(String input) {
+                return OffsetDateTime.parse(input);
+            }
+        })
+        .build();
+
+    public static final GraphQLScalarType DATE = GraphQLScalarType.newScalar()
+        .name("Date")
+        .description("日期, 如 2024-03-01")
+        .coercing(new TemporalCoercing<>(LocalDate.class) {
+            @Override
+            LocalDate parse(String input) {
+                return LocalDate.parse(input);
+            }
+        })
+        .build();
+
+    private TemporalScalars() {}
+
+    private abstract static class TemporalCoercing<T> implements Coercing<T, Object> {
+        private final Class<T> type;
+
+        TemporalCoercing(Class<T> type) {
+            this.type = type;
+        }
+
+        abstract T parse(String input);
+
+        // 已经是字符串的值(如缓存中的 VO)原样输出
+        @Override
+        public Object serialize(Object dataFetcherResult, GraphQLContext graphQLContext, Locale locale) {
+            if (type.isInstance(dataFetcherResult) || dataFetcherResult instanceof String) {
+                return dataFetcherResult;
+            }
+            throw new CoercingSerializeException("无法将 " + dataFetcherResult.getClass().getName() + " 作为 " + type.getSimpleName() + " 输出");
+        }
+
+        @Override
+        public T parseValue(Object input, GraphQLContext graphQLContext, Locale locale) {
+            if (type.isInstance(input)) {
+                return type.cast(input);
+            }
+            try {
+                if (input instanceof String string) {
+                    return parse(string);
+                }
+            } catch (DateTimeParseException e) {
+                throw new CoercingParseValueException("日期格式错误: " + input, e);
+            }
+            throw new CoercingParseValueException("应为字符串: " + input);
+        }
+
+        @Override
+        public T parseLiteral(Value<?> input, CoercedVariables variables, GraphQLContext graphQLContext, Locale locale) {
+            if (!(input instanceof StringValue string)) {
+                throw new CoercingParseLiteralException("应为字符串");
+            }
+            try {
+                return parse(string.getValue());
+            } catch (DateTimeParseException e) {
+                throw new CoercingParseLiteralException("日期格式错误: " + string.getValue(), e);
+            }
+        }
+
+        @Override
+        public Value<?> valueToLiteral(Object input, GraphQLContext graphQLContext, Locale locale) {
+            return StringValue.of(input.toString());
+        }
+    }
+}
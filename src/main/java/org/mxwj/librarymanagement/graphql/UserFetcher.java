@@ -8,8 +8,12 @@ import java.util.concurrent.CompletableFuture;
 import org.mxwj.librarymanagement.model.User;
 import org.mxwj.librarymanagement.model.UsersPage;
 import org.mxwj.librarymanagement.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class UserFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(UserFetcher.class);
+
     private final UserService userService;
 
     public UserFetcher(UserService userService) {
@@ -29,7 +33,7 @@ public class UserFetcher {
             int page = env.getArgumentOrDefault("page", 1);
             int size = env.getArgumentOrDefault("size", 10);
             String orderBy = env.getArgumentOrDefault("orderBy", "id");
-            System.out.println("分页查询成功");
+            logger.debug("分页查询用户: page={}, size={}", page, size);
             return userService.findAllPaged(page, size, orderBy).subscribeAsCompletionStage();
         };
     }
@@ -0,0 +1,348 @@
+package org.mxwj.librarymanagement.handler;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.service.BookService;
+import org.mxwj.librarymanagement.utils.DTOMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * POST /import/books, 管理员批量导入图书.
+ *
+ * 请求体按行流式解析, 不整体缓存: Content-Type 为 text/csv(或 ?format=csv)时第一行是表头,
+ * 列名与 CreateBookDTO 的字段名一致; 否则每行一个 JSON 对象(NDJSON).
+ * 每 BATCH_SIZE 行暂停读取, 交给 BookService.importBooks 在一个事务中去重并插入, 完成后再继续读,
+ * 因此内存占用只与批大小有关, 与文件大小无关. 响应的写缓冲满了(客户端读得慢, 如大量错误行)同样暂停读取,
+ * 排空且没有进行中的批次时才继续.
+ *
+ * 响应为 NDJSON, 边处理边输出:
+ * {"type":"error","line":n,"message":...}      单行错误(格式错误, 缺少字段, 写入失败)
+ * {"type":"duplicate","line":n,"message":...}  ISBN 与文件中前面的行或库中已有的图书重复, 跳过
+ * {"type":"progress",...}                      每批处理完成后的累计计数
+ * {"type":"summary",...}                       结束时的汇总
+ */
+public class BookImportHandler implements Handler<RoutingContext> {
+    private static final Logger logger = LoggerFactory.getLogger(BookImportHandler.class);
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final BookService bookService;
+
+    public BookImportHandler(BookService bookService) {
+        this.bookService = bookService;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        JsonObject principal = context.get("userPrincipal");
+        if (principal == null) {
+            reject(context, 401, "未登录");
+            return;
+        }
+        if (Integer.parseInt(principal.getString("role", "0")) < 1) {
+            reject(context, 403, "无权限执行此操作");
+            return;
+        }
+
+        HttpServerRequest request = context.request();
+        String contentType = request.getHeader("Content-Type");
+        boolean csv = "csv".equalsIgnoreCase(request.getParam("format"))
+            || (contentType != null && contentType.toLowerCase().startsWith("text/csv"));
+
+        HttpServerResponse response = context.response()
+            .setChunked(true)
+            .putHeader("Content-Type", "application/x-ndjson; charset=utf-8");
+
+        new ImportJob(request, response, csv).start();
+    }
+
+    private static void reject(RoutingContext context, int status, String message) {
+        context.response()
+            .setStatusCode(status)
+            .putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("error", message).encode());
+    }
+
+    // 单次导入的状态, 只在请求所在的 context 上访问
+    private final class ImportJob {
+        private final HttpServerRequest request;
+        private final HttpServerResponse response;
+        private final boolean csv;
+        private final Context context = Vertx.currentContext();
+        private final RecordParser parser;
+
+        private List<String> header;
+        private long lineNumber;
+        private List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        private final Set<String> batchIsbns = new HashSet<>();
+
+        private long processed;
+        private long inserted;
+        private long duplicates;
+        private long errors;
+        private boolean finished;
+        // 读取暂停的两个原因, 都解除后才继续读
+        private boolean flushing;
+        private boolean waitingForDrain;
+
+        ImportJob(HttpServerRequest request, HttpServerResponse response, boolean csv) {
+            this.request = request;
+            this.response = response;
+            this.csv = csv;
+            this.parser = RecordParser.newDelimited("\n", request).maxRecordSize(MAX_LINE_BYTES);
+        }
+
+        void start() {
+            parser.handler(this::onLine);
+            parser.endHandler(v -> flushBatch(this::finish));
+            parser.exceptionHandler(this::fail);
+            response.closeHandler(v -> finished = true);
+            // JwtAuthHandler 在验证期间暂停了请求
+            request.resume();
+        }
+
+        private void onLine(Buffer buffer) {
+            if (finished) {
+                return;
+            }
+            lineNumber++;
+            String line = buffer.toString("UTF-8");
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                return;
+            }
+            if (csv && header == null) {
+                try {
+                    header = parseCsvLine(line);
+                } catch (IllegalArgumentException e) {
+                    fail(new IllegalArgumentException("表头无法解析: " + e.getMessage()));
+                }
+                return;
+            }
+
+            processed++;
+            CreateBookDTO dto;
+            try {
+                dto = csv ? csvRow(line) : DTOMapper.mapToDTO(new JsonObject(line).getMap(), CreateBookDTO.class);
+            } catch (DecodeException | IllegalArgumentException e) {
+                rowError(lineNumber, "无法解析: " + e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                rowError(lineNumber, "字段类型错误");
+                return;
+            }
+
+            String invalid = validate(dto);
+            if (invalid != null) {
+                rowError(lineNumber, invalid);
+                return;
+            }
+            // 批内去重; 与之前批次及库中数据的重复由 importBooks 查库判断
+            if (!batchIsbns.add(dto.getIsbn())) {
+                duplicate(lineNumber, "ISBN重复: " + dto.getIsbn());
+                return;
+            }
+
+            batch.add(new Row(lineNumber, dto));
+            if (batch.size() >= BATCH_SIZE) {
+                flushing = true;
+                parser.pause();
+                flushBatch(() -> {
+                    flushing = false;
+                    resumeIfReady();
+                });
+            }
+        }
+
+        private CreateBookDTO csvRow(String line) {
+            List<String> values = parseCsvLine(line);
+            if (values.size() != header.size()) {
+                throw new IllegalArgumentException("列数 " + values.size() + " 与表头 " + header.size() + " 不一致");
+            }
+            Map<String, Object> fields = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                if (!values.get(i).isEmpty()) {
+                    fields.put(header.get(i), values.get(i));
+                }
+            }
+            return DTOMapper.mapToDTO(fields, CreateBookDTO.class);
+        }
+
+        private String validate(CreateBookDTO dto) {
+            if (dto.getIsbn() == null || dto.getIsbn().isBlank()) {
+                return "缺少ISBN";
+            }
+            if (dto.getIsbn().length() > 20) {
+                return "ISBN过长: " + dto.getIsbn();
+            }
+            if (dto.getTitle() == null || dto.getTitle().isBlank()) {
+                return "缺少书名";
+            }
+            if (dto.getPublishDate() != null) {
+                try {
+                    LocalDate.parse(dto.getPublishDate());
+                } catch (DateTimeParseException e) {
+                    return "出版日期格式错误: " + dto.getPublishDate();
+                }
+            }
+            return null;
+        }
+
+        private void flushBatch(Runnable next) {
+            if (batch.isEmpty()) {
+                next.run();
+                return;
+            }
+            List<Row> rows = batch;
+            batch = new ArrayList<>(BATCH_SIZE);
+            batchIsbns.clear();
+
+            bookService.importBooks(rows.stream().map(Row::dto).toList()).subscribe().with(
+                insertedIsbns -> context.runOnContext(v -> {
+                    inserted += insertedIsbns.size();
+                    for (Row row : rows) {
+                        if (!insertedIsbns.contains(row.dto.getIsbn())) {
+                            duplicate(row.line, "ISBN已存在: " + row.dto.getIsbn());
+                        }
+                    }
+                    writeProgress();
+                    next.run();
+                }),
+                error -> context.runOnContext(v -> {
+                    logger.error("导入批次失败, 行 {}-{}", rows.get(0).line, rows.get(rows.size() - 1).line, error);
+                    for (Row row : rows) {
+                        rowError(row.line, "写入失败: " + error.getMessage());
+                    }
+                    writeProgress();
+                    next.run();
+                }));
+        }
+
+        private void resumeIfReady() {
+            if (!finished && !flushing && !waitingForDrain) {
+                parser.resume();
+            }
+        }
+
+        private void rowError(long line, String message) {
+            errors++;
+            write(new JsonObject().put("type", "error").put("line", line).put("message", message));
+        }
+
+        // 重复的行单独计数, 不算作错误
+        private void duplicate(long line, String message) {
+            duplicates++;
+            write(new JsonObject().put("type", "duplicate").put("line", line).put("message", message));
+        }
+
+        private void writeProgress() {
+            write(counters().put("type", "progress"));
+        }
+
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            response.end(counters().put("type", "summary").encode() + "\n");
+            logger.info("图书导入完成: 处理 {} 行, 插入 {}, 重复 {}, 错误 {}", processed, inserted, duplicates, errors);
+        }
+
+        private void fail(Throwable error) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            logger.warn("图书导入中止, 第 {} 行之后: {}", lineNumber, error.getMessage());
+            response.end(counters().put("type", "summary").put("aborted", true)
+                .put("message", error.getMessage()).encode() + "\n");
+        }
+
+        private JsonObject counters() {
+            return new JsonObject()
+                .put("processed", processed)
+                .put("inserted", inserted)
+                .put("duplicates", duplicates)
+                .put("errors", errors);
+        }
+
+        // 每行输出后检查写缓冲, 满了就暂停读请求体, 等排空后再继续
+        private void write(JsonObject line) {
+            if (finished) {
+                return;
+            }
+            response.write(line.encode() + "\n");
+            if (!waitingForDrain && response.writeQueueFull()) {
+                waitingForDrain = true;
+                parser.pause();
+                response.drainHandler(v -> {
+                    response.drainHandler(null);
+                    waitingForDrain = false;
+                    resumeIfReady();
+                });
+            }
+        }
+    }
+
+    private record Row(long line, CreateBookDTO dto) {}
+
+    // 单行 CSV: 逗号分隔, 双引号包围的字段中 "" 表示一个引号; 不支持字段内换行
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("引号未闭合");
+        }
+        values.add(current.toString().trim());
+        return values;
+    }
+}
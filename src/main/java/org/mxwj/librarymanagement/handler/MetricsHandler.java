@@ -0,0 +1,110 @@
+package org.mxwj.librarymanagement.handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.mxwj.librarymanagement.graphql.FieldLatencyInstrumentation;
+import org.mxwj.librarymanagement.lib.LatencyHistogram;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * GET /metrics, Prometheus 文本格式.
+ *
+ * - graphql_field_fetch_seconds: 每个 操作/类型/字段 的 data fetcher 耗时直方图
+ * - library_<组件>_<指标>: 各组件 stats() 中的数值, 以 gauge 导出
+ */
+public class MetricsHandler implements Handler<RoutingContext> {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // 直方图导出的桶上界(秒)
+    private static final double[] BUCKETS_SECONDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final FieldLatencyInstrumentation fieldLatency;
+    private final Map<String, Supplier<JsonObject>> gauges = new ConcurrentHashMap<>();
+
+    public MetricsHandler(FieldLatencyInstrumentation fieldLatency) {
+        this.fieldLatency = fieldLatency;
+    }
+
+    // 注册一个组件的统计信息, name 作为指标名前缀
+    public MetricsHandler register(String name, Supplier<JsonObject> stats) {
+        gauges.put(name, stats);
+        return this;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        writeFieldLatency(out);
+        gauges.forEach((name, stats) -> writeGauges(out, name, stats.get()));
+
+        context.response()
+            .putHeader("Content-Type", CONTENT_TYPE)
+            .end(out.toString());
+    }
+
+    private void writeFieldLatency(StringBuilder out) {
+        String metric = "graphql_field_fetch_seconds";
+        out.append("# HELP ").append(metric).append(" GraphQL data fetcher latency per operation and field\n");
+        out.append("# TYPE ").append(metric).append(" histogram\n");
+
+        fieldLatency.forEach((operation, stats) -> {
+            LatencyHistogram histogram = stats.histogram();
+            // 各计数不是同一时刻读取的, 桶计数截断到 _count 以保证单调
+            long count = histogram.count();
+            String labels = "operation=\"" + escape(operation)
+                + "\",type=\"" + escape(stats.typeName())
+                + "\",field=\"" + escape(stats.fieldName()) + "\"";
+
+            for (double le : BUCKETS_SECONDS) {
+                long bucket = Math.min(histogram.countAtOrBelow((long) (le * 1_000_000)), count);
+                out.append(metric).append("_bucket{").append(labels)
+                    .append(",le=\"").append(le).append("\"} ").append(bucket).append('\n');
+            }
+            out.append(metric).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+            out.append(metric).append("_sum{").append(labels).append("} ")
+                .append(histogram.sumMicros() / 1_000_000.0).append('\n');
+            out.append(metric).append("_count{").append(labels).append("} ").append(count).append('\n');
+        });
+    }
+
+    private static void writeGauges(StringBuilder out, String name, JsonObject stats) {
+        for (Map.Entry<String, Object> entry : stats) {
+            Object value = entry.getValue();
+            double number;
+            if (value instanceof Number n) {
+                number = n.doubleValue();
+            } else if (value instanceof Boolean b) {
+                number = b ? 1 : 0;
+            } else {
+                continue;
+            }
+            String metric = "library_" + name + "_" + snakeCase(entry.getKey());
+            out.append("# TYPE ").append(metric).append(" gauge\n");
+            out.append(metric).append(' ').append(number).append('\n');
+        }
+    }
+
+    private static String snakeCase(String key) {
+        StringBuilder sb = new StringBuilder(key.length() + 8);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (Character.isUpperCase(c)) {
+                sb.append('_').append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,178 @@
+package org.mxwj.librarymanagement.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.dataloader.DataLoaderRegistry;
+import org.mxwj.librarymanagement.graphql.ExecutionResultWriter;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.MIMEHeader;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * POST /graphql (application/json) 的执行与响应. 执行参数与 GraphQLHandler 相同(RoutingContext 放在 GraphQLContext 中,
+ * 每个请求新建 DataLoader 注册表, 支持 APQ 和批量请求), 区别在于结果由 ExecutionResultWriter 直接写入池化的 ByteBuf,
+ * 不经过 toSpecification() 和 JsonObject, 响应写完后归还.
+ *
+ * 只处理常见情况: GET、multipart、application/graphql、URL 上带参数、请求体格式不对等一律交给后面的 GraphQLHandler,
+ * 由它按原来的方式处理或返回错误. 须注册在 BodyHandler 之后.
+ */
+public class StreamingGraphQLHandler implements Handler<RoutingContext> {
+    private final GraphQL graphQL;
+    private final Supplier<DataLoaderRegistry> dataLoaderRegistryFactory;
+
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder delegated = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+
+    public StreamingGraphQLHandler(GraphQL graphQL, Supplier<DataLoaderRegistry> dataLoaderRegistryFactory) {
+        this.graphQL = graphQL;
+        this.dataLoaderRegistryFactory = dataLoaderRegistryFactory;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        Object body = decodeBody(context);
+        if (body instanceof JsonObject query) {
+            ExecutionInput input = toInput(context, query);
+            if (input != null) {
+                handled.increment();
+                execute(context, input).onComplete(ar -> {
+                    if (ar.succeeded()) {
+                        send(context, ExecutionResultWriter.write(ar.result(), PooledByteBufAllocator.DEFAULT));
+                    } else {
+                        context.fail(ar.cause());
+                    }
+                });
+                return;
+            }
+        } else if (body instanceof JsonArray batch) {
+            List<ExecutionInput> inputs = toInputs(context, batch);
+            if (inputs != null) {
+                handled.increment();
+                List<Future<ExecutionResult>> results = new ArrayList<>(inputs.size());
+                for (ExecutionInput input : inputs) {
+                    results.add(execute(context, input));
+                }
+                Future.all(results).onComplete(ar -> {
+                    if (ar.succeeded()) {
+                        send(context, ExecutionResultWriter.write(ar.result().<ExecutionResult>list(), PooledByteBufAllocator.DEFAULT));
+                    } else {
+                        context.fail(ar.cause());
+                    }
+                });
+                return;
+            }
+        }
+        delegated.increment();
+        context.next();
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("handled", handled.sum())
+            .put("delegated", delegated.sum())
+            .put("responseBytes", responseBytes.sum());
+    }
+
+    // 不属于本处理器负责的请求返回 null
+    private static Object decodeBody(RoutingContext context) {
+        if (context.request().method() != HttpMethod.POST || context.request().query() != null) {
+            return null;
+        }
+        MIMEHeader contentType = context.parsedHeaders().contentType();
+        if (contentType == null || !"application/json".equalsIgnoreCase(contentType.value())) {
+            return null;
+        }
+        Buffer body = context.body().buffer();
+        if (body == null || body.length() == 0) {
+            return null;
+        }
+        try {
+            return Json.decodeValue(body);
+        } catch (DecodeException e) {
+            return null;
+        }
+    }
+
+    private List<ExecutionInput> toInputs(RoutingContext context, JsonArray batch) {
+        if (batch.isEmpty()) {
+            return null;
+        }
+        List<ExecutionInput> inputs = new ArrayList<>(batch.size());
+        for (Object item : batch) {
+            // JsonArray 迭代时已把 Map 包装成 JsonObject
+            ExecutionInput input = item instanceof JsonObject json ? toInput(context, json) : null;
+            if (input == null) {
+                return null;
+            }
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    private ExecutionInput toInput(RoutingContext context, JsonObject json) {
+        Object query = json.getValue("query");
+        Object operationName = json.getValue("operationName");
+        Object variables = json.getValue("variables");
+        Object extensions = json.getValue("extensions");
+        if ((query != null && !(query instanceof String))
+            || (operationName != null && !(operationName instanceof String))
+            || (variables != null && !(variables instanceof JsonObject))
+            || (extensions != null && !(extensions instanceof JsonObject))) {
+            return null;
+        }
+        if (query == null) {
+            if (extensions == null || !((JsonObject) extensions).containsKey("persistedQuery")) {
+                return null;
+            }
+            query = PersistedQuerySupport.PERSISTED_QUERY_MARKER;
+        }
+
+        return ExecutionInput.newExecutionInput()
+            .query((String) query)
+            .operationName((String) operationName)
+            .variables(variables == null ? Map.of() : ((JsonObject) variables).getMap())
+            .extensions(extensions == null ? Map.of() : ((JsonObject) extensions).getMap())
+            .graphQLContext(Map.of(RoutingContext.class, context))
+            .dataLoaderRegistry(dataLoaderRegistryFactory.get())
+            .build();
+    }
+
+    // 回调在当前请求的 context 上执行
+    private Future<ExecutionResult> execute(RoutingContext context, ExecutionInput input) {
+        return Future.fromCompletionStage(graphQL.executeAsync(input), context.vertx().getOrCreateContext());
+    }
+
+    // Vert.x 4 只能通过已废弃的 Buffer.buffer(ByteBuf) 包装; 写出时使用的是不可释放的 slice, 由这里在写完后 release
+    @SuppressWarnings("deprecation")
+    private void send(RoutingContext context, ByteBuf json) {
+        HttpServerResponse response = context.response();
+        if (response.ended() || response.closed()) {
+            json.release();
+            return;
+        }
+        responseBytes.add(json.readableBytes());
+        response.putHeader("Content-Type", "application/json")
+            .end(Buffer.buffer(json))
+            .onComplete(ignored -> json.release());
+    }
+}
@@ -0,0 +1,77 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.UUID;
+
+import org.mxwj.librarymanagement.model.Book;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Book 实体的进程内缓存, 由 BookService(读穿透 / 写穿透)和 BorrowService(库存变化后失效)共用.
+ *
+ * 本实例的失效通过 event bus 广播给其他实例(集群模式下跨节点), 消息带上来源 ID, 收到自己发出的消息时忽略.
+ * 缓存的是已脱离会话的实体, 调用方只读, 不能修改后再写回.
+ */
+public class BookCache {
+    public static final String INVALIDATE_ADDRESS = "book.cache.invalidate";
+
+    private final LocalCache<Long, Book> cache;
+    private final EventBus eventBus;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // vertx 为 null 时只做本地缓存, 不广播
+    public BookCache(Vertx vertx, int maxSize, long ttlMillis) {
+        this.cache = new LocalCache<>(maxSize, ttlMillis);
+        this.eventBus = vertx != null ? vertx.eventBus() : null;
+        if (eventBus != null) {
+            eventBus.<JsonObject>consumer(INVALIDATE_ADDRESS, message -> {
+                JsonObject body = message.body();
+                if (instanceId.equals(body.getString("origin"))) {
+                    return;
+                }
+                Long id = body.getLong("id");
+                if (id == null) {
+                    cache.invalidateAll();
+                } else {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    public Book get(Long id) {
+        return cache.get(id);
+    }
+
+    public long generation() {
+        return cache.generation();
+    }
+
+    // 读穿透: 从数据库加载后写入
+    public void put(Book book, long expectedGeneration) {
+        cache.put(book.getId(), book, expectedGeneration);
+    }
+
+    // 写穿透: 本实例更新为最新值, 其他实例丢弃旧值
+    public void update(Book book) {
+        cache.put(book.getId(), book);
+        broadcast(book.getId());
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+        broadcast(id);
+    }
+
+    public JsonObject stats() {
+        return cache.stats();
+    }
+
+    private void broadcast(Long id) {
+        if (eventBus != null) {
+            eventBus.publish(INVALIDATE_ADDRESS, new JsonObject().put("id", id).put("origin", instanceId));
+        }
+    }
+}
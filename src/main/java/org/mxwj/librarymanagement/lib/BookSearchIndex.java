@@ -0,0 +1,337 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 图书目录的内存倒排索引, 用于替代 searchBooks 中无法走索引的 LIKE '%kw%' 查询.
+ *
+ * 对 title / author / isbn / publisher 的小写文本按字符二元组(bigram)建立倒排表, 中文与英文都适用.
+ * 查询时先对关键字的二元组求交集得到候选集, 再逐个做子串校验, 因此结果与 LIKE 语义一致, 命中数是精确的.
+ * 长度为 1 的关键字没有二元组, 直接扫描所有文档.
+ *
+ * 内部文档号(docId)只增不减, 倒排表天然有序; 删除和更新只打删除标记, 删除过多时整体重建.
+ *
+ * 启动加载(load)与在线修改(put / remove)并发: 加载的某一块可能在修改提交前查询, 写入时已经过时.
+ * 因此 markReady 之前记录在线修改过的图书, 加载结果不覆盖它们.
+ */
+public class BookSearchIndex {
+    private static final int TITLE = 0;
+    private static final int AUTHOR = 1;
+    private static final int ISBN = 2;
+    private static final int PUBLISHER = 3;
+    private static final int FIELD_COUNT = 4;
+
+    private static final int COMPACT_MIN_DOCS = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Integer, IntList> postings = new HashMap<>();
+    private final Map<Long, Integer> docOf = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private long[] bookIds = new long[1024];
+    private String[][] fields = new String[1024][];
+    private int docCount;
+    private int deletedCount;
+    private int[] gramBuffer = new int[256];
+
+    private volatile boolean ready;
+    // 加载期间在线修改过的图书, markReady 后为 null; 由 lock 保护
+    private Set<Long> changedWhileLoading = new HashSet<>();
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        lock.writeLock().lock();
+        try {
+            changedWhileLoading = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 新增或更新一本书(按 bookId 覆盖旧文档)
+    public void put(long bookId, String title, String author, String isbn, String publisher) {
+        String[] docFields = {normalize(title), normalize(author), normalize(isbn), normalize(publisher)};
+        lock.writeLock().lock();
+        try {
+            if (changedWhileLoading != null) {
+                changedWhileLoading.add(bookId);
+            }
+            putLocked(bookId, docFields);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 启动加载时写入; 加载期间在线修改过的图书跳过
+    public void load(long bookId, String title, String author, String isbn, String publisher) {
+        String[] docFields = {normalize(title), normalize(author), normalize(isbn), normalize(publisher)};
+        lock.writeLock().lock();
+        try {
+            if (changedWhileLoading == null || !changedWhileLoading.contains(bookId)) {
+                putLocked(bookId, docFields);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putLocked(long bookId, String[] docFields) {
+        removeLocked(bookId);
+        addLocked(bookId, docFields);
+        if (deletedCount > COMPACT_MIN_DOCS && deletedCount * 2 > docCount) {
+            compactLocked();
+        }
+    }
+
+    public void remove(long bookId) {
+        lock.writeLock().lock();
+        try {
+            if (changedWhileLoading != null) {
+                changedWhileLoading.add(bookId);
+            }
+            removeLocked(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按相关度排序后返回 [offset, offset + limit) 范围内的 bookId, 以及精确的命中总数.
+     * 排序: 标题完全匹配 > ISBN 完全匹配 > 标题前缀 > 标题包含 > 作者 > ISBN > 出版社, 相同得分按入库顺序.
+     */
+    public SearchResult search(String keyword, int offset, int limit) {
+        String kw = normalize(keyword);
+        lock.readLock().lock();
+        try {
+            int[] candidates = candidatesLocked(kw);
+            long[] hits = new long[Math.min(candidates.length, 1024)];
+            int hitCount = 0;
+
+            for (int doc : candidates) {
+                if (deleted.get(doc)) {
+                    continue;
+                }
+                int score = score(fields[doc], kw);
+                if (score == 0) {
+                    continue;
+                }
+                if (hitCount == hits.length) {
+                    hits = Arrays.copyOf(hits, hits.length * 2);
+                }
+                // 高位存放 (反向) 得分, 低位存放 docId, 一次原始类型排序即可完成排名
+                hits[hitCount++] = ((long) (Integer.MAX_VALUE - score) << 32) | doc;
+            }
+
+            Arrays.sort(hits, 0, hitCount);
+
+            int from = Math.min(Math.max(offset, 0), hitCount);
+            int to = Math.min(from + Math.max(limit, 0), hitCount);
+            List<Long> page = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                page.add(bookIds[(int) hits[i]]);
+            }
+            return new SearchResult(page, hitCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] candidatesLocked(String kw) {
+        if (kw.length() < 2) {
+            int[] all = new int[docCount];
+            for (int i = 0; i < docCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        // 查询在读锁下并发执行, 使用局部缓冲区
+        int[] kwGrams = new int[kw.length() - 1];
+        int gramCount = fillGrams(kw, kwGrams, 0);
+        IntList[] lists = new IntList[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            IntList list = postings.get(kwGrams[i]);
+            if (list == null) {
+                return new int[0];
+            }
+            lists[i] = list;
+        }
+        // 从最短的倒排表开始求交集
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = Arrays.copyOf(lists[0].data, lists[0].size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.length && resultSize > 0; i++) {
+            resultSize = intersect(result, resultSize, lists[i]);
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    // 在 result 中保留也出现在 list 中的 docId, 返回新长度
+    private static int intersect(int[] result, int resultSize, IntList list) {
+        int size = 0;
+        int j = 0;
+        for (int i = 0; i < resultSize && j < list.size; i++) {
+            int doc = result[i];
+            j = lowerBound(list.data, j, list.size, doc);
+            if (j < list.size && list.data[j] == doc) {
+                result[size++] = doc;
+            }
+        }
+        return size;
+    }
+
+    private static int lowerBound(int[] data, int from, int to, int key) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (data[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int score(String[] docFields, String kw) {
+        String title = docFields[TITLE];
+        if (title.equals(kw)) {
+            return 120;
+        }
+        if (docFields[ISBN].equals(kw)) {
+            return 110;
+        }
+        if (title.startsWith(kw)) {
+            return 100;
+        }
+        if (title.contains(kw)) {
+            return 80;
+        }
+        if (docFields[AUTHOR].contains(kw)) {
+            return 40;
+        }
+        if (docFields[ISBN].contains(kw)) {
+            return 30;
+        }
+        if (docFields[PUBLISHER].contains(kw)) {
+            return 10;
+        }
+        return 0;
+    }
+
+    private void addLocked(long bookId, String[] docFields) {
+        int doc = docCount++;
+        if (doc == bookIds.length) {
+            bookIds = Arrays.copyOf(bookIds, doc * 2);
+            fields = Arrays.copyOf(fields, doc * 2);
+        }
+        bookIds[doc] = bookId;
+        fields[doc] = docFields;
+        docOf.put(bookId, doc);
+
+        int total = 0;
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            total += Math.max(docFields[f].length() - 1, 0);
+        }
+        if (total > gramBuffer.length) {
+            gramBuffer = new int[Math.max(gramBuffer.length * 2, total)];
+        }
+        int gramCount = 0;
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            gramCount = fillGrams(docFields[f], gramBuffer, gramCount);
+        }
+        // 同一文档内重复的二元组只记录一次
+        Arrays.sort(gramBuffer, 0, gramCount);
+        int last = 0;
+        for (int i = 0; i < gramCount; i++) {
+            int gram = gramBuffer[i];
+            if (i > 0 && gram == last) {
+                continue;
+            }
+            last = gram;
+            postings.computeIfAbsent(gram, k -> new IntList()).add(doc);
+        }
+    }
+
+    private void removeLocked(long bookId) {
+        Integer doc = docOf.remove(bookId);
+        if (doc != null) {
+            deleted.set(doc);
+            deletedCount++;
+        }
+    }
+
+    // 丢弃已删除文档, 按原顺序重新编号
+    private void compactLocked() {
+        long[] oldIds = bookIds;
+        String[][] oldFields = fields;
+        int oldCount = docCount;
+        BitSet oldDeleted = (BitSet) deleted.clone();
+
+        postings.clear();
+        docOf.clear();
+        deleted.clear();
+        bookIds = new long[Math.max(1024, oldCount - deletedCount)];
+        fields = new String[bookIds.length][];
+        docCount = 0;
+        deletedCount = 0;
+
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (!oldDeleted.get(doc)) {
+                addLocked(oldIds[doc], oldFields[doc]);
+            }
+        }
+    }
+
+    // 把 text 的字符二元组写入 buf 的 offset 之后(调用方保证容量), 返回新的长度
+    private static int fillGrams(String text, int[] buf, int offset) {
+        int n = text.length() - 1;
+        for (int i = 0; i < n; i++) {
+            buf[offset + i] = (text.charAt(i) << 16) | text.charAt(i + 1);
+        }
+        return offset + Math.max(n, 0);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public record SearchResult(List<Long> bookIds, int total) {}
+
+    // 原始 int 倒排表, 避免 List<Integer> 的装箱开销
+    private static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
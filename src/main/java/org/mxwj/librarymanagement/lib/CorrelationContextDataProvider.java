@@ -0,0 +1,33 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.core.util.ContextDataProvider;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+/**
+ * 把当前请求的关联 id 加入每条日志的上下文数据(%X{requestId}). 通过 META-INF/services 注册, 由 log4j 在记录日志的线程上调用,
+ * 异步日志也是在入队前取值.
+ */
+public class CorrelationContextDataProvider implements ContextDataProvider {
+    private static final StringMap EMPTY = frozenEmpty();
+
+    @Override
+    public Map<String, String> supplyContextData() {
+        return RequestCorrelation.currentContextMap();
+    }
+
+    // 返回绑定时构造好的只读 map, 不为每条日志分配对象
+    @Override
+    public StringMap supplyStringMap() {
+        StringMap contextData = RequestCorrelation.currentContextData();
+        return contextData == null ? EMPTY : contextData;
+    }
+
+    private static StringMap frozenEmpty() {
+        StringMap empty = new SortedArrayStringMap(0);
+        empty.freeze();
+        return empty;
+    }
+}
@@ -1,22 +1,129 @@
 package org.mxwj.librarymanagement.lib;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.hibernate.reactive.mutiny.Mutiny;
+import org.hibernate.reactive.provider.Settings;
+
+import io.vertx.core.json.JsonObject;
+
 import static jakarta.persistence.Persistence.createEntityManagerFactory;
 
+/**
+ * 全局的 SessionFactory. persistence.xml 只保留实体和默认连接信息, 连接池与语句相关的配置来自 vertx-config
+ * (conf/config.json 的 database 部分, 按环境覆盖), 由 Main(pom 中的 launcher.class)在部署前通过 configure 传入. 未配置时使用 persistence.xml 和默认值.
+ *
+ * 支持的配置项(均可省略):
+ * url / user / password            连接信息
+ * poolName                         连接池名称, 用于区分指标
+ * poolSize                         最大连接数
+ * maxWaitQueueSize                 等待连接的请求上限, 超出时立即失败; -1 不限
+ * connectTimeoutMillis             等待连接的超时
+ * idleTimeoutMillis                空闲连接关闭的时间
+ * poolCleanerPeriodMillis          检查空闲连接的周期
+ * preparedStatementCacheSize       每个连接缓存的预编译语句数, 0 关闭缓存
+ * preparedStatementCacheSqlLimit   超过此长度的 SQL 不缓存
+ * pipeliningLimit                  每个连接上未返回的请求上限
+ * showSql                          打印 SQL, 只用于调试
+ * schemaAction                     启动时的表结构处理, 默认沿用 persistence.xml 的 update
+ *
+ * 只读副本(见 ReadRouter):
+ * replica                          副本的配置, 未给出的项沿用上面的主库配置; 省略时不使用副本
+ * readYourWritesMillis             用户执行 mutation 后多久内的读请求仍走主库
+ * replicaLagCheckMillis            检查副本复制延迟的周期
+ * maxReplicaLagMillis              复制延迟超过此值时读请求改走主库
+ */
 public class DatabaseManager {
+    public static final String PRIMARY_POOL = "primary";
+    public static final String REPLICA_POOL = "replica";
+    private static final String PERSISTENCE_UNIT = "pg-vertx-study";
+
+    private static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 5000;
+    private static final long DEFAULT_REPLICA_LAG_CHECK_MILLIS = 1000;
+    private static final long DEFAULT_MAX_REPLICA_LAG_MILLIS = 1000;
+
     private static volatile Mutiny.SessionFactory INSTANCE;
-    
-    private DatabaseManager() {} 
-    
+    private static volatile ReadRouter READ_ROUTER;
+    private static volatile JsonObject config = new JsonObject();
+
+    private DatabaseManager() {}
+
+    // 须在第一次 getSessionFactory 之前调用
+    public static void configure(JsonObject databaseConfig) {
+        if (INSTANCE != null) {
+            throw new IllegalStateException("SessionFactory 已创建, 配置不再生效");
+        }
+        config = databaseConfig == null ? new JsonObject() : databaseConfig.copy();
+    }
+
     public static Mutiny.SessionFactory getSessionFactory() {
         if (INSTANCE == null) {
             synchronized (DatabaseManager.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = createEntityManagerFactory("pg-vertx-study")
-                            .unwrap(Mutiny.SessionFactory.class);
+                    INSTANCE = createSessionFactory(config);
                 }
             }
         }
         return INSTANCE;
     }
+
+    // 第一次调用时创建副本的 SessionFactory(如果配置了副本); 应在 Vert.x 上下文中调用
+    public static ReadRouter getReadRouter() {
+        if (READ_ROUTER == null) {
+            synchronized (DatabaseManager.class) {
+                if (READ_ROUTER == null) {
+                    JsonObject replica = config.getJsonObject("replica");
+                    READ_ROUTER = new ReadRouter(getSessionFactory(),
+                        replica == null ? null : createSessionFactory(replicaConfig(config, replica)),
+                        config.getLong("readYourWritesMillis", DEFAULT_READ_YOUR_WRITES_MILLIS),
+                        config.getLong("replicaLagCheckMillis", DEFAULT_REPLICA_LAG_CHECK_MILLIS),
+                        config.getLong("maxReplicaLagMillis", DEFAULT_MAX_REPLICA_LAG_MILLIS));
+                }
+            }
+        }
+        return READ_ROUTER;
+    }
+
+    // 按给定配置新建一个独立的 SessionFactory, 调用方负责关闭; 应在 Vert.x 上下文中调用, 否则 Hibernate Reactive 会自建 Vertx
+    public static Mutiny.SessionFactory createSessionFactory(JsonObject databaseConfig) {
+        return createEntityManagerFactory(PERSISTENCE_UNIT, properties(databaseConfig))
+                .unwrap(Mutiny.SessionFactory.class);
+    }
+
+    // 副本只读, 不能执行 DDL
+    static JsonObject replicaConfig(JsonObject primary, JsonObject replica) {
+        JsonObject merged = primary.copy();
+        merged.remove("replica");
+        return merged.mergeIn(replica)
+            .put("poolName", replica.getString("poolName", REPLICA_POOL))
+            .put("schemaAction", "none");
+    }
+
+    static Map<String, Object> properties(JsonObject db) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(Settings.SQL_CLIENT_POOL_CONFIG, PgPoolConfiguration.class.getName());
+        properties.put(PgPoolConfiguration.POOL_NAME, db.getString("poolName", PRIMARY_POOL));
+        put(properties, "jakarta.persistence.jdbc.url", db.getValue("url"));
+        put(properties, "jakarta.persistence.jdbc.user", db.getValue("user"));
+        put(properties, "jakarta.persistence.jdbc.password", db.getValue("password"));
+        put(properties, Settings.POOL_SIZE, db.getValue("poolSize"));
+        put(properties, Settings.POOL_MAX_WAIT_QUEUE_SIZE, db.getValue("maxWaitQueueSize"));
+        put(properties, Settings.POOL_CONNECT_TIMEOUT, db.getValue("connectTimeoutMillis"));
+        put(properties, Settings.POOL_IDLE_TIMEOUT, db.getValue("idleTimeoutMillis"));
+        put(properties, Settings.POOL_CLEANER_PERIOD, db.getValue("poolCleanerPeriodMillis"));
+        put(properties, Settings.PREPARED_STATEMENT_CACHE_MAX_SIZE, db.getValue("preparedStatementCacheSize"));
+        put(properties, Settings.PREPARED_STATEMENT_CACHE_SQL_LIMIT, db.getValue("preparedStatementCacheSqlLimit"));
+        put(properties, PgPoolConfiguration.PIPELINING_LIMIT, db.getValue("pipeliningLimit"));
+        put(properties, Settings.SHOW_SQL, db.getValue("showSql"));
+        put(properties, "jakarta.persistence.schema-generation.database.action", db.getValue("schemaAction"));
+        put(properties, "javax.persistence.schema-generation.database.action", db.getValue("schemaAction"));
+        return properties;
+    }
+
+    private static void put(Map<String, Object> properties, String key, Object value) {
+        if (value != null) {
+            properties.put(key, value.toString());
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * event bus 到 GraphQL 订阅的扇出: 每个地址在本进程内只注册一个 consumer, 收到的消息分发给订阅该地址的所有客户端.
+ * 第一个订阅者出现时注册, 最后一个取消时注销.
+ *
+ * 每个订阅按 reactive-streams 的 request(n) 推送, 客户端处理不过来时最多缓冲 BUFFER_SIZE 条, 超出时丢弃最旧的一条.
+ */
+public class EventHub {
+    private static final int BUFFER_SIZE = 64;
+
+    private final Vertx vertx;
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private static final class Topic {
+        final Set<HubSubscription> subscribers = new CopyOnWriteArraySet<>();
+        MessageConsumer<JsonObject> consumer;
+    }
+
+    public EventHub(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    public void publish(String address, JsonObject event) {
+        vertx.eventBus().publish(address, event);
+    }
+
+    // 订阅多个地址, 事件合并到同一个流中
+    public Publisher<JsonObject> subscribe(Collection<String> addresses) {
+        List<String> copy = List.copyOf(addresses);
+        return subscriber -> {
+            HubSubscription subscription = new HubSubscription(subscriber, copy);
+            subscriber.onSubscribe(subscription);
+            copy.forEach(address -> attach(address, subscription));
+        };
+    }
+
+    public JsonObject stats() {
+        int subscriptions = topics.values().stream().mapToInt(topic -> topic.subscribers.size()).sum();
+        return new JsonObject()
+            .put("topics", topics.size())
+            .put("subscriptions", subscriptions)
+            .put("delivered", delivered.sum())
+            .put("dropped", dropped.sum());
+    }
+
+    private void attach(String address, HubSubscription subscription) {
+        topics.compute(address, (key, topic) -> {
+            // 与 cancel 中的 detach 在同一个 key 上串行, 已取消的订阅不再加入
+            if (subscription.cancelled.get()) {
+                return topic;
+            }
+            if (topic == null) {
+                topic = new Topic();
+                Topic created = topic;
+                topic.consumer = vertx.eventBus().consumer(address, message ->
+                    created.subscribers.forEach(s -> s.offer(message.body())));
+            }
+            topic.subscribers.add(subscription);
+            return topic;
+        });
+    }
+
+    private void detach(String address, HubSubscription subscription) {
+        topics.computeIfPresent(address, (key, topic) -> {
+            topic.subscribers.remove(subscription);
+            if (!topic.subscribers.isEmpty()) {
+                return topic;
+            }
+            topic.consumer.unregister();
+            return null;
+        });
+    }
+
+    private final class HubSubscription implements Subscription {
+        private final Subscriber<? super JsonObject> subscriber;
+        private final List<String> addresses;
+        private final ArrayDeque<JsonObject> buffer = new ArrayDeque<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private long requested;
+
+        HubSubscription(Subscriber<? super JsonObject> subscriber, List<String> addresses) {
+            this.subscriber = subscriber;
+            this.addresses = addresses;
+        }
+
+        void offer(JsonObject event) {
+            synchronized (buffer) {
+                if (buffer.size() == BUFFER_SIZE) {
+                    buffer.poll();
+                    dropped.increment();
+                }
+                buffer.add(event);
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("request 必须为正数: " + n));
+                return;
+            }
+            synchronized (buffer) {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                addresses.forEach(address -> detach(address, this));
+                synchronized (buffer) {
+                    buffer.clear();
+                }
+            }
+        }
+
+        // 同一时刻只有一个线程向 subscriber 推送, 保证 onNext 串行
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!cancelled.get()) {
+                    JsonObject event;
+                    synchronized (buffer) {
+                        if (requested == 0 || buffer.isEmpty()) {
+                            break;
+                        }
+                        event = buffer.poll();
+                        if (requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                    }
+                    delivered.increment();
+                    subscriber.onNext(event);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+}
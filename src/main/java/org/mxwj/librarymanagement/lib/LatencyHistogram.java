@@ -0,0 +1,93 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁、记录时零分配的延迟直方图(HDR 风格的对数-线性分桶), 单位微秒.
+ *
+ * 小于 16us 的值每微秒一个桶; 之后每个 2 的幂区间再等分为 16 个子桶, 相对误差不超过 1/16.
+ * 上限约 2^40us(约 12 天), 超出的值记入最后一个桶.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumMicros.add(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumMicros() {
+        return sumMicros.sum();
+    }
+
+    // 小于等于 micros 的记录数(按桶上界近似)
+    public long countAtOrBelow(long micros) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketUpperBound(i) > micros) {
+                break;
+            }
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // 百分位数(0-100), 返回所在桶的上界
+    public long valueAtPercentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return bucketUpperBound(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        return index + 1 < BUCKETS ? bucketLowerBound(index + 1) - 1 : MAX_VALUE;
+    }
+}
@@ -0,0 +1,117 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 进程内的有界缓存: 超过 maxSize 时淘汰最久未访问的条目(LRU), 写入超过 ttl 的条目在读取时视为不存在.
+ *
+ * 读穿透时先取 generation(), 加载完成后用 put(key, value, generation) 写入;
+ * 若加载期间发生过失效则放弃写入, 避免把失效前读到的旧值放回缓存.
+ */
+public class LocalCache<K, V> {
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public LocalCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    // clock: 毫秒时间源, 测试中可替换
+    public LocalCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt <= clock.getAsLong()) {
+            entries.remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    // 读穿透写入: 期间发生过失效时丢弃
+    public synchronized void put(K key, V value, long expectedGeneration) {
+        if (generation.get() != expectedGeneration) {
+            return;
+        }
+        putEntry(key, value);
+    }
+
+    // 写穿透: 调用方持有最新值, 直接覆盖
+    public synchronized void put(K key, V value) {
+        putEntry(key, value);
+    }
+
+    public synchronized void invalidate(K key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+        invalidations.increment();
+    }
+
+    public synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        invalidations.increment();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public JsonObject stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        return new JsonObject()
+            .put("size", size())
+            .put("maxSize", maxSize)
+            .put("hits", hitCount)
+            .put("misses", missCount)
+            .put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount))
+            .put("evictions", evictions.sum())
+            .put("expirations", expirations.sum())
+            .put("invalidations", invalidations.sum());
+    }
+
+    private void putEntry(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+        if (entries.size() > maxSize) {
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {}
+}
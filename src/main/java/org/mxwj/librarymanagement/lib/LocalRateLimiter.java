@@ -0,0 +1,52 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内的 GCRA 限流: 每个 key 只保存理论到达时间 tat, 每个请求把 tat 推后 interval,
+ * tat 超出当前时间一个 period 以上时拒绝. 等价于 period 内最多 period / interval 个请求, 允许一次性用完.
+ *
+ * 过期的 tat(早于当前时间)与不存在等价, key 数超过 maxKeys 时按 LRU 淘汰.
+ */
+public class LocalRateLimiter {
+    private final LocalCache<String, Long> tats;
+    private final LongSupplier clock;
+
+    public LocalRateLimiter(int maxKeys, long maxPeriodMillis, LongSupplier clock) {
+        this.tats = new LocalCache<>(maxKeys, maxPeriodMillis, clock);
+        this.clock = clock;
+    }
+
+    /** 一次请求对某个 key 的占用; 同一请求计多次时 intervalMillis 为单次间隔乘以次数 */
+    public record Permit(String key, long intervalMillis, long periodMillis) {}
+
+    // 允许时返回 0 并计入; 拒绝时返回需要等待的毫秒数, 不计入
+    public long tryAcquire(String key, long intervalMillis, long periodMillis) {
+        return tryAcquire(List.of(new Permit(key, intervalMillis, periodMillis)));
+    }
+
+    // 多个 key 一起判断: 全部允许时才计入, 任一拒绝时都不计入, 返回其中最长的等待时间
+    public synchronized long tryAcquire(List<Permit> permits) {
+        long now = clock.getAsLong();
+        long[] newTats = new long[permits.size()];
+        long wait = 0;
+        for (int i = 0; i < newTats.length; i++) {
+            Permit permit = permits.get(i);
+            Long tat = tats.get(permit.key());
+            newTats[i] = Math.max(tat == null ? now : tat, now) + permit.intervalMillis();
+            wait = Math.max(wait, newTats[i] - permit.periodMillis() - now);
+        }
+        if (wait > 0) {
+            return wait;
+        }
+        for (int i = 0; i < newTats.length; i++) {
+            tats.put(permits.get(i).key(), newTats[i]);
+        }
+        return 0;
+    }
+
+    public int size() {
+        return tats.size();
+    }
+}
@@ -0,0 +1,48 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 高频日志的采样: 每秒最多放行 perSecond 条, 其余计入 suppressed, 由调用方定期汇总输出.
+ * 无锁, 可在多个 event loop 上共用; 窗口切换时可能多放行少量几条.
+ *
+ * 用法: if (logger.isDebugEnabled() && SAMPLER.sample()) { logger.debug(...); }
+ */
+public class LogSampler {
+    private final int perSecond;
+    private final LongSupplier clock;
+    private final AtomicLong window = new AtomicLong(-1);
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler(int perSecond) {
+        this(perSecond, System::currentTimeMillis);
+    }
+
+    // clock 返回毫秒, 测试中可替换
+    public LogSampler(int perSecond, LongSupplier clock) {
+        this.perSecond = perSecond;
+        this.clock = clock;
+    }
+
+    public boolean sample() {
+        long current = clock.getAsLong() / 1000;
+        long last = window.get();
+        if (current != last && window.compareAndSet(last, current)) {
+            count.set(0);
+        }
+        if (count.incrementAndGet() <= perSecond) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    // 返回上次调用以来被丢弃的条数并清零
+    public long drainSuppressed() {
+        return suppressed.sumThenReset();
+    }
+}
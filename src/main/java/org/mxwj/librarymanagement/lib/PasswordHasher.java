@@ -0,0 +1,115 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * BCrypt 计算放到独立的、有大小限制的 worker 池中执行, 不占用 event loop, 也不挤占 Vert.x 默认的 worker 池.
+ *
+ * 排队 + 执行中的任务数超过 maxPending 时立即拒绝(PasswordHasherBusyException), 而不是无限排队拖慢所有登录.
+ * cost 改变后, 旧 cost 生成的哈希在下次登录成功时重新计算(needsRehash).
+ */
+public class PasswordHasher {
+    private static final String POOL_NAME = "password-hasher";
+    private static final int DEFAULT_COST = 10;
+
+    public static class PasswordHasherBusyException extends RuntimeException {
+        public PasswordHasherBusyException(String message) {
+            super(message);
+        }
+    }
+
+    private final WorkerExecutor executor;
+    private final int maxPending;
+    private final int cost;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram hashTime = new LatencyHistogram();
+
+    // 默认配置: -Dbcrypt.cost, -Dbcrypt.poolSize, -Dbcrypt.maxPending
+    public PasswordHasher(Vertx vertx) {
+        this(vertx,
+            Integer.getInteger("bcrypt.poolSize", Math.max(2, Runtime.getRuntime().availableProcessors() / 2)),
+            Integer.getInteger("bcrypt.maxPending", 64),
+            Integer.getInteger("bcrypt.cost", DEFAULT_COST));
+    }
+
+    public PasswordHasher(Vertx vertx, int poolSize, int maxPending, int cost) {
+        this.executor = vertx.createSharedWorkerExecutor(POOL_NAME, poolSize);
+        this.maxPending = maxPending;
+        this.cost = cost;
+    }
+
+    public Uni<String> hash(String password) {
+        return submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    // 哈希格式不合法时视为不匹配
+    public Uni<Boolean> verify(String password, String hash) {
+        return submit(() -> {
+            try {
+                return BCrypt.checkpw(password, hash);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        });
+    }
+
+    // 哈希格式: $2a$<cost>$<salt+hash>
+    public boolean needsRehash(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return true;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6)) != cost;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("pending", pending.get())
+            .put("maxPending", maxPending)
+            .put("completed", completed.sum())
+            .put("rejected", rejected.sum())
+            .put("cost", cost)
+            .put("queueWaitP99Ms", queueWait.valueAtPercentile(99) / 1000.0)
+            .put("hashTimeP99Ms", hashTime.valueAtPercentile(99) / 1000.0);
+    }
+
+    private <T> Uni<T> submit(Callable<T> task) {
+        return Uni.createFrom().deferred(() -> {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                rejected.increment();
+                return Uni.createFrom().failure(new PasswordHasherBusyException("服务繁忙, 请稍后重试"));
+            }
+            long submitted = System.nanoTime();
+            return Uni.createFrom().completionStage(() -> executor.<T>executeBlocking(() -> {
+                    long started = System.nanoTime();
+                    queueWait.recordNanos(started - submitted);
+                    try {
+                        return task.call();
+                    } finally {
+                        hashTime.recordNanos(System.nanoTime() - started);
+                    }
+                }, false).toCompletionStage())
+                .onTermination().invoke(() -> {
+                    pending.decrementAndGet();
+                    completed.increment();
+                });
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.hibernate.reactive.pool.impl.DefaultSqlClientPoolConfiguration;
+import org.hibernate.reactive.pool.impl.SqlClientPoolConfiguration;
+import org.hibernate.service.spi.Configurable;
+
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.SqlConnectOptions;
+
+/**
+ * 在 Hibernate Reactive 默认的连接池配置上补充两项: 连接池名称(用于区分指标, 见 SqlPoolMetrics)
+ * 和 PostgreSQL 的 pipelining 上限. 其余配置(池大小、等待队列、超时、预编译语句缓存)仍由默认实现读取.
+ *
+ * 默认实现以原始类型 Map 声明 configure, 子类无法用 Configurable 的泛型签名覆盖, 所以委托给它而不是继承.
+ */
+public class PgPoolConfiguration implements SqlClientPoolConfiguration, Configurable {
+    public static final String POOL_NAME = "app.db.pool_name";
+    public static final String PIPELINING_LIMIT = "app.db.pipelining_limit";
+
+    private final DefaultSqlClientPoolConfiguration defaults = new DefaultSqlClientPoolConfiguration();
+    private String poolName = DatabaseManager.PRIMARY_POOL;
+    private int pipeliningLimit = PgConnectOptions.DEFAULT_PIPELINING_LIMIT;
+
+    @Override
+    public void configure(Map<String, Object> configuration) {
+        defaults.configure(configuration);
+        Object name = configuration.get(POOL_NAME);
+        if (name != null) {
+            poolName = name.toString();
+        }
+        Object limit = configuration.get(PIPELINING_LIMIT);
+        if (limit != null) {
+            pipeliningLimit = Integer.parseInt(limit.toString());
+        }
+    }
+
+    @Override
+    public PoolOptions poolOptions() {
+        PoolOptions options = defaults.poolOptions().setName(poolName);
+        SqlPoolMetrics.maxWait(poolName, options.getConnectionTimeout(), options.getConnectionTimeoutUnit());
+        return options;
+    }
+
+    @Override
+    public SqlConnectOptions connectOptions(URI uri) {
+        // PG 驱动遇到 PgConnectOptions 时直接使用, 否则按默认值转换, 所以这里转换后再设置
+        return new PgConnectOptions(defaults.connectOptions(uri)).setPipeliningLimit(pipeliningLimit);
+    }
+}
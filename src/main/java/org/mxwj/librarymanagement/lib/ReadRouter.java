@@ -0,0 +1,134 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 读请求的主库/副本路由.
+ *
+ * 路由按请求决定: GraphQL 操作开始执行时调用 beginOperation, 结果记在当前请求的 Vert.x duplicated context 上,
+ * 之后该请求内调用 forRead 的服务方法据此选择 SessionFactory. 以下情况走主库:
+ * 未配置副本; 不在 GraphQL 请求中(后台任务、导入导出); 请求中有 mutation;
+ * 用户在最近 readYourWritesMillis 内执行过 mutation(读自己的写); 副本不可用或复制延迟过大(见 ReplicaLagMonitor).
+ *
+ * 只有已登录用户的写会被记录, 且只在本进程内记录.
+ */
+public class ReadRouter {
+    private static final String ROUTE_KEY = ReadRouter.class.getName();
+    private static final int MAX_RECENT_WRITERS = 100_000;
+
+    private enum Route { PRIMARY, REPLICA }
+
+    private final Mutiny.SessionFactory primary;
+    private final Mutiny.SessionFactory replica;
+    private final LocalCache<String, Boolean> recentWriters;
+    private final long lagCheckIntervalMillis;
+    private final long maxLagMillis;
+    private volatile ReplicaLagMonitor lagMonitor;
+
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder lagFallbacks = new LongAdder();
+    private final LongAdder readYourWrites = new LongAdder();
+
+    // replica 为 null 时所有读请求走主库
+    public ReadRouter(Mutiny.SessionFactory primary, Mutiny.SessionFactory replica, long readYourWritesMillis,
+                      long lagCheckIntervalMillis, long maxLagMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.recentWriters = new LocalCache<>(MAX_RECENT_WRITERS, readYourWritesMillis);
+        this.lagCheckIntervalMillis = lagCheckIntervalMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    // 延迟监控启动前副本视为不可用
+    public synchronized void startLagMonitor(Vertx vertx) {
+        if (replica != null && lagMonitor == null) {
+            lagMonitor = new ReplicaLagMonitor(vertx, replica, lagCheckIntervalMillis, maxLagMillis);
+            lagMonitor.start();
+        }
+    }
+
+    public Mutiny.SessionFactory forRead() {
+        if (replica == null) {
+            return primary;
+        }
+        Context context = Vertx.currentContext();
+        if (context == null || context.getLocal(ROUTE_KEY) != Route.REPLICA) {
+            primaryReads.increment();
+            return primary;
+        }
+        ReplicaLagMonitor monitor = lagMonitor;
+        if (monitor == null || !monitor.healthy()) {
+            lagFallbacks.increment();
+            primaryReads.increment();
+            return primary;
+        }
+        replicaReads.increment();
+        return replica;
+    }
+
+    // writerKey 标识发起操作的用户, 匿名请求为 null
+    public void beginOperation(boolean mutation, String writerKey) {
+        if (mutation) {
+            recordWrite(writerKey);
+        }
+        if (replica == null) {
+            return;
+        }
+        // 只在每个请求独有的 duplicated context 上记录, 避免影响共用 event loop context 的其他代码
+        Context context = Vertx.currentContext();
+        if (!(context instanceof ContextInternal internal) || !internal.isDuplicate()) {
+            return;
+        }
+        if (mutation) {
+            context.putLocal(ROUTE_KEY, Route.PRIMARY);
+            return;
+        }
+        // 同一批量请求中已有 mutation
+        if (context.getLocal(ROUTE_KEY) == Route.PRIMARY) {
+            return;
+        }
+        if (writerKey != null && recentWriters.get(writerKey) != null) {
+            readYourWrites.increment();
+            context.putLocal(ROUTE_KEY, Route.PRIMARY);
+            return;
+        }
+        context.putLocal(ROUTE_KEY, Route.REPLICA);
+    }
+
+    // mutation 完成时重新计时, 读自己的写窗口从写入提交后算起
+    public void endOperation(boolean mutation, String writerKey) {
+        if (mutation) {
+            recordWrite(writerKey);
+        }
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("replicaConfigured", replica != null)
+            .put("primaryReads", primaryReads.sum())
+            .put("replicaReads", replicaReads.sum())
+            .put("lagFallbacks", lagFallbacks.sum())
+            .put("readYourWrites", readYourWrites.sum())
+            .put("recentWriters", recentWriters.size());
+    }
+
+    // 未配置副本或监控未启动时返回空对象
+    public JsonObject lagStats() {
+        ReplicaLagMonitor monitor = lagMonitor;
+        return monitor == null ? new JsonObject() : monitor.stats();
+    }
+
+    private void recordWrite(String writerKey) {
+        if (writerKey != null) {
+            recentWriters.put(writerKey, Boolean.TRUE);
+        }
+    }
+}
@@ -1,41 +1,265 @@
 package org.mxwj.librarymanagement.lib;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
 import io.vertx.redis.client.*;
 
-public class RedisClient {
+/**
+ * 每个 Vert.x 实例共享一个 Redis 组件, 通过 {@link #getInstance(Vertx)} 获取.
+ *
+ * 普通命令从连接池借用连接, 执行完立即归还, 多个调用方的命令在池内连接上复用;
+ * 借连接失败(Redis 不可用/连接断开)时按指数退避重试, 命令本身的错误不重试.
+ * 订阅模式的连接不能执行普通命令, 所有频道共用一条单独的订阅连接, 断开后自动重连并重新订阅.
+ * 连接建立期间新增的频道在连接就绪后补发 SUBSCRIBE.
+ */
+public class RedisClient implements Shareable {
+    private static final Logger logger = LoggerFactory.getLogger(RedisClient.class);
+
+    private static final String SHARED_MAP = "redis.client";
+    private static final String CONNECTION_STRING = "redis://localhost:6379";
+    private static final int MAX_POOL_SIZE = 8;
+    private static final int MAX_POOL_WAITING = 256;
+
+    private static final int MAX_RETRIES = 3;
+    private static final long BACKOFF_BASE_MS = 100;
+    private static final long BACKOFF_MAX_MS = 5000;
+
+    private final Vertx vertx;
     private final Redis redis;
-    private RedisConnection connection;
-    private RedisAPI redisAPI;
 
-    public RedisClient(Vertx vertx) {
+    // 订阅: 频道 -> 消息处理器
+    private final Map<String, List<Handler<String>>> channelHandlers = new ConcurrentHashMap<>();
+    private final List<Handler<Void>> subscribedHandlers = new CopyOnWriteArrayList<>();
+    private RedisConnection subscriber;
+    // 已在当前订阅连接上发出 SUBSCRIBE 的频道, 连接断开时清空
+    private final Set<String> subscribedChannels = new HashSet<>();
+    private boolean subscriberConnecting;
+    private int subscriberFailures;
+
+    // 指标
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder poolWaitCount = new LongAdder();
+    private final LongAdder poolWaitTotalNanos = new LongAdder();
+    private final AtomicLong poolWaitMaxNanos = new AtomicLong();
+
+    private RedisClient(Vertx vertx) {
+        this.vertx = vertx;
         this.redis = Redis.createClient(
             vertx,
             new RedisOptions()
-                .setConnectionString("redis://localhost:6379")
-                .setMaxPoolSize(8)
+                .setConnectionString(CONNECTION_STRING)
+                .setMaxPoolSize(MAX_POOL_SIZE)
+                .setMaxPoolWaiting(MAX_POOL_WAITING)
         );
     }
 
-    public Future<RedisAPI> getRedisAPI() {
-        if (redisAPI != null && connection != null) {
-            return Future.succeededFuture(redisAPI);
+    public static RedisClient getInstance(Vertx vertx) {
+        return vertx.sharedData().<String, RedisClient>getLocalMap(SHARED_MAP)
+            .computeIfAbsent(SHARED_MAP, k -> new RedisClient(vertx));
+    }
+
+    public Future<Response> send(Request request) {
+        commands.increment();
+        return withConnection(conn -> conn.send(request));
+    }
+
+    // 显式流水线: 一次借用连接, 所有命令一起写出后再按顺序读取结果
+    public Future<List<Response>> batch(List<Request> requests) {
+        if (requests.isEmpty()) {
+            return Future.succeededFuture(List.of());
+        }
+        batches.increment();
+        commands.add(requests.size());
+        return withConnection(conn -> conn.batch(requests));
+    }
+
+    public Future<Response> publish(String channel, String message) {
+        return send(Request.cmd(Command.PUBLISH).arg(channel).arg(message));
+    }
+
+    /**
+     * 订阅频道. onSubscribed 在每次(重新)订阅成功后调用, 订阅方可借此处理断线期间丢失的消息.
+     */
+    public synchronized void subscribe(String channel, Handler<String> messageHandler, Handler<Void> onSubscribed) {
+        channelHandlers.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(messageHandler);
+        subscribedHandlers.add(onSubscribed);
+
+        if (subscriber == null) {
+            // 连接建立中时由 connectSubscriber 在就绪后补发
+            connectSubscriber();
+        } else if (subscribedChannels.add(channel)) {
+            subscriber.send(Request.cmd(Command.SUBSCRIBE).arg(channel))
+                .onSuccess(res -> onSubscribed.handle(null));
+        } else {
+            onSubscribed.handle(null);
+        }
+    }
+
+    /**
+     * 取消订阅时传入 subscribe 时的两个处理器; 频道上没有处理器后退订该频道.
+     */
+    public synchronized Future<Void> unsubscribe(String channel, Handler<String> messageHandler, Handler<Void> onSubscribed) {
+        subscribedHandlers.remove(onSubscribed);
+        List<Handler<String>> handlers = channelHandlers.get(channel);
+        if (handlers == null || !handlers.remove(messageHandler) || !handlers.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        channelHandlers.remove(channel);
+        if (subscriber == null || !subscribedChannels.remove(channel)) {
+            return Future.succeededFuture();
         }
+        return subscriber.send(Request.cmd(Command.UNSUBSCRIBE).arg(channel))
+            .onFailure(err -> logger.warn("Redis 退订 {} 失败: {}", channel, err.getMessage()))
+            .mapEmpty();
+    }
+
+    public JsonObject stats() {
+        long waits = poolWaitCount.sum();
+        return new JsonObject()
+            .put("inFlight", inFlight.get())
+            .put("commands", commands.sum())
+            .put("batches", batches.sum())
+            .put("failures", failures.sum())
+            .put("retries", retries.sum())
+            .put("reconnects", reconnects.sum())
+            .put("poolWaitAvgMs", waits == 0 ? 0.0 : poolWaitTotalNanos.sum() / (double) waits / 1_000_000)
+            .put("poolWaitMaxMs", TimeUnit.NANOSECONDS.toMillis(poolWaitMaxNanos.get()))
+            .put("subscribed", subscriber != null);
+    }
 
-        return redis.connect()
+    private <T> Future<T> withConnection(Function<RedisConnection, Future<T>> action) {
+        inFlight.incrementAndGet();
+        Promise<T> promise = Promise.promise();
+        acquire(0, promise, action);
+        return promise.future()
+            .onComplete(ar -> {
+                inFlight.decrementAndGet();
+                if (ar.failed()) {
+                    failures.increment();
+                }
+            });
+    }
+
+    private <T> void acquire(int attempt, Promise<T> promise, Function<RedisConnection, Future<T>> action) {
+        long start = System.nanoTime();
+        redis.connect()
             .onSuccess(conn -> {
-                this.connection = conn;
-                this.redisAPI = RedisAPI.api(conn);
-                
-                conn.exceptionHandler(err -> {
-                    System.err.println("Redis connection error: " + err.getMessage());
-                    this.connection = null;
-                    this.redisAPI = null;
+                recordPoolWait(System.nanoTime() - start);
+                // close() 将连接归还连接池
+                action.apply(conn)
+                    .onComplete(ar -> conn.close())
+                    .onComplete(promise);
+            })
+            .onFailure(err -> {
+                if (attempt >= MAX_RETRIES) {
+                    promise.fail(err);
+                    return;
+                }
+                retries.increment();
+                vertx.setTimer(backoff(attempt), id -> acquire(attempt + 1, promise, action));
+            });
+    }
+
+    private synchronized void connectSubscriber() {
+        if (subscriberConnecting || subscriber != null) {
+            return;
+        }
+        subscriberConnecting = true;
+
+        redis.connect()
+            .compose(conn -> {
+                conn.handler(message -> {
+                    // 推送消息格式: ["message", channel, payload]
+                    if (message.size() >= 3 && "message".equals(message.get(0).toString())) {
+                        List<Handler<String>> handlers = channelHandlers.get(message.get(1).toString());
+                        if (handlers != null) {
+                            String payload = message.get(2).toString();
+                            handlers.forEach(h -> h.handle(payload));
+                        }
+                    }
+                });
+                conn.exceptionHandler(err -> logger.warn("Redis 订阅连接异常: {}", err.getMessage()));
+                conn.endHandler(v -> {
+                    synchronized (this) {
+                        subscriber = null;
+                        subscribedChannels.clear();
+                    }
+                    scheduleResubscribe();
                 });
+
+                return subscribeAll(conn, new HashSet<>())
+                    .onFailure(err -> conn.close());
             })
-            .map(conn -> redisAPI);
+            .onSuccess(v -> new ArrayList<>(subscribedHandlers).forEach(h -> h.handle(null)))
+            .onFailure(err -> {
+                synchronized (this) {
+                    subscriberConnecting = false;
+                }
+                logger.warn("Redis 订阅失败: {}", err.getMessage());
+                scheduleResubscribe();
+            });
+    }
+
+    // 订阅当前所有频道, 期间 subscribe 新增的频道继续补发, 没有遗漏时才把连接设为 subscriber(之后的 subscribe 直接发送)
+    private Future<Void> subscribeAll(RedisConnection conn, Set<String> sent) {
+        List<String> missing = new ArrayList<>();
+        synchronized (this) {
+            for (String channel : channelHandlers.keySet()) {
+                if (!sent.contains(channel)) {
+                    missing.add(channel);
+                }
+            }
+            if (missing.isEmpty()) {
+                subscriberConnecting = false;
+                subscriberFailures = 0;
+                subscriber = conn;
+                subscribedChannels.addAll(sent);
+                return Future.succeededFuture();
+            }
+        }
+        Request request = Request.cmd(Command.SUBSCRIBE);
+        missing.forEach(request::arg);
+        sent.addAll(missing);
+        return conn.send(request).compose(res -> subscribeAll(conn, sent));
     }
-}
 
+    private synchronized void scheduleResubscribe() {
+        reconnects.increment();
+        vertx.setTimer(backoff(subscriberFailures++), id -> connectSubscriber());
+    }
+
+    private static long backoff(int attempt) {
+        return Math.min(BACKOFF_BASE_MS << Math.min(attempt, 16), BACKOFF_MAX_MS);
+    }
 
+    private void recordPoolWait(long nanos) {
+        poolWaitCount.increment();
+        poolWaitTotalNanos.add(nanos);
+        poolWaitMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+}
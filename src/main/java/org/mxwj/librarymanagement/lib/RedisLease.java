@@ -0,0 +1,68 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.UUID;
+
+import io.vertx.core.Future;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Request;
+
+/**
+ * 基于 Redis 的互斥租约, 多实例部署时保证同一时刻只有一个实例执行某项后台任务.
+ *
+ * acquire: SET key token NX PX ttl; renew / release 用 Lua 脚本先比较 token,
+ * 租约过期后被其他实例取得时, 本实例的续期和释放不会影响对方.
+ * 持有者崩溃时租约最多 ttl 毫秒后自动失效.
+ */
+public class RedisLease {
+    private static final String RENEW_SCRIPT =
+        "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+        "  return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+        "else return 0 end";
+    private static final String RELEASE_SCRIPT =
+        "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+        "  return redis.call('del', KEYS[1]) " +
+        "else return 0 end";
+
+    private final RedisClient redis;
+    private final String key;
+    private final long ttlMillis;
+    private String token;
+
+    public RedisLease(RedisClient redis, String key, long ttlMillis) {
+        this.redis = redis;
+        this.key = key;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // 成功时返回 true; 已被其他实例持有时返回 false
+    public Future<Boolean> acquire() {
+        String candidate = UUID.randomUUID().toString();
+        return redis.send(Request.cmd(Command.SET).arg(key).arg(candidate).arg("NX").arg("PX").arg(ttlMillis))
+            .map(response -> {
+                if (response == null) {
+                    return false;
+                }
+                token = candidate;
+                return true;
+            });
+    }
+
+    // 返回 false 表示租约已丢失(过期或被其他实例取得), 调用方应停止任务
+    public Future<Boolean> renew() {
+        if (token == null) {
+            return Future.succeededFuture(false);
+        }
+        return redis.send(Request.cmd(Command.EVAL).arg(RENEW_SCRIPT).arg(1).arg(key).arg(token).arg(ttlMillis))
+            .map(response -> response != null && response.toLong() == 1);
+    }
+
+    public Future<Void> release() {
+        if (token == null) {
+            return Future.succeededFuture();
+        }
+        String held = token;
+        token = null;
+        return redis.send(Request.cmd(Command.EVAL).arg(RELEASE_SCRIPT).arg(1).arg(key).arg(held))
+            .mapEmpty();
+    }
+}
@@ -0,0 +1,114 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 定期在只读副本上查询复制延迟: 已接收的 WAL 全部回放完时延迟为 0, 否则为距最后一个回放事务的时间.
+ * 不处于恢复模式(不是副本, 如开发时副本指向主库)时也视为 0.
+ *
+ * 延迟超过 maxLagMillis、查询失败或连续 STALE_CHECKS 个周期没有结果时视为不可用;
+ * 恢复时要求延迟降到 maxLagMillis 的一半以下, 避免在阈值附近来回切换.
+ */
+public class ReplicaLagMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private static final int STALE_CHECKS = 3;
+    // 返回 -1 表示副本上还没有回放过事务, 无法判断延迟
+    private static final String LAG_SQL =
+        "SELECT CASE " +
+        "  WHEN NOT pg_is_in_recovery() THEN 0 " +
+        "  WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+        "  ELSE COALESCE(CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 AS bigint), -1) " +
+        "END";
+
+    private final Vertx vertx;
+    private final Mutiny.SessionFactory replica;
+    private final long intervalMillis;
+    private final long maxLagMillis;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lagMillis = -1;
+    private volatile long checkedAt;
+    private volatile boolean healthy;
+    private long timerId = -1;
+
+    public ReplicaLagMonitor(Vertx vertx, Mutiny.SessionFactory replica, long intervalMillis, long maxLagMillis) {
+        this.vertx = vertx;
+        this.replica = replica;
+        this.intervalMillis = intervalMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    public synchronized void start() {
+        if (timerId < 0) {
+            timerId = vertx.setPeriodic(0, intervalMillis, id -> check());
+        }
+    }
+
+    public synchronized void stop() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    public boolean healthy() {
+        return healthy && System.currentTimeMillis() - checkedAt <= STALE_CHECKS * intervalMillis;
+    }
+
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("healthy", healthy())
+            .put("lagMillis", lagMillis)
+            .put("checks", checks.sum())
+            .put("failures", failures.sum());
+    }
+
+    private void check() {
+        // 上一次查询还没返回时跳过本轮
+        if (!checking.compareAndSet(false, true)) {
+            return;
+        }
+        checks.increment();
+        replica.withSession(session -> session.createNativeQuery(LAG_SQL, Long.class).getSingleResult())
+            .subscribe().with(
+                lag -> {
+                    lagMillis = lag;
+                    checkedAt = System.currentTimeMillis();
+                    update(lag >= 0 && lag <= (healthy ? maxLagMillis : maxLagMillis / 2));
+                    checking.set(false);
+                },
+                error -> {
+                    failures.increment();
+                    lagMillis = -1;
+                    update(false);
+                    logger.warn("查询副本复制延迟失败: {}", error.getMessage());
+                    checking.set(false);
+                });
+    }
+
+    private void update(boolean nowHealthy) {
+        if (nowHealthy != healthy) {
+            healthy = nowHealthy;
+            if (nowHealthy) {
+                logger.info("副本复制延迟 {} ms, 恢复读副本", lagMillis);
+            } else {
+                logger.warn("副本不可用或复制延迟过大({} ms), 读请求改走主库", lagMillis);
+            }
+        }
+    }
+}
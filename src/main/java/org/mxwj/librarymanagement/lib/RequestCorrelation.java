@@ -0,0 +1,69 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+
+/**
+ * 请求关联 id. 每个 HTTP 请求在自己的 Vert.x duplicated context 上绑定一个 id, 该请求的所有回调都在这个 context 上执行,
+ * 因此不需要在 event loop 线程之间传递 MDC(ThreadLocal). 日志中的 %X{requestId} 由 CorrelationContextDataProvider 从当前 context 读取.
+ *
+ * id 由进程随机前缀加自增序号组成, 生成时不加锁也不调用 UUID.
+ */
+public final class RequestCorrelation {
+    public static final String HEADER = "X-Request-Id";
+    public static final String MDC_KEY = "requestId";
+
+    private static final String LOCAL_KEY = RequestCorrelation.class.getName();
+    private static final String PREFIX = Long.toString(ThreadLocalRandom.current().nextLong(1L << 40, 1L << 41), 36) + "-";
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    // 绑定时预先构造好只读的日志上下文, 每条日志直接复用
+    private record Binding(String id, StringMap contextData) {}
+
+    private RequestCorrelation() {}
+
+    public static String newId() {
+        return PREFIX + Long.toString(SEQUENCE.incrementAndGet(), 36);
+    }
+
+    // 只绑定到 duplicated context, 共用的 event loop context 上不记录
+    public static boolean bind(Context context, String id) {
+        if (!(context instanceof ContextInternal internal) || !internal.isDuplicate()) {
+            return false;
+        }
+        SortedArrayStringMap contextData = new SortedArrayStringMap(1);
+        contextData.putValue(MDC_KEY, id);
+        contextData.freeze();
+        context.putLocal(LOCAL_KEY, new Binding(id, contextData));
+        return true;
+    }
+
+    // 当前请求的 id, 不在请求中时为 null
+    public static String currentId() {
+        Binding binding = current();
+        return binding == null ? null : binding.id();
+    }
+
+    static StringMap currentContextData() {
+        Binding binding = current();
+        return binding == null ? null : binding.contextData();
+    }
+
+    static Map<String, String> currentContextMap() {
+        Binding binding = current();
+        return binding == null ? Map.of() : Map.of(MDC_KEY, binding.id());
+    }
+
+    private static Binding current() {
+        Context context = Vertx.currentContext();
+        return context == null ? null : context.getLocal(LOCAL_KEY);
+    }
+}
@@ -0,0 +1,160 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.metrics.MetricsOptions;
+import io.vertx.core.spi.VertxMetricsFactory;
+import io.vertx.core.spi.metrics.PoolMetrics;
+import io.vertx.core.spi.metrics.VertxMetrics;
+
+/**
+ * 数据库连接池的指标, 通过 Vert.x 的 metrics SPI 采集: SQL 客户端的连接池在创建时调用 createPoolMetrics,
+ * 之后每次借出连接依次回调 submitted(进入等待队列) / begin(拿到连接) / end(归还).
+ *
+ * 只采集 SQL 连接池, 按连接池名称区分(见 PgPoolConfiguration). 需要通过 vertx(options) 创建 Vertx 来启用.
+ *
+ * 当前的 SQL 客户端在建立连接失败、等待超时时都不会回调 rejected, 所以等待中的请求逐个登记,
+ * 超过连接池的等待超时仍未拿到连接的视为失败, 从等待数中移除并计入 failed.
+ */
+public class SqlPoolMetrics implements VertxMetricsFactory {
+    private static final Map<String, Pool> POOLS = new ConcurrentHashMap<>();
+    // 连接池的等待超时, 由 PgPoolConfiguration 在创建连接池前登记; 未登记时用 PoolOptions 的默认值 30 秒
+    private static final Map<String, Long> MAX_WAIT_NANOS = new ConcurrentHashMap<>();
+    private static final long DEFAULT_MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // 创建启用本指标的 Vertx, 覆盖 options 中的 metrics 配置
+    public static Vertx vertx(VertxOptions options) {
+        return Vertx.builder()
+            .with(new VertxOptions(options).setMetricsOptions(new MetricsOptions().setEnabled(true)))
+            .withMetrics(new SqlPoolMetrics())
+            .build();
+    }
+
+    @Override
+    public VertxMetrics metrics(VertxOptions options) {
+        return new VertxMetrics() {
+            @Override
+            public PoolMetrics<?> createPoolMetrics(String poolType, String poolName, int maxPoolSize) {
+                if (!"sql".equals(poolType)) {
+                    return null;
+                }
+                Pool pool = new Pool(poolName, maxPoolSize,
+                    MAX_WAIT_NANOS.getOrDefault(poolName, DEFAULT_MAX_WAIT_NANOS));
+                POOLS.put(poolName, pool);
+                return pool;
+            }
+        };
+    }
+
+    public static void maxWait(String poolName, long timeout, TimeUnit unit) {
+        MAX_WAIT_NANOS.put(poolName, unit.toNanos(timeout));
+    }
+
+    // 连接池不存在(未启用 metrics 或尚未创建)时返回空对象
+    public static JsonObject stats(String poolName) {
+        Pool pool = POOLS.get(poolName);
+        return pool == null ? new JsonObject() : pool.stats();
+    }
+
+    private static final class Wait {
+        final long submittedAt = System.nanoTime();
+    }
+
+    private static final class Pool implements PoolMetrics<Object> {
+        private final String name;
+        private final int maxSize;
+        private final long maxWaitNanos;
+        private final AtomicInteger active = new AtomicInteger();
+        private final Set<Wait> waiting = ConcurrentHashMap.newKeySet();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private volatile long lastPrune = System.nanoTime();
+        // 从请求连接到拿到连接, 以及连接被占用的时长
+        private final LatencyHistogram acquire = new LatencyHistogram();
+        private final LatencyHistogram hold = new LatencyHistogram();
+
+        Pool(String name, int maxSize, long maxWaitNanos) {
+            this.name = name;
+            this.maxSize = maxSize;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        @Override
+        public Object submitted() {
+            Wait wait = new Wait();
+            waiting.add(wait);
+            if (wait.submittedAt - lastPrune > PRUNE_INTERVAL_NANOS) {
+                prune(wait.submittedAt);
+            }
+            return wait;
+        }
+
+        // 返回开始使用的时间, 归还时计算占用时长
+        @Override
+        public Object begin(Object submitted) {
+            Wait wait = (Wait) submitted;
+            waiting.remove(wait);
+            active.incrementAndGet();
+            long now = System.nanoTime();
+            acquire.recordNanos(now - wait.submittedAt);
+            return now;
+        }
+
+        @Override
+        public void rejected(Object submitted) {
+            if (waiting.remove((Wait) submitted)) {
+                rejected.increment();
+            }
+        }
+
+        @Override
+        public void end(Object beganAt, boolean succeeded) {
+            active.decrementAndGet();
+            hold.recordNanos(System.nanoTime() - (Long) beganAt);
+        }
+
+        private void prune(long now) {
+            lastPrune = now;
+            waiting.removeIf(wait -> {
+                if (now - wait.submittedAt <= maxWaitNanos) {
+                    return false;
+                }
+                failed.increment();
+                return true;
+            });
+        }
+
+        @Override
+        public void close() {
+            POOLS.remove(name, this);
+        }
+
+        JsonObject stats() {
+            prune(System.nanoTime());
+            int inUse = active.get();
+            return new JsonObject()
+                .put("maxSize", maxSize)
+                .put("active", inUse)
+                // 还能借出的连接数(上限减去在用), 包括空闲的和尚未建立的连接; metrics SPI 不回调连接的建立和关闭, 无法单独统计空闲连接
+                .put("available", Math.max(0, maxSize - inUse))
+                .put("waiting", waiting.size())
+                .put("acquired", acquire.count())
+                .put("rejected", rejected.sum())
+                .put("failed", failed.sum())
+                .put("acquireP50Micros", acquire.valueAtPercentile(50))
+                .put("acquireP99Micros", acquire.valueAtPercentile(99))
+                .put("acquireMaxMicros", acquire.valueAtPercentile(100))
+                .put("holdP50Micros", hold.valueAtPercentile(50))
+                .put("holdP99Micros", hold.valueAtPercentile(99));
+        }
+    }
+}
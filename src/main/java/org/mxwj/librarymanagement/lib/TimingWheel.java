@@ -0,0 +1,162 @@
+package org.mxwj.librarymanagement.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层哈希时间轮: LEVELS 层, 每层 2^BITS 个槽, 每个槽是一个侵入式双向链表.
+ *
+ * - schedule / cancel 为 O(1): 按到期 tick 与当前 tick 的差选层, 按到期 tick 的对应位选槽, 链表头插入 / 摘除
+ * - 每个 tick 先把到达边界的高层槽下放(cascade)到低层, 再触发第 0 层当前槽
+ * - tick 为 1 秒时覆盖 2^32 秒, 更远的定时器放在最高层, 下放时重新计算位置
+ *
+ * 回调在 advanceTo 的调用线程上、锁外执行.
+ */
+public class TimingWheel<T> {
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (BITS * LEVELS);
+
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        // 所在的槽, -1 表示已触发或已取消
+        private int slot = -1;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Consumer<T> onExpire;
+    @SuppressWarnings("unchecked")
+    private final Timeout<T>[] heads = (Timeout<T>[]) new Timeout<?>[LEVELS * SLOTS];
+
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, long startMillis, Consumer<T> onExpire) {
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.onExpire = onExpire;
+    }
+
+    // 已经过期的定时器在下一个 tick 触发
+    public synchronized Timeout<T> schedule(long deadlineMillis, T payload) {
+        long deadlineTick = Math.max(ceilDiv(deadlineMillis - startMillis, tickMillis), currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(payload, deadlineTick);
+        insert(timeout);
+        size++;
+        return timeout;
+    }
+
+    // 返回 false 表示已触发或已取消
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.slot < 0) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // 推进到 nowMillis 并触发期间到期的定时器
+    public void advanceTo(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+            while (currentTick < targetTick) {
+                currentTick++;
+                cascade();
+                int index = (int) (currentTick & MASK);
+                Timeout<T> timeout = heads[index];
+                heads[index] = null;
+                while (timeout != null) {
+                    Timeout<T> next = timeout.next;
+                    timeout.prev = null;
+                    timeout.next = null;
+                    timeout.slot = -1;
+                    expired.add(timeout.payload);
+                    size--;
+                    timeout = next;
+                }
+            }
+        }
+        for (T payload : expired) {
+            onExpire.accept(payload);
+        }
+    }
+
+    // 当前 tick 的低 BITS*level 位全为 0 时, 第 level 层对应槽中的定时器都落入接下来的范围, 逐个重新放置
+    private void cascade() {
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            long lowMask = (1L << (BITS * level)) - 1;
+            if ((currentTick & lowMask) != 0) {
+                continue;
+            }
+            int index = level * SLOTS + (int) ((currentTick >>> (BITS * level)) & MASK);
+            Timeout<T> timeout = heads[index];
+            heads[index] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                insert(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void insert(Timeout<T> timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        int index;
+        if (delta < SLOTS) {
+            index = (int) (timeout.deadlineTick & MASK);
+        } else {
+            long tick = delta >= MAX_SPAN ? currentTick + MAX_SPAN - 1 : timeout.deadlineTick;
+            int level = (63 - Long.numberOfLeadingZeros(tick - currentTick)) / BITS;
+            index = level * SLOTS + (int) ((tick >>> (BITS * level)) & MASK);
+        }
+        Timeout<T> head = heads[index];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        heads[index] = timeout;
+        timeout.slot = index;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
@@ -0,0 +1,29 @@
+package org.mxwj.librarymanagement.middleware;
+
+import java.util.regex.Pattern;
+
+import org.mxwj.librarymanagement.lib.RequestCorrelation;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * 为每个请求绑定关联 id(见 RequestCorrelation), 并在响应头中返回. 须注册为第一个处理器, 之后的日志都带上这个 id.
+ *
+ * 上游(网关、前端)传入的 X-Request-Id 只在长度和字符合法时沿用, 否则重新生成, 避免把任意内容写进日志.
+ */
+public class CorrelationIdHandler implements Handler<RoutingContext> {
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+
+    @Override
+    public void handle(RoutingContext context) {
+        String id = context.request().getHeader(RequestCorrelation.HEADER);
+        if (id == null || !VALID_ID.matcher(id).matches()) {
+            id = RequestCorrelation.newId();
+        }
+        RequestCorrelation.bind(Vertx.currentContext(), id);
+        context.response().putHeader(RequestCorrelation.HEADER, id);
+        context.next();
+    }
+}
@@ -1,11 +1,18 @@
 package org.mxwj.librarymanagement.middleware;
 
+import org.mxwj.librarymanagement.lib.LogSampler;
+import org.mxwj.librarymanagement.utils.ContextHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import graphql.schema.DataFetcher;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.RoutingContext;
 
 public class GraphQLAuthHandler {
-    
+    private static final Logger logger = LoggerFactory.getLogger(GraphQLAuthHandler.class);
+    // 每个受保护字段都会调用, debug 日志按秒采样
+    private static final LogSampler DEBUG_SAMPLER = new LogSampler(10);
+
     public static class AuthenticationException extends RuntimeException {
         public AuthenticationException(String message) {
             super(message);
@@ -24,17 +31,17 @@ public class GraphQLAuthHandler {
 
     public static DataFetcher<?> requireRole(DataFetcher<?> fetcher, int requiredRole) {
         return environment -> {
-            // 从 DataFetchingEnvironment 获取 RoutingContext
-            RoutingContext routingContext = environment.getGraphQlContext().get(RoutingContext.class);
-            if (routingContext == null) {
-                throw new AuthenticationException("上下文错误");
+            // HTTP 请求与 WebSocket 订阅的 principal 位置不同, 由 ContextHelper 统一获取
+            JsonObject userPrincipal = ContextHelper.getUserPrincipal(environment);
+
+            if (logger.isDebugEnabled() && DEBUG_SAMPLER.sample()) {
+                logger.debug("权限检查: field={}, sub={}, role={} (此前省略 {} 条)",
+                    environment.getField().getName(),
+                    userPrincipal == null ? null : userPrincipal.getString("sub"),
+                    userPrincipal == null ? null : userPrincipal.getString("role"),
+                    DEBUG_SAMPLER.drainSuppressed());
             }
 
-            JsonObject userPrincipal = routingContext.get("userPrincipal");
-
-            System.out.println("Context: " + routingContext);
-            System.out.println("User Principal: " + userPrincipal);
-
             if (userPrincipal == null) {
                 throw new AuthenticationException("未登录");
             }
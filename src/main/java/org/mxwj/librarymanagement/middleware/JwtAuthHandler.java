@@ -0,0 +1,72 @@
+package org.mxwj.librarymanagement.middleware;
+
+import org.mxwj.librarymanagement.lib.LogSampler;
+import org.mxwj.librarymanagement.utils.JWTUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * 解析 Authorization: Bearer <token>, 验证通过后把 principal 放到 RoutingContext 的 "userPrincipal" 上.
+ * 没有 token 的请求直接放行, 由后续的处理器决定是否需要登录.
+ *
+ * 请求体还未读取时(流式上传的路由在 BodyHandler 之前), 验证期间先暂停请求, 由后续处理器负责恢复读取.
+ */
+public class JwtAuthHandler implements Handler<RoutingContext> {
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthHandler.class);
+    // 每个请求都会经过, debug 日志按秒采样
+    private static final LogSampler DEBUG_SAMPLER = new LogSampler(10);
+
+    private final JWTUtils jwtUtils;
+
+    public JwtAuthHandler(JWTUtils jwtUtils) {
+        this.jwtUtils = jwtUtils;
+    }
+
+    //TODO 第一次启动后如果输入一个不存在的token会导致服务器错误
+    @Override
+    public void handle(RoutingContext context) {
+        HttpServerRequest request = context.request();
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            context.next();
+            return;
+        }
+        if (!request.isEnded()) {
+            request.pause();
+        }
+
+        String token = authHeader.substring(7);
+        try {
+            jwtUtils.validateToken(token)
+            .onSuccess(user -> {
+                // 将用户信息存储在 RoutingContext 中
+                context.put("userPrincipal", user.principal());
+                if (logger.isDebugEnabled() && DEBUG_SAMPLER.sample()) {
+                    logger.debug("JWT验证通过: sub={} (此前省略 {} 条)",
+                        user.principal().getString("sub"), DEBUG_SAMPLER.drainSuppressed());
+                }
+
+                context.next();
+            })
+            .onFailure(err -> {
+                logger.warn("JWT验证失败: {}", err.getMessage());
+                // 返回401状态码和错误信息，而不是直接调用context.fail()
+                context.response()
+                    .setStatusCode(401)
+                    .putHeader("Content-Type", "application/json")
+                    .end("{\"error\": \"Unauthorized\", \"message\": \"Invalid or expired token\"}");
+            });
+        } catch (Exception e) {
+            logger.error("处理JWT过程中发生异常", e);
+            // 捕获所有可能的异常
+            context.response()
+                .setStatusCode(401)
+                .putHeader("Content-Type", "application/json")
+                .end("{\"error\": \"Unauthorized\", \"message\": \"Invalid token format\"}");
+        }
+    }
+}
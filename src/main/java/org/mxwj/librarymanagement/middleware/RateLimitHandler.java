@@ -0,0 +1,305 @@
+package org.mxwj.librarymanagement.middleware;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mxwj.librarymanagement.graphql.QueryDocumentCache;
+import org.mxwj.librarymanagement.lib.LocalRateLimiter;
+import org.mxwj.librarymanagement.lib.RedisClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.InlineFragment;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.parser.Parser;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Request;
+
+/**
+ * /graphql 的限流, 放在 BodyHandler 和 JwtAuthHandler 之后.
+ *
+ * 每个请求都计入默认策略一次; 查询中每出现一次 login / register / searchBooks 等字段(含别名和批量请求中的每个操作),
+ * 再计入对应字段的策略一次. 查询内容取自解析后的文档: 只带 APQ 哈希的请求从 QueryDocumentCache 取已缓存的文档,
+ * 未缓存的哈希不会被执行, 只计默认策略. 已登录用户按账户计数, 匿名请求按客户端 IP 计数.
+ *
+ * 先用本地 GCRA 预过滤: 单个实例上就已超限的客户端在全局也必然超限, 直接拒绝, 不访问 Redis.
+ * 通过预过滤后用一次 Lua 脚本在 Redis 中原子地检查并更新本请求涉及的所有 key(同一个 hash tag, 集群模式下同槽).
+ * 本地和 Redis 都是全部策略通过才计入, 被任一策略拒绝的请求不占用其他策略的额度.
+ * Redis 出错或超时后 REDIS_BACKOFF_MS 内只做本地限流.
+ */
+public class RateLimitHandler implements Handler<RoutingContext> {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitHandler.class);
+
+    private static final int MAX_LOCAL_KEYS = 100_000;
+    private static final long REDIS_TIMEOUT_MS = 50;
+    private static final long REDIS_BACKOFF_MS = 5000;
+
+    // KEYS: 各策略的 key; ARGV: 每个 key 依次为 interval(已乘以次数), period(毫秒). 任一 key 超限时不更新任何 key, 返回需等待的毫秒数
+    private static final String GCRA_SCRIPT =
+        "local t = redis.call('TIME') " +
+        "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+        "local wait = 0 " +
+        "local tats = {} " +
+        "for i, key in ipairs(KEYS) do " +
+        "  local interval = tonumber(ARGV[2 * i - 1]) " +
+        "  local period = tonumber(ARGV[2 * i]) " +
+        "  local tat = tonumber(redis.call('GET', key) or now) " +
+        "  if tat < now then tat = now end " +
+        "  tats[i] = tat + interval " +
+        "  if tats[i] - period - now > wait then wait = tats[i] - period - now end " +
+        "end " +
+        "if wait > 0 then return wait end " +
+        "for i, key in ipairs(KEYS) do " +
+        "  redis.call('SET', key, tats[i], 'PX', tats[i] - now) " +
+        "end " +
+        "return 0";
+
+    /** period 毫秒内最多 limit 个请求 */
+    public record Policy(String name, int limit, long periodMillis) {
+        long intervalMillis() {
+            return Math.max(1, periodMillis / limit);
+        }
+    }
+
+    // 某个策略在本请求中计入的次数
+    private record Charge(Policy policy, int count) {
+        long intervalMillis() {
+            return policy.intervalMillis() * count;
+        }
+    }
+
+    private final RedisClient redis;
+    private final QueryDocumentCache documents;
+    private final Policy defaultPolicy;
+    private final Map<String, Policy> fieldPolicies;
+    private final LocalRateLimiter local;
+
+    private volatile long redisRetryAt;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejectedLocal = new LongAdder();
+    private final LongAdder rejectedRedis = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+    private final LongAdder localOnly = new LongAdder();
+
+    public RateLimitHandler(RedisClient redis, QueryDocumentCache documents, Policy defaultPolicy, List<Policy> fieldPolicies) {
+        this.redis = redis;
+        this.documents = documents;
+        this.defaultPolicy = defaultPolicy;
+        this.fieldPolicies = new LinkedHashMap<>();
+        for (Policy policy : fieldPolicies) {
+            this.fieldPolicies.put(policy.name(), policy);
+        }
+        long maxPeriod = fieldPolicies.stream().mapToLong(Policy::periodMillis).max().orElse(0);
+        this.local = new LocalRateLimiter(MAX_LOCAL_KEYS, Math.max(maxPeriod, defaultPolicy.periodMillis()),
+            System::currentTimeMillis);
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        List<Charge> charges = chargesFor(context);
+        String client = clientKey(context);
+
+        List<LocalRateLimiter.Permit> permits = new ArrayList<>(charges.size());
+        for (Charge charge : charges) {
+            permits.add(new LocalRateLimiter.Permit(client + ":" + charge.policy().name(),
+                charge.intervalMillis(), charge.policy().periodMillis()));
+        }
+        long localWait = local.tryAcquire(permits);
+        if (localWait > 0) {
+            rejectedLocal.increment();
+            reject(context, localWait);
+            return;
+        }
+
+        if (System.currentTimeMillis() < redisRetryAt) {
+            localOnly.increment();
+            allow(context);
+            return;
+        }
+
+        Request request = Request.cmd(Command.EVAL).arg(GCRA_SCRIPT).arg(charges.size());
+        for (Charge charge : charges) {
+            // hash tag 保证同一客户端的所有 key 落在同一个槽
+            request.arg("rl:{" + client + "}:" + charge.policy().name());
+        }
+        for (Charge charge : charges) {
+            request.arg(charge.intervalMillis()).arg(charge.policy().periodMillis());
+        }
+
+        redis.send(request)
+            .timeout(REDIS_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .onSuccess(response -> {
+                long wait = response == null ? 0 : response.toLong();
+                if (wait > 0) {
+                    rejectedRedis.increment();
+                    reject(context, wait);
+                } else {
+                    allow(context);
+                }
+            })
+            .onFailure(err -> {
+                redisErrors.increment();
+                localOnly.increment();
+                redisRetryAt = System.currentTimeMillis() + REDIS_BACKOFF_MS;
+                logger.warn("限流 Redis 不可用, {} ms 内只做本地限流: {}", REDIS_BACKOFF_MS, err.getMessage());
+                allow(context);
+            });
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("allowed", allowed.sum())
+            .put("rejectedLocal", rejectedLocal.sum())
+            .put("rejectedRedis", rejectedRedis.sum())
+            .put("redisErrors", redisErrors.sum())
+            .put("localOnly", localOnly.sum())
+            .put("localKeys", local.size());
+    }
+
+    private void allow(RoutingContext context) {
+        allowed.increment();
+        context.next();
+    }
+
+    private void reject(RoutingContext context, long waitMillis) {
+        context.response()
+            .setStatusCode(429)
+            .putHeader("Retry-After", String.valueOf((waitMillis + 999) / 1000))
+            .putHeader("Content-Type", "application/json")
+            .end("{\"error\": \"Too Many Requests\", \"message\": \"请求过于频繁, 请稍后再试\"}");
+    }
+
+    private static String clientKey(RoutingContext context) {
+        JsonObject principal = context.get("userPrincipal");
+        if (principal != null && principal.getString("sub") != null) {
+            return "u:" + principal.getString("sub");
+        }
+        return "ip:" + context.request().remoteAddress().host();
+    }
+
+    // 默认策略计 1 次, 字段策略按所有查询中该字段出现的次数计; 批量请求合并所有查询
+    private List<Charge> chargesFor(RoutingContext context) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Document document : documents(context)) {
+            for (Definition<?> definition : document.getDefinitions()) {
+                if (definition instanceof OperationDefinition operation) {
+                    countFields(operation.getSelectionSet(), counts);
+                } else if (definition instanceof FragmentDefinition fragment) {
+                    countFields(fragment.getSelectionSet(), counts);
+                }
+            }
+        }
+
+        List<Charge> charges = new ArrayList<>();
+        charges.add(new Charge(defaultPolicy, 1));
+        for (Policy policy : fieldPolicies.values()) {
+            Integer count = counts.get(policy.name());
+            if (count != null) {
+                charges.add(new Charge(policy, count));
+            }
+        }
+        return charges;
+    }
+
+    // 每个字段节点计一次, 不区分别名; 片段定义单独计, 所以同一片段展开多次也只计一次(展开后的同名字段会被合并执行)
+    private void countFields(SelectionSet selectionSet, Map<String, Integer> counts) {
+        if (selectionSet == null) {
+            return;
+        }
+        for (Selection<?> selection : selectionSet.getSelections()) {
+            if (selection instanceof Field field) {
+                if (fieldPolicies.containsKey(field.getName())) {
+                    counts.merge(field.getName(), 1, Integer::sum);
+                }
+                countFields(field.getSelectionSet(), counts);
+            } else if (selection instanceof InlineFragment fragment) {
+                countFields(fragment.getSelectionSet(), counts);
+            }
+        }
+    }
+
+    private List<Document> documents(RoutingContext context) {
+        List<Document> result = new ArrayList<>();
+        String queryParam = context.request().getParam("query");
+        String extensionsParam = context.request().getParam("extensions");
+        if (queryParam != null || extensionsParam != null) {
+            addDocument(result, queryParam, persistedHash(parseObject(extensionsParam)));
+        }
+        Buffer body = context.body().buffer();
+        if (body == null || body.length() == 0) {
+            return result;
+        }
+        try {
+            Object json = Json.decodeValue(body);
+            if (json instanceof JsonObject object) {
+                addDocument(result, object);
+            } else if (json instanceof JsonArray array) {
+                for (Object item : array) {
+                    if (item instanceof JsonObject object) {
+                        addDocument(result, object);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // 格式错误的请求体交给 GraphQLHandler 报错, 这里只计默认策略
+        }
+        return result;
+    }
+
+    private void addDocument(List<Document> result, JsonObject request) {
+        Object query = request.getValue("query");
+        Object extensions = request.getValue("extensions");
+        addDocument(result, query instanceof String string ? string : null,
+            persistedHash(extensions instanceof JsonObject json ? json : null));
+    }
+
+    // 先取 QueryDocumentCache 中已解析的文档, 未命中时解析查询文本; 无法解析的查询不会被执行, 不计字段策略
+    private void addDocument(List<Document> result, String query, String persistedHash) {
+        Document document = documents.cachedDocument(query, persistedHash);
+        if (document == null && query != null && !query.isBlank()) {
+            try {
+                document = Parser.parse(query);
+            } catch (RuntimeException e) {
+                return;
+            }
+        }
+        if (document != null) {
+            result.add(document);
+        }
+    }
+
+    private static JsonObject parseObject(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return new JsonObject(json);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String persistedHash(JsonObject extensions) {
+        Object persistedQuery = extensions == null ? null : extensions.getValue("persistedQuery");
+        Object hash = persistedQuery instanceof JsonObject json ? json.getValue("sha256Hash") : null;
+        return hash instanceof String string ? string : null;
+    }
+}
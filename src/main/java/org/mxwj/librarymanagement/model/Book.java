@@ -47,10 +47,12 @@ public class Book {
     @Column(name = "description", columnDefinition = "TEXT")
     private String description; // 简介
 
-    @Column(name = "total_copies", columnDefinition = "INT DEFAULT 1")
+    // 库存只通过原生 UPDATE 增减(借还书、BookService.updateBook), 修改其他字段后 flush 整个实体时不写回,
+    // 否则会用读取时的旧值覆盖并发借还书的扣减
+    @Column(name = "total_copies", columnDefinition = "INT DEFAULT 1", updatable = false)
     private Integer totalCopies = 1; // 总册数 
 
-    @Column(name = "available_copies", columnDefinition = "INT DEFAULT 1")
+    @Column(name = "available_copies", columnDefinition = "INT DEFAULT 1", updatable = false)
     private Integer availableCopies = 1; // 可借册数
 
     @Column(name = "location", length = 50)
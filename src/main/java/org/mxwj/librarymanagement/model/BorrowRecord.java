@@ -8,7 +8,13 @@ import lombok.AllArgsConstructor;
 import java.time.OffsetDateTime;
 
 @Entity
-@Table(name = "borrow_record")
+@Table(name = "borrow_record", indexes = {
+    // 游标分页按 (created_at, id) seek
+    @Index(name = "idx_borrow_record_created_at_id", columnList = "created_at, id"),
+    @Index(name = "idx_borrow_record_account_created_at_id", columnList = "account_id, created_at, id"),
+    // 逾期扫描按 status = 0 过滤后以 (due_date, id) seek
+    @Index(name = "idx_borrow_record_status_due_date_id", columnList = "status, due_date, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -18,13 +24,13 @@ public class BorrowRecord {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    // 关系：多条 BorrowRecord 对应一个 Acconut
-    @ManyToOne 
+    // 关系：多条 BorrowRecord 对应一个 Acconut(懒加载, GraphQL 层通过 DataLoader 批量获取)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "account_id", nullable = false)
     private Account account; 
 
-    // 关系：多条 BorrowRecord 对应一个 Book
-    @ManyToOne 
+    // 关系：多条 BorrowRecord 对应一个 Book(懒加载, GraphQL 层通过 DataLoader 批量获取)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "book_id", nullable = false)
     private Book book;
 
@@ -0,0 +1,39 @@
+package org.mxwj.librarymanagement.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import lombok.Builder;
+import lombok.Data;
+
+// Relay 风格的游标分页结果, totalCount 仅在客户端查询该字段时计算
+@Data
+@Builder
+public class Connection<T> {
+    private List<Edge<T>> edges;
+    private ConnectionPageInfo pageInfo;
+    private Integer totalCount;
+
+    // rows 按 first + 1 条查询, 多出的一条只用于判断是否还有下一页
+    public static <T> Connection<T> of(List<T> rows, int first, Function<T, String> cursorOf, Long totalCount) {
+        boolean hasNextPage = rows.size() > first;
+        List<T> page = hasNextPage ? rows.subList(0, first) : rows;
+
+        List<Edge<T>> edges = new ArrayList<>(page.size());
+        for (T node : page) {
+            edges.add(new Edge<>(cursorOf.apply(node), node));
+        }
+
+        ConnectionPageInfo pageInfo = ConnectionPageInfo.builder()
+            .hasNextPage(hasNextPage)
+            .endCursor(edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor())
+            .build();
+
+        return Connection.<T>builder()
+            .edges(edges)
+            .pageInfo(pageInfo)
+            .totalCount(totalCount == null ? null : totalCount.intValue())
+            .build();
+    }
+}
@@ -0,0 +1,11 @@
+package org.mxwj.librarymanagement.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ConnectionPageInfo {
+    private boolean hasNextPage;
+    private String endCursor;
+}
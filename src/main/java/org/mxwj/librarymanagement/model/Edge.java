@@ -0,0 +1,11 @@
+package org.mxwj.librarymanagement.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class Edge<T> {
+    private String cursor;
+    private T node;
+}
@@ -0,0 +1,54 @@
+package org.mxwj.librarymanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "reservation", indexes = {
+    // 取队首: 按图书过滤等待中的预约后以 (priority DESC, created_at, id) 排序
+    @Index(name = "idx_reservation_book_status_priority", columnList = "book_id, status, priority, created_at, id"),
+    @Index(name = "idx_reservation_account_status", columnList = "account_id, status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Reservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id", nullable = false)
+    private Account account;
+
+    // 懒加载, GraphQL 层通过 DataLoader 批量获取
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "book_id", nullable = false)
+    private Book book;
+
+    // 预约时取 Account.userType, 数值大的优先; 同一优先级内先到先得
+    @Column(name = "priority", nullable = false, columnDefinition = "SMALLINT DEFAULT 0")
+    private Short priority = 0;
+
+    @Column(name = "status", columnDefinition = "SMALLINT DEFAULT 0")
+    private Short status = 0; // 0:等待中, 1:已借出, 2:已取消
+
+    // 还书时转借给该预约生成的借阅记录
+    @Column(name = "borrow_record_id")
+    private Long borrowRecordId;
+
+    @Column(name = "created_at", columnDefinition = "TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "updated_at", columnDefinition = "TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP")
+    private OffsetDateTime updatedAt;
+
+    // 在队列中的位置(从 1 开始), 仅等待中的预约有值, 查询时填充
+    @Transient
+    private Integer position;
+}
@@ -3,114 +3,150 @@ package org.mxwj.librarymanagement.service;
 import io.smallrye.mutiny.Uni;
 import org.hibernate.reactive.mutiny.Mutiny;
 import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.PasswordHasher;
+import org.mxwj.librarymanagement.lib.ReadRouter;
 import org.mxwj.librarymanagement.model.Account;
 import org.mxwj.librarymanagement.model.AccountPage;
+import org.mxwj.librarymanagement.model.Connection;
 import org.mxwj.librarymanagement.model.dto.LoginDTO;
 import org.mxwj.librarymanagement.model.dto.RegisterDTO;
 import org.mxwj.librarymanagement.model.dto.UpdateAccountStatusDTO;
 import org.mxwj.librarymanagement.model.vo.LoginVO;
+import org.mxwj.librarymanagement.utils.CursorUtils;
 import org.mxwj.librarymanagement.utils.JWTUtils;
 import org.mxwj.librarymanagement.model.PageInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import jakarta.persistence.NoResultException;
 
-import org.mindrot.jbcrypt.BCrypt;
 import java.time.OffsetDateTime;
+import java.util.List;
 
 public class AccountService {
+    private static final Logger logger = LoggerFactory.getLogger(AccountService.class);
+
     private final Mutiny.SessionFactory factory;
+    private final ReadRouter reads;
     private final JWTUtils jwtUtils;
+    private final PasswordHasher passwordHasher;
+    private final LastLoginWriter lastLoginWriter;
 
     public AccountService(Vertx vertx) {
+        this(new JWTUtils(vertx), new PasswordHasher(vertx), new LastLoginWriter(vertx));
+    }
+
+    public AccountService(JWTUtils jwtUtils, PasswordHasher passwordHasher, LastLoginWriter lastLoginWriter) {
         factory = DatabaseManager.getSessionFactory();
-        this.jwtUtils = new JWTUtils(vertx);
+        reads = DatabaseManager.getReadRouter();
+        this.jwtUtils = jwtUtils;
+        this.passwordHasher = passwordHasher;
+        this.lastLoginWriter = lastLoginWriter;
     }
 
+    // 密码校验在 worker 池中进行, 此时不持有数据库会话; cost 变化时顺便用新 cost 重新哈希
     public Uni<LoginVO> login(LoginDTO loginDTO) {
-        return factory.withSession(session -> {
-            // 先获取查询结果
-            return session.createQuery("FROM Account WHERE username = :username", Account.class)
+        return factory.withSession(session ->
+            session.createQuery("FROM Account WHERE username = :username", Account.class)
                 .setParameter("username", loginDTO.getUsername())
                 .getSingleResultOrNull()
-                .onItem().ifNull().failWith(() ->
-                    new NoResultException("用户不存在"))
-                .onItem().transformToUni(account -> {
-                    // 密码验证
-                    if (!BCrypt.checkpw(loginDTO.getPassword(), account.getPassword())) {
-                        return Uni.createFrom().failure(
-                            new NoResultException("密码错误"));
-                    }
-
-                    // 更新最后登录时间
-                    account.setLastLogin(OffsetDateTime.now());
-
-                    // 合并更新并生成 token
-                    return session.merge(account)
-                        .call(session::flush)
-                        .chain(() -> {
-                            Future<String> tokenFuture = jwtUtils.generateToken(account.getId().toString(), account.getUserType().toString());
-                            // 将 Vert.x Future 转换为 Mutiny Uni
-                            return Uni.createFrom().completionStage(tokenFuture.toCompletionStage());
-                        })
-                        .map(token -> LoginVO.builder()
-                            .token(token)
-                            .username(account.getUsername())
-                            .build());
-                });
-        });
+        )
+        .onItem().ifNull().failWith(() ->
+            new NoResultException("用户不存在"))
+        .chain(account -> passwordHasher.verify(loginDTO.getPassword(), account.getPassword())
+            .chain(matches -> {
+                // 密码验证
+                if (!matches) {
+                    return Uni.createFrom().failure(
+                        new NoResultException("密码错误"));
+                }
+
+                // 最后登录时间延迟批量写入, 不在登录路径上等待数据库
+                lastLoginWriter.record(account.getId(), OffsetDateTime.now());
+
+                // cost 变化时才需要同步写库
+                Uni<Integer> rehash = passwordHasher.needsRehash(account.getPassword())
+                    ? passwordHasher.hash(loginDTO.getPassword()).chain(hash -> updatePassword(account.getId(), hash))
+                    : Uni.createFrom().item(0);
+
+                // 生成 token
+                return rehash
+                    .chain(() -> {
+                        Future<String> tokenFuture = jwtUtils.generateToken(account.getId().toString(), account.getUserType().toString());
+                        // 将 Vert.x Future 转换为 Mutiny Uni
+                        return Uni.createFrom().completionStage(tokenFuture.toCompletionStage());
+                    })
+                    .map(token -> LoginVO.builder()
+                        .token(token)
+                        .username(account.getUsername())
+                        .build());
+            }));
     }
     // 登录时未检测账户是否被禁用
 
+    private Uni<Integer> updatePassword(Long accountId, String hash) {
+        return factory.withTransaction(session ->
+            session.createMutationQuery("UPDATE Account a SET a.password = :password WHERE a.id = :id")
+                .setParameter("password", hash)
+                .setParameter("id", accountId)
+                .executeUpdate());
+    }
+
     public Uni<Account> register(RegisterDTO registerDTO) {
-        return factory.withSession(session -> {
-            return session.createQuery("FROM Account WHERE username = :username", Account.class)
+        return factory.withSession(session ->
+            session.createQuery("FROM Account WHERE username = :username", Account.class)
                 .setParameter("username", registerDTO.getUsername())
                 .getSingleResultOrNull()
-                .onItem().ifNotNull().failWith(() ->
-                    new IllegalArgumentException("用户名已存在"))
-                .onItem().transformToUni(v -> {
-
-                    Account account = new Account();
-                    account.setUsername(registerDTO.getUsername());
-                    account.setPassword(BCrypt.hashpw(registerDTO.getPassword(), BCrypt.gensalt()));
-                    account.setEmail(registerDTO.getEmail());
-                    account.setCreatedAt(OffsetDateTime.now());
-                    account.setUserType((Integer) 0);
-                    account.setStatus((Integer) 1);
-
-                    return session.persist(account)
-                        .call(session::flush)
-                        .replaceWith(account);
-                });
-        });
+        )
+        .onItem().ifNotNull().failWith(() ->
+            new IllegalArgumentException("用户名已存在"))
+        .chain(() -> passwordHasher.hash(registerDTO.getPassword()))
+        .chain(hash -> factory.withTransaction(session -> {
+            Account account = new Account();
+            account.setUsername(registerDTO.getUsername());
+            account.setPassword(hash);
+            account.setEmail(registerDTO.getEmail());
+            account.setCreatedAt(OffsetDateTime.now());
+            account.setUserType((Integer) 0);
+            account.setStatus((Integer) 1);
+
+            return session.persist(account)
+                .call(session::flush)
+                .replaceWith(account);
+        }));
     }
 
     public Uni<Void> logout(String token) {
         return Uni.createFrom().completionStage(
             jwtUtils.revokeToken(token).toCompletionStage()
-        ).onFailure().invoke(error -> {
-            System.err.println("注销失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("注销失败", error));
     }
 
     // 根据ID查询账户
     public Uni<Account> findById(Long id) {
-        return factory.withSession(session ->
+        return reads.forRead().withSession(session ->
             session.find(Account.class, id)
                 .onItem().ifNull().failWith(() -> 
                     new NoResultException("未找到ID为 " + id + " 的账户"))
-        ).onFailure().invoke(error -> {
-            System.err.println("查询账户失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("查询账户失败", error));
+    }
+
+    // 按ID批量查询账户(供 DataLoader 使用), 一次 IN 查询, 返回顺序不保证
+    public Uni<List<Account>> findByIds(List<Long> ids) {
+        // 与 BookService.findByIds 并发派发, 用独立的无状态会话
+        return reads.forRead().openStatelessSession().chain(session ->
+            session.createQuery("FROM Account a WHERE a.id IN :ids", Account.class)
+                .setParameter("ids", ids)
+                .getResultList()
+                .eventually(session::close)
+        ).onFailure().invoke(error -> logger.error("批量查询账户失败", error));
     }
 
     // 分页查询账户列表
     public Uni<AccountPage> findAllPaged(int page, int size, String orderBy) {
-        return factory.withSession(session -> 
+        return reads.forRead().withSession(session -> 
              session.createQuery("SELECT COUNT(a) FROM Account a", Long.class)
                 .getSingleResult()
                 .chain(total -> {
@@ -135,10 +171,25 @@ public class AccountService {
                                 .build();
                         });
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("分页查询账户失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("分页查询账户失败", error));
+    }
+
+    // 游标分页查询账户: 以 id 作为 seek 条件, 不使用 OFFSET; 只有 includeTotal 时才执行 COUNT
+    public Uni<Connection<Account>> findConnection(String after, int first, boolean includeTotal) {
+        Long afterId = after == null ? 0L : CursorUtils.decodeId(after);
+        return reads.forRead().withSession(session -> {
+            Uni<Long> total = includeTotal
+                ? session.createQuery("SELECT COUNT(a) FROM Account a", Long.class).getSingleResult()
+                : Uni.createFrom().nullItem();
+
+            return total.chain(count ->
+                session.createQuery("FROM Account a WHERE a.id > :afterId ORDER BY a.id", Account.class)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(first + 1)
+                    .getResultList()
+                    .map(accounts -> Connection.of(accounts, first, account -> CursorUtils.encodeId(account.getId()), count))
+            );
+        }).onFailure().invoke(error -> logger.error("游标分页查询账户失败", error));
     }
 
     // 更新账户状态
@@ -152,10 +203,7 @@ public class AccountService {
                     return session.flush()
                         .replaceWith(account);
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("更新账户状态失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("更新账户状态失败", error));
     }
 
     // 更新账户类型
@@ -169,32 +217,26 @@ public class AccountService {
                     return session.flush()
                         .replaceWith(account);
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("更新账户类型失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("更新账户类型失败", error));
     }
 
-    // 重置密码
+    // 重置密码: 先在 worker 池中计算哈希, 再打开会话写入
     public Uni<Boolean> resetPassword(Long id, String newPassword) {
-        return factory.withSession(session ->
+        return passwordHasher.hash(newPassword).chain(hash -> factory.withSession(session ->
             session.find(Account.class, id)
                 .onItem().ifNull().failWith(() -> 
                     new NoResultException("未找到ID为 " + id + " 的账户"))
                 .flatMap(account -> {
-                    account.setPassword(BCrypt.hashpw(newPassword, BCrypt.gensalt()));
+                    account.setPassword(hash);
                     return session.flush()
                         .replaceWith(true);
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("重置密码失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        )).onFailure().invoke(error -> logger.error("重置密码失败", error));
     }
 
     // 搜索账户
     public Uni<AccountPage> searchAccounts(String keyword, int page, int size) {
-        return factory.withSession(session -> {
+        return reads.forRead().withSession(session -> {
             String baseQuery = "FROM Account a WHERE " +
                 "LOWER(a.username) LIKE LOWER(:keyword) OR " +
                 "LOWER(a.email) LIKE LOWER(:keyword)";
@@ -224,9 +266,6 @@ public class AccountService {
                                 .build();
                         });
                 });
-        }).onFailure().invoke(error -> {
-            System.err.println("搜索账户失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).onFailure().invoke(error -> logger.error("搜索账户失败", error));
     }
 }
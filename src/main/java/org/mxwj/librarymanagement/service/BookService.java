@@ -2,37 +2,146 @@ package org.mxwj.librarymanagement.service;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.hibernate.reactive.mutiny.Mutiny;
+import org.mxwj.librarymanagement.lib.BookCache;
+import org.mxwj.librarymanagement.lib.BookSearchIndex;
 import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.ReadRouter;
 import org.mxwj.librarymanagement.model.Book;
 import org.mxwj.librarymanagement.model.BooksPage;
+import org.mxwj.librarymanagement.model.Connection;
 import org.mxwj.librarymanagement.model.PageInfo;
 import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.smallrye.mutiny.Uni;
 
 public class BookService {
+    private static final Logger logger = LoggerFactory.getLogger(BookService.class);
+
+    private static final int INDEX_LOAD_CHUNK = 5000;
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+    private static final long DEFAULT_CACHE_TTL_MILLIS = 60_000;
+
+    // 修改总册数: 可借数按总册数的差值增减, 与并发借还书的原子增减互不覆盖; 新总册数小于已借出数时不更新
+    // 返回更新后的可借数, 总册数
+    private static final String UPDATE_COPIES_SQL =
+        "UPDATE book SET available_copies = available_copies + (CAST(:totalCopies AS int) - total_copies)," +
+        "                total_copies = CAST(:totalCopies AS int)" +
+        " WHERE id = :id AND total_copies - available_copies <= CAST(:totalCopies AS int)" +
+        " RETURNING available_copies, total_copies";
+
     private final Mutiny.SessionFactory factory;
+    private final ReadRouter reads;
+    private final BookSearchIndex searchIndex = new BookSearchIndex();
+    private final BookCache cache;
+    private final ChangeEvents changeEvents;
 
     public BookService() {
+        this(new BookCache(null, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MILLIS), null);
+    }
+
+    // changeEvents 在管理员修改库存后发布可借数变更, 供订阅推送; 为 null 时不发布
+    public BookService(BookCache cache, ChangeEvents changeEvents) {
         factory = DatabaseManager.getSessionFactory();
+        reads = DatabaseManager.getReadRouter();
+        this.cache = cache;
+        this.changeEvents = changeEvents;
+    }
+
+    // 启动时分批(按 id seek)加载全部图书到搜索索引, 加载完成前 searchBooks 仍走数据库
+    public Uni<Void> loadSearchIndex() {
+        return loadSearchIndexChunk(0L)
+            .invoke(searchIndex::markReady)
+            .onFailure().invoke(error -> logger.error("加载图书搜索索引失败", error));
+    }
+
+    // 与到期提醒的加载并发, 每块用独立的无状态会话(见 DueReminderService.loadChunk);
+    // 加载期间 create / update / delete 过的图书以在线修改为准, 见 BookSearchIndex.load
+    private Uni<Void> loadSearchIndexChunk(Long afterId) {
+        return factory.openStatelessSession().chain(session ->
+            session.createQuery(
+                    "SELECT b.id, b.title, b.author, b.isbn, b.publisher FROM Book b " +
+                    "WHERE b.id > :afterId ORDER BY b.id", Object[].class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(INDEX_LOAD_CHUNK)
+                .getResultList()
+                .eventually(session::close)
+        ).flatMap(rows -> {
+            for (Object[] row : rows) {
+                searchIndex.load((Long) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4]);
+            }
+            if (rows.size() < INDEX_LOAD_CHUNK) {
+                return Uni.createFrom().voidItem();
+            }
+            return loadSearchIndexChunk((Long) rows.get(rows.size() - 1)[0]);
+        });
+    }
+
+    private void indexBook(Book book) {
+        searchIndex.put(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn(), book.getPublisher());
     }
     
-    // 查询单本图书
+    // 查询单本图书: 先查本地缓存, 未命中再查库并写入缓存
+    // 回填缓存的查询固定走主库, 避免把副本上的旧数据写进缓存
     public Uni<Book> findById(Long id) {
+        Book cached = cache.get(id);
+        if (cached != null) {
+            return Uni.createFrom().item(cached);
+        }
+        long generation = cache.generation();
         return factory.withSession(session ->
             session.find(Book.class, id)
                 .onItem().ifNull().failWith(() -> 
                     new IllegalArgumentException("未找到ID为 " + id + " 的图书"))
-        ).onFailure().invoke(error -> {
-            System.err.println("查询图书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).invoke(book -> cache.put(book, generation))
+        .onFailure().invoke(error -> logger.error("查询图书失败", error));
+    }
+
+    // 按ID批量查询图书(供 DataLoader 使用), 缓存未命中的部分一次 IN 查询, 返回顺序不保证
+    public Uni<List<Book>> findByIds(List<Long> ids) {
+        List<Book> found = new ArrayList<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Book cached = cache.get(id);
+            if (cached != null) {
+                found.add(cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Uni.createFrom().item(found);
+        }
+
+        long generation = cache.generation();
+        // 同一请求的 book / account 两个 DataLoader 在同一个 context 上同时派发, withSession 会让它们共用一个 session;
+        // 每批用独立的无状态会话
+        return factory.openStatelessSession().chain(session ->
+            session.createQuery("FROM Book b WHERE b.id IN :ids", Book.class)
+                .setParameter("ids", missing)
+                .getResultList()
+                .eventually(session::close)
+        ).map(loaded -> {
+            for (Book book : loaded) {
+                cache.put(book, generation);
+                found.add(book);
+            }
+            return found;
+        }).onFailure().invoke(error -> logger.error("批量查询图书失败", error));
     }
 
     public Uni<BooksPage> findAllPaged(int page, int size) {
-        return factory.withSession(session -> 
+        return reads.forRead().withSession(session -> 
             // 先执行计数查询获取总数
             session.createQuery("SELECT COUNT(b) FROM Book b", Long.class)
                 .getSingleResult()
@@ -59,15 +168,70 @@ public class BookService {
                                 .build();
                         });
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("分页查询图书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("分页查询图书失败", error));
     }
 
-    // 搜索图书(带分页)
+    // 游标分页查询图书: 以 id 作为 seek 条件, 不使用 OFFSET; 只有 includeTotal 时才执行 COUNT
+    public Uni<Connection<Book>> findConnection(String after, int first, boolean includeTotal) {
+        Long afterId = after == null ? 0L : CursorUtils.decodeId(after);
+        return reads.forRead().withSession(session -> {
+            Uni<Long> total = includeTotal
+                ? session.createQuery("SELECT COUNT(b) FROM Book b", Long.class).getSingleResult()
+                : Uni.createFrom().nullItem();
+
+            return total.chain(count ->
+                session.createQuery("FROM Book b WHERE b.id > :afterId ORDER BY b.id", Book.class)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(first + 1)
+                    .getResultList()
+                    .map(books -> Connection.of(books, first, book -> CursorUtils.encodeId(book.getId()), count))
+            );
+        }).onFailure().invoke(error -> logger.error("游标分页查询图书失败", error));
+    }
+
+    // 搜索图书(带分页): 索引就绪后由内存倒排索引排序并给出精确总数, 数据库只按主键取当前页
     public Uni<BooksPage> searchBooks(String keyword, int page, int size) {
-        return factory.withSession(session -> {
+        if (!searchIndex.isReady()) {
+            return searchBooksByLike(keyword, page, size);
+        }
+
+        BookSearchIndex.SearchResult result = searchIndex.search(keyword, (page - 1) * size, size);
+        Uni<List<Book>> books = result.bookIds().isEmpty()
+            ? Uni.createFrom().item(List.of())
+            : findByIds(result.bookIds()).map(found -> {
+                // 按索引给出的排名重新排列
+                Map<Long, Book> byId = new HashMap<>();
+                found.forEach(book -> byId.put(book.getId(), book));
+                List<Book> ordered = new ArrayList<>(found.size());
+                for (Long id : result.bookIds()) {
+                    Book book = byId.get(id);
+                    if (book != null) {
+                        ordered.add(book);
+                    }
+                }
+                return ordered;
+            });
+
+        return books.map(content -> {
+            int totalPages = (int) Math.ceil((double) result.total() / size);
+            PageInfo pageInfo = PageInfo.builder()
+                .currentPage(page)
+                .pageSize(size)
+                .totalPages(totalPages)
+                .totalElements(result.total())
+                .hasNext(page < totalPages)
+                .build();
+
+            return BooksPage.builder()
+                .content(content)
+                .pageInfo(pageInfo)
+                .build();
+        });
+    }
+
+    // 搜索图书(数据库 LIKE 查询), 仅在索引加载完成前使用
+    private Uni<BooksPage> searchBooksByLike(String keyword, int page, int size) {
+        return reads.forRead().withSession(session -> {
             String baseQuery = "FROM Book b WHERE " +
                 "LOWER(b.title) LIKE LOWER(:keyword) OR " +
                 "LOWER(b.author) LIKE LOWER(:keyword) OR " +
@@ -102,10 +266,7 @@ public class BookService {
                                 .build();
                         });
                 });
-        }).onFailure().invoke(error -> {
-            System.err.println("搜索图书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).onFailure().invoke(error -> logger.error("搜索图书失败", error));
     }
     
     public Uni<Book> createBook(CreateBookDTO createBookDTO) {
@@ -150,16 +311,80 @@ public class BookService {
                     // 6. 持久化并返回
                     return session.persist(newBook)
                         .chain(session::flush)
-                        .replaceWith(newBook);
+                        .replaceWith(newBook)
+                        .invoke(this::indexBook);
                 });
-        }).onFailure().invoke(error -> {
-            System.err.println("创建图书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).invoke(cache::update)
+        .onFailure().invoke(error -> logger.error("创建图书失败", error));
+    }
+
+    // 批量导入: 库中已存在的 ISBN 跳过, 其余用一条多行 INSERT 写入, 整批在一个事务中
+    // rows 中的 ISBN 由调用方保证互不重复; 返回实际插入的 ISBN
+    public Uni<Set<String>> importBooks(List<CreateBookDTO> rows) {
+        List<String> isbns = rows.stream().map(CreateBookDTO::getIsbn).toList();
+        return factory.withTransaction(session ->
+            session.createQuery("SELECT b.isbn FROM Book b WHERE b.isbn IN :isbns", String.class)
+                .setParameter("isbns", isbns)
+                .getResultList()
+                .chain(existing -> {
+                    Set<String> skip = new HashSet<>(existing);
+                    List<CreateBookDTO> fresh = rows.stream().filter(row -> !skip.contains(row.getIsbn())).toList();
+                    if (fresh.isEmpty()) {
+                        return Uni.createFrom().item(List.<Object[]>of());
+                    }
+                    return insertBooks(session, fresh);
+                })
+        ).map(inserted -> {
+            Set<String> insertedIsbns = new HashSet<>();
+            for (Object[] row : inserted) {
+                searchIndex.put(((Number) row[0]).longValue(), (String) row[1], (String) row[2], (String) row[3], (String) row[4]);
+                insertedIsbns.add((String) row[3]);
+            }
+            return insertedIsbns;
+        }).onFailure().invoke(error -> logger.error("批量导入图书失败", error));
+    }
+
+    // ON CONFLICT 兜底并发导入同一 ISBN 的情况, 冲突的行不出现在 RETURNING 中
+    // 原生查询不能绑定 null, 可选字段缺省时传空串, 由 NULLIF 转回 NULL
+    private Uni<List<Object[]>> insertBooks(Mutiny.Session session, List<CreateBookDTO> rows) {
+        StringBuilder sql = new StringBuilder(
+            "INSERT INTO book (isbn, title, author, publisher, publish_date, category, description, " +
+            "total_copies, available_copies, location, created_at, updated_at) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(CAST(:isbn").append(i).append(" AS text), CAST(:title").append(i).append(" AS text), ")
+                .append("NULLIF(CAST(:author").append(i).append(" AS text), ''), NULLIF(CAST(:publisher").append(i).append(" AS text), ''), ")
+                .append("CAST(NULLIF(CAST(:publishDate").append(i).append(" AS text), '') AS date), NULLIF(CAST(:category").append(i).append(" AS text), ''), ")
+                .append("NULLIF(CAST(:description").append(i).append(" AS text), ''), CAST(:copies").append(i).append(" AS int), ")
+                .append("CAST(:copies").append(i).append(" AS int), NULLIF(CAST(:location").append(i).append(" AS text), ''), now(), now())");
+        }
+        sql.append(" ON CONFLICT (isbn) DO NOTHING RETURNING id, title, author, isbn, publisher");
+
+        Mutiny.SelectionQuery<Object[]> query = session.createNativeQuery(sql.toString(), Object[].class);
+        for (int i = 0; i < rows.size(); i++) {
+            CreateBookDTO row = rows.get(i);
+            Integer copies = row.getTotalCopies();
+            query.setParameter("isbn" + i, row.getIsbn())
+                .setParameter("title" + i, row.getTitle())
+                .setParameter("author" + i, orEmpty(row.getAuthor()))
+                .setParameter("publisher" + i, orEmpty(row.getPublisher()))
+                .setParameter("publishDate" + i, orEmpty(row.getPublishDate()))
+                .setParameter("category" + i, orEmpty(row.getCategory()))
+                .setParameter("description" + i, orEmpty(row.getDescription()))
+                .setParameter("copies" + i, copies == null || copies < 1 ? 1 : copies)
+                .setParameter("location" + i, orEmpty(row.getLocation()));
+        }
+        return query.getResultList();
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
     }
 
     public Uni<Book> updateBook(Long id, CreateBookDTO updateBookDTO) {
-        return factory.withSession(session -> {
+        return factory.withTransaction(session -> {
             // 1. 先检查要更新的书是否存在
             return session.find(Book.class, id)
                 .onItem().ifNull().failWith(() -> 
@@ -191,32 +416,47 @@ public class BookService {
                     
                     book.setCategory(updateBookDTO.getCategory());
                     book.setDescription(updateBookDTO.getDescription());
-                    
-                    // 5. 更新库存信息 - 需要保持总数 >= 已借出数量
-                    Integer newTotalCopies = updateBookDTO.getTotalCopies();
-                    if (newTotalCopies != null && newTotalCopies >= 1) {
-                        int borrowedCopies = book.getTotalCopies() - book.getAvailableCopies();
-                        if (newTotalCopies < borrowedCopies) {
-                            throw new IllegalArgumentException(
-                                "新的总册数(" + newTotalCopies + 
-                                ")不能小于已借出的册数(" + borrowedCopies + ")"
-                            );
-                        }
-                        book.setTotalCopies(newTotalCopies);
-                        book.setAvailableCopies(newTotalCopies - borrowedCopies);
-                    }
-                    
                     book.setLocation(updateBookDTO.getLocation());
                     book.setUpdatedAt(OffsetDateTime.now());
 
-                    // 6. 保存更新
-                    return session.flush()
-                        .replaceWith(book);
+                    // 5. 保存更新(不含库存)
+                    Uni<Book> updated = session.flush().replaceWith(book);
+
+                    // 6. 更新库存信息 - 需要保持总数 >= 已借出数量
+                    Integer newTotalCopies = updateBookDTO.getTotalCopies();
+                    if (newTotalCopies != null && newTotalCopies >= 1) {
+                        updated = updated.chain(() -> updateCopies(session, book, newTotalCopies));
+                    }
+                    return updated.invoke(this::indexBook);
                 });
-        }).onFailure().invoke(error -> {
-            System.err.println("更新图书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).invoke(book -> {
+            cache.update(book);
+            if (changeEvents != null) {
+                changeEvents.bookAvailabilityChanged(book.getId(), book.getAvailableCopies(), book.getTotalCopies());
+            }
+        })
+        .onFailure().invoke(error -> logger.error("更新图书失败", error));
+    }
+
+    // 见 UPDATE_COPIES_SQL; 更新成功后把数据库中的最新库存写回实体(这两列不随实体 flush)
+    private Uni<Book> updateCopies(Mutiny.Session session, Book book, int newTotalCopies) {
+        return session.createNativeQuery(UPDATE_COPIES_SQL, Object[].class)
+            .setParameter("id", book.getId())
+            .setParameter("totalCopies", newTotalCopies)
+            .getSingleResultOrNull()
+            .flatMap(row -> {
+                if (row == null) {
+                    return session.createNativeQuery(
+                            "SELECT total_copies - available_copies FROM book WHERE id = :id", Integer.class)
+                        .setParameter("id", book.getId())
+                        .getSingleResult()
+                        .flatMap(borrowedCopies -> Uni.createFrom().<Book>failure(new IllegalArgumentException(
+                            "新的总册数(" + newTotalCopies + ")不能小于已借出的册数(" + borrowedCopies + ")")));
+                }
+                book.setAvailableCopies(((Number) row[0]).intValue());
+                book.setTotalCopies(((Number) row[1]).intValue());
+                return Uni.createFrom().item(book);
+            });
     }
 
     public Uni<Boolean> deleteBook(Long id) {
@@ -236,12 +476,11 @@ public class BookService {
                     // 3. 执行删除
                     return session.remove(book)
                         .chain(session::flush)
+                        .invoke(() -> searchIndex.remove(id))
                         .replaceWith(true);
                 });
-        }).onFailure().invoke(error -> {
-            System.err.println("删除图书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).invoke(() -> cache.invalidate(id))
+        .onFailure().invoke(error -> logger.error("删除图书失败", error));
     }
 
 }
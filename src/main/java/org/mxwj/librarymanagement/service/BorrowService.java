@@ -1,88 +1,212 @@
 package org.mxwj.librarymanagement.service;
 
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import org.hibernate.reactive.mutiny.Mutiny;
+import org.mxwj.librarymanagement.lib.BookCache;
 import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.ReadRouter;
 import org.mxwj.librarymanagement.model.Account;
 import org.mxwj.librarymanagement.model.Book;
 import org.mxwj.librarymanagement.model.BorrowRecord;
 import org.mxwj.librarymanagement.model.BorrowRecordsPage;
+import org.mxwj.librarymanagement.model.Connection;
 import org.mxwj.librarymanagement.model.PageInfo;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import io.smallrye.mutiny.Uni;
 
 public class BorrowService {
+    private static final Logger logger = LoggerFactory.getLogger(BorrowService.class);
+
     private final Mutiny.SessionFactory factory;
+    private final ReadRouter reads;
+    private final BookCache bookCache;
+    private final DueReminderService dueReminders;
+    private final ReservationService reservations;
+    private final ChangeEvents changeEvents;
     private static final int DEFAULT_BORROW_DAYS = 30; // 默认借阅期限30天
 
+    // 同一账户的借书串行执行: CHECKOUT_SQL 中的配额 COUNT 不加锁, READ COMMITTED 下同一账户的并发借书会都看到未超限.
+    // 事务级 advisory lock 以账户ID为 key, 提交或回滚时释放; CHECKOUT_SQL 在拿到锁之后才开始, 能看到前一次已提交的借阅
+    private static final String LOCK_ACCOUNT_SQL = "SELECT 1 FROM pg_advisory_xact_lock(CAST(:accountId AS bigint))";
+
+    // 借书: quota 计算当前借阅数(含已逾期未还)与上限, reserved 条件扣减库存, 最后写入借阅记录
+    // remarks 为空字符串表示没有备注(原生查询不能绑定 null 参数)
+    // 返回 新记录的各列(时间为微秒时间戳), 扣减后的可借数, 总册数; 调用方据此构造 BorrowRecord, 不再按 id 查询
+    private static final String CHECKOUT_SQL =
+        "WITH quota AS (" +
+        "  SELECT (SELECT COUNT(*) FROM borrow_record br" +
+        "          WHERE br.account_id = :accountId AND (br.status = 0 OR (br.status = 2 AND br.return_date IS NULL))) AS borrowed," +
+        "         COALESCE((SELECT ui.max_borrow_books FROM user_info ui" +
+        "                   WHERE ui.account_id = :accountId), 5) AS max_books" +
+        "), reserved AS (" +
+        "  UPDATE book SET available_copies = available_copies - 1, updated_at = now()" +
+        "  WHERE id = :bookId AND available_copies > 0" +
+        "    AND EXISTS (SELECT 1 FROM account a WHERE a.id = :accountId)" +
+        "    AND (SELECT q.borrowed < q.max_books FROM quota q)" +
+        "  RETURNING id, available_copies, total_copies" +
+        "), loan AS (" +
+        "  INSERT INTO borrow_record (account_id, book_id, borrow_date, due_date, status, remarks, created_at, updated_at)" +
+        "  SELECT CAST(:accountId AS bigint), r.id, now(), now() + make_interval(days => CAST(:borrowDays AS int))," +
+        "         0, NULLIF(CAST(:remarks AS text), ''), now(), now()" +
+        "  FROM reserved r" +
+        "  RETURNING id, borrow_date, due_date, status, remarks, created_at, updated_at" +
+        ") " +
+        "SELECT l.id, " + epochMicros("l.borrow_date") + ", " + epochMicros("l.due_date") + ", l.status, l.remarks, " +
+        "       " + epochMicros("l.created_at") + ", " + epochMicros("l.updated_at") + ", r.available_copies, r.total_copies " +
+        "FROM loan l, reserved r";
+
+    // 借书失败时查询具体原因: 账户数, 可借册数, 当前借阅数, 借阅上限
+    private static final String CHECKOUT_DIAGNOSE_SQL =
+        "SELECT (SELECT COUNT(*) FROM account a WHERE a.id = :accountId)," +
+        "       (SELECT b.available_copies FROM book b WHERE b.id = :bookId)," +
+        "       (SELECT COUNT(*) FROM borrow_record br WHERE br.account_id = :accountId AND (br.status = 0 OR (br.status = 2 AND br.return_date IS NULL)))," +
+        "       COALESCE((SELECT ui.max_borrow_books FROM user_info ui WHERE ui.account_id = :accountId), 5)";
+
+    // 归还一册: 有等待中的预约时直接借给队首(跳过已达借阅上限的用户), 否则库存 +1.
+    // 取队首用 SKIP LOCKED, 同一本书的并发还书各自取到不同的预约; 无队首时 released 才会更新库存.
+    // 总是返回一行: 预约ID, 新借阅记录ID, 账户ID, 应还日期(毫秒), 库存 +1 后的可借数, 总册数;
+    // 转借时后两列为空, 否则前四列为空
+    private static final String RELEASE_COPY_SQL =
+        "WITH head AS (" +
+        "  SELECT r.id, r.account_id FROM reservation r" +
+        "  WHERE r.book_id = :bookId AND r.status = 0" +
+        "    AND (SELECT COUNT(*) FROM borrow_record br" +
+        "         WHERE br.account_id = r.account_id AND (br.status = 0 OR (br.status = 2 AND br.return_date IS NULL)))" +
+        "        < COALESCE((SELECT ui.max_borrow_books FROM user_info ui WHERE ui.account_id = r.account_id), 5)" +
+        "  ORDER BY r.priority DESC, r.created_at, r.id" +
+        "  LIMIT 1" +
+        "  FOR UPDATE SKIP LOCKED" +
+        "), loan AS (" +
+        "  INSERT INTO borrow_record (account_id, book_id, borrow_date, due_date, status, remarks, created_at, updated_at)" +
+        "  SELECT h.account_id, CAST(:bookId AS bigint), now(), now() + make_interval(days => CAST(:borrowDays AS int))," +
+        "         0, '预约到书自动借出', now(), now()" +
+        "  FROM head h" +
+        "  RETURNING id, account_id, due_date" +
+        "), fulfilled AS (" +
+        "  UPDATE reservation r SET status = 1, borrow_record_id = l.id, updated_at = now()" +
+        "  FROM head h, loan l WHERE r.id = h.id" +
+        "  RETURNING r.id" +
+        "), released AS (" +
+        "  UPDATE book SET available_copies = available_copies + 1, updated_at = now()" +
+        "  WHERE id = :bookId AND NOT EXISTS (SELECT 1 FROM head)" +
+        "  RETURNING available_copies, total_copies" +
+        ") " +
+        "SELECT f.id, l.id, l.account_id, CAST(EXTRACT(EPOCH FROM l.due_date) * 1000 AS bigint)," +
+        "       (SELECT available_copies FROM released), (SELECT total_copies FROM released) " +
+        "FROM (SELECT 1) one LEFT JOIN fulfilled f ON true LEFT JOIN loan l ON true";
+
+    // 还书事务的结果: handoff 不为 null 表示副本转借给了预约队首, 否则 availableCopies / totalCopies 为回到库存后的数量;
+    // 丢失 / 损坏时三者都为 null
+    private record Returned(BorrowRecord record, ReservationService.Handoff handoff,
+                            Integer availableCopies, Integer totalCopies) {}
+
+    // 借书事务的结果: 新的借阅记录和扣减后的库存
+    private record Checkout(BorrowRecord record, int availableCopies, int totalCopies) {}
+
     public BorrowService() {
+        this(null, null, null, null);
+    }
+
+    // bookCache 与 BookService 共用, 借还书改变库存后使对应图书失效; 为 null 时不处理缓存
+    // dueReminders 在借书后登记到期提醒, 还书后取消; 为 null 时不发提醒
+    // reservations 在还书转借给预约队首后发布通知; 为 null 时只转借不通知
+    // changeEvents 发布库存和借阅记录变更, 供订阅推送; 为 null 时不发布
+    public BorrowService(BookCache bookCache, DueReminderService dueReminders, ReservationService reservations,
+                         ChangeEvents changeEvents) {
         factory = DatabaseManager.getSessionFactory();
+        reads = DatabaseManager.getReadRouter();
+        this.bookCache = bookCache;
+        this.dueReminders = dueReminders;
+        this.reservations = reservations;
+        this.changeEvents = changeEvents;
     }
 
     // 借书
+    // 配额检查、库存扣减、写借阅记录在同一条语句中完成:
+    // available_copies > 0 作为 UPDATE 的条件, 并发借最后一本时只有一个请求能命中, 不会超借;
+    // 配额按账户串行检查, 见 LOCK_ACCOUNT_SQL
     public Uni<BorrowRecord> borrowBook(Long accountId, Long bookId, String remarks) {
-        return factory.withTransaction((session, tx) -> 
-            // 1. 直接查找 Account
-            session.find(Account.class, accountId)
-                .onItem().ifNull().failWith(() -> 
-                    new IllegalArgumentException("账户不存在"))
-                .flatMap(account -> {
-                    // 2. 检查现有借阅数量
-                    return session.createQuery(
-                        "SELECT COUNT(br) FROM BorrowRecord br " +
-                        "WHERE br.account.id = :accountId AND br.status = 0", Long.class)
-                        .setParameter("accountId", accountId)
-                        .getSingleResult()
-                        .flatMap(currentBorrowCount -> {
-                            // 3. 通过左连接查询用户最大可借数量
-                            return session.createQuery(
-                                "SELECT COALESCE(ui.maxBorrowBooks, 5) FROM Account a " +
-                                "LEFT JOIN UserInfo ui ON a.id = ui.account.id " +
-                                "WHERE a.id = :accountId", Integer.class)
-                                .setParameter("accountId", accountId)
-                                .getSingleResult()
-                                .flatMap(maxBorrowBooks -> {
-                                    if (currentBorrowCount >= maxBorrowBooks) {
-                                        return Uni.createFrom().failure(
-                                            new IllegalStateException("超出最大借阅数量限制")
-                                        );
-                                    }
-
-                                    // 4. 检查图书是否可借
-                                    return session.find(Book.class, bookId)
-                                        .onItem().ifNull().failWith(() -> 
-                                            new IllegalArgumentException("图书不存在"))
-                                        .flatMap(book -> {
-                                            if (book.getAvailableCopies() <= 0) {
-                                                return Uni.createFrom().failure(
-                                                    new IllegalStateException("图书已全部借出")
-                                                );
-                                            }
-
-                                            // 5. 创建借阅记录
-                                            BorrowRecord record = new BorrowRecord();
-                                            record.setAccount(account);
-                                            record.setBook(book);
-                                            record.setBorrowDate(OffsetDateTime.now());
-                                            record.setDueDate(OffsetDateTime.now().plusDays(DEFAULT_BORROW_DAYS));
-                                            record.setStatus((short) 0);
-                                            record.setRemarks(remarks);
-                                            record.setCreatedAt(OffsetDateTime.now());
-                                            record.setUpdatedAt(OffsetDateTime.now());
-
-                                            // 6. 更新图书可用数量
-                                            book.setAvailableCopies(book.getAvailableCopies() - 1);
-
-                                            return session.persist(record)
-                                                .chain(() -> session.flush())
-                                                .replaceWith(record);
-                                        });
-                                });
-                        });
+        return factory.withTransaction(session ->
+            session.createNativeQuery(LOCK_ACCOUNT_SQL, Integer.class)
+                .setParameter("accountId", accountId)
+                .getSingleResult()
+                .chain(() -> session.createNativeQuery(CHECKOUT_SQL, Object[].class)
+                    .setParameter("accountId", accountId)
+                    .setParameter("bookId", bookId)
+                    .setParameter("borrowDays", DEFAULT_BORROW_DAYS)
+                    .setParameter("remarks", remarks == null ? "" : remarks)
+                    .getSingleResultOrNull())
+                .flatMap(row -> {
+                    if (row == null) {
+                        // 只有失败时才额外查询一次, 用于给出具体原因
+                        return explainCheckoutFailure(session, accountId, bookId);
+                    }
+                    BorrowRecord record = new BorrowRecord();
+                    record.setId(((Number) row[0]).longValue());
+                    record.setAccount(session.getReference(Account.class, accountId));
+                    record.setBook(session.getReference(Book.class, bookId));
+                    record.setBorrowDate(fromEpochMicros(row[1]));
+                    record.setDueDate(fromEpochMicros(row[2]));
+                    record.setStatus(((Number) row[3]).shortValue());
+                    record.setRemarks((String) row[4]);
+                    record.setCreatedAt(fromEpochMicros(row[5]));
+                    record.setUpdatedAt(fromEpochMicros(row[6]));
+                    return Uni.createFrom().item(new Checkout(record, ((Number) row[7]).intValue(), ((Number) row[8]).intValue()));
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("借书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).invoke(checkout -> {
+            // 事务已提交
+            BorrowRecord record = checkout.record();
+            invalidateBook(bookId);
+            if (changeEvents != null) {
+                changeEvents.bookAvailabilityChanged(bookId, checkout.availableCopies(), checkout.totalCopies());
+            }
+            if (dueReminders != null) {
+                dueReminders.schedule(record);
+            }
+            if (changeEvents != null) {
+                changeEvents.borrowRecordChanged(accountId, record.getId(), bookId, record.getStatus());
+            }
+        })
+        .map(Checkout::record)
+        .onFailure().invoke(error -> logger.error("借书失败", error));
+    }
+
+    private static String epochMicros(String column) {
+        return "CAST(EXTRACT(EPOCH FROM " + column + ") * 1000000 AS bigint)";
+    }
+
+    private static OffsetDateTime fromEpochMicros(Object micros) {
+        return OffsetDateTime.ofInstant(Instant.EPOCH.plus(((Number) micros).longValue(), ChronoUnit.MICROS), ZoneId.systemDefault());
+    }
+
+    private <T> Uni<T> explainCheckoutFailure(Mutiny.Session session, Long accountId, Long bookId) {
+        return session.createNativeQuery(CHECKOUT_DIAGNOSE_SQL, Object[].class)
+            .setParameter("accountId", accountId)
+            .setParameter("bookId", bookId)
+            .getSingleResult()
+            .flatMap(row -> {
+                long accountCount = ((Number) row[0]).longValue();
+                Number availableCopies = (Number) row[1];
+                long borrowed = ((Number) row[2]).longValue();
+                int maxBorrowBooks = ((Number) row[3]).intValue();
+
+                if (accountCount == 0) {
+                    return Uni.createFrom().failure(new IllegalArgumentException("账户不存在"));
+                }
+                if (borrowed >= maxBorrowBooks) {
+                    return Uni.createFrom().failure(new IllegalStateException("超出最大借阅数量限制"));
+                }
+                if (availableCopies == null) {
+                    return Uni.createFrom().failure(new IllegalArgumentException("图书不存在"));
+                }
+                return Uni.createFrom().failure(new IllegalStateException("图书已全部借出"));
+            });
     }
     //TODO 比起left jion或许更优雅的做法是改外键acconut_id字段绑定userinfo表中的acconut_id字段
 
@@ -93,7 +217,7 @@ public class BorrowService {
                 .onItem().ifNull().failWith(() -> 
                     new IllegalArgumentException("借阅记录不存在"))
                 .flatMap(record -> {
-                    if (record.getStatus() != 0) {
+                    if (!isOutstanding(record)) {
                         return Uni.createFrom().failure(
                             new IllegalStateException("该记录已完成还书")
                         );
@@ -107,22 +231,18 @@ public class BorrowService {
                     }
                     record.setUpdatedAt(OffsetDateTime.now());
 
-                    // 更新图书可用数量
-                    Book book = record.getBook();
-                    book.setAvailableCopies(book.getAvailableCopies() + 1);
-
+                    // 归还副本: 转借给预约队首或原子自增库存, 避免与并发借书互相覆盖
                     return session.flush()
-                        .replaceWith(record);
+                        .chain(() -> releaseCopy(session, record));
                 })
-        ).onFailure().invoke(error -> {
-            System.err.println("还书失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).invoke(this::afterReturn)
+        .map(Returned::record)
+        .onFailure().invoke(error -> logger.error("还书失败", error));
     }
 
     // 查询用户的借阅记录
     public Uni<BorrowRecordsPage> findUserBorrowRecords(Long accountId, int page, int size) {
-        return factory.withSession(session -> {
+        return reads.forRead().withSession(session -> {
             String countQuery = "SELECT COUNT(br) FROM BorrowRecord br WHERE br.account.id = :accountId";
             String listQuery = "FROM BorrowRecord br WHERE br.account.id = :accountId ORDER BY br.createdAt DESC";
     
@@ -151,10 +271,108 @@ public class BorrowService {
                                 .build();
                         })
                 );
-        }).onFailure().invoke(error -> {
-            System.err.println("查询借阅记录失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).onFailure().invoke(error -> logger.error("查询借阅记录失败", error));
+    }
+
+    // 游标分页查询用户的借阅记录, 按 (createdAt, id) 倒序 seek
+    public Uni<Connection<BorrowRecord>> findUserBorrowRecordsConnection(Long accountId, String after, int first,
+                                                                         boolean includeTotal) {
+        return findBorrowRecordsConnection(accountId, -1, "", after, first, includeTotal);
+    }
+
+    // 游标分页查询所有借阅记录(管理员), 支持与 findAllBorrowRecords 相同的筛选和搜索
+    public Uni<Connection<BorrowRecord>> findAllBorrowRecordsConnection(String after, int first, int status,
+                                                                        String keyword, boolean includeTotal) {
+        return findBorrowRecordsConnection(null, status, keyword, after, first, includeTotal);
+    }
+
+    private Uni<Connection<BorrowRecord>> findBorrowRecordsConnection(Long accountId, int status, String keyword,
+                                                                      String after, int first, boolean includeTotal) {
+        CursorUtils.TimeId cursor = after == null ? null : CursorUtils.decodeTimeId(after);
+        String filter = borrowRecordFilter(accountId, status, keyword);
+
+        return reads.forRead().withSession(session -> {
+            Uni<Long> total = Uni.createFrom().nullItem();
+            if (includeTotal) {
+                var countQ = session.createQuery("SELECT COUNT(br) FROM BorrowRecord br WHERE 1 = 1" + filter, Long.class);
+                bindBorrowRecordFilter(countQ, accountId, status, keyword);
+                total = countQ.getSingleResult();
+            }
+
+            String seek = cursor == null ? "" :
+                " AND (br.createdAt < :cursorTime OR (br.createdAt = :cursorTime AND br.id < :cursorId))";
+            var listQ = session.createQuery(
+                "FROM BorrowRecord br WHERE 1 = 1" + filter + seek + " ORDER BY br.createdAt DESC, br.id DESC",
+                BorrowRecord.class);
+            bindBorrowRecordFilter(listQ, accountId, status, keyword);
+            if (cursor != null) {
+                listQ.setParameter("cursorTime", cursor.time());
+                listQ.setParameter("cursorId", cursor.id());
+            }
+
+            return total.chain(count ->
+                listQ.setMaxResults(first + 1)
+                    .getResultList()
+                    .map(records -> Connection.of(records, first,
+                        record -> CursorUtils.encodeTimeId(record.getCreatedAt(), record.getId()), count))
+            );
+        }).onFailure().invoke(error -> logger.error("游标分页查询借阅记录失败", error));
+    }
+
+    // 借阅记录的筛选条件(账户/状态/关键字), 以 AND 开头拼接在 WHERE 1 = 1 之后
+    private String borrowRecordFilter(Long accountId, int status, String keyword) {
+        StringBuilder filter = new StringBuilder();
+        if (accountId != null) {
+            filter.append(" AND br.account.id = :accountId");
+        }
+        if (status >= 0) {
+            filter.append(" AND br.status = :status");
+        }
+        if (!keyword.trim().isEmpty()) {
+            filter.append(" AND (LOWER(br.book.title) LIKE :keyword OR")
+                .append(" LOWER(br.book.author) LIKE :keyword OR")
+                .append(" LOWER(br.account.username) LIKE :keyword)");
+        }
+        return filter.toString();
+    }
+
+    private void bindBorrowRecordFilter(Mutiny.SelectionQuery<?> query, Long accountId, int status, String keyword) {
+        if (accountId != null) {
+            query.setParameter("accountId", accountId);
+        }
+        if (status >= 0) {
+            query.setParameter("status", (short) status);
+        }
+        if (!keyword.trim().isEmpty()) {
+            query.setParameter("keyword", "%" + keyword.toLowerCase() + "%");
+        }
+    }
+
+    // 导出的列, 与 exportChunk 返回的 Object[] 一一对应
+    public static final List<String> EXPORT_COLUMNS = List.of(
+        "id", "accountId", "username", "bookId", "isbn", "title",
+        "borrowDate", "dueDate", "returnDate", "status", "remarks", "createdAt");
+
+    // 导出: 按 (createdAt, id) 升序 seek 取下一块, 只查投影列, 不加载实体; after 为 null 时从头开始,
+    // 下一块的游标取本块最后一行的 createdAt 和 id
+    public Uni<List<Object[]>> exportChunk(CursorUtils.TimeId after, int limit, int status, String keyword) {
+        String filter = borrowRecordFilter(null, status, keyword);
+        String seek = after == null ? "" :
+            " AND (br.createdAt > :cursorTime OR (br.createdAt = :cursorTime AND br.id > :cursorId))";
+
+        return factory.withSession(session -> {
+            var query = session.createQuery(
+                "SELECT br.id, a.id, a.username, b.id, b.isbn, b.title, " +
+                "br.borrowDate, br.dueDate, br.returnDate, br.status, br.remarks, br.createdAt " +
+                "FROM BorrowRecord br JOIN br.account a JOIN br.book b WHERE 1 = 1" + filter + seek +
+                " ORDER BY br.createdAt, br.id", Object[].class);
+            bindBorrowRecordFilter(query, null, status, keyword);
+            if (after != null) {
+                query.setParameter("cursorTime", after.time());
+                query.setParameter("cursorId", after.id());
+            }
+            return query.setMaxResults(limit).getResultList();
+        }).onFailure().invoke(error -> logger.error("导出借阅记录失败", error));
     }
 
     // 根据ID查询借阅记录
@@ -163,15 +381,12 @@ public class BorrowService {
             session.find(BorrowRecord.class, recordId)
                 .onItem().ifNull().failWith(() -> 
                     new IllegalArgumentException("借阅记录不存在"))
-        ).onFailure().invoke(error -> {
-            System.err.println("查询借阅记录失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("查询借阅记录失败", error));
     }
 
     // 查询所有借阅记录(管理员)，支持筛选和搜索
     public Uni<BorrowRecordsPage> findAllBorrowRecords(int page, int size, int status, String keyword) {
-        return factory.withSession(session -> {
+        return reads.forRead().withSession(session -> {
             StringBuilder queryBuilder = new StringBuilder("FROM BorrowRecord br");
             StringBuilder countBuilder = new StringBuilder("SELECT COUNT(br) FROM BorrowRecord br");
             StringBuilder whereClause = new StringBuilder();
@@ -238,15 +453,12 @@ public class BorrowService {
                                 .build();
                         })
                 );
-        }).onFailure().invoke(error -> {
-            System.err.println("查询所有借阅记录失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).onFailure().invoke(error -> logger.error("查询所有借阅记录失败", error));
     }
 
     // 查询所有借阅记录(管理员),仅分页
     public Uni<BorrowRecordsPage> findAllBorrowRecords(int page, int size) {
-        return factory.withSession(session -> {
+        return reads.forRead().withSession(session -> {
             String countQuery = "SELECT COUNT(br) FROM BorrowRecord br";
             String listQuery = "FROM BorrowRecord br ORDER BY br.createdAt DESC";
 
@@ -273,10 +485,71 @@ public class BorrowService {
                                 .build();
                         })
                 );
-        }).onFailure().invoke(error -> {
-            System.err.println("查询所有借阅记录失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).onFailure().invoke(error -> logger.error("查询所有借阅记录失败", error));
+    }
+
+    // 借出中或已被标记逾期(OverdueSweeper)的记录都还未归还
+    private static boolean isOutstanding(BorrowRecord record) {
+        return record.getStatus() == 0 || (record.getStatus() == 2 && record.getReturnDate() == null);
+    }
+
+    // 还书 / 强制归还提交后: 使图书缓存失效并取消到期提醒; 转借给预约时为新借阅登记提醒并通知; 发布变更事件
+    private void afterReturn(Returned returned) {
+        BorrowRecord record = returned.record();
+        ReservationService.Handoff handoff = returned.handoff();
+        Long bookId = record.getBook().getId();
+        invalidateBook(bookId);
+        if (dueReminders != null) {
+            dueReminders.cancel(record.getId());
+            if (handoff != null) {
+                dueReminders.schedule(handoff.recordId(), handoff.accountId(), handoff.bookId(), handoff.dueDate());
+            }
+        }
+        if (handoff != null && reservations != null) {
+            reservations.notifyFulfilled(handoff);
+        }
+        if (changeEvents != null) {
+            changeEvents.borrowRecordChanged(record.getAccount().getId(), record.getId(), bookId, record.getStatus());
+            if (handoff != null) {
+                changeEvents.borrowRecordChanged(handoff.accountId(), handoff.recordId(), bookId, (short) 0);
+            } else if (returned.availableCopies() != null) {
+                changeEvents.bookAvailabilityChanged(bookId, returned.availableCopies(), returned.totalCopies());
+            }
+        }
+    }
+
+    // 事务提交后调用, 之后的读取会从数据库拿到新的 availableCopies
+    private void invalidateBook(Long bookId) {
+        if (bookCache != null) {
+            bookCache.invalidate(bookId);
+        }
+    }
+
+    // 归还一册, 见 RELEASE_COPY_SQL(record.getBook() 是懒加载代理, 只取其ID);
+    // 先锁住图书行, 与并发的预约串行, 见 ReservationService.LOCK_BOOK_SQL
+    private Uni<Returned> releaseCopy(Mutiny.Session session, BorrowRecord record) {
+        Long bookId = record.getBook().getId();
+        return ReservationService.lockBook(session, bookId)
+            .chain(() -> session.createNativeQuery(RELEASE_COPY_SQL, Object[].class)
+                .setParameter("bookId", bookId)
+                .setParameter("borrowDays", DEFAULT_BORROW_DAYS)
+                .getSingleResult())
+            .map(row -> {
+                if (row[0] == null) {
+                    return new Returned(record, null, intOrNull(row[4]), intOrNull(row[5]));
+                }
+                ReservationService.Handoff handoff = new ReservationService.Handoff(
+                    ((Number) row[0]).longValue(),
+                    ((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue(),
+                    bookId,
+                    OffsetDateTime.ofInstant(Instant.ofEpochMilli(((Number) row[3]).longValue()), ZoneId.systemDefault()));
+                return new Returned(record, handoff, null, null);
+            });
+    }
+
+    private static Integer intOrNull(Object value) {
+        return value == null ? null : ((Number) value).intValue();
     }
 
     public Uni<BorrowRecord> forceReturn(Long recordId, Short status, String remarks) {
@@ -285,7 +558,7 @@ public class BorrowService {
                 .onItem().ifNull().failWith(() -> 
                     new IllegalArgumentException("借阅记录不存在"))
                 .flatMap(record -> {
-                    if (record.getStatus() != 0) {
+                    if (!isOutstanding(record)) {
                         return Uni.createFrom().failure(
                             new IllegalStateException("该记录已完成还书")
                         );
@@ -299,19 +572,18 @@ public class BorrowService {
                     }
                     record.setUpdatedAt(OffsetDateTime.now());
     
-                    // 更新图书可用数量(如果是丢失/损坏,不增加可用数量)
+                    // 归还副本(如果是丢失/损坏,不增加可用数量)
                     if (status != 3) {
-                        Book book = record.getBook();
-                        book.setAvailableCopies(book.getAvailableCopies() + 1);
+                        return session.flush()
+                            .chain(() -> releaseCopy(session, record));
                     }
     
                     return session.flush()
-                        .replaceWith(record);
+                        .replaceWith(new Returned(record, null, null, null));
                 })
-            ).onFailure().invoke(error -> {
-                System.err.println("强制归还失败: " + error.getMessage());
-                error.printStackTrace();
-            });
+            ).invoke(this::afterReturn)
+            .map(Returned::record)
+            .onFailure().invoke(error -> logger.error("强制归还失败", error));
     }
     
 }
\ No newline at end of file
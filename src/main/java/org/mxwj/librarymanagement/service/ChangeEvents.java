@@ -0,0 +1,53 @@
+package org.mxwj.librarymanagement.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.mxwj.librarymanagement.lib.EventHub;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 库存与借阅记录的变更事件, 供 GraphQL 订阅推送.
+ *
+ * 每本书一个地址, 只关心部分图书的客户端只在这些地址上接收事件; 不指定图书时订阅 ALL_BOOKS_ADDRESS.
+ * 借阅记录事件按账户分地址. 均在事务提交后发布.
+ */
+public class ChangeEvents {
+    public static final String ALL_BOOKS_ADDRESS = "book.availability";
+    private static final String BOOK_ADDRESS_PREFIX = "book.availability.";
+    private static final String ACCOUNT_ADDRESS_PREFIX = "borrow-record.account.";
+
+    private final EventHub hub;
+
+    public ChangeEvents(EventHub hub) {
+        this.hub = hub;
+    }
+
+    public static List<String> bookAddresses(Collection<Long> bookIds) {
+        if (bookIds == null || bookIds.isEmpty()) {
+            return List.of(ALL_BOOKS_ADDRESS);
+        }
+        return bookIds.stream().distinct().map(id -> BOOK_ADDRESS_PREFIX + id).toList();
+    }
+
+    public static String accountAddress(Long accountId) {
+        return ACCOUNT_ADDRESS_PREFIX + accountId;
+    }
+
+    public void bookAvailabilityChanged(Long bookId, int availableCopies, int totalCopies) {
+        JsonObject event = new JsonObject()
+            .put("bookId", bookId)
+            .put("availableCopies", availableCopies)
+            .put("totalCopies", totalCopies);
+        hub.publish(BOOK_ADDRESS_PREFIX + bookId, event);
+        hub.publish(ALL_BOOKS_ADDRESS, event);
+    }
+
+    public void borrowRecordChanged(Long accountId, Long recordId, Long bookId, short status) {
+        hub.publish(accountAddress(accountId), new JsonObject()
+            .put("recordId", recordId)
+            .put("bookId", bookId)
+            .put("status", status));
+    }
+}
@@ -0,0 +1,161 @@
+package org.mxwj.librarymanagement.service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.TimingWheel;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 到期提醒: 每条未归还的借阅记录在应还日期前的各个提前量(如 1 天, 2 小时)各有一个定时器,
+ * 到点后向 event bus 的 ADDRESS 发布提醒事件, 由投递方(短信/邮件, 目前为 ReminderLogSink)消费.
+ *
+ * 定时器保存在进程内的时间轮中: 启动时从数据库分块加载, 之后由 BorrowService 在借书/还书时增删,
+ * 不需要每分钟查库. 多进程部署时每个进程只知道自己处理的借还, 需要配合按记录分片或租约使用.
+ */
+public class DueReminderService {
+    private static final Logger logger = LoggerFactory.getLogger(DueReminderService.class);
+
+    public static final String ADDRESS = "borrow.due-reminder";
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int LOAD_CHUNK = 5000;
+
+    private record Reminder(Long recordId, Long accountId, Long bookId, OffsetDateTime dueDate, Duration before) {}
+
+    private final Vertx vertx;
+    private final List<Duration> offsets;
+    private final Mutiny.SessionFactory factory;
+    private final TimingWheel<Reminder> wheel;
+    private final Map<Long, TimingWheel.Timeout<?>[]> timersByRecord = new ConcurrentHashMap<>();
+    // 加载期间取消过的记录: 查询时仍是借出状态, 但在登记前已归还, 加载时跳过. 加载结束后为 null
+    private volatile Set<Long> cancelledDuringLoad;
+    private final long timerId;
+
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+
+    public DueReminderService(Vertx vertx, List<Duration> offsets) {
+        this.vertx = vertx;
+        this.offsets = offsets;
+        this.factory = DatabaseManager.getSessionFactory();
+        this.wheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis(), this::fire);
+        this.timerId = vertx.setPeriodic(TICK_MILLIS, id -> wheel.advanceTo(System.currentTimeMillis()));
+    }
+
+    // 启动时按 id seek 分块加载所有未到期的借出记录
+    public Uni<Void> load() {
+        Set<Long> cancelled = ConcurrentHashMap.newKeySet();
+        cancelledDuringLoad = cancelled;
+        return loadChunk(0L, OffsetDateTime.now(), cancelled)
+            .eventually(() -> cancelledDuringLoad = null)
+            .invoke(() -> logger.info("到期提醒加载完成: {} 条借阅记录, {} 个定时器", loaded.sum(), wheel.size()));
+    }
+
+    // 启动时与搜索索引的加载并发, 在同一个 Vert.x 上下文中 withSession 会复用同一个会话, 所以每块用独立的无状态会话
+    private Uni<Void> loadChunk(Long afterId, OffsetDateTime now, Set<Long> cancelled) {
+        return factory.openStatelessSession().chain(session ->
+            session.createQuery(
+                    "SELECT br.id, br.account.id, br.book.id, br.dueDate FROM BorrowRecord br " +
+                    "WHERE br.status = 0 AND br.dueDate > :now AND br.id > :afterId ORDER BY br.id", Object[].class)
+                .setParameter("now", now)
+                .setParameter("afterId", afterId)
+                .setMaxResults(LOAD_CHUNK)
+                .getResultList()
+                .eventually(session::close)
+        ).flatMap(rows -> {
+            for (Object[] row : rows) {
+                Long recordId = (Long) row[0];
+                // 加载期间借书时已登记过的记录不重复登记, 已归还的不再登记
+                if (timersByRecord.containsKey(recordId) || cancelled.contains(recordId)) {
+                    continue;
+                }
+                schedule(recordId, (Long) row[1], (Long) row[2], (OffsetDateTime) row[3]);
+                // 与 cancel 并发时, 要么 cancel 移除了这里登记的定时器, 要么这里看到 cancel 的记录
+                if (cancelled.contains(recordId)) {
+                    cancel(recordId);
+                }
+            }
+            loaded.add(rows.size());
+            if (rows.size() < LOAD_CHUNK) {
+                return Uni.createFrom().voidItem();
+            }
+            return loadChunk((Long) rows.get(rows.size() - 1)[0], now, cancelled);
+        });
+    }
+
+    // 借书后调用; record 的 account / book 是懒加载代理, 只取 ID
+    public void schedule(BorrowRecord record) {
+        schedule(record.getId(), record.getAccount().getId(), record.getBook().getId(), record.getDueDate());
+    }
+
+    public void schedule(Long recordId, Long accountId, Long bookId, OffsetDateTime dueDate) {
+        long now = System.currentTimeMillis();
+        long due = dueDate.toInstant().toEpochMilli();
+        TimingWheel.Timeout<?>[] timers = new TimingWheel.Timeout<?>[offsets.size()];
+        for (int i = 0; i < offsets.size(); i++) {
+            Duration before = offsets.get(i);
+            long at = due - before.toMillis();
+            if (at > now) {
+                timers[i] = wheel.schedule(at, new Reminder(recordId, accountId, bookId, dueDate, before));
+            }
+        }
+        cancelTimers(timersByRecord.put(recordId, timers));
+    }
+
+    // 还书 / 强制归还后调用
+    public void cancel(Long recordId) {
+        Set<Long> cancelled = cancelledDuringLoad;
+        if (cancelled != null) {
+            cancelled.add(recordId);
+        }
+        cancelTimers(timersByRecord.remove(recordId));
+    }
+
+    public void stop() {
+        vertx.cancelTimer(timerId);
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("records", timersByRecord.size())
+            .put("timers", wheel.size())
+            .put("loaded", loaded.sum())
+            .put("fired", fired.sum());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void cancelTimers(TimingWheel.Timeout<?>[] timers) {
+        if (timers == null) {
+            return;
+        }
+        for (TimingWheel.Timeout<?> timer : timers) {
+            if (timer != null) {
+                wheel.cancel((TimingWheel.Timeout<Reminder>) timer);
+            }
+        }
+    }
+
+    private void fire(Reminder reminder) {
+        fired.increment();
+        vertx.eventBus().publish(ADDRESS, new JsonObject()
+            .put("recordId", reminder.recordId())
+            .put("accountId", reminder.accountId())
+            .put("bookId", reminder.bookId())
+            .put("dueDate", reminder.dueDate().toString())
+            .put("hoursBefore", reminder.before().toHours()));
+    }
+}
@@ -0,0 +1,178 @@
+package org.mxwj.librarymanagement.service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Account.lastLogin 的延迟批量写入: 登录时只记录到内存, 每个账户只保留最新的时间,
+ * 定时(flushIntervalMillis)或积累到 maxPending 个账户时合并为批量 UPDATE 写入数据库.
+ *
+ * 同一时刻只有一次写入在进行; 写入失败的条目重新合并回缓冲区, 下次再写.
+ * 进程正常退出时由 MainVerticle.stop 调用 flush() 写完剩余的条目.
+ */
+public class LastLoginWriter {
+    private static final Logger logger = LoggerFactory.getLogger(LastLoginWriter.class);
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_MAX_PENDING = 500;
+    // 每条 UPDATE 的行数, 参数个数为 2 倍
+    private static final int UPDATE_CHUNK = 200;
+
+    private final Map<Long, OffsetDateTime> pending = new ConcurrentHashMap<>();
+    private final int maxPending;
+    private final Function<List<Map.Entry<Long, OffsetDateTime>>, Uni<Void>> writer;
+    private final long timerId;
+    private final Vertx vertx;
+
+    private Uni<Void> inFlight;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public LastLoginWriter(Vertx vertx) {
+        this(vertx, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_PENDING, databaseWriter(DatabaseManager.getSessionFactory()));
+    }
+
+    // writer: 把一批 (accountId, lastLogin) 写入存储
+    public LastLoginWriter(Vertx vertx, long flushIntervalMillis, int maxPending,
+                           Function<List<Map.Entry<Long, OffsetDateTime>>, Uni<Void>> writer) {
+        this.vertx = vertx;
+        this.maxPending = maxPending;
+        this.writer = writer;
+        this.timerId = vertx.setPeriodic(flushIntervalMillis, id -> flushInBackground());
+    }
+
+    public void record(Long accountId, OffsetDateTime loginAt) {
+        pending.merge(accountId, loginAt, (a, b) -> a.isAfter(b) ? a : b);
+        recorded.increment();
+        if (pending.size() >= maxPending) {
+            flushInBackground();
+        }
+    }
+
+    // 写入当前缓冲区中的全部条目; 已有写入在进行时等它结束后再写
+    public Uni<Void> flush() {
+        Uni<Void> current;
+        synchronized (this) {
+            if (inFlight == null) {
+                List<Map.Entry<Long, OffsetDateTime>> batch = drain();
+                if (batch.isEmpty()) {
+                    return Uni.createFrom().voidItem();
+                }
+                inFlight = write(batch);
+                return inFlight;
+            }
+            current = inFlight;
+        }
+        return current.onFailure().recoverWithNull().chain(this::flush);
+    }
+
+    // 停止定时器并写完剩余条目
+    public Uni<Void> close() {
+        vertx.cancelTimer(timerId);
+        return flush();
+    }
+
+    public int pendingSize() {
+        return pending.size();
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("pending", pending.size())
+            .put("recorded", recorded.sum())
+            .put("written", written.sum())
+            .put("flushes", flushes.sum())
+            .put("failures", failures.sum());
+    }
+
+    private void flushInBackground() {
+        synchronized (this) {
+            if (inFlight != null || pending.isEmpty()) {
+                return;
+            }
+        }
+        flush().subscribe().with(
+            ignored -> {},
+            error -> logger.warn("写入最后登录时间失败, 下次重试: {}", error.getMessage()));
+    }
+
+    // remove 与 merge 都是单键原子操作, 取出后再到达的登录会重新进入缓冲区, 不会丢失
+    private List<Map.Entry<Long, OffsetDateTime>> drain() {
+        List<Map.Entry<Long, OffsetDateTime>> batch = new ArrayList<>(pending.size());
+        for (Iterator<Long> it = pending.keySet().iterator(); it.hasNext(); ) {
+            Long accountId = it.next();
+            OffsetDateTime loginAt = pending.remove(accountId);
+            if (loginAt != null) {
+                batch.add(Map.entry(accountId, loginAt));
+            }
+        }
+        return batch;
+    }
+
+    private Uni<Void> write(List<Map.Entry<Long, OffsetDateTime>> batch) {
+        return Uni.createFrom().deferred(() -> writer.apply(batch))
+            .invoke(() -> {
+                flushes.increment();
+                written.add(batch.size());
+            })
+            .onFailure().invoke(error -> {
+                failures.increment();
+                batch.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(), (a, b) -> a.isAfter(b) ? a : b));
+            })
+            .onTermination().invoke(() -> {
+                synchronized (this) {
+                    inFlight = null;
+                }
+            })
+            .memoize().indefinitely();
+    }
+
+    // 每 UPDATE_CHUNK 行一条 UPDATE ... FROM (VALUES ...), 同一次 flush 的所有语句在一个事务中
+    private static Function<List<Map.Entry<Long, OffsetDateTime>>, Uni<Void>> databaseWriter(Mutiny.SessionFactory factory) {
+        return batch -> factory.withTransaction(session -> {
+            Uni<Integer> chain = Uni.createFrom().item(0);
+            for (int from = 0; from < batch.size(); from += UPDATE_CHUNK) {
+                List<Map.Entry<Long, OffsetDateTime>> chunk = batch.subList(from, Math.min(from + UPDATE_CHUNK, batch.size()));
+                chain = chain.chain(() -> updateChunk(session, chunk));
+            }
+            return chain.replaceWithVoid();
+        });
+    }
+
+    // 多个实例可能交替写入, 只在新值更晚时更新
+    private static Uni<Integer> updateChunk(Mutiny.Session session, List<Map.Entry<Long, OffsetDateTime>> chunk) {
+        StringBuilder sql = new StringBuilder("UPDATE account a SET last_login = v.login_at FROM (VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(CAST(:id").append(i).append(" AS bigint), CAST(:at").append(i).append(" AS timestamptz))");
+        }
+        sql.append(") AS v(id, login_at) WHERE a.id = v.id AND (a.last_login IS NULL OR a.last_login < v.login_at)");
+
+        Mutiny.Query<Object> query = session.createNativeQuery(sql.toString());
+        for (int i = 0; i < chunk.size(); i++) {
+            query.setParameter("id" + i, chunk.get(i).getKey());
+            query.setParameter("at" + i, chunk.get(i).getValue());
+        }
+        return query.executeUpdate();
+    }
+}
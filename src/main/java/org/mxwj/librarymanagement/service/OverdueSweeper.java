@@ -0,0 +1,203 @@
+package org.mxwj.librarymanagement.service;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.mxwj.librarymanagement.lib.RedisClient;
+import org.mxwj.librarymanagement.lib.RedisLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 定时把已过应还日期仍未归还的借阅记录(status 0)标记为逾期(status 2).
+ *
+ * 每轮按 (due_date, id) 升序分块推进, 每块是一条独立提交的 UPDATE, 不持有长事务;
+ * 被其他事务锁住的行(如正在还书)用 SKIP LOCKED 跳过, 下一轮再处理.
+ * 多实例部署时通过 Redis 租约保证同一时刻只有一个实例在扫描, 每块之后续期, 续期失败即停止本轮.
+ * 一轮中的各块都在开始时的 context 上执行: 会话只能在 SessionFactory 所属 Vertx 的线程上使用,
+ * 而 Redis 的回调可能在其他线程, 取得或续期租约后先回到该 context 再打开下一个会话.
+ */
+public class OverdueSweeper {
+    private static final Logger logger = LoggerFactory.getLogger(OverdueSweeper.class);
+
+    private static final String LEASE_KEY = "lease:overdue-sweeper";
+
+    // 一块: 锁定并更新至多 :limit 行, 返回 选中行数, 更新行数, 本块最后一行的 (due_date 微秒, id)
+    private static final String SWEEP_CHUNK_SQL =
+        "WITH due AS (" +
+        "  SELECT id, due_date FROM borrow_record" +
+        "  WHERE status = 0 AND due_date < CAST(:cutoff AS timestamptz)" +
+        "    AND (CAST(:fromStart AS boolean) OR (due_date, id) >" +
+        "         (TIMESTAMPTZ 'epoch' + CAST(:afterMicros AS bigint) * INTERVAL '1 microsecond', CAST(:afterId AS bigint)))" +
+        "  ORDER BY due_date, id" +
+        "  LIMIT CAST(:limit AS int)" +
+        "  FOR UPDATE SKIP LOCKED" +
+        "), updated AS (" +
+        "  UPDATE borrow_record br SET status = 2, updated_at = now()" +
+        "  FROM due WHERE br.id = due.id" +
+        "  RETURNING br.id" +
+        ") " +
+        "SELECT (SELECT COUNT(*) FROM due), (SELECT COUNT(*) FROM updated)," +
+        "       CAST(EXTRACT(EPOCH FROM d.due_date) * 1000000 AS bigint), d.id " +
+        "FROM (SELECT due_date, id FROM due ORDER BY due_date DESC, id DESC LIMIT 1) d";
+
+    private final Mutiny.SessionFactory factory;
+    private final RedisLease lease;
+    private final int chunkSize;
+    private final long intervalMillis;
+    private final Vertx vertx;
+
+    private long timerId = -1;
+    private boolean running;
+
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder transitioned = new LongAdder();
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+    private final AtomicLong lastSweepRows = new AtomicLong();
+    private volatile double lastRowsPerSecond;
+
+    // vertx 须是 factory 所属的 Vertx
+    public OverdueSweeper(Vertx vertx, Mutiny.SessionFactory factory, long intervalMillis, int chunkSize, long leaseTtlMillis) {
+        this.vertx = vertx;
+        this.factory = factory;
+        this.lease = new RedisLease(RedisClient.getInstance(vertx), LEASE_KEY, leaseTtlMillis);
+        this.chunkSize = chunkSize;
+        this.intervalMillis = intervalMillis;
+    }
+
+    // 开始定时扫描, 已开始时不重复设置定时器
+    public synchronized void start() {
+        if (timerId < 0) {
+            timerId = vertx.setPeriodic(intervalMillis, id -> sweep());
+        }
+    }
+
+    // 取消定时器; 正在进行的一轮照常结束并释放租约
+    public synchronized void stop() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    // 上一轮未结束时跳过; 取不到租约说明其他实例在扫描
+    public synchronized void sweep() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Context context = vertx.getOrCreateContext();
+        lease.acquire()
+            .onComplete(ar -> context.runOnContext(v -> {
+                if (ar.failed()) {
+                    failures.increment();
+                    logger.warn("获取逾期扫描租约失败: {}", ar.cause().getMessage());
+                    finish();
+                } else if (!ar.result()) {
+                    skipped.increment();
+                    finish();
+                } else {
+                    runSweep(context);
+                }
+            }));
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+            .put("sweeps", sweeps.sum())
+            .put("skipped", skipped.sum())
+            .put("failures", failures.sum())
+            .put("transitioned", transitioned.sum())
+            .put("lastSweepMs", lastSweepMillis.get())
+            .put("lastSweepRows", lastSweepRows.get())
+            .put("lastRowsPerSecond", lastRowsPerSecond);
+    }
+
+    private void runSweep(Context context) {
+        long startedAt = System.nanoTime();
+        OffsetDateTime cutoff = OffsetDateTime.now();
+        AtomicLong rows = new AtomicLong();
+
+        sweepFrom(context, cutoff, null, null, rows)
+            .subscribe().with(
+                ignored -> {
+                    long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+                    sweeps.increment();
+                    lastSweepMillis.set(elapsedMillis);
+                    lastSweepRows.set(rows.get());
+                    lastRowsPerSecond = elapsedMillis == 0 ? rows.get() : rows.get() * 1000.0 / elapsedMillis;
+                    if (rows.get() > 0) {
+                        logger.info("逾期扫描完成: 标记 {} 条, 耗时 {} ms, {} 行/秒",
+                            rows.get(), elapsedMillis, String.format("%.1f", lastRowsPerSecond));
+                    }
+                    releaseAndFinish();
+                },
+                error -> {
+                    failures.increment();
+                    logger.error("逾期扫描失败, 已标记 {} 条", rows.get(), error);
+                    releaseAndFinish();
+                });
+    }
+
+    private Uni<Void> sweepFrom(Context context, OffsetDateTime cutoff, Long afterMicros, Long afterId, AtomicLong rows) {
+        return factory.withSession(session ->
+            session.createNativeQuery(SWEEP_CHUNK_SQL, Object[].class)
+                .setParameter("cutoff", cutoff)
+                // 原生查询不能绑定 null, 第一块用 fromStart 表示没有游标
+                .setParameter("fromStart", afterId == null)
+                .setParameter("afterMicros", afterMicros == null ? 0L : afterMicros)
+                .setParameter("afterId", afterId == null ? 0L : afterId)
+                .setParameter("limit", chunkSize)
+                .getSingleResultOrNull()
+        ).chain(row -> {
+            if (row == null) {
+                return Uni.createFrom().voidItem();
+            }
+            long selected = ((Number) row[0]).longValue();
+            long updated = ((Number) row[1]).longValue();
+            rows.addAndGet(updated);
+            transitioned.add(updated);
+            if (selected < chunkSize) {
+                return Uni.createFrom().voidItem();
+            }
+            long nextMicros = ((Number) row[2]).longValue();
+            long nextId = ((Number) row[3]).longValue();
+            return resumeOn(context, lease.renew())
+                .chain(held -> {
+                    if (!held) {
+                        logger.warn("逾期扫描租约已丢失, 本轮在 id {} 处停止", nextId);
+                        return Uni.createFrom().voidItem();
+                    }
+                    return sweepFrom(context, cutoff, nextMicros, nextId, rows);
+                });
+        });
+    }
+
+    private static <T> Uni<T> resumeOn(Context context, Future<T> future) {
+        return Uni.createFrom().emitter(emitter -> future.onComplete(ar -> context.runOnContext(v -> {
+            if (ar.succeeded()) {
+                emitter.complete(ar.result());
+            } else {
+                emitter.fail(ar.cause());
+            }
+        })));
+    }
+
+    private void releaseAndFinish() {
+        lease.release().onComplete(ar -> finish());
+    }
+
+    private synchronized void finish() {
+        running = false;
+    }
+}
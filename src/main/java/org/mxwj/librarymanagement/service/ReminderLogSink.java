@@ -0,0 +1,32 @@
+package org.mxwj.librarymanagement.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 到期提醒的本地投递: 只记录日志并计数, 在接入短信/邮件之前代替真正的投递方.
+ */
+public class ReminderLogSink {
+    private static final Logger logger = LoggerFactory.getLogger(ReminderLogSink.class);
+
+    private final LongAdder delivered = new LongAdder();
+
+    public ReminderLogSink(Vertx vertx) {
+        vertx.eventBus().<JsonObject>consumer(DueReminderService.ADDRESS, message -> {
+            JsonObject reminder = message.body();
+            delivered.increment();
+            logger.info("到期提醒: 账户 {} 借阅记录 {}(图书 {}) 将于 {} 到期, 提前 {} 小时",
+                reminder.getLong("accountId"), reminder.getLong("recordId"), reminder.getLong("bookId"),
+                reminder.getString("dueDate"), reminder.getLong("hoursBefore"));
+        });
+    }
+
+    public JsonObject stats() {
+        return new JsonObject().put("delivered", delivered.sum());
+    }
+}
@@ -0,0 +1,173 @@
+package org.mxwj.librarymanagement.service;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.ReadRouter;
+import org.mxwj.librarymanagement.model.Reservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 图书预约队列: 图书全部借出时用户排队, 还书时由 BorrowService 在同一事务中把归还的副本直接借给队首.
+ * 转借成功后向 FULFILLED_ADDRESS 发布一条事件, 客户端不再需要轮询 book(id) 等待库存.
+ */
+public class ReservationService {
+    private static final Logger logger = LoggerFactory.getLogger(ReservationService.class);
+
+    public static final String FULFILLED_ADDRESS = "reservation.fulfilled";
+
+    // 预约和还书(BorrowService.releaseCopy)都先锁住图书行, 两者串行:
+    // 否则预约读到可借数为 0 的同时, 并发的还书看不到这条尚未提交的预约而直接增加库存, 预约会一直等待
+    static final String LOCK_BOOK_SQL = "SELECT id FROM book WHERE id = :bookId FOR UPDATE";
+
+    // 只有图书存在、已全部借出且该用户没有等待中的同书预约时才插入; priority 取自 account.user_type
+    private static final String RESERVE_SQL =
+        "INSERT INTO reservation (account_id, book_id, priority, status, created_at, updated_at) " +
+        "SELECT a.id, b.id, COALESCE(a.user_type, 0), 0, now(), now() " +
+        "FROM account a, book b " +
+        "WHERE a.id = :accountId AND b.id = :bookId AND b.available_copies = 0" +
+        "  AND NOT EXISTS (SELECT 1 FROM reservation r" +
+        "                  WHERE r.account_id = a.id AND r.book_id = b.id AND r.status = 0) " +
+        "RETURNING id";
+
+    // 预约失败时查询具体原因: 图书可借数, 已有的等待中预约数
+    private static final String RESERVE_DIAGNOSE_SQL =
+        "SELECT (SELECT b.available_copies FROM book b WHERE b.id = :bookId)," +
+        "       (SELECT COUNT(*) FROM reservation r" +
+        "        WHERE r.account_id = :accountId AND r.book_id = :bookId AND r.status = 0)";
+
+    // 排在前面的等待中预约数 + 1, 排序与 BorrowService 取队首一致
+    private static final String POSITION_SQL =
+        "SELECT r.id, (SELECT COUNT(*) FROM reservation o" +
+        "              WHERE o.book_id = r.book_id AND o.status = 0" +
+        "                AND (o.priority > r.priority OR (o.priority = r.priority AND (o.created_at, o.id) < (r.created_at, r.id)))) + 1 " +
+        "FROM reservation r WHERE r.account_id = :accountId AND r.status = 0";
+
+    /** 还书时转借给队首的结果 */
+    public record Handoff(Long reservationId, Long recordId, Long accountId, Long bookId, OffsetDateTime dueDate) {}
+
+    private final Vertx vertx;
+    private final Mutiny.SessionFactory factory;
+    private final ReadRouter reads;
+
+    // vertx 为 null 时不发布事件(测试)
+    public ReservationService(Vertx vertx) {
+        this.vertx = vertx;
+        this.factory = DatabaseManager.getSessionFactory();
+        this.reads = DatabaseManager.getReadRouter();
+    }
+
+    // 预约: 图书仍有可借副本时应直接借阅
+    public Uni<Reservation> reserveBook(Long accountId, Long bookId) {
+        return factory.withTransaction((session, tx) ->
+            lockBook(session, bookId)
+                .chain(() -> session.createNativeQuery(RESERVE_SQL, Long.class)
+                    .setParameter("accountId", accountId)
+                    .setParameter("bookId", bookId)
+                    .getSingleResultOrNull())
+                .flatMap(reservationId -> {
+                    if (reservationId == null) {
+                        return explainReserveFailure(session, accountId, bookId);
+                    }
+                    return session.find(Reservation.class, reservationId);
+                })
+        ).onFailure().invoke(error -> logger.warn("预约失败: {}", error.getMessage()));
+    }
+
+    // 见 LOCK_BOOK_SQL; 锁到事务结束, 之后的语句能看到先拿到锁的事务已提交的修改. 图书不存在时不加锁
+    static Uni<Void> lockBook(Mutiny.Session session, Long bookId) {
+        return session.createNativeQuery(LOCK_BOOK_SQL, Long.class)
+            .setParameter("bookId", bookId)
+            .getResultList()
+            .replaceWithVoid();
+    }
+
+    private Uni<Reservation> explainReserveFailure(Mutiny.Session session, Long accountId, Long bookId) {
+        return session.createNativeQuery(RESERVE_DIAGNOSE_SQL, Object[].class)
+            .setParameter("accountId", accountId)
+            .setParameter("bookId", bookId)
+            .getSingleResult()
+            .flatMap(row -> {
+                Number availableCopies = (Number) row[0];
+                long waiting = ((Number) row[1]).longValue();
+
+                if (availableCopies == null) {
+                    return Uni.createFrom().failure(new IllegalArgumentException("图书不存在"));
+                }
+                if (waiting > 0) {
+                    return Uni.createFrom().failure(new IllegalStateException("已在该图书的预约队列中"));
+                }
+                if (availableCopies.intValue() > 0) {
+                    return Uni.createFrom().failure(new IllegalStateException("图书有可借副本, 请直接借阅"));
+                }
+                return Uni.createFrom().failure(new IllegalArgumentException("账户不存在"));
+            });
+    }
+
+    // 取消本人等待中的预约
+    public Uni<Boolean> cancelReservation(Long accountId, Long reservationId) {
+        return factory.withTransaction((session, tx) ->
+            session.createMutationQuery(
+                    "UPDATE Reservation r SET r.status = 2, r.updatedAt = :now " +
+                    "WHERE r.id = :id AND r.account.id = :accountId AND r.status = 0")
+                .setParameter("now", OffsetDateTime.now())
+                .setParameter("id", reservationId)
+                .setParameter("accountId", accountId)
+                .executeUpdate()
+        ).flatMap(updated -> {
+            if (updated == 0) {
+                return Uni.createFrom().failure(new IllegalArgumentException("预约不存在或已处理"));
+            }
+            return Uni.createFrom().item(true);
+        });
+    }
+
+    // 本人等待中的预约及其队列位置
+    public Uni<List<Reservation>> findMyReservations(Long accountId) {
+        return reads.forRead().withSession(session ->
+            session.createQuery(
+                    "FROM Reservation r WHERE r.account.id = :accountId AND r.status = 0 ORDER BY r.createdAt, r.id",
+                    Reservation.class)
+                .setParameter("accountId", accountId)
+                .getResultList()
+                .flatMap(reservations -> {
+                    if (reservations.isEmpty()) {
+                        return Uni.createFrom().item(reservations);
+                    }
+                    return session.createNativeQuery(POSITION_SQL, Object[].class)
+                        .setParameter("accountId", accountId)
+                        .getResultList()
+                        .map(rows -> {
+                            Map<Long, Integer> positions = new HashMap<>();
+                            for (Object[] row : rows) {
+                                positions.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+                            }
+                            reservations.forEach(r -> r.setPosition(positions.get(r.getId())));
+                            return reservations;
+                        });
+                })
+        );
+    }
+
+    // 转借事务提交后调用
+    public void notifyFulfilled(Handoff handoff) {
+        if (vertx == null) {
+            return;
+        }
+        vertx.eventBus().publish(FULFILLED_ADDRESS, new JsonObject()
+            .put("reservationId", handoff.reservationId())
+            .put("recordId", handoff.recordId())
+            .put("accountId", handoff.accountId())
+            .put("bookId", handoff.bookId())
+            .put("dueDate", handoff.dueDate().toString()));
+    }
+}
@@ -8,11 +8,15 @@ import org.mxwj.librarymanagement.model.Account;
 import org.mxwj.librarymanagement.model.UserInfo;
 import org.mxwj.librarymanagement.model.dto.CreateUserInfoDTO;
 import org.mxwj.librarymanagement.model.dto.UpdateUserInfoDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.smallrye.mutiny.Uni;
 import jakarta.persistence.NoResultException;
 
 public class UserInfoService {
+    private static final Logger logger = LoggerFactory.getLogger(UserInfoService.class);
+
     private final Mutiny.SessionFactory factory;
 
     public UserInfoService() {
@@ -24,10 +28,7 @@ public class UserInfoService {
             session.createQuery("FROM UserInfo ui WHERE ui.account.id = :accountId", UserInfo.class)
                 .setParameter("accountId", accountId)
                 .getSingleResultOrNull()
-        ).onFailure().invoke(error -> {
-            System.out.println("数据库查询错误: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("数据库查询错误", error));
     }
 
     public Uni<UserInfo> createUserInfo(CreateUserInfoDTO createUserInfoDTO) {
@@ -59,10 +60,7 @@ public class UserInfoService {
                                 .replaceWith(newUserInfo);
                         })
                 );
-        }).onFailure().invoke(error -> {
-            System.err.println("创建用户信息失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        }).onFailure().invoke(error -> logger.error("创建用户信息失败", error));
     }
 
     public Uni<UserInfo> updateUserInfo(UpdateUserInfoDTO updateUserInfoDTO) {
@@ -92,10 +90,7 @@ public class UserInfoService {
                                     .replaceWith(userInfo);
                         });
                     })
-            .onFailure().invoke(error -> {
-                System.out.println("更新用户信息失败");
-                error.printStackTrace();
-            });
+            .onFailure().invoke(error -> logger.error("更新用户信息失败", error));
     }
 
     public Uni<Void> deleteUserInfo(Long userInfoId) {
@@ -109,10 +104,7 @@ public class UserInfoService {
                             .call(session::flush);
                 });
         }).
-        onFailure().invoke(error -> {
-            System.out.println("删除用户信息失败");
-            error.printStackTrace();
-        });
+        onFailure().invoke(error -> logger.error("删除用户信息失败", error));
     }
 }
 
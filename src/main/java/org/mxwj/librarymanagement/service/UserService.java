@@ -7,10 +7,14 @@ import org.mxwj.librarymanagement.lib.DatabaseManager;
 import org.mxwj.librarymanagement.model.PageInfo;
 import org.mxwj.librarymanagement.model.User;
 import org.mxwj.librarymanagement.model.UsersPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
 public class UserService {
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
     private final Mutiny.SessionFactory factory;
 
     public UserService() {
@@ -20,19 +24,13 @@ public class UserService {
     public Uni<User> findById(Integer id) {
         return factory.withSession(session ->
             session.find(User.class, id)
-        ).onFailure().invoke(error -> {
-            System.err.println("数据库查询错误: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("数据库查询错误", error));
     }
 
     public Uni<List<User>> findAll() {
         return factory.withSession(session ->
             session.createQuery("FROM User", User.class).getResultList()
-        ).onFailure().invoke(error -> {
-            System.err.println("查询所有用户失败: " + error.getMessage());
-            error.printStackTrace();
-        });
+        ).onFailure().invoke(error -> logger.error("查询所有用户失败", error));
     }
 
     public Uni<UsersPage> findAllPaged(int page, int size, String orderBy) {
@@ -71,10 +69,7 @@ public class UserService {
             session.persist(user)
                 .call(session::flush)  // 使用 call 替代 chain
                 .replaceWith(user)     // 使用 replaceWith 替代 map
-                .onFailure().invoke(error -> {
-                    System.err.println("创建用户失败");
-                    error.printStackTrace();
-                })
+                .onFailure().invoke(error -> logger.error("创建用户失败", error))
         );
     }
 
@@ -1,15 +1,27 @@
 package org.mxwj.librarymanagement.utils;
 
+import graphql.GraphQLContext;
 import graphql.schema.DataFetchingEnvironment;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 
 public class ContextHelper {
 
+    public static final String USER_PRINCIPAL = "userPrincipal";
+
    // 获取用户信息对象
+   // HTTP 请求由 JwtAuthHandler 放在 RoutingContext 上; WebSocket 订阅在 connection_init 时鉴权, 放在 GraphQLContext 中
     public static JsonObject getUserPrincipal(DataFetchingEnvironment env) {
-        RoutingContext routingContext = env.getGraphQlContext().get(RoutingContext.class);
-        return routingContext.get("userPrincipal");
+        return getUserPrincipal(env.getGraphQlContext());
+    }
+
+    public static JsonObject getUserPrincipal(GraphQLContext graphQLContext) {
+        JsonObject principal = graphQLContext.get(USER_PRINCIPAL);
+        if (principal != null) {
+            return principal;
+        }
+        RoutingContext routingContext = graphQLContext.get(RoutingContext.class);
+        return routingContext == null ? null : routingContext.get(USER_PRINCIPAL);
     }
 
     public static Long getAccountId(DataFetchingEnvironment env) {
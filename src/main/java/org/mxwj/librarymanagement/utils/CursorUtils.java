@@ -0,0 +1,64 @@
+package org.mxwj.librarymanagement.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// 游标编解码: 对客户端不透明, 内容是排序键(id 或 createdAt + id)
+public class CursorUtils {
+    private static final String SEPARATOR = "|";
+    // 游标分页每页条数上限, 与 QueryCostInstrumentation 的分页参数上限一致
+    public static final int MAX_FIRST = 100;
+
+    // first 小于 1 时 Connection.of 无法截取, 过大时一次查询过多行; 在调用 service 之前检查
+    public static int checkFirst(int first) {
+        if (first < 1 || first > MAX_FIRST) {
+            throw new IllegalArgumentException("first 必须在 1 到 " + MAX_FIRST + " 之间");
+        }
+        return first;
+    }
+
+    public static String encodeId(Long id) {
+        return encode(String.valueOf(id));
+    }
+
+    public static Long decodeId(String cursor) {
+        try {
+            return Long.parseLong(decode(cursor));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的游标: " + cursor);
+        }
+    }
+
+    public static String encodeTimeId(OffsetDateTime time, Long id) {
+        return encode(time + SEPARATOR + id);
+    }
+
+    public static TimeId decodeTimeId(String cursor) {
+        String raw = decode(cursor);
+        int idx = raw.lastIndexOf(SEPARATOR);
+        if (idx <= 0) {
+            throw new IllegalArgumentException("无效的游标: " + cursor);
+        }
+        try {
+            return new TimeId(OffsetDateTime.parse(raw.substring(0, idx)), Long.parseLong(raw.substring(idx + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("无效的游标: " + cursor);
+        }
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的游标: " + cursor);
+        }
+    }
+
+    public record TimeId(OffsetDateTime time, Long id) {}
+}
@@ -1,77 +1,132 @@
 package org.mxwj.librarymanagement.utils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 把 GraphQL 的 input Map 映射为 DTO.
+ *
+ * 每个 DTO 类第一次使用时生成一个 Binder 并缓存在 ClassValue 中: 构造器和各字段的 setter 解析为 MethodHandle,
+ * 类型转换函数也在此时选好, 之后每次映射只是按字段顺序取值、转换、赋值, 不再有反射和按类型名的分支.
+ */
 public class DTOMapper {
-    
+    private static final Logger logger = LoggerFactory.getLogger(DTOMapper.class);
+
+    private static final ClassValue<Binder<?>> BINDERS = new ClassValue<>() {
+        @Override
+        protected Binder<?> computeValue(Class<?> type) {
+            return Binder.create(type);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
     public static <T> T mapToDTO(Map<String, Object> input, Class<T> dtoClass) {
-        try {
-            T dto = dtoClass.getDeclaredConstructor().newInstance();
-            
-            for (Field field : dtoClass.getDeclaredFields()) {
-                field.setAccessible(true);
-                String fieldName = field.getName();
-                Object value = input.get(fieldName);
-                
-                if (value != null) {
-                    setFieldValue(field, dto, value);
+        return ((Binder<T>) BINDERS.get(dtoClass)).bind(input);
+    }
+
+    private static final class Binder<T> {
+        private final MethodHandle constructor;
+        private final FieldBinding[] fields;
+
+        private Binder(MethodHandle constructor, FieldBinding[] fields) {
+            this.constructor = constructor;
+            this.fields = fields;
+        }
+
+        static <T> Binder<T> create(Class<T> dtoClass) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(dtoClass, MethodHandles.lookup());
+                MethodHandle constructor = lookup.findConstructor(dtoClass, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+
+                List<FieldBinding> bindings = new ArrayList<>();
+                for (Field field : dtoClass.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+                    Function<Object, Object> coercer = coercerFor(field.getType());
+                    if (coercer == null) {
+                        logger.warn("未处理的类型: {}, 字段: {}", field.getType().getName(), field.getName());
+                        continue;
+                    }
+                    MethodHandle setter = lookup.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                    bindings.add(new FieldBinding(field.getName(), setter, coercer));
                 }
+                return new Binder<>(constructor, bindings.toArray(new FieldBinding[0]));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("无法为 " + dtoClass.getName() + " 生成映射", e);
             }
-            return dto;
-        } catch (Exception e) {
-            throw new RuntimeException("DTO映射失败", e);
         }
-    }
-    
-    private static <T> void setFieldValue(Field field, T dto, Object value) throws IllegalAccessException {
-        Class<?> fieldType = field.getType();
-        
-        // 处理基本类型转换
-        switch (fieldType.getName()) {
-            case "java.lang.String":
-                field.set(dto, String.valueOf(value));
-                break;
-                
-            case "java.lang.Integer":
-                if (value instanceof String) {
-                    field.set(dto, Integer.valueOf((String) value));
-                } else if (value instanceof Integer) {
-                    field.set(dto, value);
-                }
-                break;
-                
-            case "java.lang.Long":
-                if (value instanceof String) {
-                    field.set(dto, Long.valueOf((String) value));
-                } else if (value instanceof Integer) {
-                    field.set(dto, ((Integer) value).longValue());
-                }
-                break;
-                
-            case "java.lang.Short":
-                if (value instanceof String) {
-                    field.set(dto, Short.valueOf((String) value));
-                } else if (value instanceof Integer) {
-                    field.set(dto, ((Integer) value).shortValue());
-                }
-                break;
-                
-            case "java.time.LocalDate":
-                if (value instanceof String) {
-                    field.set(dto, value);
-                }
-                break;
-                
-            case "java.time.OffsetDateTime":
-                if (value instanceof String) {
-                    field.set(dto, value);
+
+        @SuppressWarnings("unchecked")
+        T bind(Map<String, Object> input) {
+            try {
+                Object dto = constructor.invokeExact();
+                for (FieldBinding field : fields) {
+                    Object value = input.get(field.name);
+                    if (value == null) {
+                        continue;
+                    }
+                    Object converted = field.coercer.apply(value);
+                    if (converted != null) {
+                        field.setter.invokeExact(dto, converted);
+                    }
                 }
-                break;
-                
-            default:
-                System.err.println("未处理的类型: " + fieldType.getName() + ", 字段: " + field.getName());
-                break;
+                return (T) dto;
+            } catch (Throwable e) {
+                throw new RuntimeException("DTO映射失败", e);
+            }
+        }
+    }
+
+    private record FieldBinding(String name, MethodHandle setter, Function<Object, Object> coercer) {}
+
+    // 返回 null 表示不支持该字段类型; 转换函数返回 null 表示该值无法转换, 跳过赋值
+    private static Function<Object, Object> coercerFor(Class<?> type) {
+        if (type == String.class) {
+            return String::valueOf;
+        }
+        if (type == Integer.class) {
+            return value -> value instanceof Number n ? (Object) n.intValue()
+                : value instanceof String s ? Integer.valueOf(s) : null;
+        }
+        if (type == Long.class) {
+            return value -> value instanceof Number n ? (Object) n.longValue()
+                : value instanceof String s ? Long.valueOf(s) : null;
+        }
+        if (type == Short.class) {
+            return value -> value instanceof Number n ? (Object) n.shortValue()
+                : value instanceof String s ? Short.valueOf(s) : null;
+        }
+        if (type == Double.class) {
+            return value -> value instanceof Number n ? (Object) n.doubleValue()
+                : value instanceof String s ? Double.valueOf(s) : null;
+        }
+        if (type == Boolean.class) {
+            return value -> value instanceof Boolean ? value
+                : value instanceof String s ? Boolean.valueOf(s) : null;
+        }
+        if (type == LocalDate.class) {
+            return value -> value instanceof LocalDate ? value
+                : value instanceof String s ? LocalDate.parse(s) : null;
+        }
+        if (type == OffsetDateTime.class) {
+            return value -> value instanceof OffsetDateTime ? value
+                : value instanceof String s ? OffsetDateTime.parse(s) : null;
         }
+        return null;
     }
-}
\ No newline at end of file
+}
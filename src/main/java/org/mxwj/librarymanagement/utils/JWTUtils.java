@@ -1,6 +1,10 @@
 package org.mxwj.librarymanagement.utils;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
@@ -11,15 +15,29 @@ import io.vertx.ext.auth.User;
 import io.vertx.ext.auth.authentication.TokenCredentials;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Request;
 
 import org.mxwj.librarymanagement.lib.RedisClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class JWTUtils {
+    private static final Logger logger = LoggerFactory.getLogger(JWTUtils.class);
+
     private final JWTAuth jwtAuth;
     private final RedisClient redisClient;
     private static final int TOKEN_EXPIRES = 3600 * 24; // 24小时过期
     private static final String SECRET = "dhiauwyhdiuahwiduhaiuwd";
 
+    // 本地 token 缓存: 只缓存验证成功的 token, 登录/登出时通过 Redis 频道通知所有实例失效
+    private static final int TOKEN_CACHE_SIZE = 10000;
+    private static final long TOKEN_CACHE_TTL_MS = 60_000;
+    private static final String TOKEN_EVENTS_CHANNEL = "auth:token-events";
+
+    private final TokenCache tokenCache = new TokenCache(TOKEN_CACHE_SIZE, TOKEN_CACHE_TTL_MS);
+    private final String instanceId = UUID.randomUUID().toString();
+
     public JWTUtils(Vertx vertx) {
         // 配置JWT
         JWTAuthOptions config = new JWTAuthOptions()
@@ -28,7 +46,9 @@ public class JWTUtils {
                 .setBuffer(SECRET));
 
         this.jwtAuth = JWTAuth.create(vertx, config);
-        this.redisClient = new RedisClient(vertx);
+        this.redisClient = RedisClient.getInstance(vertx);
+        // 订阅断开期间可能漏掉失效事件, 每次(重新)订阅成功后清空缓存
+        this.redisClient.subscribe(TOKEN_EVENTS_CHANNEL, this::handleTokenEvent, v -> tokenCache.clear());
     }
 
     public Future<String> generateToken(String userId, String role) {
@@ -40,25 +60,35 @@ public class JWTUtils {
                 .setExpiresInSeconds(TOKEN_EXPIRES)
         );
 
-        // 将token存入Redis，使用userId作为key
-        return redisClient.getRedisAPI()
-            .compose(redis -> redis.setex("token:" + userId, String.valueOf(TOKEN_EXPIRES), token)
-            .map(res -> token));
+        // 将token存入Redis，使用userId作为key; 新 token 会顶替旧 token, 因此需要通知各实例失效旧缓存
+        return redisClient.send(Request.cmd(Command.SETEX).arg("token:" + userId).arg(TOKEN_EXPIRES).arg(token))
+            .compose(res -> publishTokenEvent("login", userId))
+            .map(res -> token);
     }
 
     public Future<User> validateToken(String token) {
+        String tokenHash = hashToken(token);
+        User cached = tokenCache.get(tokenHash);
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+
         TokenCredentials credentials = new TokenCredentials(token);
 
         return Future.future(promise ->
             jwtAuth.authenticate(credentials)
                 .onSuccess(user -> {
                     String userId = user.principal().getString("sub");
+                    // 查询 Redis 前记录该用户的失效代数, 防止查询期间发生的登出被缓存写入覆盖
+                    long generation = tokenCache.generation(userId);
 
                     // 检查Redis中是否存在该token
-                    redisClient.getRedisAPI()
-                        .compose(redis -> redis.get("token:" + userId))
+                    redisClient.send(Request.cmd(Command.GET).arg("token:" + userId))
                         .onSuccess(storedToken -> {
-                            if (token.equals(storedToken.toString())) {
+                            if (storedToken != null && token.equals(storedToken.toString())) {
+                                Long exp = user.principal().getLong("exp");
+                                long expiresAt = exp != null ? exp * 1000 : System.currentTimeMillis() + TOKEN_CACHE_TTL_MS;
+                                tokenCache.put(tokenHash, userId, user, expiresAt, generation);
                                 promise.complete(user);
                             } else {
                                 promise.fail("Invalid token");
@@ -78,19 +108,62 @@ public class JWTUtils {
                 .onSuccess(user -> {
                     String userId = user.principal().getString("sub");
                     // 删除 Redis 中的 token
-                    redisClient.getRedisAPI()
-                        .compose(redis -> redis.del(List.of("token:" + userId)))
+                    redisClient.send(Request.cmd(Command.DEL).arg("token:" + userId))
+                        .compose(res -> publishTokenEvent("revoke", userId))
                         .onSuccess(res -> promise.complete())
                         .onFailure(err -> {
-                            System.err.println("删除token失败: " + err.getMessage());
+                            logger.warn("删除token失败: {}", err.getMessage());
                             promise.fail(err);
                         });
                 })
                 .onFailure(err -> {
-                    System.err.println("token验证失败: " + err.getMessage());
+                    logger.warn("token验证失败: {}", err.getMessage());
                     promise.fail(err);
                 })
         );
     }
 
+    public JsonObject cacheStats() {
+        return tokenCache.stats();
+    }
+
+    // 本实例立即失效, 其他实例通过频道消息失效
+    private Future<Void> publishTokenEvent(String type, String userId) {
+        tokenCache.invalidateUser(userId);
+        JsonObject event = new JsonObject()
+            .put("type", type)
+            .put("userId", userId)
+            .put("ts", System.currentTimeMillis())
+            .put("origin", instanceId);
+        return redisClient.publish(TOKEN_EVENTS_CHANNEL, event.encode())
+            .onFailure(err -> logger.warn("发布token事件失败: {}", err.getMessage()))
+            .<Void>mapEmpty()
+            .recover(err -> Future.succeededFuture());
+    }
+
+    private void handleTokenEvent(String payload) {
+        try {
+            JsonObject event = new JsonObject(payload);
+            if (instanceId.equals(event.getString("origin"))) {
+                return;
+            }
+            tokenCache.invalidateUser(event.getString("userId"));
+            Long ts = event.getLong("ts");
+            if (ts != null) {
+                tokenCache.recordInvalidationLag(Math.max(System.currentTimeMillis() - ts, 0));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("无法解析token事件: {}", e.getMessage());
+        }
+    }
+
+    private static String hashToken(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
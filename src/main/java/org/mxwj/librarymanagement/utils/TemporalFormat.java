@@ -0,0 +1,129 @@
+package org.mxwj.librarymanagement.utils;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import io.vertx.core.json.jackson.DatabindCodec;
+
+/**
+ * 把 OffsetDateTime / LocalDate 直接格式化到调用方提供的 char[] 中, 输出与 toString() 完全一致
+ * (秒和纳秒为 0 时省略, 小数按 3/6/9 位), 不创建中间字符串.
+ *
+ * 年份超出 0000-9999 时返回 -1, 由调用方退回 toString().
+ */
+public final class TemporalFormat {
+    // yyyy-MM-ddTHH:mm:ss.nnnnnnnnn+HH:mm:ss
+    public static final int MAX_LENGTH = 38;
+
+    private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+    private TemporalFormat() {}
+
+    public static int format(OffsetDateTime value, char[] out) {
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        int pos = date(year, value.getMonthValue(), value.getDayOfMonth(), out, 0);
+        out[pos++] = 'T';
+        pos = digits2(value.getHour(), out, pos);
+        out[pos++] = ':';
+        pos = digits2(value.getMinute(), out, pos);
+        int second = value.getSecond();
+        int nano = value.getNano();
+        if (second > 0 || nano > 0) {
+            out[pos++] = ':';
+            pos = digits2(second, out, pos);
+            if (nano > 0) {
+                out[pos++] = '.';
+                if (nano % 1_000_000 == 0) {
+                    pos = digits(nano / 1_000_000, 3, out, pos);
+                } else if (nano % 1000 == 0) {
+                    pos = digits(nano / 1000, 6, out, pos);
+                } else {
+                    pos = digits(nano, 9, out, pos);
+                }
+            }
+        }
+        // ZoneOffset 的 id 是缓存的字符串(Z 或 +08:00)
+        String offset = value.getOffset().getId();
+        offset.getChars(0, offset.length(), out, pos);
+        return pos + offset.length();
+    }
+
+    public static int format(LocalDate value, char[] out) {
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        return date(year, value.getMonthValue(), value.getDayOfMonth(), out, 0);
+    }
+
+    // 把 jacksonModule 注册到 Vert.x 的 DatabindCodec, 只注册一次. 由 MainVerticle.start 调用,
+    // 不论经 Main 还是 Vert.x Launcher 启动都会执行
+    public static void registerJacksonModule() {
+        if (REGISTERED.compareAndSet(false, true)) {
+            DatabindCodec.mapper().registerModule(jacksonModule());
+        }
+    }
+
+    // 供 Vert.x 的 DatabindCodec 使用(GET、multipart 等仍由 GraphQLHandler 输出的请求), 须在第一次编码 JSON 前注册
+    public static SimpleModule jacksonModule() {
+        SimpleModule module = new SimpleModule("TemporalFormat");
+        module.addSerializer(OffsetDateTime.class, new StdSerializer<>(OffsetDateTime.class) {
+            @Override
+            public void serialize(OffsetDateTime value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                char[] buf = new char[MAX_LENGTH];
+                int length = format(value, buf);
+                if (length < 0) {
+                    gen.writeString(value.toString());
+                } else {
+                    gen.writeString(buf, 0, length);
+                }
+            }
+        });
+        module.addSerializer(LocalDate.class, new StdSerializer<>(LocalDate.class) {
+            @Override
+            public void serialize(LocalDate value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                char[] buf = new char[MAX_LENGTH];
+                int length = format(value, buf);
+                if (length < 0) {
+                    gen.writeString(value.toString());
+                } else {
+                    gen.writeString(buf, 0, length);
+                }
+            }
+        });
+        return module;
+    }
+
+    private static int date(int year, int month, int day, char[] out, int pos) {
+        pos = digits(year, 4, out, pos);
+        out[pos++] = '-';
+        pos = digits2(month, out, pos);
+        out[pos++] = '-';
+        return digits2(day, out, pos);
+    }
+
+    private static int digits2(int value, char[] out, int pos) {
+        out[pos] = (char) ('0' + value / 10);
+        out[pos + 1] = (char) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    // 定宽输出, 不足位数时左侧补 0
+    private static int digits(int value, int width, char[] out, int pos) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + width;
+    }
+}
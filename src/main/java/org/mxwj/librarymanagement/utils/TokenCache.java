@@ -0,0 +1,194 @@
+package org.mxwj.librarymanagement.utils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+
+/**
+ * 已验证 token 的本地缓存(近似 LRU + 过期时间), 命中时跳过 HMAC 校验和 Redis 查询. 各 event loop 共享, 读取不加锁.
+ * key 为 token 的哈希; 每个用户同一时刻只有一个有效 token, 因此按用户失效即可.
+ *
+ * 失效代数按用户记录: 验证开始前读取 generation(userId), 写入时若该用户期间被失效过(或整体清空过)则放弃写入,
+ * 其他用户的登录、登出不会让这次写入作废. 同一用户的写入和失效在 generations 的 compute 中串行.
+ * 每个登录过的账户保留一个计数, 数量以账户数为上限.
+ *
+ * 超过 maxSize 时先清掉过期条目, 仍超出则按最近访问时间淘汰最旧的一批, 淘汰到 maxSize 的 90%, 把排序的开销分摊到多次写入.
+ */
+public class TokenCache {
+    private final int maxSize;
+    private final long maxTtlMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> hashByUser = new ConcurrentHashMap<>();
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    // clear() 的次数, 计入每个用户的代数
+    private final AtomicLong clears = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder lagSamples = new LongAdder();
+    private final LongAdder lagTotalMillis = new LongAdder();
+    private final AtomicLong lagMaxMillis = new AtomicLong();
+
+    public TokenCache(int maxSize, long maxTtlMillis) {
+        this.maxSize = maxSize;
+        this.maxTtlMillis = maxTtlMillis;
+    }
+
+    public User get(String tokenHash) {
+        Entry entry = entries.get(tokenHash);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.expiresAt <= now) {
+            removeEntry(tokenHash, entry);
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = now;
+        hits.increment();
+        return entry.user;
+    }
+
+    // 该用户的失效代数: 用户失效和整体清空都会使它增大
+    public long generation(String userId) {
+        return clears.get() + generations.getOrDefault(userId, 0L);
+    }
+
+    public void put(String tokenHash, String userId, User user, long tokenExpiresAt, long expectedGeneration) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(userId, user, Math.min(tokenExpiresAt, now + maxTtlMillis), now);
+        long clearsBefore = clears.get();
+        boolean[] stored = new boolean[1];
+        generations.compute(userId, (id, current) -> {
+            if (clearsBefore + (current == null ? 0L : current) == expectedGeneration) {
+                String previous = hashByUser.put(id, tokenHash);
+                if (previous != null && !previous.equals(tokenHash)) {
+                    entries.remove(previous);
+                }
+                entries.put(tokenHash, entry);
+                stored[0] = true;
+            }
+            return current;
+        });
+        if (!stored[0]) {
+            return;
+        }
+        // clear() 不经过 compute, 写入期间发生过清空时撤回
+        if (clears.get() != clearsBefore) {
+            removeEntry(tokenHash, entry);
+            return;
+        }
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public void invalidateUser(String userId) {
+        generations.compute(userId, (id, current) -> {
+            String tokenHash = hashByUser.remove(id);
+            if (tokenHash != null) {
+                entries.remove(tokenHash);
+            }
+            return current == null ? 1L : current + 1;
+        });
+        invalidations.increment();
+    }
+
+    // 丢失失效事件时(如订阅连接断开)整体清空
+    public void clear() {
+        clears.incrementAndGet();
+        entries.clear();
+        hashByUser.clear();
+    }
+
+    // 事件从发布到本实例生效的延迟
+    public void recordInvalidationLag(long lagMillis) {
+        lagSamples.increment();
+        lagTotalMillis.add(lagMillis);
+        lagMaxMillis.accumulateAndGet(lagMillis, Math::max);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public JsonObject stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long samples = lagSamples.sum();
+        return new JsonObject()
+            .put("size", size())
+            .put("hits", hitCount)
+            .put("misses", missCount)
+            .put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount))
+            .put("invalidations", invalidations.sum())
+            .put("evictions", evictions.sum())
+            .put("invalidationLagAvgMs", samples == 0 ? 0.0 : (double) lagTotalMillis.sum() / samples)
+            .put("invalidationLagMaxMs", lagMaxMillis.get());
+    }
+
+    // 同一时刻只有一个线程淘汰, 其他写入者直接返回
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            entries.forEach((tokenHash, entry) -> {
+                if (entry.expiresAt <= now) {
+                    removeEntry(tokenHash, entry);
+                }
+            });
+            int excess = entries.size() - maxSize / 10 * 9;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> oldest = entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                .limit(excess)
+                .toList();
+            for (Map.Entry<String, Entry> victim : oldest) {
+                if (removeEntry(victim.getKey(), victim.getValue())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private boolean removeEntry(String tokenHash, Entry entry) {
+        if (!entries.remove(tokenHash, entry)) {
+            return false;
+        }
+        hashByUser.remove(entry.userId, tokenHash);
+        return true;
+    }
+
+    private static final class Entry {
+        final String userId;
+        final User user;
+        final long expiresAt;
+        volatile long lastAccess;
+
+        Entry(String userId, User user, long expiresAt, long lastAccess) {
+            this.userId = userId;
+            this.user = user;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.handler.BookImportHandler;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.service.BookService;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BookImportHandlerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private Mutiny.SessionFactory factory;
+    private Vertx vertx;
+    private HttpServer server;
+    private HttpClient client;
+    private String tag;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        factory = DatabaseManager.getSessionFactory();
+        tag = "I-" + UUID.randomUUID().toString().substring(0, 8);
+        vertx = Vertx.vertx();
+
+        Router router = Router.router(vertx);
+        router.post("/import/books")
+            .handler(context -> {
+                context.put("userPrincipal", new JsonObject().put("sub", "1").put("role", "1"));
+                context.next();
+            })
+            .handler(new BookImportHandler(new WorkerBookService()));
+        server = vertx.createHttpServer().requestHandler(router).listen(0).toCompletionStage().toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+        client = vertx.createHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        factory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM Book b WHERE b.isbn LIKE :prefix")
+                .setParameter("prefix", tag + "%")
+                .executeUpdate()
+        ).await().atMost(TIMEOUT);
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    // 带 BOM 的表头, CRLF 换行, 引号内的逗号和转义的引号, 未加引号的字段去掉首尾空白, 空字段视为未提供
+    @Test
+    void testCsvQuotingCrlfAndBom() throws Exception {
+        String body = "\uFEFFisbn,title,author,totalCopies\r\n"
+            + tag + "-1,\"Foundation, Book \"\"One\"\"\",\"Isaac Asimov\",3\r\n"
+            + tag + "-2,  三体  ,刘慈欣,\r\n";
+
+        List<JsonObject> lines = post("text/csv", body);
+        assertEquals(1, lines.size(), lines.toString());
+        assertSummary(lines.get(0), 2, 2, 0, 0);
+
+        Book first = book(tag + "-1");
+        assertEquals("Foundation, Book \"One\"", first.getTitle());
+        assertEquals("Isaac Asimov", first.getAuthor());
+        assertEquals(3, first.getTotalCopies());
+        Book second = book(tag + "-2");
+        assertEquals("三体", second.getTitle());
+        assertEquals("刘慈欣", second.getAuthor());
+    }
+
+    // 每个出错或重复的行各输出一条, 行号按原文件计(含表头和空行), 其余行照常导入
+    @Test
+    void testRowErrorsReportLineNumbers() throws Exception {
+        String body = "isbn,title,publishDate\n"
+            + tag + "-1,基地,2001-01-01\n"
+            + ",缺少ISBN,\n"
+            + tag + "-3,\"引号未闭合,\n"
+            + tag + "-4,列数不对\n"
+            + tag + "-1,文件内重复,\n"
+            + tag + "-6,日期错误,2001-13-01\n"
+            + "\n"
+            + tag + "-8,沙丘,\n";
+
+        List<JsonObject> lines = post("text/csv", body);
+        assertEquals(List.of("error:3", "error:4", "error:5", "duplicate:6", "error:7"), rowEvents(lines));
+        assertTrue(lines.get(0).getString("message").contains("缺少ISBN"), lines.get(0).encode());
+        assertTrue(lines.get(1).getString("message").contains("引号未闭合"), lines.get(1).encode());
+        assertTrue(lines.get(2).getString("message").contains("列数"), lines.get(2).encode());
+        assertTrue(lines.get(4).getString("message").contains("出版日期"), lines.get(4).encode());
+        assertSummary(lines.get(lines.size() - 1), 7, 2, 1, 4);
+
+        // NDJSON: 无法解析的行, 字段类型错误, 与库中已有图书重复
+        String ndjson = "{\"isbn\":\"" + tag + "-1\",\"title\":\"基地\"}\n"
+            + "{not json\n"
+            + "{\"isbn\":\"" + tag + "-10\",\"title\":\"银河帝国\",\"totalCopies\":\"many\"}\n"
+            + "{\"isbn\":\"" + tag + "-11\",\"title\":\"银河帝国\"}\n";
+        lines = post("application/x-ndjson", ndjson);
+        assertEquals(List.of("error:2", "error:3", "duplicate:1"), rowEvents(lines));
+        assertTrue(lines.get(2).getString("message").contains("ISBN已存在"), lines.get(2).encode());
+        assertSummary(lines.get(lines.size() - 1), 4, 1, 1, 2);
+    }
+
+    // 全是错误行时没有批次可以暂停读取, 靠写缓冲满时暂停; 客户端先不读响应, 之后所有错误行仍然完整输出
+    @Test
+    void testErrorLinesWithSlowClient() throws Exception {
+        int rows = 50_000;
+        StringBuilder body = new StringBuilder("isbn,title\n");
+        for (int i = 0; i < rows; i++) {
+            body.append(",缺少ISBN ").append(i).append('\n');
+        }
+
+        Buffer received = Buffer.buffer();
+        client.request(HttpMethod.POST, server.actualPort(), "localhost", "/import/books")
+            .compose(request -> request.putHeader("Content-Type", "text/csv").send(body.toString()))
+            .compose(response -> {
+                Promise<Void> ended = Promise.promise();
+                response.pause();
+                response.handler(received::appendBuffer);
+                response.endHandler(v -> ended.complete());
+                vertx.setTimer(500, id -> response.resume());
+                return ended.future();
+            })
+            .toCompletionStage().toCompletableFuture().get(60, TimeUnit.SECONDS);
+
+        String[] lines = received.toString().split("\n");
+        assertEquals(rows + 1, lines.length);
+        assertEquals(rows + 1, new JsonObject(lines[rows - 1]).getLong("line"));
+        assertSummary(new JsonObject(lines[rows]), rows, 0, 0, rows);
+    }
+
+    private List<JsonObject> post(String contentType, String body) throws Exception {
+        String response = client.request(HttpMethod.POST, server.actualPort(), "localhost", "/import/books")
+            .compose(request -> request.putHeader("Content-Type", contentType).send(body))
+            .compose(res -> {
+                assertEquals(200, res.statusCode());
+                return res.body();
+            })
+            .toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS)
+            .toString();
+        List<JsonObject> lines = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            lines.add(new JsonObject(line));
+        }
+        // 每批之后的进度不参与比较
+        lines.removeIf(line -> line.getString("type").equals("progress"));
+        return lines;
+    }
+
+    private static List<String> rowEvents(List<JsonObject> lines) {
+        return lines.stream()
+            .filter(line -> line.containsKey("line"))
+            .map(line -> line.getString("type") + ":" + line.getLong("line"))
+            .toList();
+    }
+
+    private static void assertSummary(JsonObject summary, long processed, long inserted, long duplicates, long errors) {
+        assertEquals("summary", summary.getString("type"));
+        assertEquals(processed, summary.getLong("processed"), summary.encode());
+        assertEquals(inserted, summary.getLong("inserted"), summary.encode());
+        assertEquals(duplicates, summary.getLong("duplicates"), summary.encode());
+        assertEquals(errors, summary.getLong("errors"), summary.encode());
+    }
+
+    // SessionFactory 是进程级单例, 不属于测试的 Vertx; 与其他服务测试一样从 Vert.x 之外的线程调用
+    private static class WorkerBookService extends BookService {
+        @Override
+        public Uni<Set<String>> importBooks(List<CreateBookDTO> rows) {
+            return Uni.createFrom().voidItem()
+                .emitOn(Infrastructure.getDefaultWorkerPool())
+                .chain(() -> super.importBooks(rows));
+        }
+    }
+
+    private Book book(String isbn) {
+        return factory.withSession(session ->
+            session.createQuery("FROM Book b WHERE b.isbn = :isbn", Book.class)
+                .setParameter("isbn", isbn)
+                .getSingleResult()
+        ).await().atMost(TIMEOUT);
+    }
+}
@@ -0,0 +1,141 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.BooksPage;
+import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.service.BookService;
+
+import io.smallrye.mutiny.Uni;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * searchBooks 两条路径的对比: 索引加载完成前走 LIKE '%kw%' + COUNT, 加载完成后走内存倒排索引(再按 id 取当前页).
+ * 合成目录默认 50 万本(-Dbenchmark.books=N 调整), 两条路径的命中数必须一致.
+ * 加载索引的同时给一批图书的标题加上前缀, 加载完成后索引中必须是修改后的标题(其余字段不变, 命中数不受影响).
+ * 默认跳过, 用 mvn test -Dtest=BookSearchBenchmarkTest -Dbenchmark=true 运行.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BookSearchBenchmarkTest {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 500_000);
+    private static final int LIKE_ITERATIONS = 5;
+    private static final int INDEX_WARMUP = 2_000;
+    private static final int INDEX_ITERATIONS = 10_000;
+    private static final int UPDATES_WHILE_LOADING = 200;
+    private static final int PAGE_SIZE = 20;
+    private static final List<String> KEYWORDS = List.of("三体", "之书 17", "asimov", "BENCH00000012");
+    private static final Duration TIMEOUT = Duration.ofMinutes(10);
+
+    // 标题由两个词加编号组成, 作者和出版社各取一个, 保证各关键字的命中数从几条到几万条不等
+    private static final String INSERT_SQL =
+        "INSERT INTO book (isbn, title, author, publisher, category, total_copies, available_copies, location, created_at, updated_at) " +
+        "SELECT 'BENCH' || lpad(i::text, 12, '0'), " +
+        "       (ARRAY['三体','球状','闪电','银河','帝国','基地','沙丘','流浪','地球','黑暗'])[1 + i % 10] || " +
+        "       (ARRAY['森林','之书','时代','边缘','纪元','传说','之歌','往事','日记','档案'])[1 + (i / 10) % 10] || ' ' || (i % 1000), " +
+        "       (ARRAY['刘慈欣','Isaac Asimov','Frank Herbert','王晋康','Ted Chiang','韩松','Ursula Le Guin'])[1 + i % 7], " +
+        "       (ARRAY['重庆出版社','Tor Books','Gollancz','四川科学技术出版社','Penguin'])[1 + i % 5], " +
+        "       '科幻', 1, 1, 'BENCH', now(), now() " +
+        "FROM generate_series(1, CAST(:count AS int)) AS i";
+
+    private static Mutiny.SessionFactory factory;
+    // 加载索引时改名的图书: id, isbn, title, author, publisher
+    private static List<Object[]> updated;
+
+    @BeforeAll
+    static void setUp() {
+        factory = DatabaseManager.getSessionFactory();
+        long start = System.nanoTime();
+        factory.withTransaction(session ->
+            session.createNativeQuery(INSERT_SQL)
+                .setParameter("count", BOOKS)
+                .executeUpdate()
+        ).await().atMost(TIMEOUT);
+        System.out.printf("插入 %,d 本图书 %,d ms%n", BOOKS, (System.nanoTime() - start) / 1_000_000);
+
+        updated = factory.withSession(session ->
+            session.createQuery("SELECT b.id, b.isbn, b.title, b.author, b.publisher FROM Book b WHERE b.location = 'BENCH' ORDER BY b.id", Object[].class)
+                .setMaxResults(UPDATES_WHILE_LOADING)
+                .getResultList()
+        ).await().atMost(TIMEOUT);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.withTransaction(session ->
+                session.createMutationQuery("DELETE FROM Book b WHERE b.location = 'BENCH'").executeUpdate()
+            ).await().atMost(TIMEOUT);
+        }
+    }
+
+    @Test
+    void testIndexAgainstLike() {
+        BookService books = new BookService();
+
+        List<Integer> likeTotals = new ArrayList<>();
+        for (String keyword : KEYWORDS) {
+            likeTotals.add(total(books.searchBooks(keyword, 1, PAGE_SIZE)));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LIKE_ITERATIONS; i++) {
+            for (String keyword : KEYWORDS) {
+                books.searchBooks(keyword, 1, PAGE_SIZE).await().atMost(TIMEOUT);
+            }
+        }
+        report("LIKE", LIKE_ITERATIONS * KEYWORDS.size(), System.nanoTime() - start);
+
+        // 加载索引的同时改名, 与加载的各块交错
+        start = System.nanoTime();
+        List<Uni<Void>> updates = new ArrayList<>();
+        for (Object[] row : updated) {
+            updates.add(books.updateBook((Long) row[0], renamed(row)).replaceWithVoid());
+        }
+        Uni.join().all(books.loadSearchIndex(), Uni.join().all(updates).andFailFast().replaceWithVoid())
+            .andFailFast()
+            .await().atMost(TIMEOUT);
+        System.out.printf("加载索引(同时修改 %d 本) %,d ms%n", updated.size(), (System.nanoTime() - start) / 1_000_000);
+        assertEquals(updated.size(), total(books.searchBooks("改名后", 1, PAGE_SIZE)));
+
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            assertEquals(likeTotals.get(i), total(books.searchBooks(KEYWORDS.get(i), 1, PAGE_SIZE)), KEYWORDS.get(i));
+        }
+        for (int i = 0; i < INDEX_WARMUP; i++) {
+            books.searchBooks(KEYWORDS.get(i % KEYWORDS.size()), 1, PAGE_SIZE).await().atMost(TIMEOUT);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < INDEX_ITERATIONS; i++) {
+            books.searchBooks(KEYWORDS.get(i % KEYWORDS.size()), 1, PAGE_SIZE).await().atMost(TIMEOUT);
+        }
+        report("倒排索引", INDEX_ITERATIONS, System.nanoTime() - start);
+    }
+
+    private static int total(Uni<BooksPage> page) {
+        return page.await().atMost(TIMEOUT).getPageInfo().getTotalElements();
+    }
+
+    private static CreateBookDTO renamed(Object[] row) {
+        CreateBookDTO dto = new CreateBookDTO();
+        dto.setIsbn((String) row[1]);
+        dto.setTitle("改名后 " + row[2]);
+        dto.setAuthor((String) row[3]);
+        dto.setPublisher((String) row[4]);
+        dto.setCategory("科幻");
+        dto.setLocation("BENCH");
+        return dto;
+    }
+
+    private static void report(String name, int operations, long elapsedNanos) {
+        System.out.printf("%-12s %,10.1f 次/秒  平均 %,8.2f ms  (%,d 本, 每页 %d)%n",
+            name, operations * 1e9 / elapsedNanos, elapsedNanos / 1e6 / operations, BOOKS, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,89 @@
+package org.mxwj.librarymanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.BookSearchIndex;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BookSearchIndexTest {
+
+    private BookSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new BookSearchIndex();
+        index.put(1L, "三体", "刘慈欣", "9787536692930", "重庆出版社");
+        index.put(2L, "三体II：黑暗森林", "刘慈欣", "9787536693968", "重庆出版社");
+        index.put(3L, "The Three-Body Problem", "Cixin Liu", "9780765382030", "Tor Books");
+        index.put(4L, "球状闪电", "刘慈欣", "9787536484276", "四川科学技术出版社");
+        index.put(5L, "Java Concurrency in Practice", "Brian Goetz", "9780321349606", "Addison-Wesley");
+    }
+
+    @Test
+    void testSubstringMatchAcrossFields() {
+        assertEquals(List.of(1L, 2L), index.search("三体", 0, 10).bookIds());
+        assertEquals(3, index.search("刘慈欣", 0, 10).total());
+        assertEquals(List.of(5L), index.search("CONCURRENCY", 0, 10).bookIds());
+        assertEquals(List.of(3L), index.search("tor", 0, 10).bookIds());
+        assertEquals(0, index.search("不存在的书", 0, 10).total());
+    }
+
+    @Test
+    void testRankingPutsExactTitleFirst() {
+        index.put(6L, "三体全集", "刘慈欣", "9787229100605", "重庆出版社");
+        assertEquals(List.of(1L, 2L, 6L), index.search("三体", 0, 10).bookIds());
+        assertEquals(List.of(2L), index.search("三体", 1, 1).bookIds());
+    }
+
+    @Test
+    void testSingleCharacterKeyword() {
+        assertEquals(3, index.search("球", 0, 10).total() + index.search("体", 0, 10).total());
+    }
+
+    @Test
+    void testUpdateAndRemove() {
+        index.put(4L, "流浪地球", "刘慈欣", "9787536484276", "四川科学技术出版社");
+        assertEquals(0, index.search("球状闪电", 0, 10).total());
+        assertEquals(List.of(4L), index.search("流浪地球", 0, 10).bookIds());
+
+        index.remove(1L);
+        assertEquals(List.of(2L), index.search("三体", 0, 10).bookIds());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void testCompactionKeepsResults() {
+        for (long id = 100; id < 3100; id++) {
+            index.put(id, "临时图书 " + id, "作者", "T" + id, "出版社");
+        }
+        for (long id = 100; id < 3100; id++) {
+            index.remove(id);
+        }
+        index.put(7L, "三体：死神永生", "刘慈欣", "9787536692947", "重庆出版社");
+
+        assertEquals(0, index.search("临时图书", 0, 10).total());
+        assertEquals(List.of(1L, 2L, 7L), index.search("三体", 0, 10).bookIds());
+        assertEquals(6, index.size());
+    }
+
+    // 启动加载的某一块在修改提交前查询: 加载结果不能覆盖加载期间的更新, 也不能恢复已删除的图书
+    @Test
+    void testLoadKeepsChangesMadeWhileLoading() {
+        BookSearchIndex loading = new BookSearchIndex();
+        loading.put(1L, "三体（修订版）", "刘慈欣", "9787536692930", "重庆出版社");
+        loading.remove(2L);
+
+        loading.load(1L, "三体", "刘慈欣", "9787536692930", "重庆出版社");
+        loading.load(2L, "三体II：黑暗森林", "刘慈欣", "9787536693968", "重庆出版社");
+        loading.load(3L, "球状闪电", "刘慈欣", "9787536484276", "四川科学技术出版社");
+        loading.markReady();
+
+        assertEquals(List.of(1L), loading.search("修订版", 0, 10).bookIds());
+        assertEquals(List.of(1L), loading.search("三体", 0, 10).bookIds());
+        assertEquals(List.of(3L), loading.search("球状闪电", 0, 10).bookIds());
+        assertEquals(2, loading.size());
+    }
+}
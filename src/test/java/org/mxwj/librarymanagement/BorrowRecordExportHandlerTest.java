@@ -0,0 +1,315 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.handler.BorrowRecordExportHandler;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.service.BorrowService;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BorrowRecordExportHandlerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    // 每块 2 行, 7 条匹配的记录需要 4 块
+    private static final int CHUNK = 2;
+
+    private Mutiny.SessionFactory factory;
+    private Vertx vertx;
+    private HttpServer server;
+    private HttpClient client;
+    // 所有请求都从这个 context 发出; 从测试线程直接发起时每次得到新的 context, 复用的 keep-alive 连接会偶发收不到响应
+    private Context clientContext;
+    private String tag;
+    private Book tagged;
+    private Book other;
+    private Account taggedAccount;
+    private Account otherAccount;
+    // 按 (createdAt, id) 升序, 即导出的顺序; 不含不匹配关键字的那条
+    private List<BorrowRecord> matching;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        factory = DatabaseManager.getSessionFactory();
+        tag = UUID.randomUUID().toString().substring(0, 8);
+        createRecords();
+
+        vertx = Vertx.vertx();
+        Router router = Router.router(vertx);
+        router.get("/export/borrow-records")
+            .handler(context -> {
+                // 测试中用请求头代替 JWT: 没有 X-Role 时视为未登录
+                String role = context.request().getHeader("X-Role");
+                if (role != null) {
+                    context.put("userPrincipal", new JsonObject().put("sub", "1").put("role", role));
+                }
+                context.next();
+            })
+            .handler(new BorrowRecordExportHandler(new WorkerBorrowService(), CHUNK));
+        server = vertx.createHttpServer().requestHandler(router).listen(0).toCompletionStage().toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+        client = vertx.createHttpClient();
+        clientContext = vertx.getOrCreateContext();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        List<Long> bookIds = List.of(tagged.getId(), other.getId());
+        factory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM BorrowRecord br WHERE br.book.id IN :bookIds")
+                .setParameter("bookIds", bookIds)
+                .executeUpdate()
+                .chain(() -> session.createMutationQuery("DELETE FROM Book b WHERE b.id IN :bookIds")
+                    .setParameter("bookIds", bookIds)
+                    .executeUpdate())
+                .chain(() -> session.createMutationQuery("DELETE FROM Account a WHERE a.id IN :ids")
+                    .setParameter("ids", List.of(taggedAccount.getId(), otherAccount.getId()))
+                    .executeUpdate())
+        ).await().atMost(TIMEOUT);
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    // 跨多块 seek: 四条记录的 createdAt 完全相同, 各块之间既不重复也不遗漏; 引号、逗号和换行按 RFC 4180 加引号
+    @Test
+    void testCsvAcrossChunks() throws Exception {
+        Response response = get("format=csv&keyword=" + tag, "1");
+        assertEquals(200, response.status());
+        assertTrue(response.contentType().startsWith("text/csv"), response.contentType());
+
+        List<List<String>> rows = parseCsv(response.body());
+        assertEquals(BorrowService.EXPORT_COLUMNS, rows.get(0));
+        assertEquals(matching.size() + 1, rows.size());
+        for (int i = 0; i < matching.size(); i++) {
+            BorrowRecord record = matching.get(i);
+            List<String> row = rows.get(i + 1);
+            assertEquals(String.valueOf(record.getId()), row.get(0));
+            assertEquals(record.getAccount().getUsername(), row.get(2));
+            assertEquals(record.getBook().getTitle(), row.get(5));
+            // 未归还时 returnDate 为空字段
+            assertEquals("", row.get(8));
+            assertEquals(String.valueOf(record.getStatus()), row.get(9));
+            assertEquals(record.getRemarks() == null ? "" : record.getRemarks(), row.get(10));
+            assertEquals(record.getCreatedAt().toInstant(), OffsetDateTime.parse(row.get(11)).toInstant());
+        }
+    }
+
+    @Test
+    void testNdjsonAcrossChunks() throws Exception {
+        Response response = get("format=ndjson&keyword=" + tag, "1");
+        assertEquals(200, response.status());
+        assertTrue(response.contentType().startsWith("application/x-ndjson"), response.contentType());
+
+        String[] lines = response.body().split("\n");
+        assertEquals(matching.size(), lines.length);
+        for (int i = 0; i < matching.size(); i++) {
+            BorrowRecord record = matching.get(i);
+            JsonObject json = new JsonObject(lines[i]);
+            assertEquals(record.getId(), json.getLong("id"));
+            assertEquals(record.getAccount().getId(), json.getLong("accountId"));
+            assertEquals(record.getBook().getTitle(), json.getString("title"));
+            assertEquals(record.getStatus().intValue(), json.getInteger("status"));
+            assertEquals(record.getRemarks(), json.getString("remarks"));
+            assertNull(json.getValue("returnDate"));
+            assertEquals(record.getCreatedAt().toInstant(), OffsetDateTime.parse(json.getString("createdAt")).toInstant());
+        }
+    }
+
+    // status / keyword 与 findAllBorrowRecords 的筛选结果相同; 关键字匹配书名或用户名
+    @Test
+    void testFiltersMatchFindAllBorrowRecords() throws Exception {
+        BorrowService borrowService = new BorrowService();
+        for (int status : new int[] {-1, 0, 1, 2}) {
+            Response response = get("format=ndjson&status=" + status + "&keyword=" + tag, "1");
+            assertEquals(200, response.status());
+            List<Long> exported = new ArrayList<>();
+            for (String line : response.body().split("\n")) {
+                if (!line.isEmpty()) {
+                    exported.add(new JsonObject(line).getLong("id"));
+                }
+            }
+
+            List<Long> expected = borrowService.findAllBorrowRecords(1, 100, status, tag).await().atMost(TIMEOUT)
+                .getContent().stream()
+                .sorted((a, b) -> a.getCreatedAt().equals(b.getCreatedAt())
+                    ? a.getId().compareTo(b.getId()) : a.getCreatedAt().compareTo(b.getCreatedAt()))
+                .map(BorrowRecord::getId)
+                .toList();
+            assertEquals(expected, exported, "status " + status);
+        }
+    }
+
+    @Test
+    void testRejections() throws Exception {
+        assertEquals(401, get("format=csv", null).status());
+        assertEquals(403, get("format=csv", "0").status());
+        Response badFormat = get("format=xml", "1");
+        assertEquals(400, badFormat.status());
+        assertTrue(new JsonObject(badFormat.body()).getString("error").contains("xml"), badFormat.body());
+        assertEquals(400, get("format=csv&status=abc", "1").status());
+    }
+
+    // tagged 的书名和 taggedAccount 的用户名含关键字; other 与 otherAccount 的那条不匹配
+    private void createRecords() {
+        tagged = book("导出测试, " + tag + " \"精装\"");
+        other = book("无关的书");
+        taggedAccount = account("export-" + tag);
+        otherAccount = account("export-other-" + UUID.randomUUID().toString().substring(0, 8).replaceAll("[0-9a-f]", "x"));
+
+        OffsetDateTime shared = OffsetDateTime.now().minusDays(1).truncatedTo(ChronoUnit.MICROS);
+        matching = new ArrayList<>();
+        matching.add(record(otherAccount, tagged, shared.minusSeconds(1), 1, null));
+        matching.add(record(otherAccount, tagged, shared, 0, null));
+        matching.add(record(otherAccount, tagged, shared, 1, "普通备注"));
+        matching.add(record(otherAccount, tagged, shared, 0, null));
+        matching.add(record(otherAccount, tagged, shared, 2, null));
+        matching.add(record(taggedAccount, other, shared.plusNanos(1_000), 0, "第一行\r\n第二行, 含\"引号\""));
+        matching.add(record(taggedAccount, tagged, shared.plusSeconds(1), 0, null));
+        BorrowRecord unmatched = record(otherAccount, other, shared, 0, null);
+
+        List<BorrowRecord> all = new ArrayList<>(matching);
+        all.add(unmatched);
+        factory.withTransaction(session ->
+            session.persistAll(tagged, other, taggedAccount, otherAccount)
+                // 按顺序写入, 同一 createdAt 的记录 id 依次递增
+                .chain(() -> session.persistAll(all.toArray()))
+        ).await().atMost(TIMEOUT);
+    }
+
+    private static Book book(String title) {
+        Book book = new Book();
+        book.setIsbn("E-" + UUID.randomUUID().toString().substring(0, 12));
+        book.setTitle(title);
+        book.setTotalCopies(10);
+        book.setAvailableCopies(10);
+        book.setCreatedAt(OffsetDateTime.now());
+        book.setUpdatedAt(OffsetDateTime.now());
+        return book;
+    }
+
+    private static Account account(String username) {
+        Account account = new Account();
+        account.setUsername(username);
+        account.setPassword("x");
+        account.setUserType(0);
+        account.setStatus(1);
+        account.setCreatedAt(OffsetDateTime.now());
+        return account;
+    }
+
+    private static BorrowRecord record(Account account, Book book, OffsetDateTime createdAt, int status, String remarks) {
+        BorrowRecord record = new BorrowRecord();
+        record.setAccount(account);
+        record.setBook(book);
+        record.setBorrowDate(createdAt);
+        record.setDueDate(createdAt.plusDays(30));
+        record.setStatus((short) status);
+        record.setRemarks(remarks);
+        record.setCreatedAt(createdAt);
+        record.setUpdatedAt(createdAt);
+        return record;
+    }
+
+    private Response get(String query, String role) throws Exception {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        clientContext.runOnContext(v ->
+            client.request(HttpMethod.GET, server.actualPort(), "localhost", "/export/borrow-records?" + query)
+                .compose(request -> {
+                    if (role != null) {
+                        request.putHeader("X-Role", role);
+                    }
+                    return request.send();
+                })
+                .compose(response -> response.body().map(body -> new Response(response.statusCode(),
+                    contentType(response), body.toString())))
+                .onComplete(ar -> {
+                    if (ar.succeeded()) {
+                        result.complete(ar.result());
+                    } else {
+                        result.completeExceptionally(ar.cause());
+                    }
+                }));
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    private static String contentType(HttpClientResponse response) {
+        String contentType = response.getHeader("Content-Type");
+        return contentType == null ? "" : contentType;
+    }
+
+    // 按 RFC 4180 解析: 引号内的逗号、引号("")和换行属于字段本身, 记录以 CRLF 结束
+    private static List<List<String>> parseCsv(String text) {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                row.add(field.toString());
+                field.setLength(0);
+                rows.add(row);
+                row = new ArrayList<>();
+                i++;
+            } else {
+                field.append(c);
+            }
+        }
+        assertEquals(0, field.length() + row.size(), "最后一行缺少 CRLF");
+        return rows;
+    }
+
+    private record Response(int status, String contentType, String body) {
+    }
+
+    // SessionFactory 是进程级单例, 不属于测试的 Vertx; 与其他服务测试一样从 Vert.x 之外的线程调用
+    private static class WorkerBorrowService extends BorrowService {
+        @Override
+        public Uni<List<Object[]>> exportChunk(CursorUtils.TimeId after, int limit, int status, String keyword) {
+            return Uni.createFrom().voidItem()
+                .emitOn(Infrastructure.getDefaultWorkerPool())
+                .chain(() -> super.exportChunk(after, limit, status, keyword));
+        }
+    }
+}
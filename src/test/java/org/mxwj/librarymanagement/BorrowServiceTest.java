@@ -0,0 +1,309 @@
+package org.mxwj.librarymanagement;
+
+import io.smallrye.mutiny.Uni;
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.model.Reservation;
+import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.service.BookService;
+import org.mxwj.librarymanagement.service.BorrowService;
+import org.mxwj.librarymanagement.service.ReservationService;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BorrowServiceTest {
+
+    private static final int COPIES = 10;
+    private static final int ACCOUNTS = 50;
+    private static final int BORROWS = 300;
+    private static final int MAX_BORROW_BOOKS = 5;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private Mutiny.SessionFactory factory;
+    private BorrowService borrowService;
+    private ReservationService reservationService;
+    private Long bookId;
+    private final List<Long> accountIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        factory = DatabaseManager.getSessionFactory();
+        reservationService = new ReservationService(null);
+        borrowService = new BorrowService(null, null, reservationService, null);
+        String tag = UUID.randomUUID().toString().substring(0, 8);
+
+        Book book = new Book();
+        book.setIsbn("T-" + tag);
+        book.setTitle("并发借阅测试 " + tag);
+        book.setTotalCopies(COPIES);
+        book.setAvailableCopies(COPIES);
+        book.setCreatedAt(OffsetDateTime.now());
+        book.setUpdatedAt(OffsetDateTime.now());
+
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setUsername("checkout-" + tag + "-" + i);
+            account.setPassword("x");
+            account.setUserType(0);
+            account.setStatus(1);
+            account.setCreatedAt(OffsetDateTime.now());
+            accounts.add(account);
+        }
+
+        factory.withTransaction(session ->
+            session.persist(book)
+                .chain(() -> session.persistAll(accounts.toArray()))
+        ).await().atMost(TIMEOUT);
+
+        bookId = book.getId();
+        accounts.forEach(account -> accountIds.add(account.getId()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM Reservation r WHERE r.book.id = :bookId")
+                .setParameter("bookId", bookId)
+                .executeUpdate()
+                .chain(() -> session.createMutationQuery("DELETE FROM BorrowRecord br WHERE br.book.id = :bookId")
+                    .setParameter("bookId", bookId)
+                    .executeUpdate())
+                .chain(() -> session.createMutationQuery("DELETE FROM Book b WHERE b.id = :bookId")
+                    .setParameter("bookId", bookId)
+                    .executeUpdate())
+                .chain(() -> session.createMutationQuery("DELETE FROM Account a WHERE a.id IN :ids")
+                    .setParameter("ids", accountIds)
+                    .executeUpdate())
+        ).await().atMost(TIMEOUT);
+    }
+
+    @Test
+    void testConcurrentBorrowNeverOversells() {
+        List<Uni<Integer>> borrows = new ArrayList<>();
+        for (int i = 0; i < BORROWS; i++) {
+            Long accountId = accountIds.get(i % ACCOUNTS);
+            borrows.add(borrowService.borrowBook(accountId, bookId, null)
+                .map(record -> 1)
+                .onFailure().recoverWithItem(0));
+        }
+
+        int succeeded = Uni.join().all(borrows).andFailFast()
+            .map(results -> results.stream().mapToInt(Integer::intValue).sum())
+            .await().atMost(TIMEOUT);
+
+        Book book = factory.withSession(session -> session.find(Book.class, bookId))
+            .await().atMost(TIMEOUT);
+        Long records = factory.withSession(session ->
+            session.createQuery("SELECT COUNT(br) FROM BorrowRecord br WHERE br.book.id = :bookId", Long.class)
+                .setParameter("bookId", bookId)
+                .getSingleResult()
+        ).await().atMost(TIMEOUT);
+
+        assertEquals(COPIES, succeeded);
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals(COPIES, records.intValue());
+    }
+
+    // 同一账户并发借书: 配额按账户串行检查, 成功数不超过默认上限 5
+    @Test
+    void testConcurrentSameAccountStaysWithinQuota() {
+        Long accountId = accountIds.get(0);
+        List<Uni<Integer>> borrows = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            borrows.add(borrowService.borrowBook(accountId, bookId, null)
+                .map(record -> 1)
+                .onFailure().recoverWithItem(0));
+        }
+
+        int succeeded = Uni.join().all(borrows).andFailFast()
+            .map(results -> results.stream().mapToInt(Integer::intValue).sum())
+            .await().atMost(TIMEOUT);
+        Long records = factory.withSession(session ->
+            session.createQuery("SELECT COUNT(br) FROM BorrowRecord br WHERE br.account.id = :accountId", Long.class)
+                .setParameter("accountId", accountId)
+                .getSingleResult()
+        ).await().atMost(TIMEOUT);
+        Book book = factory.withSession(session -> session.find(Book.class, bookId))
+            .await().atMost(TIMEOUT);
+
+        assertEquals(MAX_BORROW_BOOKS, succeeded);
+        assertEquals(MAX_BORROW_BOOKS, records.intValue());
+        assertEquals(COPIES - MAX_BORROW_BOOKS, book.getAvailableCopies());
+    }
+
+    // 管理员修改总册数与借书并发: 可借数按差值增减, 不会覆盖并发借书的扣减
+    @Test
+    void testUpdateCopiesDuringCheckoutsKeepsStock() {
+        BookService bookService = new BookService();
+        Book current = factory.withSession(session -> session.find(Book.class, bookId)).await().atMost(TIMEOUT);
+        List<Uni<Integer>> operations = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            operations.add(borrowService.borrowBook(accountIds.get(i), bookId, null)
+                .map(record -> 1)
+                .onFailure().recoverWithItem(0));
+            if (i % 2 == 0) {
+                operations.add(bookService.updateBook(bookId, copies(current, COPIES + 5)).replaceWith(0));
+            }
+        }
+
+        int succeeded = Uni.join().all(operations).andFailFast()
+            .map(results -> results.stream().mapToInt(Integer::intValue).sum())
+            .await().atMost(TIMEOUT);
+        Book book = factory.withSession(session -> session.find(Book.class, bookId))
+            .await().atMost(TIMEOUT);
+
+        assertEquals(COPIES, succeeded);
+        assertEquals(COPIES + 5, book.getTotalCopies());
+        assertEquals(5, book.getAvailableCopies());
+
+        // 总册数不能小于已借出的册数, 拒绝时库存不变
+        assertThrows(IllegalArgumentException.class,
+            () -> bookService.updateBook(bookId, copies(current, COPIES - 1)).await().atMost(TIMEOUT));
+        book = factory.withSession(session -> session.find(Book.class, bookId)).await().atMost(TIMEOUT);
+        assertEquals(COPIES + 5, book.getTotalCopies());
+        assertEquals(5, book.getAvailableCopies());
+    }
+
+    private static CreateBookDTO copies(Book book, int totalCopies) {
+        CreateBookDTO dto = new CreateBookDTO();
+        dto.setIsbn(book.getIsbn());
+        dto.setTitle(book.getTitle());
+        dto.setTotalCopies(totalCopies);
+        return dto;
+    }
+
+    // 借书成功时借阅记录由 CHECKOUT_SQL 的返回值构造, 不再按 id 加载; 返回的记录与库中一致
+    @Test
+    void testCheckoutBuildsRecordWithoutLoading() {
+        Long accountId = accountIds.get(0);
+        Statistics statistics = factory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        BorrowRecord record;
+        try {
+            statistics.clear();
+            record = borrowService.borrowBook(accountId, bookId, "靠窗的那本").await().atMost(TIMEOUT);
+            assertEquals(0, statistics.getEntityLoadCount());
+            assertEquals(0, statistics.getEntityFetchCount());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        BorrowRecord stored = factory.withSession(session -> session.find(BorrowRecord.class, record.getId()))
+            .await().atMost(TIMEOUT);
+        assertEquals(accountId, record.getAccount().getId());
+        assertEquals(bookId, record.getBook().getId());
+        assertEquals((short) 0, record.getStatus());
+        assertEquals("靠窗的那本", record.getRemarks());
+        assertEquals(stored.getBorrowDate().toInstant(), record.getBorrowDate().toInstant());
+        assertEquals(stored.getDueDate().toInstant(), record.getDueDate().toInstant());
+        assertEquals(stored.getCreatedAt().toInstant(), record.getCreatedAt().toInstant());
+        assertEquals(stored.getUpdatedAt().toInstant(), record.getUpdatedAt().toInstant());
+    }
+
+    // 被逾期扫描标记为 status 2 的记录仍然可以正常还书, 并归还库存
+    @Test
+    void testOverdueRecordCanBeReturned() {
+        BorrowRecord record = borrowService.borrowBook(accountIds.get(0), bookId, null)
+            .await().atMost(TIMEOUT);
+        factory.withTransaction(session ->
+            session.createMutationQuery("UPDATE BorrowRecord br SET br.status = 2 WHERE br.id = :id")
+                .setParameter("id", record.getId())
+                .executeUpdate()
+        ).await().atMost(TIMEOUT);
+
+        BorrowRecord returned = borrowService.returnBook(record.getId(), null).await().atMost(TIMEOUT);
+        Book book = factory.withSession(session -> session.find(Book.class, bookId))
+            .await().atMost(TIMEOUT);
+
+        assertEquals((short) 1, returned.getStatus());
+        assertEquals(COPIES, book.getAvailableCopies());
+    }
+
+    // 全部借出后排队: 高优先级(userType 1)的后到者排在前面, 还书时副本直接借给队首, 库存不变
+    @Test
+    void testReturnHandsCopyToReservationHead() {
+        List<BorrowRecord> records = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            records.add(borrowService.borrowBook(accountIds.get(i), bookId, null).await().atMost(TIMEOUT));
+        }
+        Long regular = accountIds.get(COPIES);
+        Long priority = accountIds.get(COPIES + 1);
+        factory.withTransaction(session ->
+            session.createMutationQuery("UPDATE Account a SET a.userType = 1 WHERE a.id = :id")
+                .setParameter("id", priority)
+                .executeUpdate()
+        ).await().atMost(TIMEOUT);
+
+        Reservation first = reservationService.reserveBook(regular, bookId).await().atMost(TIMEOUT);
+        reservationService.reserveBook(priority, bookId).await().atMost(TIMEOUT);
+        assertEquals(2, reservationService.findMyReservations(regular).await().atMost(TIMEOUT).get(0).getPosition());
+
+        borrowService.returnBook(records.get(0).getId(), null).await().atMost(TIMEOUT);
+
+        Book book = factory.withSession(session -> session.find(Book.class, bookId))
+            .await().atMost(TIMEOUT);
+        Long handedOff = factory.withSession(session ->
+            session.createQuery("SELECT COUNT(br) FROM BorrowRecord br WHERE br.account.id = :accountId AND br.status = 0", Long.class)
+                .setParameter("accountId", priority)
+                .getSingleResult()
+        ).await().atMost(TIMEOUT);
+        List<Reservation> waiting = reservationService.findMyReservations(regular).await().atMost(TIMEOUT);
+
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals(1, handedOff.intValue());
+        assertEquals(first.getId(), waiting.get(0).getId());
+        assertEquals(1, waiting.get(0).getPosition());
+    }
+
+    // 全部借出时预约与还书并发: 两者都先锁图书行, 结果只能是副本交给预约者, 或预约因有可借副本被拒绝;
+    // 不能出现预约在等待而书架上有可借副本. 每轮结束后补借回来, 保持可借数为 0
+    @Test
+    void testReserveRacingReturnIsNeverStranded() {
+        List<BorrowRecord> records = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            records.add(borrowService.borrowBook(accountIds.get(i), bookId, null).await().atMost(TIMEOUT));
+        }
+
+        for (int round = 0; round < COPIES; round++) {
+            Long reserver = accountIds.get(COPIES + round);
+            Boolean reserved = Uni.combine().all().unis(
+                    reservationService.reserveBook(reserver, bookId)
+                        .map(reservation -> true)
+                        .onFailure(IllegalStateException.class).recoverWithItem(false),
+                    borrowService.returnBook(records.get(round).getId(), null))
+                .with((reservation, returned) -> reservation)
+                .await().atMost(TIMEOUT);
+
+            Book book = factory.withSession(session -> session.find(Book.class, bookId))
+                .await().atMost(TIMEOUT);
+            Long waiting = factory.withSession(session ->
+                session.createQuery("SELECT COUNT(r) FROM Reservation r WHERE r.book.id = :bookId AND r.status = 0", Long.class)
+                    .setParameter("bookId", bookId)
+                    .getSingleResult()
+            ).await().atMost(TIMEOUT);
+
+            if (reserved) {
+                assertEquals(0, book.getAvailableCopies(), "round " + round);
+                assertEquals(0, waiting.intValue(), "round " + round);
+            } else {
+                assertEquals(1, book.getAvailableCopies(), "round " + round);
+                borrowService.borrowBook(reserver, bookId, null).await().atMost(TIMEOUT);
+            }
+        }
+    }
+}
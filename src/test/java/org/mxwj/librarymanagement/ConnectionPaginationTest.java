@@ -0,0 +1,277 @@
+package org.mxwj.librarymanagement;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.graphql.BookFetcher;
+import org.mxwj.librarymanagement.graphql.BorrowFetcher;
+import org.mxwj.librarymanagement.graphql.TemporalScalars;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.service.BookService;
+import org.mxwj.librarymanagement.service.BorrowService;
+import org.mxwj.librarymanagement.utils.CursorUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionPaginationTest {
+
+    private static final int BOOKS = 7;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private static final String BOOKS_QUERY =
+        "query($first: Int, $after: String) { booksConnection(first: $first, after: $after) {"
+            + " edges { cursor node { id } } pageInfo { hasNextPage endCursor } } }";
+    private static final String BOOKS_TOTAL_QUERY =
+        "query($first: Int, $after: String) { booksConnection(first: $first, after: $after) {"
+            + " edges { node { id } } totalCount } }";
+    private static final String RECORDS_QUERY =
+        "query($first: Int, $after: String, $status: Int, $keyword: String) {"
+            + " borrowRecordsConnection(first: $first, after: $after, status: $status, keyword: $keyword) {"
+            + " edges { cursor node { id } } pageInfo { hasNextPage endCursor } } }";
+    private static final String RECORDS_TOTAL_QUERY =
+        "query($first: Int, $keyword: String) { borrowRecordsConnection(first: $first, keyword: $keyword) {"
+            + " edges { node { id } } totalCount } }";
+
+    private Mutiny.SessionFactory factory;
+    private GraphQL graphQL;
+    private String tag;
+    private Account account;
+    private final List<Book> books = new ArrayList<>();
+    private final List<BorrowRecord> records = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        factory = DatabaseManager.getSessionFactory();
+        BookFetcher bookFetcher = new BookFetcher(new BookService());
+        BorrowFetcher borrowFetcher = new BorrowFetcher(new BorrowService());
+        // 只接入本测试用到的字段, 不经鉴权
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+            .scalar(TemporalScalars.DATE_TIME)
+            .scalar(TemporalScalars.DATE)
+            .type("Query", builder -> builder
+                .dataFetcher("booksConnection", bookFetcher.getBooksConnection())
+                .dataFetcher("borrowRecordsConnection", borrowFetcher.getAllBorrowRecordsConnection()))
+            .build();
+        graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(
+                new SchemaParser().parse(Files.readString(Path.of("src/main/resources/schema.graphqls"))), wiring))
+            .build();
+        tag = UUID.randomUUID().toString().substring(0, 8);
+
+        account = new Account();
+        account.setUsername("connection-" + tag);
+        account.setPassword("x");
+        account.setUserType(0);
+        account.setStatus(1);
+        account.setCreatedAt(OffsetDateTime.now());
+
+        // 一本书一条借阅记录; 中间四条的 createdAt 相同, 只能靠 id 区分先后
+        OffsetDateTime shared = OffsetDateTime.now().minusDays(1).truncatedTo(ChronoUnit.MICROS);
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book();
+            book.setIsbn("C-" + tag + "-" + i);
+            book.setTitle("游标分页测试 " + i);
+            book.setCreatedAt(OffsetDateTime.now());
+            book.setUpdatedAt(OffsetDateTime.now());
+            books.add(book);
+
+            OffsetDateTime createdAt = i < 2 ? shared.minusSeconds(2 - i) : i < 6 ? shared : shared.plusNanos(1_000);
+            BorrowRecord record = new BorrowRecord();
+            record.setAccount(account);
+            record.setBook(book);
+            record.setBorrowDate(createdAt);
+            record.setDueDate(createdAt.plusDays(30));
+            record.setStatus((short) (i % 2));
+            record.setCreatedAt(createdAt);
+            record.setUpdatedAt(createdAt);
+            records.add(record);
+        }
+
+        factory.withTransaction(session ->
+            session.persist(account)
+                .chain(() -> session.persistAll(books.toArray()))
+                .chain(() -> session.persistAll(records.toArray()))
+        ).await().atMost(TIMEOUT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        List<Long> bookIds = books.stream().map(Book::getId).toList();
+        factory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM BorrowRecord br WHERE br.account.id = :accountId")
+                .setParameter("accountId", account.getId())
+                .executeUpdate()
+                .chain(() -> session.createMutationQuery("DELETE FROM Book b WHERE b.id IN :ids")
+                    .setParameter("ids", bookIds)
+                    .executeUpdate())
+                .chain(() -> session.createMutationQuery("DELETE FROM Account a WHERE a.id = :id")
+                    .setParameter("id", account.getId())
+                    .executeUpdate())
+        ).await().atMost(TIMEOUT);
+    }
+
+    // 从本测试第一本书之前的游标开始按 endCursor 翻到最后: 本测试的书是表中 id 最大的, 结果正好是它们
+    @Test
+    void testBooksConnectionWalksToEnd() throws Exception {
+        List<Long> expected = books.stream().map(Book::getId).sorted().toList();
+        String start = CursorUtils.encodeId(expected.get(0) - 1);
+
+        // 最后一页不满; 恰好取完时也没有下一页
+        assertEquals(expected, walk("booksConnection", BOOKS_QUERY, start, 3, Map.of(), List.of(3, 3, 1)));
+        assertEquals(expected, walk("booksConnection", BOOKS_QUERY, start, BOOKS, Map.of(), List.of(BOOKS)));
+    }
+
+    // 按 (createdAt, id) 倒序: createdAt 相同的记录跨页时既不重复也不遗漏
+    @Test
+    void testBorrowRecordsConnectionWalksToEnd() throws Exception {
+        Comparator<BorrowRecord> newestFirst = Comparator.comparing((BorrowRecord record) -> record.getCreatedAt().toInstant())
+            .thenComparing(BorrowRecord::getId)
+            .reversed();
+        List<Long> expected = records.stream().sorted(newestFirst).map(BorrowRecord::getId).toList();
+        assertEquals(expected, walk("borrowRecordsConnection", RECORDS_QUERY, null, 2,
+            Map.of("keyword", tag), List.of(2, 2, 2, 1)));
+
+        // 与状态筛选组合
+        List<Long> returned = records.stream().filter(record -> record.getStatus() == 1)
+            .sorted(newestFirst).map(BorrowRecord::getId).toList();
+        assertEquals(returned, walk("borrowRecordsConnection", RECORDS_QUERY, null, 2,
+            Map.of("keyword", tag, "status", 1), List.of(2, 1)));
+    }
+
+    // 未选择 totalCount 时只执行列表查询
+    @Test
+    void testTotalCountOnlyWhenSelected() throws Exception {
+        Statistics statistics = factory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            Map<String, Object> page = data(execute(RECORDS_QUERY, Map.of("first", 2, "keyword", tag)), "borrowRecordsConnection");
+            assertEquals(1, statistics.getQueryExecutionCount());
+            assertFalse(page.containsKey("totalCount"));
+
+            statistics.clear();
+            page = data(execute(RECORDS_TOTAL_QUERY, Map.of("first", 2, "keyword", tag)), "borrowRecordsConnection");
+            assertEquals(2, statistics.getQueryExecutionCount());
+            assertEquals(BOOKS, page.get("totalCount"));
+
+            statistics.clear();
+            page = data(execute(BOOKS_TOTAL_QUERY, Map.of("first", 1)), "booksConnection");
+            assertEquals(2, statistics.getQueryExecutionCount());
+            assertTrue((Integer) page.get("totalCount") >= BOOKS);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    // 无效的游标和超出范围的 first 作为该字段的错误返回, 不执行查询
+    @Test
+    void testInvalidArgumentsReturnErrors() throws Exception {
+        String notBase64 = "不是游标";
+        String notNumber = encode("abc");
+        String notTimeId = encode("2024-01-01T00:00:00Z");
+
+        assertFieldError("booksConnection", BOOKS_QUERY, Map.of("after", notBase64), "无效的游标");
+        assertFieldError("booksConnection", BOOKS_QUERY, Map.of("after", notNumber), "无效的游标");
+        assertFieldError("borrowRecordsConnection", RECORDS_QUERY, Map.of("after", notBase64), "无效的游标");
+        assertFieldError("borrowRecordsConnection", RECORDS_QUERY, Map.of("after", notTimeId), "无效的游标");
+        // 书的 id 游标不能用于借阅记录
+        assertFieldError("borrowRecordsConnection", RECORDS_QUERY,
+            Map.of("after", CursorUtils.encodeId(books.get(0).getId())), "无效的游标");
+
+        for (int first : new int[] {0, -1, CursorUtils.MAX_FIRST + 1}) {
+            assertFieldError("booksConnection", BOOKS_QUERY, Map.of("first", first), "first 必须在");
+            assertFieldError("borrowRecordsConnection", RECORDS_QUERY, Map.of("first", first), "first 必须在");
+        }
+    }
+
+    // 按 endCursor 逐页读取, 检查每页条数和 hasNextPage, 返回全部节点 id
+    private List<Long> walk(String field, String query, String start, int first, Map<String, Object> arguments,
+                            List<Integer> pageSizes) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String after = start;
+        for (int i = 0; i < pageSizes.size(); i++) {
+            Map<String, Object> variables = new HashMap<>(arguments);
+            variables.put("first", first);
+            if (after != null) {
+                variables.put("after", after);
+            }
+            Map<String, Object> connection = data(execute(query, variables), field);
+            List<Map<String, Object>> edges = list(connection.get("edges"));
+            Map<String, Object> pageInfo = map(connection.get("pageInfo"));
+
+            assertEquals(pageSizes.get(i), edges.size(), "第 " + (i + 1) + " 页");
+            assertEquals(i < pageSizes.size() - 1, pageInfo.get("hasNextPage"), "第 " + (i + 1) + " 页");
+            assertEquals(edges.get(edges.size() - 1).get("cursor"), pageInfo.get("endCursor"));
+            for (Map<String, Object> edge : edges) {
+                ids.add(Long.valueOf((String) map(edge.get("node")).get("id")));
+            }
+            after = (String) pageInfo.get("endCursor");
+        }
+        return ids;
+    }
+
+    private void assertFieldError(String field, String query, Map<String, Object> variables, String message)
+            throws Exception {
+        ExecutionResult result = execute(query, variables);
+        assertEquals(1, result.getErrors().size(), variables + ": " + result.getErrors());
+        GraphQLError error = result.getErrors().get(0);
+        assertTrue(error.getMessage().contains(message), variables + ": " + error.getMessage());
+        assertEquals(List.of(field), error.getPath());
+        Map<String, Object> data = result.getData();
+        assertNull(data.get(field));
+    }
+
+    private ExecutionResult execute(String query, Map<String, Object> variables) throws Exception {
+        return graphQL.executeAsync(ExecutionInput.newExecutionInput().query(query).variables(variables).build())
+            .get(60, TimeUnit.SECONDS);
+    }
+
+    private static Map<String, Object> data(ExecutionResult result, String field) {
+        assertTrue(result.getErrors().isEmpty(), result.getErrors().toString());
+        Map<String, Object> data = result.getData();
+        return map(data.get(field));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> list(Object value) {
+        return (List<Map<String, Object>>) value;
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
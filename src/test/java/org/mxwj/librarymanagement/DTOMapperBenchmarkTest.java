@@ -0,0 +1,129 @@
+package org.mxwj.librarymanagement;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.model.dto.CreateUserInfoDTO;
+import org.mxwj.librarymanagement.model.dto.UpdateUserInfoDTO;
+import org.mxwj.librarymanagement.utils.DTOMapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * DTOMapper 与原来的反射实现的对比: 每次 getDeclaredConstructor().newInstance(), 遍历 getDeclaredFields()
+ * 并逐个 setAccessible, 按类型名 switch 后 Field.set. 对 CreateBookDTO、CreateUserInfoDTO、UpdateUserInfoDTO
+ * 各映射一份 GraphQL 参数形状的输入(数字为 Integer, 未提供的字段缺省), 打印吞吐量和每次映射的内存分配,
+ * 并检查两种实现得到的 DTO 相同. 默认跳过, 用 mvn test -Dtest=DTOMapperBenchmarkTest -Dbenchmark=true 运行.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class DTOMapperBenchmarkTest {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 2_000_000;
+
+    @Test
+    void testCreateBookDTO() {
+        Map<String, Object> input = new HashMap<>();
+        input.put("isbn", "9787536692930");
+        input.put("title", "三体");
+        input.put("author", "刘慈欣");
+        input.put("publisher", "重庆出版社");
+        input.put("publishDate", "2008-01-01");
+        input.put("category", "科幻");
+        input.put("totalCopies", 5);
+        input.put("location", "A-3-2");
+        compare(input, CreateBookDTO.class);
+    }
+
+    @Test
+    void testCreateUserInfoDTO() {
+        Map<String, Object> input = new HashMap<>();
+        input.put("accountId", 42);
+        input.put("fullName", "汪淼");
+        input.put("phone", "13800000000");
+        input.put("address", "北京市海淀区");
+        input.put("maxBorrowBooks", 8);
+        compare(input, CreateUserInfoDTO.class);
+    }
+
+    // 更新只带部分字段
+    @Test
+    void testUpdateUserInfoDTO() {
+        Map<String, Object> input = new HashMap<>();
+        input.put("accountId", 42);
+        input.put("phone", "13900000000");
+        compare(input, UpdateUserInfoDTO.class);
+    }
+
+    private static <T> void compare(Map<String, Object> input, Class<T> dtoClass) {
+        assertEquals(reflectionMap(input, dtoClass), DTOMapper.mapToDTO(input, dtoClass));
+
+        String name = dtoClass.getSimpleName();
+        run(name + " 反射", input, map -> reflectionMap(map, dtoClass));
+        run(name + " DTOMapper", input, map -> DTOMapper.mapToDTO(map, dtoClass));
+    }
+
+    private static <T> void run(String name, Map<String, Object> input, Function<Map<String, Object>, T> mapper) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += mapper.apply(input).hashCode();
+        }
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += mapper.apply(input).hashCode();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("%-32s %,12.0f 次/秒  平均 %,7.1f ns  每次分配 %,5d 字节  (%d)%n",
+            name, ITERATIONS * 1e9 / elapsed, (double) elapsed / ITERATIONS, allocated / ITERATIONS, sink);
+    }
+
+    // 原来的实现, 只保留这三个 DTO 用到的类型
+    private static <T> T reflectionMap(Map<String, Object> input, Class<T> dtoClass) {
+        try {
+            T dto = dtoClass.getDeclaredConstructor().newInstance();
+            for (Field field : dtoClass.getDeclaredFields()) {
+                field.setAccessible(true);
+                Object value = input.get(field.getName());
+                if (value != null) {
+                    setFieldValue(field, dto, value);
+                }
+            }
+            return dto;
+        } catch (Exception e) {
+            throw new RuntimeException("DTO映射失败", e);
+        }
+    }
+
+    private static <T> void setFieldValue(Field field, T dto, Object value) throws IllegalAccessException {
+        switch (field.getType().getName()) {
+            case "java.lang.String":
+                field.set(dto, String.valueOf(value));
+                break;
+            case "java.lang.Integer":
+                if (value instanceof String) {
+                    field.set(dto, Integer.valueOf((String) value));
+                } else if (value instanceof Integer) {
+                    field.set(dto, value);
+                }
+                break;
+            case "java.lang.Long":
+                if (value instanceof String) {
+                    field.set(dto, Long.valueOf((String) value));
+                } else if (value instanceof Integer) {
+                    field.set(dto, ((Integer) value).longValue());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.mxwj.librarymanagement;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.model.dto.CreateBookDTO;
+import org.mxwj.librarymanagement.model.dto.UpdateUserInfoDTO;
+import org.mxwj.librarymanagement.utils.DTOMapper;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DTOMapperTest {
+
+    public static class DatedDTO {
+        private LocalDate day;
+        private OffsetDateTime time;
+        private Short shelf;
+    }
+
+    @Test
+    void testMapCreateBookDTO() {
+        Map<String, Object> input = new HashMap<>();
+        input.put("isbn", "9787536692930");
+        input.put("title", "三体");
+        input.put("totalCopies", 5);
+        input.put("unknown", "ignored");
+
+        CreateBookDTO dto = DTOMapper.mapToDTO(input, CreateBookDTO.class);
+        assertEquals("9787536692930", dto.getIsbn());
+        assertEquals("三体", dto.getTitle());
+        assertEquals(5, dto.getTotalCopies());
+        assertNull(dto.getAuthor());
+    }
+
+    @Test
+    void testNumericCoercion() {
+        UpdateUserInfoDTO dto = DTOMapper.mapToDTO(
+            Map.of("accountId", 42, "maxBorrowBooks", "8"), UpdateUserInfoDTO.class);
+        assertEquals(42L, dto.getAccountId());
+        assertEquals(8, dto.getMaxBorrowBooks());
+
+        assertThrows(RuntimeException.class,
+            () -> DTOMapper.mapToDTO(Map.of("maxBorrowBooks", "many"), UpdateUserInfoDTO.class));
+    }
+
+    @Test
+    void testDateParsing() {
+        DatedDTO dto = DTOMapper.mapToDTO(
+            Map.of("day", "2024-05-01", "time", "2024-05-01T08:30:00+08:00", "shelf", 3), DatedDTO.class);
+        assertEquals(LocalDate.of(2024, 5, 1), dto.day);
+        assertEquals(OffsetDateTime.parse("2024-05-01T08:30:00+08:00"), dto.time);
+        assertEquals((short) 3, dto.shelf);
+    }
+}
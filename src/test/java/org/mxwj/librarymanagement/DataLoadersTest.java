@@ -0,0 +1,164 @@
+package org.mxwj.librarymanagement;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.vertx.core.Vertx;
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.graphql.BorrowFetcher;
+import org.mxwj.librarymanagement.graphql.DataLoaders;
+import org.mxwj.librarymanagement.graphql.TemporalScalars;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.service.AccountService;
+import org.mxwj.librarymanagement.service.BookService;
+import org.mxwj.librarymanagement.service.BorrowService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataLoadersTest {
+
+    private static final int RECORDS = 100;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private Vertx vertx;
+    private Mutiny.SessionFactory factory;
+    private BorrowService borrowService;
+    private BookService bookService;
+    private AccountService accountService;
+    private GraphQL graphQL;
+
+    private Account account;
+    private final List<Book> books = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        factory = DatabaseManager.getSessionFactory();
+        borrowService = new BorrowService();
+        bookService = new BookService();
+        accountService = new AccountService(vertx);
+
+        // 只接入本测试用到的字段; 列表不经鉴权, 直接查本测试的账户
+        BorrowFetcher borrowFetcher = new BorrowFetcher(borrowService);
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+            .scalar(TemporalScalars.DATE_TIME)
+            .scalar(TemporalScalars.DATE)
+            .type("Query", builder -> builder.dataFetcher("myBorrowRecords", env ->
+                borrowService.findUserBorrowRecords(account.getId(), 1, env.getArgument("size")).subscribeAsCompletionStage()))
+            .type("BorrowRecord", builder -> builder
+                .dataFetcher("book", borrowFetcher.getBook())
+                .dataFetcher("account", borrowFetcher.getAccount()))
+            .build();
+        graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(
+                new SchemaParser().parse(Files.readString(Path.of("src/main/resources/schema.graphqls"))), wiring))
+            .build();
+        String tag = UUID.randomUUID().toString().substring(0, 8);
+
+        account = new Account();
+        account.setUsername("loader-" + tag);
+        account.setPassword("x");
+        account.setUserType(0);
+        account.setStatus(1);
+        account.setCreatedAt(OffsetDateTime.now());
+
+        List<BorrowRecord> records = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            Book book = new Book();
+            book.setIsbn("L-" + tag + "-" + i);
+            book.setTitle("批量加载测试 " + i);
+            book.setCreatedAt(OffsetDateTime.now());
+            book.setUpdatedAt(OffsetDateTime.now());
+            books.add(book);
+
+            BorrowRecord record = new BorrowRecord();
+            record.setAccount(account);
+            record.setBook(book);
+            record.setBorrowDate(OffsetDateTime.now());
+            record.setDueDate(OffsetDateTime.now().plusDays(30));
+            record.setCreatedAt(OffsetDateTime.now().plusSeconds(i));
+            record.setUpdatedAt(OffsetDateTime.now());
+            records.add(record);
+        }
+
+        factory.withTransaction(session ->
+            session.persist(account)
+                .chain(() -> session.persistAll(books.toArray()))
+                .chain(() -> session.persistAll(records.toArray()))
+        ).await().atMost(TIMEOUT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        List<Long> bookIds = books.stream().map(Book::getId).toList();
+        factory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM BorrowRecord br WHERE br.account.id = :accountId")
+                .setParameter("accountId", account.getId())
+                .executeUpdate()
+                .chain(() -> session.createMutationQuery("DELETE FROM Book b WHERE b.id IN :ids")
+                    .setParameter("ids", bookIds)
+                    .executeUpdate())
+                .chain(() -> session.createMutationQuery("DELETE FROM Account a WHERE a.id = :id")
+                    .setParameter("id", account.getId())
+                    .executeUpdate())
+        ).await().atMost(TIMEOUT);
+        vertx.close();
+    }
+
+    // 无论页大小多少: 分页 2 条(计数 + 列表) + 每种关联实体 1 条 IN 查询, 且没有逐行的关联加载
+    @Test
+    void testStatementCountIndependentOfPageSize() throws Exception {
+        Statistics statistics = factory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            for (int pageSize : new int[] {1, 10, 50, 100}) {
+                statistics.clear();
+                loadPage(pageSize);
+                assertEquals(4, statistics.getQueryExecutionCount(), "page size " + pageSize);
+                assertEquals(0, statistics.getEntityFetchCount(), "page size " + pageSize);
+            }
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    // 与 MainVerticle 相同: 每次执行一份 newRegistry, 关联字段由 BorrowFetcher 经 DataLoader 解析
+    private void loadPage(int pageSize) throws Exception {
+        ExecutionResult result = graphQL.executeAsync(ExecutionInput.newExecutionInput()
+                .query("query($size: Int) { myBorrowRecords(size: $size) { content { id book { id title } account { id username } } } }")
+                .variables(Map.of("size", pageSize))
+                .dataLoaderRegistry(DataLoaders.newRegistry(bookService, accountService))
+                .build())
+            .get(60, TimeUnit.SECONDS);
+        assertTrue(result.getErrors().isEmpty(), result.getErrors().toString());
+
+        Map<String, Map<String, List<Map<String, Map<String, Object>>>>> data = result.getData();
+        List<Map<String, Map<String, Object>>> content = data.get("myBorrowRecords").get("content");
+        assertEquals(pageSize, content.size());
+        for (Map<String, Map<String, Object>> record : content) {
+            assertNotNull(record.get("book").get("title"));
+            assertEquals(account.getUsername(), record.get("account").get("username"));
+        }
+    }
+}
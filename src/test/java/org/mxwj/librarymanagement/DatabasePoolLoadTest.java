@@ -0,0 +1,114 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.SqlPoolMetrics;
+
+import io.smallrye.mutiny.Multi;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 连接池与语句配置的压测: 同一负载在不同配置下各跑一轮, 打印吞吐量和连接池指标. 需要本地数据库, 耗时较长,
+ * 默认跳过, 用 mvn test -Dtest=DatabasePoolLoadTest -DloadTest=true 运行.
+ *
+ * 注意 Hibernate Reactive 的每个 session 独占一个连接且串行执行语句, pipeliningLimit 对它基本没有影响,
+ * 这里保留这一轮作为对照.
+ */
+@EnabledIfSystemProperty(named = "loadTest", matches = "true")
+public class DatabasePoolLoadTest {
+
+    private static final int CONCURRENCY = 64;
+    private static final int OPERATIONS = 20_000;
+    private static final int WARMUP = 2_000;
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+    private static final String QUERY =
+        "SELECT id, title, available_copies FROM book WHERE available_copies >= ?1 ORDER BY id LIMIT 10";
+
+    private static final JsonObject BASELINE = new JsonObject()
+        .put("poolSize", 10)
+        .put("preparedStatementCacheSize", 256)
+        .put("pipeliningLimit", 256);
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        vertx = SqlPoolMetrics.vertx(new VertxOptions());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testPoolKnobs() throws Exception {
+        // 每一轮只改一项
+        List<JsonObject> scenarios = List.of(
+            BASELINE.copy().put("poolName", "baseline"),
+            BASELINE.copy().put("poolName", "pool-2").put("poolSize", 2),
+            BASELINE.copy().put("poolName", "pool-32").put("poolSize", 32),
+            BASELINE.copy().put("poolName", "no-statement-cache").put("preparedStatementCacheSize", 0),
+            BASELINE.copy().put("poolName", "pipelining-1").put("pipeliningLimit", 1),
+            BASELINE.copy().put("poolName", "wait-queue-16").put("maxWaitQueueSize", 16));
+
+        for (JsonObject scenario : scenarios) {
+            run(scenario);
+        }
+    }
+
+    private void run(JsonObject config) throws Exception {
+        String name = config.getString("poolName");
+        // 在 Vert.x 上下文中创建, Hibernate Reactive 才会使用这个启用了指标的 Vertx
+        Mutiny.SessionFactory factory = vertx.executeBlocking(() -> DatabaseManager.createSessionFactory(config))
+            .toCompletionStage().toCompletableFuture().get(60, TimeUnit.SECONDS);
+        try {
+            load(factory, WARMUP);
+            LongAdder failures = new LongAdder();
+            long start = System.nanoTime();
+            int completed = load(factory, OPERATIONS, failures);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-20s %8.0f ops/s, 失败 %d, 连接池 %s%n",
+                name, completed / seconds, failures.sum(), SqlPoolMetrics.stats(name).encode());
+            // 等待队列有上限时超出的请求会立即失败, 其余配置下应全部成功
+            if (!config.containsKey("maxWaitQueueSize")) {
+                assertEquals(0, failures.sum(), name);
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    private int load(Mutiny.SessionFactory factory, int operations) {
+        return load(factory, operations, new LongAdder());
+    }
+
+    private int load(Mutiny.SessionFactory factory, int operations, LongAdder failures) {
+        AtomicInteger completed = new AtomicInteger();
+        Multi.createFrom().range(0, operations)
+            .onItem().transformToUni(i -> factory.withSession(session ->
+                    session.createNativeQuery(QUERY).setParameter(1, i % 5).getResultList())
+                .onItem().invoke(rows -> completed.incrementAndGet())
+                .onFailure().invoke(error -> failures.increment())
+                .onFailure().recoverWithNull())
+            .merge(CONCURRENCY)
+            .collect().last()
+            .await().atMost(TIMEOUT);
+        return completed.get();
+    }
+}
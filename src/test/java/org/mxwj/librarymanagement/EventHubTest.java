@@ -0,0 +1,114 @@
+package org.mxwj.librarymanagement;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.EventHub;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EventHubTest {
+
+    private Vertx vertx;
+    private EventHub hub;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        hub = new EventHub(vertx);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    // 同一地址的多个订阅共用一个 consumer, 最后一个取消后注销
+    @Test
+    void testSharesOneConsumerPerAddress() throws Exception {
+        Collector first = new Collector(Long.MAX_VALUE);
+        Collector second = new Collector(Long.MAX_VALUE);
+        hub.subscribe(List.of("book.availability.1")).subscribe(first);
+        hub.subscribe(List.of("book.availability.1", "book.availability.2")).subscribe(second);
+        assertEquals(2, hub.stats().getInteger("topics"));
+
+        hub.publish("book.availability.1", new JsonObject().put("bookId", 1));
+        hub.publish("book.availability.2", new JsonObject().put("bookId", 2));
+        waitFor(() -> first.events.size() == 1 && second.events.size() == 2);
+
+        first.subscription.cancel();
+        second.subscription.cancel();
+        assertEquals(0, hub.stats().getInteger("topics"));
+        assertEquals(0, hub.stats().getInteger("subscriptions"));
+    }
+
+    // 没有 request 时事件留在缓冲区, request 后按数量推送
+    @Test
+    void testRespectsDemand() throws Exception {
+        Collector collector = new Collector(0);
+        hub.subscribe(List.of("borrow-record.account.1")).subscribe(collector);
+        for (int i = 0; i < 3; i++) {
+            hub.publish("borrow-record.account.1", new JsonObject().put("recordId", i));
+        }
+        // 给 event bus 留出投递时间
+        Thread.sleep(200);
+        assertEquals(0, collector.events.size());
+
+        collector.subscription.request(2);
+        waitFor(() -> collector.events.size() == 2);
+        collector.subscription.request(1);
+        waitFor(() -> collector.events.size() == 3);
+        assertEquals(2, collector.events.get(2).getInteger("recordId"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("等待超时");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class Collector implements Subscriber<JsonObject> {
+        final List<JsonObject> events = new CopyOnWriteArrayList<>();
+        final long initialDemand;
+        volatile Subscription subscription;
+
+        Collector(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(JsonObject event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
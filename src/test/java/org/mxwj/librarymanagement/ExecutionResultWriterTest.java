@@ -0,0 +1,144 @@
+package org.mxwj.librarymanagement;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.graphql.ExecutionResultWriter;
+import org.mxwj.librarymanagement.graphql.TemporalScalars;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.model.BorrowRecordsPage;
+import org.mxwj.librarymanagement.model.PageInfo;
+import org.mxwj.librarymanagement.utils.TemporalFormat;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ExecutionResultWriterTest {
+
+    private static GraphQL graphQL;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        // 与 MainVerticle 相同, 对照用的 JsonObject 编码也能输出日期
+        TemporalFormat.registerJacksonModule();
+
+        String sdl = Files.readString(Path.of("src/main/resources/schema.graphqls"));
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+            .scalar(TemporalScalars.DATE_TIME)
+            .scalar(TemporalScalars.DATE)
+            .type("Query", builder -> builder
+                .dataFetcher("borrowRecords", env -> page())
+                .dataFetcher("book", env -> {
+                    throw new IllegalStateException("图书不存在");
+                }))
+            .build();
+        graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(sdl), wiring))
+            .build();
+    }
+
+    // 与 toString() 逐字相同: 秒为 0 时省略, 小数按 3/6/9 位, 偏移为 Z / +HH:mm / +HH:mm:ss
+    @Test
+    void testTemporalFormatMatchesToString() {
+        List<OffsetDateTime> times = List.of(
+            OffsetDateTime.of(2024, 3, 1, 10, 15, 0, 0, ZoneOffset.ofHours(8)),
+            OffsetDateTime.of(2024, 3, 1, 10, 15, 30, 0, ZoneOffset.UTC),
+            OffsetDateTime.of(2024, 12, 31, 23, 59, 59, 120_000_000, ZoneOffset.ofHoursMinutes(-5, -30)),
+            OffsetDateTime.of(2024, 1, 9, 0, 0, 0, 123_456_000, ZoneOffset.UTC),
+            OffsetDateTime.of(2024, 1, 9, 0, 0, 0, 1, ZoneOffset.ofHoursMinutesSeconds(1, 2, 3)),
+            OffsetDateTime.of(1, 1, 1, 0, 0, 5, 0, ZoneOffset.UTC),
+            OffsetDateTime.now());
+        char[] buf = new char[TemporalFormat.MAX_LENGTH];
+        for (OffsetDateTime time : times) {
+            assertEquals(time.toString(), new String(buf, 0, TemporalFormat.format(time, buf)));
+        }
+        for (LocalDate date : List.of(LocalDate.of(2024, 2, 29), LocalDate.of(999, 1, 1), LocalDate.now())) {
+            assertEquals(date.toString(), new String(buf, 0, TemporalFormat.format(date, buf)));
+        }
+        // 超出 4 位年份时交给调用方
+        assertEquals(-1, TemporalFormat.format(LocalDate.of(10000, 1, 1), buf));
+    }
+
+    @Test
+    void testMatchesJsonObjectEncoding() {
+        ExecutionResult result = graphQL.execute("{ borrowRecords(size: 3) { content { id borrowDate dueDate returnDate status remarks "
+            + "book { title publishDate createdAt } account { username lastLogin } } pageInfo { totalPages hasNext } } }");
+        assertEquals(List.of(), result.getErrors());
+        assertEquals(new JsonObject(result.toSpecification()).encode(), write(result));
+    }
+
+    // errors 在 data 之前, 与 toSpecification() 的顺序相同
+    @Test
+    void testErrorsAndBatch() {
+        ExecutionResult failed = graphQL.execute("{ book(id: 1) { title } }");
+        assertFalse(failed.getErrors().isEmpty());
+        assertEquals(new JsonObject(failed.toSpecification()).encode(), write(failed));
+
+        ExecutionResult ok = graphQL.execute("{ borrowRecords(size: 1) { content { id createdAt } } }");
+        ByteBuf buf = ExecutionResultWriter.write(List.of(failed, ok), PooledByteBufAllocator.DEFAULT);
+        try {
+            assertEquals(new JsonArray().add(new JsonObject(failed.toSpecification())).add(new JsonObject(ok.toSpecification())).encode(),
+                buf.toString(StandardCharsets.UTF_8));
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static String write(ExecutionResult result) {
+        ByteBuf buf = ExecutionResultWriter.write(result, PooledByteBufAllocator.DEFAULT);
+        try {
+            return buf.toString(StandardCharsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static BorrowRecordsPage page() {
+        Book book = new Book();
+        book.setId(7L);
+        book.setTitle("三体 \"地球往事\"\n第一部");
+        book.setPublishDate(LocalDate.of(2008, 1, 1));
+        book.setCreatedAt(OffsetDateTime.of(2024, 3, 1, 10, 15, 0, 0, ZoneOffset.ofHours(8)));
+
+        Account account = new Account();
+        account.setId(3L);
+        account.setUsername("reader");
+
+        List<BorrowRecord> content = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BorrowRecord record = new BorrowRecord();
+            record.setId((long) i);
+            record.setBook(book);
+            record.setAccount(i == 2 ? null : account);
+            record.setBorrowDate(OffsetDateTime.of(2024, 3, 1, 10, 15, 30, 123_000_000 * i, ZoneOffset.UTC));
+            record.setDueDate(record.getBorrowDate().plusDays(30));
+            record.setReturnDate(i == 0 ? record.getBorrowDate().plusDays(3) : null);
+            record.setStatus((short) (i == 0 ? 1 : 0));
+            record.setRemarks(i == 1 ? "续借" : null);
+            content.add(record);
+        }
+        return BorrowRecordsPage.builder()
+            .content(content)
+            .pageInfo(PageInfo.builder().currentPage(1).pageSize(3).totalPages(1).totalElements(3).hasNext(false).build())
+            .build();
+    }
+}
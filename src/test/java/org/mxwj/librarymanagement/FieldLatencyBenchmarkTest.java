@@ -0,0 +1,119 @@
+package org.mxwj.librarymanagement;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.graphql.FieldLatencyInstrumentation;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FieldLatencyInstrumentation 的开销: 同一查询(100 本图书, 每本 5 个属性字段和 2 个自定义 data fetcher, 其中一个异步)
+ * 分别在不带和带字段耗时统计的 GraphQL 上执行, 打印吞吐量、每次请求的内存分配, 以及折算到每个被统计字段的额外耗时和分配.
+ * 两边都经过 ChainedInstrumentation, 与 AppContext 中的结构一致.
+ * 默认跳过, 用 mvn test -Dtest=FieldLatencyBenchmarkTest -Dbenchmark=true 运行.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FieldLatencyBenchmarkTest {
+
+    private static final int ROWS = 100;
+    private static final int WARMUP = 5_000;
+    private static final int ITERATIONS = 20_000;
+    private static final String SDL = "type Query { books: [Book] } "
+        + "type Book { id: ID isbn: String title: String author: String availableCopies: Int score: Int shelf: String }";
+    private static final String QUERY = "query Books { books { id isbn title author availableCopies score shelf } }";
+    // 每次请求被统计的字段: books 本身, 以及每本书的 score 和 shelf
+    private static final int TIMED_FIELDS = 1 + 2 * ROWS;
+
+    @Test
+    void testOverhead() {
+        FieldLatencyInstrumentation fieldLatency = new FieldLatencyInstrumentation();
+        GraphQL plain = graphQL(SimplePerformantInstrumentation.INSTANCE);
+        GraphQL timed = graphQL(fieldLatency);
+
+        // 两边先都预热, 避免先测的一方承担 JIT 编译
+        warmUp(plain);
+        warmUp(timed);
+        Result without = run("不统计", plain);
+        Result with = run("字段耗时统计", timed);
+        System.out.printf("每个被统计字段: 额外 %,.1f ns, 额外分配 %,.1f 字节%n",
+            (with.nanosPerOp - without.nanosPerOp) / TIMED_FIELDS,
+            (double) (with.bytesPerOp - without.bytesPerOp) / TIMED_FIELDS);
+
+        // 只有自定义 data fetcher 被统计, 属性字段不产生直方图
+        List<String> fields = new ArrayList<>();
+        long[] count = new long[1];
+        fieldLatency.forEach((operation, stats) -> {
+            assertEquals("Books", operation);
+            fields.add(stats.typeName() + "." + stats.fieldName());
+            if (stats.fieldName().equals("score")) {
+                count[0] = stats.histogram().count();
+            }
+        });
+        assertEquals(3, fields.size(), fields.toString());
+        assertTrue(fields.containsAll(List.of("Query.books", "Book.score", "Book.shelf")), fields.toString());
+        assertEquals((long) (WARMUP + ITERATIONS) * ROWS, count[0]);
+    }
+
+    private static GraphQL graphQL(Instrumentation instrumentation) {
+        List<Map<String, Object>> books = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            books.add(Map.of("id", i, "isbn", "978-7-5366-9293-" + i, "title", "三体 " + i,
+                "author", "刘慈欣", "availableCopies", i % 5));
+        }
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+            .type("Query", builder -> builder.dataFetcher("books", env -> books))
+            .type("Book", builder -> builder
+                .dataFetcher("score", env -> ((Map<?, ?>) env.getSource()).get("availableCopies"))
+                .dataFetcher("shelf", env -> CompletableFuture.completedFuture("A-" + ((Map<?, ?>) env.getSource()).get("id"))))
+            .build();
+        return GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(SDL), wiring))
+            .instrumentation(new ChainedInstrumentation(instrumentation))
+            .build();
+    }
+
+    private static void warmUp(GraphQL graphQL) {
+        for (int i = 0; i < WARMUP; i++) {
+            execute(graphQL);
+        }
+    }
+
+    private static Result run(String name, GraphQL graphQL) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += execute(graphQL);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("%-12s %,10.0f 次/秒  每次分配 %,8d 字节  (%d)%n",
+            name, ITERATIONS * 1e9 / elapsed, allocated / ITERATIONS, sink);
+        return new Result((double) elapsed / ITERATIONS, allocated / ITERATIONS);
+    }
+
+    private static int execute(GraphQL graphQL) {
+        ExecutionResult result = graphQL.execute(QUERY);
+        assertTrue(result.getErrors().isEmpty(), result.getErrors().toString());
+        return ((Map<?, ?>) result.getData()).size();
+    }
+
+    private record Result(double nanosPerOp, long bytesPerOp) {
+    }
+}
@@ -0,0 +1,166 @@
+package org.mxwj.librarymanagement;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.graphql.ExecutionResultWriter;
+import org.mxwj.librarymanagement.graphql.TemporalScalars;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.model.BorrowRecordsPage;
+import org.mxwj.librarymanagement.model.PageInfo;
+import org.mxwj.librarymanagement.utils.TemporalFormat;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * GraphQL 响应序列化的吞吐量和每次请求的内存分配: 100 条借阅记录(含图书和账户)的一页.
+ *
+ * 原方式: 日期字段为 String(执行时 toString), toSpecification() 后经 JsonObject 编码为 Buffer;
+ * 新方式: 日期字段为 DateTime / Date, ExecutionResultWriter 直接写入池化的 ByteBuf.
+ * 分别测量只序列化和 执行+序列化 两种情况. 默认跳过, 用 mvn test -Dtest=GraphQLResponseBenchmarkTest -Dbenchmark=true 运行.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class GraphQLResponseBenchmarkTest {
+
+    private static final int ROWS = 100;
+    private static final int WARMUP = 5_000;
+    private static final int ITERATIONS = 20_000;
+    private static final String QUERY = "{ borrowRecords(size: 100) { content { id borrowDate dueDate returnDate status remarks createdAt updatedAt "
+        + "book { id isbn title author publisher publishDate category totalCopies availableCopies location createdAt updatedAt } "
+        + "account { id username email createdAt lastLogin status } } "
+        + "pageInfo { currentPage pageSize totalPages totalElements hasNext } } }";
+
+    private static GraphQL stringDates;
+    private static GraphQL temporalDates;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TemporalFormat.registerJacksonModule();
+
+        String sdl = Files.readString(Path.of("src/main/resources/schema.graphqls"));
+        BorrowRecordsPage page = page();
+        RuntimeWiring.Builder wiring = RuntimeWiring.newRuntimeWiring()
+            .scalar(TemporalScalars.DATE_TIME)
+            .scalar(TemporalScalars.DATE)
+            .type("Query", builder -> builder.dataFetcher("borrowRecords", env -> page));
+        temporalDates = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(sdl), wiring.build()))
+            .build();
+        // 原来的 schema: 日期字段都是 String
+        String legacySdl = sdl.replaceAll("(?m)^scalar (DateTime|Date)$", "")
+            .replaceAll(":\\s*(DateTime|Date)\\b", ": String");
+        stringDates = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(legacySdl), wiring.build()))
+            .build();
+    }
+
+    @Test
+    void testSerialization() {
+        ExecutionResult legacyResult = stringDates.execute(QUERY);
+        ExecutionResult temporalResult = temporalDates.execute(QUERY);
+        assertEquals(List.of(), temporalResult.getErrors());
+        // 两种方式输出相同的 JSON
+        String legacyJson = legacyEncode(legacyResult).toString(StandardCharsets.UTF_8);
+        ByteBuf streamed = ExecutionResultWriter.write(temporalResult, PooledByteBufAllocator.DEFAULT);
+        assertEquals(legacyJson, streamed.toString(StandardCharsets.UTF_8));
+        System.out.printf("响应大小 %d 字节%n", streamed.readableBytes());
+        streamed.release();
+
+        run("只序列化 JsonObject", () -> legacyEncode(legacyResult).length());
+        run("只序列化 流式写出", () -> streamed(temporalResult));
+        run("执行+序列化 JsonObject", () -> legacyEncode(stringDates.execute(QUERY)).length());
+        run("执行+序列化 流式写出", () -> streamed(temporalDates.execute(QUERY)));
+    }
+
+    private static Buffer legacyEncode(ExecutionResult result) {
+        return new JsonObject(result.toSpecification()).toBuffer();
+    }
+
+    private static int streamed(ExecutionResult result) {
+        ByteBuf buf = ExecutionResultWriter.write(result, PooledByteBufAllocator.DEFAULT);
+        int length = buf.readableBytes();
+        buf.release();
+        return length;
+    }
+
+    private static void run(String name, Supplier<Integer> operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += operation.get();
+        }
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += operation.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("%-24s %,10.0f 次/秒  每次分配 %,8d 字节  (%d)%n",
+            name, ITERATIONS * 1e9 / elapsed, allocated / ITERATIONS, sink);
+    }
+
+    private static BorrowRecordsPage page() {
+        OffsetDateTime base = OffsetDateTime.of(2024, 3, 1, 10, 15, 30, 0, ZoneOffset.ofHours(8));
+        List<BorrowRecord> content = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Book book = new Book();
+            book.setId((long) i);
+            book.setIsbn("978-7-5366-9293-" + i);
+            book.setTitle("三体 第" + i + "部");
+            book.setAuthor("刘慈欣");
+            book.setPublisher("重庆出版社");
+            book.setPublishDate(LocalDate.of(2008, 1, 1).plusDays(i));
+            book.setCategory("科幻");
+            book.setLocation("A-" + i);
+            book.setCreatedAt(base.minusDays(i));
+            book.setUpdatedAt(base.minusHours(i));
+
+            Account account = new Account();
+            account.setId((long) i % 10);
+            account.setUsername("reader" + i % 10);
+            account.setEmail("reader" + i % 10 + "@example.com");
+            account.setStatus(1);
+            account.setCreatedAt(base.minusDays(100));
+            account.setLastLogin(base.plusSeconds(i).withNano(i * 1000));
+
+            BorrowRecord record = new BorrowRecord();
+            record.setId((long) i);
+            record.setBook(book);
+            record.setAccount(account);
+            record.setBorrowDate(base.plusMinutes(i));
+            record.setDueDate(record.getBorrowDate().plusDays(30));
+            record.setReturnDate(i % 3 == 0 ? record.getBorrowDate().plusDays(7) : null);
+            record.setStatus((short) (i % 3 == 0 ? 1 : 0));
+            record.setRemarks(i % 5 == 0 ? "续借一次" : null);
+            record.setCreatedAt(record.getBorrowDate());
+            record.setUpdatedAt(record.getBorrowDate().plusSeconds(1));
+            content.add(record);
+        }
+        return BorrowRecordsPage.builder()
+            .content(content)
+            .pageInfo(PageInfo.builder().currentPage(1).pageSize(ROWS).totalPages(10).totalElements(ROWS * 10).hasNext(true).build())
+            .build();
+    }
+}
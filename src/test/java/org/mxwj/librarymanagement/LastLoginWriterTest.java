@@ -0,0 +1,88 @@
+package org.mxwj.librarymanagement;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.service.LastLoginWriter;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LastLoginWriterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int THREADS = 8;
+    private static final int LOGINS_PER_THREAD = 20_000;
+    private static final int ACCOUNTS = 300;
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    // 并发登录 + 定时/按量写入 + 偶发写入失败, 最终每个账户写入的都是它最晚的一次登录时间
+    @Test
+    void testNoUpdateLostUnderConcurrentLogins() throws Exception {
+        Map<Long, OffsetDateTime> stored = new ConcurrentHashMap<>();
+        AtomicInteger batches = new AtomicInteger();
+        LastLoginWriter writer = new LastLoginWriter(vertx, 5, 50, batch -> {
+            if (batches.incrementAndGet() % 7 == 0) {
+                return Uni.createFrom().failure(new IllegalStateException("模拟写入失败"));
+            }
+            return Uni.createFrom().item(batch)
+                .onItem().delayIt().by(Duration.ofMillis(1))
+                .invoke(entries -> entries.forEach(entry ->
+                    stored.merge(entry.getKey(), entry.getValue(), (a, b) -> a.isAfter(b) ? a : b)))
+                .replaceWithVoid();
+        });
+
+        OffsetDateTime base = OffsetDateTime.now();
+        Map<Long, OffsetDateTime> expected = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < LOGINS_PER_THREAD; i++) {
+                    Long accountId = (long) random.nextInt(ACCOUNTS);
+                    OffsetDateTime loginAt = base.plusNanos(random.nextLong(1_000_000_000_000L));
+                    expected.merge(accountId, loginAt, (a, b) -> a.isAfter(b) ? a : b);
+                    writer.record(accountId, loginAt);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // 关闭时遇到失败会重新放回缓冲区, 再次 close 直到写完
+        int attempts = 0;
+        do {
+            writer.close().onFailure().recoverWithNull().await().atMost(TIMEOUT);
+        } while (writer.pendingSize() > 0 && ++attempts < 10);
+
+        assertEquals(0, writer.pendingSize());
+        assertEquals(expected, stored);
+        assertTrue(writer.stats().getLong("flushes") > 1);
+        assertEquals((long) THREADS * LOGINS_PER_THREAD, writer.stats().getLong("recorded"));
+    }
+}
@@ -0,0 +1,41 @@
+package org.mxwj.librarymanagement;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.LatencyHistogram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000L * 100_001 / 2, histogram.sumMicros());
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long expected = (long) (100_000 * percentile / 100);
+            long actual = histogram.valueAtPercentile(percentile);
+            assertTrue(actual >= expected && actual <= expected * 17 / 16, percentile + ": " + actual);
+        }
+    }
+
+    @Test
+    void testCountAtOrBelow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(3);
+        histogram.recordMicros(800);
+        histogram.recordMicros(5_000);
+        histogram.recordNanos(2_000_000_000L);
+
+        assertEquals(1, histogram.countAtOrBelow(500));
+        assertEquals(2, histogram.countAtOrBelow(1_000));
+        assertEquals(3, histogram.countAtOrBelow(10_000));
+        assertEquals(4, histogram.countAtOrBelow(5_000_000));
+        assertEquals(0, new LatencyHistogram().valueAtPercentile(99));
+    }
+}
@@ -0,0 +1,59 @@
+package org.mxwj.librarymanagement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.LocalCache;
+
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LocalCacheTest {
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        LocalCache<Long, String> cache = new LocalCache<>(2, 60_000);
+        cache.put(1L, "a");
+        cache.put(2L, "b");
+        assertEquals("a", cache.get(1L));
+        cache.put(3L, "c");
+
+        assertNull(cache.get(2L));
+        assertEquals("a", cache.get(1L));
+        assertEquals("c", cache.get(3L));
+        assertEquals(1, cache.stats().getLong("evictions"));
+    }
+
+    @Test
+    void testExpiresAfterTtl() {
+        AtomicLong now = new AtomicLong(1_000);
+        LocalCache<Long, String> cache = new LocalCache<>(10, 500, now::get);
+        cache.put(1L, "a");
+
+        now.set(1_499);
+        assertEquals("a", cache.get(1L));
+        now.set(1_500);
+        assertNull(cache.get(1L));
+
+        JsonObject stats = cache.stats();
+        assertEquals(1, stats.getLong("hits"));
+        assertEquals(1, stats.getLong("misses"));
+        assertEquals(1, stats.getLong("expirations"));
+        assertEquals(0, stats.getInteger("size"));
+    }
+
+    // 加载期间发生失效, 加载结果不能写回缓存
+    @Test
+    void testStaleLoadDiscardedAfterInvalidation() {
+        LocalCache<Long, String> cache = new LocalCache<>(10, 60_000);
+        long generation = cache.generation();
+        cache.invalidate(1L);
+        cache.put(1L, "stale", generation);
+        assertNull(cache.get(1L));
+
+        cache.put(1L, "fresh", cache.generation());
+        assertEquals("fresh", cache.get(1L));
+    }
+}
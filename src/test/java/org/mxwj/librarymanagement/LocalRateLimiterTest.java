@@ -0,0 +1,62 @@
+package org.mxwj.librarymanagement;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.LocalRateLimiter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LocalRateLimiterTest {
+
+    // 每分钟 10 次: 可以一次用完, 之后每 6 秒恢复一次
+    @Test
+    void testBurstThenSteadyRate() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        LocalRateLimiter limiter = new LocalRateLimiter(100, 60_000, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.tryAcquire("ip:1", 6_000, 60_000));
+        }
+        assertEquals(6_000, limiter.tryAcquire("ip:1", 6_000, 60_000));
+
+        now.addAndGet(5_999);
+        assertTrue(limiter.tryAcquire("ip:1", 6_000, 60_000) > 0);
+        now.addAndGet(1);
+        assertEquals(0, limiter.tryAcquire("ip:1", 6_000, 60_000));
+        assertTrue(limiter.tryAcquire("ip:1", 6_000, 60_000) > 0);
+    }
+
+    // 不同 key 互不影响, 被拒绝的请求不计入
+    @Test
+    void testKeysAreIndependentAndRejectionsAreFree() {
+        AtomicLong now = new AtomicLong(0);
+        LocalRateLimiter limiter = new LocalRateLimiter(100, 60_000, now::get);
+
+        assertEquals(0, limiter.tryAcquire("ip:1", 60_000, 60_000));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(60_000, limiter.tryAcquire("ip:1", 60_000, 60_000));
+        }
+        assertEquals(0, limiter.tryAcquire("ip:2", 60_000, 60_000));
+
+        now.set(60_000);
+        assertEquals(0, limiter.tryAcquire("ip:1", 60_000, 60_000));
+    }
+
+    // 多个 key 一起判断: 任一超限时其他 key 也不计入
+    @Test
+    void testAllOrNothing() {
+        AtomicLong now = new AtomicLong(0);
+        LocalRateLimiter limiter = new LocalRateLimiter(100, 60_000, now::get);
+        LocalRateLimiter.Permit all = new LocalRateLimiter.Permit("ip:1:all", 20_000, 60_000);
+
+        // 一次计 11 个 login, 超过每分钟 10 次
+        assertTrue(limiter.tryAcquire(List.of(all, new LocalRateLimiter.Permit("ip:1:login", 6_000 * 11, 60_000))) > 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire(List.of(all)));
+        }
+        assertTrue(limiter.tryAcquire(List.of(all)) > 0);
+    }
+}
@@ -0,0 +1,41 @@
+package org.mxwj.librarymanagement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.LogSampler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogSamplerTest {
+
+    // 每秒放行前 3 条, 其余计入 suppressed
+    @Test
+    void testSamplesPerSecond() {
+        AtomicLong now = new AtomicLong(10_000);
+        LogSampler sampler = new LogSampler(3, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sampler.sample());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertFalse(sampler.sample());
+        }
+        assertEquals(5, sampler.drainSuppressed());
+        assertEquals(0, sampler.drainSuppressed());
+
+        // 同一秒内仍然丢弃
+        now.addAndGet(999);
+        assertFalse(sampler.sample());
+
+        // 下一秒重新计数
+        now.addAndGet(1);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sampler.sample());
+        }
+        assertFalse(sampler.sample());
+        assertEquals(2, sampler.drainSuppressed());
+    }
+}
@@ -0,0 +1,173 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.SqlPoolMetrics;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.PoolOptions;
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MainVerticle 实例数从 1 到 N 的吞吐量曲线: 同一个 Vertx 上依次以不同实例数部署, 各轮共享同一个 AppContext,
+ * 由另一个 Vertx 上的 HTTP 客户端保持固定并发压 /graphql, 打印每轮的请求数/秒和相对 1 个实例的倍数.
+ *
+ * 查询为按 id 取一本图书(经 BookCache, 预热后不访问数据库), 测的是 HTTP + GraphQL 执行在 event loop 上的开销;
+ * 限流按客户端 IP 计数, 压测时关闭. 需要本地数据库和 Redis, 监听 8888 端口.
+ * 实例数默认为 1, 2, 4 ... 直到 CPU 核数, 可用 -Dbenchmark.instances=1,2,4,8 指定; 每轮时长 -Dbenchmark.seconds.
+ * 默认跳过, 用 mvn test -Dtest=MainVerticleScalingBenchmarkTest -Dbenchmark=true 运行.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class MainVerticleScalingBenchmarkTest {
+
+    private static final int PORT = 8888;
+    private static final int CONCURRENCY = 256;
+    private static final int WARMUP_SECONDS = 3;
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 10);
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final String ISBN = "SCALE-BENCH-1";
+
+    private static Mutiny.SessionFactory factory;
+    private static Vertx serverVertx;
+    private static Vertx clientVertx;
+    private static HttpClient client;
+    private static Buffer body;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        factory = DatabaseManager.getSessionFactory();
+        Long bookId = factory.withTransaction(session ->
+            session.createNativeQuery(
+                    "INSERT INTO book (isbn, title, author, publisher, category, total_copies, available_copies, location, created_at, updated_at) " +
+                    "VALUES (:isbn, '压测', '压测', '压测', '压测', 1, 1, 'BENCH', now(), now()) RETURNING id", Long.class)
+                .setParameter("isbn", ISBN)
+                .getSingleResult()
+        ).await().atMost(TIMEOUT);
+        body = new JsonObject()
+            .put("query", "{ book(id: \"" + bookId + "\") { id isbn title author availableCopies } }")
+            .toBuffer();
+
+        serverVertx = SqlPoolMetrics.vertx(new VertxOptions());
+        clientVertx = Vertx.vertx();
+        client = clientVertx.createHttpClient(new PoolOptions().setHttp1MaxSize(CONCURRENCY));
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (clientVertx != null) {
+            clientVertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+        if (serverVertx != null) {
+            serverVertx.close().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+        if (factory != null) {
+            factory.withTransaction(session ->
+                session.createMutationQuery("DELETE FROM Book b WHERE b.isbn = :isbn")
+                    .setParameter("isbn", ISBN)
+                    .executeUpdate()
+            ).await().atMost(TIMEOUT);
+        }
+    }
+
+    @Test
+    void testThroughputByInstances() throws Exception {
+        double single = 0;
+        for (int instances : instanceCounts()) {
+            String deploymentId = serverVertx.deployVerticle(MainVerticle.class, new DeploymentOptions()
+                    .setInstances(instances)
+                    .setConfig(new JsonObject().put("rateLimit", new JsonObject().put("enabled", false))))
+                .toCompletionStage().toCompletableFuture().get(60, TimeUnit.SECONDS);
+            try {
+                run(WARMUP_SECONDS);
+                LongAdder failures = new LongAdder();
+                long start = System.nanoTime();
+                long completed = run(SECONDS, failures);
+                double perSecond = completed * 1e9 / (System.nanoTime() - start);
+                if (single == 0) {
+                    single = perSecond;
+                }
+                System.out.printf("实例数 %2d: %,10.0f 请求/秒, 相对 1 个实例 %.2f 倍%n",
+                    instances, perSecond, perSecond / single);
+                assertEquals(0, failures.sum(), "实例数 " + instances);
+                assertTrue(completed > 0);
+            } finally {
+                serverVertx.undeploy(deploymentId).toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static List<Integer> instanceCounts() {
+        String configured = System.getProperty("benchmark.instances");
+        List<Integer> counts = new ArrayList<>();
+        if (configured != null) {
+            for (String count : configured.split(",")) {
+                counts.add(Integer.parseInt(count.trim()));
+            }
+            return counts;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int n = 1; n < cores; n *= 2) {
+            counts.add(n);
+        }
+        counts.add(cores);
+        return counts;
+    }
+
+    private static long run(int seconds) throws Exception {
+        return run(seconds, new LongAdder());
+    }
+
+    // CONCURRENCY 个请求同时在途, 每个完成后立即发下一个, 直到截止时间
+    private static long run(int seconds, LongAdder failures) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        LongAdder completed = new LongAdder();
+        List<CompletableFuture<Void>> workers = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            workers.add(done);
+            clientVertx.runOnContext(v -> next(deadline, completed, failures, done));
+        }
+        CompletableFuture.allOf(workers.toArray(CompletableFuture<?>[]::new)).get(seconds + 60L, TimeUnit.SECONDS);
+        return completed.sum();
+    }
+
+    private static void next(long deadline, LongAdder completed, LongAdder failures, CompletableFuture<Void> done) {
+        if (System.nanoTime() >= deadline) {
+            done.complete(null);
+            return;
+        }
+        client.request(HttpMethod.POST, PORT, "localhost", "/graphql")
+            .compose(request -> request
+                .putHeader("Content-Type", "application/json")
+                .send(body))
+            .compose(response -> response.body().map(buffer ->
+                response.statusCode() == 200 && !buffer.toString().contains("\"errors\"")))
+            .onComplete(ar -> {
+                if (ar.succeeded() && ar.result()) {
+                    completed.increment();
+                } else {
+                    failures.increment();
+                }
+                next(deadline, completed, failures, done);
+            });
+    }
+}
@@ -0,0 +1,265 @@
+package org.mxwj.librarymanagement;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.config.Property;
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.model.Account;
+import org.mxwj.librarymanagement.model.Book;
+import org.mxwj.librarymanagement.model.BorrowRecord;
+import org.mxwj.librarymanagement.service.OverdueSweeper;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OverdueSweeperTest {
+
+    private static final int CHUNK = 2;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final org.apache.logging.log4j.Logger logger = LogManager.getLogger(OverdueSweeperTest.class);
+
+    private Mutiny.SessionFactory factory;
+    private Vertx vertx;
+    private OverdueSweeper sweeper;
+    private SessionThreadAppender appender;
+    private Book book;
+    private Account account;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        // 在 Vert.x 上下文中创建, SessionFactory 与扫描共用这个 Vertx
+        factory = vertx.executeBlocking(() -> DatabaseManager.createSessionFactory(new JsonObject()
+                .put("poolName", "test-sweeper")
+                .put("schemaAction", "none")))
+            .toCompletionStage().toCompletableFuture().get(60, TimeUnit.SECONDS);
+        sweeper = new OverdueSweeper(vertx, factory, 60_000, CHUNK, 30_000);
+        appender = SessionThreadAppender.attach();
+        String tag = UUID.randomUUID().toString().substring(0, 8);
+
+        book = new Book();
+        book.setIsbn("O-" + tag);
+        book.setTitle("逾期扫描测试 " + tag);
+        book.setTotalCopies(10);
+        book.setAvailableCopies(10);
+        book.setCreatedAt(OffsetDateTime.now());
+        book.setUpdatedAt(OffsetDateTime.now());
+
+        account = new Account();
+        account.setUsername("overdue-" + tag);
+        account.setPassword("x");
+        account.setUserType(0);
+        account.setStatus(1);
+        account.setCreatedAt(OffsetDateTime.now());
+
+        factory.withTransaction(session -> session.persistAll(book, account))
+            .await().atMost(TIMEOUT);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sweeper.stop();
+        factory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM BorrowRecord br WHERE br.book.id = :bookId")
+                .setParameter("bookId", book.getId())
+                .executeUpdate()
+                .chain(() -> session.createMutationQuery("DELETE FROM Book b WHERE b.id = :bookId")
+                    .setParameter("bookId", book.getId())
+                    .executeUpdate())
+                .chain(() -> session.createMutationQuery("DELETE FROM Account a WHERE a.id = :accountId")
+                    .setParameter("accountId", account.getId())
+                    .executeUpdate())
+        ).await().atMost(TIMEOUT);
+        appender.detach();
+        factory.close();
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    // 每块 2 行, 6 条逾期记录需要多块: 三条应还时间完全相同(游标靠 id 区分), 两条只差 1 微秒(游标精确到微秒);
+    // 被其他事务锁住的一条跳过且不阻塞本轮, 未到期和已归还的不变
+    @Test
+    void testSweepAdvancesAcrossChunks() throws Exception {
+        OffsetDateTime due = OffsetDateTime.now().minusDays(2).truncatedTo(ChronoUnit.SECONDS).plusNanos(123_456_000);
+        List<BorrowRecord> overdue = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            overdue.add(record(due, 0));
+        }
+        overdue.add(record(due.plusNanos(1_000), 0));
+        overdue.add(record(due.plusNanos(2_000), 0));
+        overdue.add(record(due.minusHours(5), 0));
+        BorrowRecord locked = record(due.minusHours(1), 0);
+        BorrowRecord notDue = record(OffsetDateTime.now().plusDays(3), 0);
+        BorrowRecord returned = record(due, 1);
+
+        List<BorrowRecord> all = new ArrayList<>(overdue);
+        all.addAll(List.of(locked, notDue, returned));
+        factory.withTransaction(session -> session.persistAll(all.toArray()))
+            .await().atMost(TIMEOUT);
+
+        // 另一个事务持有 locked 的行锁, 直到扫描结束; 事务需在打开它的 context 上继续
+        CompletableFuture<Context> lockHeld = new CompletableFuture<>();
+        CompletableFuture<Void> sweepDone = new CompletableFuture<>();
+        CompletableFuture<Void> lockReleased = factory.withTransaction(session ->
+            session.createNativeQuery("SELECT id FROM borrow_record WHERE id = :id FOR UPDATE", Long.class)
+                .setParameter("id", locked.getId())
+                .getSingleResult()
+                .invoke(() -> lockHeld.complete(Vertx.currentContext()))
+                .chain(() -> Uni.createFrom().completionStage(sweepDone))
+        ).subscribeAsCompletionStage().toCompletableFuture();
+        Context lockContext = lockHeld.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+
+        JsonObject stats;
+        try {
+            sweeper.sweep();
+            stats = awaitSweeps(1);
+            assertEquals(0, stats.getLong("failures"), stats.encode());
+            assertEquals(1, stats.getLong("sweeps"), stats.encode());
+            assertTrue(stats.getLong("transitioned") >= overdue.size(), stats.encode());
+        } finally {
+            lockContext.runOnContext(v -> sweepDone.complete(null));
+            lockReleased.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+        }
+
+        Map<Long, Short> statuses = statuses();
+        for (BorrowRecord record : overdue) {
+            assertEquals((short) 2, statuses.get(record.getId()), "id " + record.getId());
+        }
+        assertEquals((short) 0, statuses.get(locked.getId()));
+        assertEquals((short) 0, statuses.get(notDue.getId()));
+        assertEquals((short) 1, statuses.get(returned.getId()));
+
+        // 锁释放后的下一轮补上
+        sweeper.sweep();
+        stats = awaitSweeps(2);
+        assertEquals(0, stats.getLong("failures"), stats.encode());
+        assertEquals((short) 2, statuses().get(locked.getId()));
+
+        // 会话始终在打开它的线程上使用
+        assertEquals(List.of(), appender.violations());
+    }
+
+    private BorrowRecord record(OffsetDateTime dueDate, int status) {
+        BorrowRecord record = new BorrowRecord();
+        record.setBook(book);
+        record.setAccount(account);
+        record.setBorrowDate(dueDate.minusDays(30));
+        record.setDueDate(dueDate);
+        record.setStatus((short) status);
+        record.setCreatedAt(OffsetDateTime.now());
+        record.setUpdatedAt(OffsetDateTime.now());
+        return record;
+    }
+
+    // sweep() 不返回结果, 等统计中的轮数(或失败数)增加
+    private JsonObject awaitSweeps(long sweeps) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        JsonObject stats = sweeper.stats();
+        while (stats.getLong("sweeps") < sweeps && stats.getLong("failures") == 0) {
+            assertTrue(System.nanoTime() < deadline, "逾期扫描未在限定时间内完成: " + stats.encode());
+            Thread.sleep(20);
+            stats = sweeper.stats();
+        }
+        return stats;
+    }
+
+    private Map<Long, Short> statuses() {
+        List<Object[]> rows = factory.withSession(session ->
+            session.createQuery("SELECT br.id, br.status FROM BorrowRecord br WHERE br.book.id = :bookId", Object[].class)
+                .setParameter("bookId", book.getId())
+                .getResultList()
+        ).await().atMost(TIMEOUT);
+        Map<Long, Short> statuses = new HashMap<>();
+        for (Object[] row : rows) {
+            statuses.put((Long) row[0], (Short) row[1]);
+        }
+        return statuses;
+    }
+
+    // 收集日志中的 HR000069(会话在其他线程上使用). 日志是异步写出的, 检查前先写一条标记, 收到标记时之前的事件都已处理
+    private static class SessionThreadAppender extends AbstractAppender {
+        private static final String MARKER = "OverdueSweeperTest 日志标记";
+
+        private final List<String> violations = new CopyOnWriteArrayList<>();
+        private final CountDownLatch marker = new CountDownLatch(1);
+
+        private SessionThreadAppender() {
+            super("SessionThread", null, null, true, Property.EMPTY_ARRAY);
+        }
+
+        // 各 Logger 的 additivity 为 false, 需要逐个挂上
+        static SessionThreadAppender attach() {
+            SessionThreadAppender appender = new SessionThreadAppender();
+            appender.start();
+            LoggerContext context = (LoggerContext) LogManager.getContext(false);
+            Configuration configuration = context.getConfiguration();
+            configuration.getRootLogger().addAppender(appender, null, null);
+            for (LoggerConfig loggerConfig : configuration.getLoggers().values()) {
+                loggerConfig.addAppender(appender, null, null);
+            }
+            context.updateLoggers();
+            return appender;
+        }
+
+        void detach() {
+            LoggerContext context = (LoggerContext) LogManager.getContext(false);
+            Configuration configuration = context.getConfiguration();
+            configuration.getRootLogger().removeAppender(getName());
+            for (LoggerConfig loggerConfig : configuration.getLoggers().values()) {
+                loggerConfig.removeAppender(getName());
+            }
+            context.updateLoggers();
+            stop();
+        }
+
+        List<String> violations() throws InterruptedException {
+            logger.warn(MARKER);
+            assertTrue(marker.await(TIMEOUT.toSeconds(), TimeUnit.SECONDS), "未收到日志标记");
+            return List.copyOf(violations);
+        }
+
+        // 事件对象会被复用, 在这里取出需要的内容
+        @Override
+        public void append(LogEvent event) {
+            String message = event.getMessage().getFormattedMessage();
+            if (MARKER.equals(message)) {
+                marker.countDown();
+                return;
+            }
+            StringWriter text = new StringWriter().append(message);
+            if (event.getThrown() != null) {
+                event.getThrown().printStackTrace(new PrintWriter(text));
+            }
+            if (text.toString().contains("HR000069")) {
+                violations.add(event.getLoggerName() + ": " + message);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.mxwj.librarymanagement;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+import org.mxwj.librarymanagement.lib.PasswordHasher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PasswordHasherTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private Vertx vertx;
+    private PasswordHasher hasher;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        hasher = new PasswordHasher(vertx, 2, 4, 6);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void testHashAndVerify() {
+        String hash = hasher.hash("secret").await().atMost(TIMEOUT);
+        assertTrue(hasher.verify("secret", hash).await().atMost(TIMEOUT));
+        assertFalse(hasher.verify("wrong", hash).await().atMost(TIMEOUT));
+        assertFalse(hasher.verify("secret", "not-a-bcrypt-hash").await().atMost(TIMEOUT));
+    }
+
+    @Test
+    void testNeedsRehashWhenCostChanges() {
+        assertFalse(hasher.needsRehash(BCrypt.hashpw("secret", BCrypt.gensalt(6))));
+        assertTrue(hasher.needsRehash(BCrypt.hashpw("secret", BCrypt.gensalt(7))));
+    }
+
+    @Test
+    void testRejectsWhenSaturated() {
+        List<Uni<String>> hashes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            hashes.add(hasher.hash("secret-" + i).onFailure(PasswordHasher.PasswordHasherBusyException.class)
+                .recoverWithItem("rejected"));
+        }
+        List<String> results = Uni.join().all(hashes).andFailFast().await().atMost(TIMEOUT);
+
+        long rejected = results.stream().filter("rejected"::equals).count();
+        assertEquals(16, rejected);
+        assertEquals(16L, hasher.stats().getLong("rejected"));
+        assertEquals(0, hasher.stats().getInteger("pending"));
+    }
+}
@@ -0,0 +1,94 @@
+package org.mxwj.librarymanagement;
+
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.graphql.QueryCostInstrumentation;
+import org.mxwj.librarymanagement.graphql.TemporalScalars;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueryCostInstrumentationTest {
+
+    private QueryCostInstrumentation instrumentation;
+    private GraphQL graphQL;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String sdl = Files.readString(Path.of("src/main/resources/schema.graphqls"));
+        instrumentation = new QueryCostInstrumentation(5000, 6, 100, 10000, 10, 50000, 5000);
+        graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(
+                new SchemaParser().parse(sdl), RuntimeWiring.newRuntimeWiring()
+                    .scalar(TemporalScalars.DATE_TIME).scalar(TemporalScalars.DATE).build()))
+            .instrumentation(instrumentation)
+            .build();
+    }
+
+    @Test
+    void testDefaultPageSizeIsAccepted() {
+        assertTrue(graphQL.execute("{ books { content { title } pageInfo { totalPages } } }").getErrors().isEmpty());
+        assertTrue(graphQL.execute("{ borrowRecords(size: 100) { content { id book { title } account { username } } } }")
+            .getErrors().isEmpty());
+    }
+
+    @Test
+    void testHugePageSizeIsRejected() {
+        assertEquals(1, graphQL.execute("{ borrowRecords(size: 100000) { content { id book { title } } } }")
+            .getErrors().size());
+        // 只查标量时子字段成本为 0, 字段本身的成本也按 first 计, 并且 first 超出上限直接拒绝
+        assertEquals(1, graphQL.execute("{ booksConnection(first: 1000000) { totalCount } }").getErrors().size());
+        assertEquals(2L, instrumentation.stats().getLong("rejectedPageSize"));
+        assertTrue(graphQL.execute("{ booksConnection(first: 100) { totalCount } }").getErrors().isEmpty());
+    }
+
+    // 每个字段都在上限内, 但多个别名合计超出成本上限
+    @Test
+    void testCostLimit() {
+        StringBuilder query = new StringBuilder("{");
+        for (int i = 0; i < 7; i++) {
+            query.append(" r").append(i).append(": borrowRecords(size: 100) { content { id book { title } account { username } } }");
+        }
+        assertEquals(1, graphQL.execute(query.append(" }").toString()).getErrors().size());
+        assertEquals(1L, instrumentation.stats().getLong("rejectedCost"));
+    }
+
+    @Test
+    void testVariablesAreUsedAsMultipliers() {
+        String query = "query($n: Int) { booksConnection(first: $n) { edges { node { title } } } }";
+        assertTrue(graphQL.execute(builder -> builder.query(query).variables(Map.of("n", 100)))
+            .getErrors().isEmpty());
+        assertEquals(1, graphQL.execute(builder -> builder.query(query).variables(Map.of("n", 1000000)))
+            .getErrors().size());
+    }
+
+    // 列表参数按长度计成本, 长度超出上限直接拒绝
+    @Test
+    void testSubscriptionBookIdsAreBounded() {
+        String query = "subscription($ids: [ID!]) { bookAvailabilityChanged(bookIds: $ids) { bookId availableCopies } }";
+        List<String> ids = IntStream.rangeClosed(1, 101).mapToObj(String::valueOf).toList();
+        assertTrue(graphQL.execute(builder -> builder.query(query).variables(Map.of("ids", ids.subList(0, 100))))
+            .getErrors().isEmpty());
+        assertEquals(1, graphQL.execute(builder -> builder.query(query).variables(Map.of("ids", ids)))
+            .getErrors().size());
+        assertEquals(1L, instrumentation.stats().getLong("rejectedPageSize"));
+    }
+
+    @Test
+    void testDepthLimit() {
+        assertTrue(graphQL.execute("{ borrowRecordsConnection { edges { node { book { title } } } } }")
+            .getErrors().isEmpty());
+        assertEquals(1, graphQL.execute("{ __schema { types { fields { type { ofType { ofType { name } } } } } } }")
+            .getErrors().size());
+        assertEquals(1L, instrumentation.stats().getLong("rejectedDepth"));
+    }
+}
@@ -0,0 +1,79 @@
+package org.mxwj.librarymanagement;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.graphql.QueryDocumentCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueryDocumentCacheTest {
+
+    private static final String QUERY = "{ hello }";
+
+    private QueryDocumentCache cache;
+    private GraphQL graphQL;
+
+    @BeforeEach
+    void setUp() {
+        cache = new QueryDocumentCache(10);
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+            .type("Query", builder -> builder.dataFetcher("hello", env -> "world"))
+            .build();
+        graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(
+                new SchemaParser().parse("type Query { hello: String }"), wiring))
+            .preparsedDocumentProvider(cache)
+            .build();
+    }
+
+    @Test
+    void testRepeatedQueryHitsCache() {
+        assertEquals(Map.of("hello", "world"), graphQL.execute(QUERY).getData());
+        assertEquals(Map.of("hello", "world"), graphQL.execute(QUERY).getData());
+
+        assertEquals(1L, cache.stats().getLong("hits"));
+        assertEquals(1L, cache.stats().getLong("misses"));
+        assertEquals(1, cache.stats().getInteger("size"));
+    }
+
+    @Test
+    void testInvalidQueryIsNotCached() {
+        assertTrue(graphQL.execute("{ missing }").getErrors().size() > 0);
+        assertEquals(0, cache.stats().getInteger("size"));
+    }
+
+    @Test
+    void testAutomaticPersistedQuery() throws Exception {
+        String hash = HexFormat.of().formatHex(
+            MessageDigest.getInstance("SHA-256").digest(QUERY.getBytes(StandardCharsets.UTF_8)));
+
+        ExecutionResult notFound = graphQL.execute(persisted(PersistedQuerySupport.PERSISTED_QUERY_MARKER, hash));
+        assertEquals("PersistedQueryNotFound", notFound.getErrors().get(0).getMessage());
+
+        ExecutionResult invalid = graphQL.execute(persisted("{ __typename }", hash));
+        assertEquals("PersistedQueryIdInvalid", invalid.getErrors().get(0).getMessage());
+
+        assertEquals(Map.of("hello", "world"), graphQL.execute(persisted(QUERY, hash)).getData());
+        assertEquals(Map.of("hello", "world"),
+            graphQL.execute(persisted(PersistedQuerySupport.PERSISTED_QUERY_MARKER, hash)).getData());
+        assertEquals(1L, cache.stats().getLong("persistedHits"));
+    }
+
+    private static ExecutionInput persisted(String query, String hash) {
+        return ExecutionInput.newExecutionInput(query)
+            .extensions(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash)))
+            .build();
+    }
+}
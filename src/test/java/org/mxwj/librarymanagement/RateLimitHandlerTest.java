@@ -0,0 +1,125 @@
+package org.mxwj.librarymanagement;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.graphql.QueryDocumentCache;
+import org.mxwj.librarymanagement.lib.RedisClient;
+import org.mxwj.librarymanagement.middleware.RateLimitHandler;
+
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.handler.BodyHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 字段策略按字段出现次数计入, 不能靠别名、批量请求或只发 APQ 哈希绕过.
+ * 被拒绝的请求都在本地预过滤阶段拒绝, 不依赖 Redis; 默认策略每次用新名字, 避免 Redis 中残留的计数影响结果.
+ */
+public class RateLimitHandlerTest {
+
+    private static final int LOGIN_LIMIT = 10;
+    private static final int DEFAULT_LIMIT = 3;
+
+    private Vertx vertx;
+    private HttpServer server;
+    private HttpClient client;
+    private QueryDocumentCache documents;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        documents = new QueryDocumentCache(10);
+        RateLimitHandler handler = new RateLimitHandler(RedisClient.getInstance(vertx), documents,
+            new RateLimitHandler.Policy("all-" + UUID.randomUUID(), DEFAULT_LIMIT, 60_000),
+            List.of(new RateLimitHandler.Policy("login", LOGIN_LIMIT, 60_000)));
+
+        Router router = Router.router(vertx);
+        router.route().handler(BodyHandler.create());
+        router.post("/graphql").handler(handler).handler(context -> context.response().end("ok"));
+        server = vertx.createHttpServer().requestHandler(router).listen(0).toCompletionStage().toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+        client = vertx.createHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    // 一个文档中 11 次带别名的 login, 或拆成两个批量操作, 都超过每分钟 10 次;
+    // 被拒绝的请求也不占默认策略的额度
+    @Test
+    void testAliasesAndBatchCountEveryField() throws Exception {
+        assertEquals(429, post(new JsonObject().put("query", logins(LOGIN_LIMIT + 1))));
+        assertEquals(429, post(new JsonArray()
+            .add(new JsonObject().put("query", logins(6)))
+            .add(new JsonObject().put("query", logins(5)))));
+
+        for (int i = 0; i < DEFAULT_LIMIT; i++) {
+            assertEquals(200, post(new JsonObject().put("query", "{ hello }")));
+        }
+        assertEquals(429, post(new JsonObject().put("query", "{ hello }")));
+    }
+
+    // 只带哈希的 APQ 请求按缓存中的文档计数
+    @Test
+    void testPersistedQueryCountsCachedDocument() throws Exception {
+        String query = logins(LOGIN_LIMIT + 1);
+        String hash = HexFormat.of().formatHex(
+            MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8)));
+        JsonObject extensions = new JsonObject()
+            .put("persistedQuery", new JsonObject().put("version", 1).put("sha256Hash", hash));
+
+        // 未缓存的哈希不会被执行, 只计默认策略
+        assertEquals(200, post(new JsonObject().put("extensions", extensions)));
+
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+            .type("Query", builder -> builder.dataFetcher("hello", env -> "world"))
+            .type("Mutation", builder -> builder.dataFetcher("login", env -> "token"))
+            .build();
+        GraphQL graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(
+                "type Query { hello: String } type Mutation { login(username: String): String }"), wiring))
+            .preparsedDocumentProvider(documents)
+            .build();
+        graphQL.execute(ExecutionInput.newExecutionInput(query)
+            .extensions(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash)))
+            .build());
+
+        assertEquals(429, post(new JsonObject().put("extensions", extensions)));
+    }
+
+    private static String logins(int count) {
+        StringBuilder query = new StringBuilder("mutation {");
+        for (int i = 0; i < count; i++) {
+            query.append(" a").append(i).append(": login(username: \"u").append(i).append("\")");
+        }
+        return query.append(" }").toString();
+    }
+
+    private int post(Object body) throws Exception {
+        return client.request(HttpMethod.POST, server.actualPort(), "localhost", "/graphql")
+            .compose(request -> request.putHeader("Content-Type", "application/json").send(body.toString()))
+            .map(response -> response.statusCode())
+            .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+}
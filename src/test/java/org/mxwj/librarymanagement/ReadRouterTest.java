@@ -0,0 +1,136 @@
+package org.mxwj.librarymanagement;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mxwj.librarymanagement.lib.DatabaseManager;
+import org.mxwj.librarymanagement.lib.ReadRouter;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 需要两个本地 PostgreSQL 实例, 副本可以是流复制的备库, 也可以是独立实例(延迟视为 0), 如:
+ * mvn test -Dtest=ReadRouterTest -DreplicaUrl=postgresql://localhost:5433/vertx_study
+ */
+@EnabledIfSystemProperty(named = "replicaUrl", matches = ".+")
+public class ReadRouterTest {
+
+    private static final long READ_YOUR_WRITES_MILLIS = 500;
+
+    private Vertx vertx;
+    private Mutiny.SessionFactory primary;
+    private Mutiny.SessionFactory replica;
+    private ReadRouter router;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        JsonObject replicaConfig = new JsonObject()
+            .put("url", System.getProperty("replicaUrl"))
+            .put("poolName", "test-replica")
+            .put("schemaAction", "none");
+        // 在 Vert.x 上下文中创建, 两个 SessionFactory 共用这个 Vertx
+        primary = vertx.executeBlocking(() -> DatabaseManager.createSessionFactory(new JsonObject().put("poolName", "test-primary")))
+            .toCompletionStage().toCompletableFuture().get(60, TimeUnit.SECONDS);
+        replica = vertx.executeBlocking(() -> DatabaseManager.createSessionFactory(replicaConfig))
+            .toCompletionStage().toCompletableFuture().get(60, TimeUnit.SECONDS);
+        router = new ReadRouter(primary, replica, READ_YOUR_WRITES_MILLIS, 100, 1000);
+        router.startLagMonitor(vertx);
+        waitFor(() -> router.lagStats().getBoolean("healthy", false));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        primary.close();
+        replica.close();
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testQueriesGoToReplicaAndMutationsToPrimary() throws Exception {
+        assertSame(replica, onRequest(() -> {
+            router.beginOperation(false, "u:1");
+            return router.forRead();
+        }));
+        assertSame(primary, onRequest(() -> {
+            router.beginOperation(true, "u:2");
+            return router.forRead();
+        }));
+        // 批量请求中有 mutation 时, 之后的 query 也走主库
+        assertSame(primary, onRequest(() -> {
+            router.beginOperation(true, "u:3");
+            router.beginOperation(false, "u:3");
+            return router.forRead();
+        }));
+        // 不在请求中(后台任务)时走主库
+        assertSame(primary, router.forRead());
+    }
+
+    @Test
+    void testReadYourWritesWindow() throws Exception {
+        onRequest(() -> {
+            router.beginOperation(true, "u:1");
+            router.endOperation(true, "u:1");
+            return null;
+        });
+        assertSame(primary, onRequest(() -> {
+            router.beginOperation(false, "u:1");
+            return router.forRead();
+        }));
+        // 其他用户不受影响
+        assertSame(replica, onRequest(() -> {
+            router.beginOperation(false, "u:2");
+            return router.forRead();
+        }));
+
+        Thread.sleep(READ_YOUR_WRITES_MILLIS + 100);
+        assertSame(replica, onRequest(() -> {
+            router.beginOperation(false, "u:1");
+            return router.forRead();
+        }));
+    }
+
+    // 真正访问两个库: 路由到副本的查询能在副本上执行
+    @Test
+    void testReplicaServesQueries() throws Exception {
+        Long one = onRequest(() -> {
+            router.beginOperation(false, null);
+            return router.forRead();
+        }).withSession(session -> session.createNativeQuery("SELECT 1", Long.class).getSingleResult())
+            .await().atMost(Duration.ofSeconds(10));
+        assertEquals(1L, one);
+        assertTrue(router.lagStats().getLong("lagMillis") >= 0);
+    }
+
+    // 在新的 duplicated context(与 HTTP 请求相同)上执行
+    private <T> T onRequest(Supplier<T> action) throws Exception {
+        ContextInternal context = ((ContextInternal) vertx.getOrCreateContext()).duplicate();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        context.runOnContext(v -> result.complete(action.get()));
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("等待超时");
+            }
+            Thread.sleep(50);
+        }
+    }
+}
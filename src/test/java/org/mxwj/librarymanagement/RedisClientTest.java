@@ -1,19 +1,28 @@
 package org.mxwj.librarymanagement;
 
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
+import io.vertx.redis.client.Command;
 import io.vertx.redis.client.Redis;
 import io.vertx.redis.client.RedisAPI;
 import io.vertx.redis.client.RedisOptions;
+import io.vertx.redis.client.Request;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mxwj.librarymanagement.lib.RedisClient;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @ExtendWith(VertxExtension.class)
 public class RedisClientTest {
@@ -68,4 +77,57 @@ public class RedisClientTest {
             .onFailure(testContext::failNow);
     }
 
+    @Test
+    void testSharedClientBatch(Vertx vertx, VertxTestContext testContext) {
+        RedisClient client = RedisClient.getInstance(vertx);
+        assertSame(client, RedisClient.getInstance(vertx));
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            requests.add(Request.cmd(Command.SET).arg("test-batch-" + i).arg(String.valueOf(i)));
+        }
+        for (int i = 0; i < 100; i++) {
+            requests.add(Request.cmd(Command.GET).arg("test-batch-" + i));
+        }
+
+        client.batch(requests)
+            .onSuccess(responses -> testContext.verify(() -> {
+                assertEquals(200, responses.size());
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(String.valueOf(i), responses.get(100 + i).toString());
+                }
+                assertEquals(0, client.stats().getInteger("inFlight"));
+                testContext.completeNow();
+            }))
+            .onFailure(testContext::failNow);
+    }
+
+    // 连接建立期间订阅的第二个频道在连接就绪后补发 SUBSCRIBE; 频道的处理器全部取消后退订
+    @Test
+    void testSubscribeWhileConnectingAndUnsubscribe(Vertx vertx, VertxTestContext testContext) {
+        RedisClient client = RedisClient.getInstance(vertx);
+        String first = "test-sub-" + UUID.randomUUID();
+        String second = "test-sub-" + UUID.randomUUID();
+        Promise<Void> subscribed = Promise.promise();
+        Promise<String> received = Promise.promise();
+        Handler<String> onMessage = received::tryComplete;
+        Handler<Void> onSubscribed = v -> subscribed.tryComplete();
+
+        client.subscribe(first, message -> {}, v -> {});
+        client.subscribe(second, onMessage, onSubscribed);
+
+        subscribed.future()
+            .compose(v -> client.publish(second, "hello"))
+            .compose(v -> received.future())
+            .compose(message -> {
+                assertEquals("hello", message);
+                return client.unsubscribe(second, onMessage, onSubscribed);
+            })
+            .compose(v -> client.publish(second, "gone"))
+            .onSuccess(receivers -> testContext.verify(() -> {
+                assertEquals(0, receivers.toInteger());
+                testContext.completeNow();
+            }))
+            .onFailure(testContext::failNow);
+    }
 }
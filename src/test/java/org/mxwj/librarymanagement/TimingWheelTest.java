@@ -0,0 +1,108 @@
+package org.mxwj.librarymanagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.lib.TimingWheel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimingWheelTest {
+
+    @Test
+    void testFiresInDeadlineOrderAcrossLevels() {
+        List<Long> fired = new ArrayList<>();
+        TimingWheel<Long> wheel = new TimingWheel<>(1000, 0, fired::add);
+        // 分别落在第 0, 1, 2 层
+        long[] deadlines = {90_000_000L, 5_000L, 300_000L, 1_000L};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        wheel.advanceTo(4_999);
+        assertEquals(List.of(1_000L), fired);
+        wheel.advanceTo(300_000);
+        assertEquals(List.of(1_000L, 5_000L, 300_000L), fired);
+        wheel.advanceTo(89_999_999);
+        assertEquals(3, fired.size());
+        wheel.advanceTo(90_000_000);
+        assertEquals(List.of(1_000L, 5_000L, 300_000L, 90_000_000L), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelledTimerDoesNotFire() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 0, fired::add);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule(600_000, "cancelled");
+        wheel.schedule(600_000, "kept");
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        wheel.advanceTo(600_000);
+
+        assertEquals(List.of("kept"), fired);
+    }
+
+    // 100 万个定时器(到期时间分布在 30 天内)的额外内存应在预算内, 且全部按时触发
+    @Test
+    void testMillionTimersWithinMemoryBudget() {
+        int count = 1_000_000;
+        long budgetBytes = 96L * count;
+        long horizonMillis = 30L * 24 * 3600 * 1000;
+        AtomicLong fired = new AtomicLong();
+        AtomicLong misplaced = new AtomicLong();
+        AtomicLong previous = new AtomicLong();
+        AtomicLong now = new AtomicLong();
+        Random random = new Random(42);
+
+        long[] deadlines = new long[count];
+        for (int i = 0; i < count; i++) {
+            deadlines[i] = 1 + (long) (random.nextDouble() * horizonMillis);
+        }
+        TimingWheel<long[]> wheel = new TimingWheel<>(1000, 0, payload -> {
+            fired.incrementAndGet();
+            // 步长是整秒, 到期时间落在 (上一次推进, 本次推进] 内才算按时
+            if (payload[0] <= previous.get() || payload[0] > now.get()) {
+                misplaced.incrementAndGet();
+            }
+        });
+
+        long before = usedMemory();
+        List<TimingWheel.Timeout<long[]>> timeouts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // 预算包含负载和 timeouts 列表本身
+            timeouts.add(wheel.schedule(deadlines[i], new long[] {deadlines[i]}));
+        }
+        long after = usedMemory();
+        long perTimer = (after - before) / count;
+        assertTrue(after - before < budgetBytes, "每个定时器约 " + perTimer + " 字节");
+        assertEquals(count, wheel.size());
+
+        for (int i = 0; i < count; i += 10) {
+            wheel.cancel(timeouts.get(i));
+        }
+        for (long t = 7_919_000; t < horizonMillis + 7_919_000; t += 7_919_000) {
+            now.set(t);
+            wheel.advanceTo(t);
+            previous.set(t);
+        }
+
+        assertEquals(count - count / 10, fired.get());
+        assertEquals(0, wheel.size());
+        assertEquals(0, misplaced.get());
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,125 @@
+package org.mxwj.librarymanagement;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mxwj.librarymanagement.utils.TokenCache;
+
+import io.vertx.ext.auth.User;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TokenCacheTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @Test
+    void testNewTokenReplacesOldAndRevocationRemovesIt() {
+        TokenCache cache = new TokenCache(10, 60_000);
+        User user = User.fromName("1");
+        cache.put("old", "1", user, expiresIn(HOUR), cache.generation("1"));
+        assertEquals(user, cache.get("old"));
+
+        cache.put("new", "1", user, expiresIn(HOUR), cache.generation("1"));
+        assertNull(cache.get("old"));
+        assertEquals(user, cache.get("new"));
+
+        cache.invalidateUser("1");
+        assertNull(cache.get("new"));
+        assertEquals(0, cache.size());
+    }
+
+    // 缓存时间不超过 token 自身的过期时间
+    @Test
+    void testExpiredTokenIsMiss() {
+        TokenCache cache = new TokenCache(10, 60_000);
+        cache.put("t", "1", User.fromName("1"), System.currentTimeMillis() - 1, cache.generation("1"));
+        assertNull(cache.get("t"));
+        assertEquals(0, cache.size());
+    }
+
+    // 验证期间该用户被失效, 写入作废; 其他用户的失效不影响本次写入
+    @Test
+    void testGenerationIsPerUser() {
+        TokenCache cache = new TokenCache(10, 60_000);
+        long first = cache.generation("1");
+        long second = cache.generation("2");
+
+        cache.invalidateUser("1");
+        cache.put("t1", "1", User.fromName("1"), expiresIn(HOUR), first);
+        cache.put("t2", "2", User.fromName("2"), expiresIn(HOUR), second);
+
+        assertNull(cache.get("t1"));
+        assertNotNull(cache.get("t2"));
+
+        long afterClear = cache.generation("2");
+        cache.clear();
+        cache.put("t2", "2", User.fromName("2"), expiresIn(HOUR), afterClear);
+        assertNull(cache.get("t2"));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyAccessed() throws Exception {
+        TokenCache cache = new TokenCache(10, 60_000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("t" + i, "u" + i, User.fromName("u" + i), expiresIn(HOUR), cache.generation("u" + i));
+        }
+        Thread.sleep(5);
+        assertNotNull(cache.get("t0"));
+        cache.put("t10", "u10", User.fromName("u10"), expiresIn(HOUR), cache.generation("u10"));
+
+        // 淘汰到 maxSize 的 90%
+        assertEquals(9, cache.size());
+        assertEquals(2, cache.stats().getLong("evictions"));
+        assertNotNull(cache.get("t0"));
+        assertNotNull(cache.get("t10"));
+    }
+
+    // 代数在失效之前读取, 无论写入和失效在两个线程上如何交错, 写入都不能留在缓存中
+    @Test
+    void testPutRacingInvalidationNeverSurvives() throws Exception {
+        TokenCache cache = new TokenCache(1000, 60_000);
+        User user = User.fromName("1");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                String tokenHash = "t" + i;
+                long generation = cache.generation("1");
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> put = executor.submit(() -> {
+                    await(start);
+                    cache.put(tokenHash, "1", user, expiresIn(HOUR), generation);
+                });
+                Future<?> invalidate = executor.submit(() -> {
+                    await(start);
+                    cache.invalidateUser("1");
+                });
+                start.countDown();
+                put.get(10, TimeUnit.SECONDS);
+                invalidate.get(10, TimeUnit.SECONDS);
+                assertNull(cache.get(tokenHash), "iteration " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, cache.size());
+    }
+
+    private static long expiresIn(long millis) {
+        return System.currentTimeMillis() + millis;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}